@@ -50,6 +50,7 @@ import javax.management.ObjectInstance;
 
 import com.sematext.spm.client.config.CollectorFileConfig;
 import com.sematext.spm.client.config.CollectorFileConfig.ConfigType;
+import com.sematext.spm.client.config.ConfigDirWatcher;
 import com.sematext.spm.client.db.DbConnectionManager;
 import com.sematext.spm.client.db.DbObservation;
 import com.sematext.spm.client.db.DbStatsExtractorConfig;
@@ -62,6 +63,7 @@ import com.sematext.spm.client.jmx.JmxMBeanServerConnectionWrapper;
 import com.sematext.spm.client.jmx.JmxServiceContext;
 import com.sematext.spm.client.jmx.JmxStatsExtractorConfig;
 import com.sematext.spm.client.jmx.MBeanAttributeObservation;
+import com.sematext.spm.client.jmx.MBeanDiscoveryCache;
 import com.sematext.spm.client.jmx.MBeanObservation;
 import com.sematext.spm.client.json.GenericJsonCollector;
 import com.sematext.spm.client.json.GenericJsonExtractor;
@@ -90,6 +92,13 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
   private static final int MAX_PCTLS_DEFINITIONS = 10;
   private static int CURRENT_COUNT_PCTLS_DEFINITIONS = 0;
 
+  private static final ConfigDirWatcher CONFIG_DIR_WATCHER = ConfigDirWatcher.create();
+  // listings of watched config dirs, reused until the watcher reports a change
+  private static final Map<String, File[]> CONFIG_DIR_LISTINGS = new HashMap<String, File[]>();
+
+  // dirs changed since the previous create call, null means any dir could have changed
+  private Set<String> changedConfigDirs;
+
   @Override
   public Collection<? extends StatsCollector<?>> create(Properties monitorProperties,
                                                         List<? extends StatsCollector<?>> currentCollectors,
@@ -145,6 +154,8 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
 
       CURRENT_COUNT_PCTLS_DEFINITIONS = 0;
 
+      changedConfigDirs = CONFIG_DIR_WATCHER.drainChanged();
+
       LOG.info("Loading configs for collectors: " + types);
 
       for (String type : types) {
@@ -201,7 +212,7 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
       LOG.warn("Config subdir " + configFileDir.getAbsolutePath() + " does not exist! Skipping...");
     } else if (configFileDir.isDirectory()) {
       LOG.info("Scanning subdir for configs: " + configFileDir.getAbsolutePath());
-      File[] configFiles = configFileDir.listFiles();
+      File[] configFiles = listConfigDir(configFileDir);
 
       if (configFiles != null) {
         for (File configFile : configFiles) {
@@ -215,6 +226,27 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
     }
   }
 
+  private File[] listConfigDir(File dir) {
+    String path = dir.getAbsolutePath();
+    if (isConfigDirUnchanged(path)) {
+      return CONFIG_DIR_LISTINGS.get(path);
+    }
+
+    // start watching before listing, so changes made in the meantime are reported by the next reload
+    boolean watched = CONFIG_DIR_WATCHER.watch(dir);
+    File[] files = dir.listFiles();
+    if (watched && files != null) {
+      CONFIG_DIR_LISTINGS.put(path, files);
+    } else {
+      CONFIG_DIR_LISTINGS.remove(path);
+    }
+    return files;
+  }
+
+  private boolean isConfigDirUnchanged(String path) {
+    return changedConfigDirs != null && !changedConfigDirs.contains(path) && CONFIG_DIR_LISTINGS.containsKey(path);
+  }
+
   public void loadConfigFile(File configFile, List<? extends StatsCollector<?>> currentCollectors,
                              MonitorConfig monitorConfig, Properties monitorProperties,
                              List<StatsCollector<?>> collectors) {
@@ -226,8 +258,7 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
         return;
       }
 
-      String configFileContent = FileUtils.readFileToString(configFile);
-      StatsExtractorConfig<?> statsExtractorConfig = getStatsExtractorConfig(configFile, configFileContent, monitorProperties,
+      StatsExtractorConfig<?> statsExtractorConfig = getStatsExtractorConfig(configFile, monitorProperties,
                                                                              monitorConfig);
 
       if (statsExtractorConfig == null) {
@@ -303,6 +334,9 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
         return;
       }
     }
+    if (monitorConfig.getSelfMetrics() != null) {
+      dbConnectionManager.setQueryMetrics(monitorConfig.getSelfMetrics().getDbQueryMetrics());
+    }
 
     try {
       for (DbObservation obs : config.getObservations()) {
@@ -353,7 +387,7 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
 
     CachableReliableDataSourceBase<Object, JsonDataProvider> dataSource = JsonDataSourceCachedFactory.getDataSource(
         config.getJsonServerInfo(), config.getDataRequestUrl(), config.isAsync(), config.isUseSmile(), config
-            .getJsonHandlerClass());
+            .getJsonHandlerClass(), config.getDataNodePaths());
 
     try {
       Object jsonData = dataSource.fetchData();
@@ -446,7 +480,8 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
           LOG.debug("Looking at " + obs.getName() + " bean with definition " + obs.getOriginalObjectNamePattern() +
                         ", adjusted pattern: " + obs.getObjectNamePattern());
         }
-        Set<ObjectInstance> beans = conn.queryMBeans(obs.getObjectNamePattern(), null);
+        // served from cache unless beans matching the pattern were registered or unregistered in the meantime
+        Set<ObjectInstance> beans = MBeanDiscoveryCache.forConnection(conn).queryMBeans(obs.getObjectNamePattern());
 
         if (LOG.isDebugEnabled()) {
           LOG.debug("For " + obs.getName() + " found matching jmx beans: " + beans.size());
@@ -647,14 +682,80 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
     return res;
   }
 
-  private static final Map<String, Long> FILE_TO_LAST_MODIFIED = new HashMap<String, Long>();
-  private static final Map<String, StatsExtractorConfig<?>> FILE_TO_LAST_CREATED_CONFIG_BEAN_MAP = new HashMap<String, StatsExtractorConfig<?>>();
+  private static final Map<String, LoadedConfig> LOADED_CONFIGS = new HashMap<String, LoadedConfig>();
+
+  private static final class LoadedConfig {
+    private final long lastModified;
+    private final long length;
+    private final int contentHash;
+    private final int propertiesHash;
+    private final StatsExtractorConfig<?> config;
+
+    private LoadedConfig(long lastModified, long length, int contentHash, int propertiesHash,
+                         StatsExtractorConfig<?> config) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.contentHash = contentHash;
+      this.propertiesHash = propertiesHash;
+      this.config = config;
+    }
+  }
 
-  private StatsExtractorConfig<?> getStatsExtractorConfig(File configFile, String configFileContent,
-                                                          Properties monitorProperties, MonitorConfig monitorConfig)
-      throws ConfigurationFailedException {
+  /**
+   * Config object is created again only when file content or monitor properties changed. Files in watched dirs with
+   * no change events are not touched at all, other files are read only if their size or last modified time changed
+   * (or always, when their dir reported a change), content hash then decides whether they have to be parsed again.
+   */
+  private StatsExtractorConfig<?> getStatsExtractorConfig(File configFile, Properties monitorProperties,
+                                                          MonitorConfig monitorConfig)
+      throws ConfigurationFailedException, IOException {
     String fileKey = configFile.getAbsolutePath();
+    int propertiesHash = monitorProperties.hashCode();
+    LoadedConfig loaded = LOADED_CONFIGS.get(fileKey);
+    if (loaded != null && loaded.propertiesHash != propertiesHash) {
+      loaded = null;
+    }
+
+    if (loaded != null && isConfigDirUnchanged(configFile.getParentFile().getAbsolutePath())) {
+      return loaded.config;
+    }
+
+    long lastModified = configFile.lastModified();
+    long length = configFile.length();
+    if (loaded != null && changedConfigDirs == null && loaded.lastModified == lastModified &&
+        loaded.length == length) {
+      return loaded.config;
+    }
+
+    String configFileContent = FileUtils.readFileToString(configFile);
+    int contentHash = configFileContent.hashCode();
+    if (loaded != null && loaded.contentHash == contentHash) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Using previous config object for " + fileKey + " since there were no changes");
+      }
+      LOADED_CONFIGS.put(fileKey, new LoadedConfig(lastModified, length, contentHash, propertiesHash, loaded.config));
+      return loaded.config;
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Creating new config object for " + fileKey);
+    }
+    if (monitorConfig.getSelfMetrics() != null) {
+      monitorConfig.getSelfMetrics().getConfigReloadMetrics().recordConfigParsed();
+    }
+
+    // in case of errors previous config object (if any) remains in use until the file changes again
+    StatsExtractorConfig<?> config = loaded != null ? loaded.config : null;
+    try {
+      config = createStatsExtractorConfig(configFile, resolvePlaceholders(configFile, configFileContent,
+                                                                          monitorProperties), monitorConfig);
+      return config;
+    } finally {
+      LOADED_CONFIGS.put(fileKey, new LoadedConfig(lastModified, length, contentHash, propertiesHash, config));
+    }
+  }
 
+  private String resolvePlaceholders(File configFile, String configFileContent, Properties monitorProperties) {
     // replace all monitor properties placeholders with real values from properties file
     // NOTE: assumption is that it is ok if behavior will be undefined when two props have the same variants (ST_PROP
     // and SPM_PROP) because order of execution would affect the end result 
@@ -670,52 +771,39 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
     if (LOG.isDebugEnabled()) {
       LOG.debug("Config file " + configFile + " after resolving the placeholders: " + configFileContent);
     }
+    return configFileContent;
+  }
 
-    Long lastModified = configFile.lastModified();
-    Long previousLastModified = FILE_TO_LAST_MODIFIED.get(fileKey);
-
-    if (previousLastModified != null && lastModified.equals(previousLastModified)) {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Using previous config object for " + fileKey + " since there were no changes");
-      }
-      return FILE_TO_LAST_CREATED_CONFIG_BEAN_MAP.get(fileKey);
-    } else {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Creating new config object for " + fileKey);
-      }
-      StatsExtractorConfig<?> newConfig;
-
-      CollectorFileConfig yamlConfig = YamlConfigLoader.load(configFileContent, configFile.getAbsolutePath());
-      MonitorUtil.FILE_NAME_TO_LOADED_YAML_CONFIG.put(configFile.getAbsolutePath(), yamlConfig);
-
-      ConfigType configType = yamlConfig.getType();
+  private StatsExtractorConfig<?> createStatsExtractorConfig(File configFile, String configFileContent,
+                                                             MonitorConfig monitorConfig)
+      throws ConfigurationFailedException {
+    StatsExtractorConfig<?> newConfig;
 
-      if (configType == null) {
-        LOG.warn("Config file " + configFile + " is missing mandatory attribute 'type' (values can be: jmx, json, db)");
-        return null;
-      }
+    CollectorFileConfig yamlConfig = YamlConfigLoader.load(configFileContent, configFile.getAbsolutePath());
+    MonitorUtil.FILE_NAME_TO_LOADED_YAML_CONFIG.put(configFile.getAbsolutePath(), yamlConfig);
 
-      if (configType == ConfigType.JMX) {
-        newConfig = new JmxStatsExtractorConfig(yamlConfig, monitorConfig);
-      } else if (configType == ConfigType.JSON) {
-        newConfig = new JsonStatsExtractorConfig(yamlConfig, monitorConfig);
-      } else if (configType == ConfigType.DB) {
-        newConfig = new DbStatsExtractorConfig(yamlConfig, monitorConfig);
-      } else {
-        throw new IllegalArgumentException("Extractor config can be created only for jmx, db or json configs!");
-      }
+    ConfigType configType = yamlConfig.getType();
 
-      FILE_TO_LAST_MODIFIED.put(fileKey, lastModified);
+    if (configType == null) {
+      LOG.warn("Config file " + configFile + " is missing mandatory attribute 'type' (values can be: jmx, json, db)");
+      return null;
+    }
 
-      checkDuplicateBeanNames(configFile, newConfig);
+    if (configType == ConfigType.JMX) {
+      newConfig = new JmxStatsExtractorConfig(yamlConfig, monitorConfig);
+    } else if (configType == ConfigType.JSON) {
+      newConfig = new JsonStatsExtractorConfig(yamlConfig, monitorConfig);
+    } else if (configType == ConfigType.DB) {
+      newConfig = new DbStatsExtractorConfig(yamlConfig, monitorConfig);
+    } else {
+      throw new IllegalArgumentException("Extractor config can be created only for jmx, db or json configs!");
+    }
 
-      checkValidTagNames(configFile, newConfig);
+    checkDuplicateBeanNames(configFile, newConfig);
 
-      // if no errors, store the config into the map
-      FILE_TO_LAST_CREATED_CONFIG_BEAN_MAP.put(fileKey, newConfig);
+    checkValidTagNames(configFile, newConfig);
 
-      return newConfig;
-    }
+    return newConfig;
   }
 
   private static final Set<String> RESERVED_TAG_NAMES = new HashSet<String>(Arrays.asList(
@@ -772,10 +860,10 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
 
         boolean added = false;
 
-        String possibleKey = GroupedByTagsCollector.getGroupedKey(col.getAppToken(),
-                                                                  col.getMetricsNamespace(), GroupedByTagsCollector
-                                                                      .getTagsAsString(col.getGenericExtractor()
-                                                                                           .getPartlyResolvedObservationConfigTags()));
+        // tags string is cached by the extractor, same as GroupedByTagsCollector.getTagsAsString() of its tags
+        String tagsAsString = col.getGenericExtractor().getPartlyResolvedObservationConfigTagsAsString();
+        String possibleKey = GroupedByTagsCollector.getGroupedKey(col.getAppToken(), col.getMetricsNamespace(),
+                                                                  tagsAsString);
 
         GroupedByTagsCollector possibleGroup = GROUPED_BY_TAGS_COLLECTORS.get(possibleKey);
         if (possibleGroup != null) {
@@ -798,9 +886,7 @@ public class GenericStatsCollectorsFactory extends StatsCollectorsFactory<StatsC
           if (!added) {
             // means there was no such group at all
             Map<String, String> tags = col.getGenericExtractor().getPartlyResolvedObservationConfigTags();
-            String tagsAsString = GroupedByTagsCollector.getTagsAsString(tags);
-            String groupedByTagsCollectorKey = GroupedByTagsCollector.getGroupedKey(col.getAppToken(),
-                                                                                    col.getMetricsNamespace(), tagsAsString);
+            String groupedByTagsCollectorKey = possibleKey;
 
             // compressing version of grouped collector is used
             GroupedByTagsCollector newGroup = new GroupedByTagsCollector(col.getMetricsNamespace(), col.getAppToken(),
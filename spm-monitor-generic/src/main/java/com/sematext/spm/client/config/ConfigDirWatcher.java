@@ -0,0 +1,80 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.config;
+
+import java.io.File;
+import java.util.Set;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Tells which collector config directories changed since the previous check, so unchanged directories don't have to
+ * be listed and their files don't have to be read again on every config reload. Backed by WatchService on Java 7+,
+ * on older JVMs (or when WatchService can't be created) every directory is always reported as possibly changed.
+ */
+public abstract class ConfigDirWatcher {
+  private static final Log LOG = LogFactory.getLog(ConfigDirWatcher.class);
+
+  private static final String WATCH_SERVICE_WATCHER_CLASS =
+      "com.sematext.spm.client.config.WatchServiceConfigDirWatcher";
+
+  public static final ConfigDirWatcher NONE = new ConfigDirWatcher() {
+    @Override
+    public boolean watch(File dir) {
+      return false;
+    }
+
+    @Override
+    public Set<String> drainChanged() {
+      return null;
+    }
+  };
+
+  public static ConfigDirWatcher create() {
+    try {
+      Class.forName("java.nio.file.WatchService");
+    } catch (ClassNotFoundException e) {
+      // Java 6
+      return NONE;
+    }
+    try {
+      // loaded by name, so java.nio.file classes are never touched on Java 6
+      return (ConfigDirWatcher) Class.forName(WATCH_SERVICE_WATCHER_CLASS).newInstance();
+    } catch (Throwable thr) {
+      LOG.warn("Can't watch collector config dirs, all configs will be checked on every reload", thr);
+    }
+    return NONE;
+  }
+
+  /**
+   * Starts watching direct children of the directory (files and subdirectories created, deleted or modified). Should be
+   * called before the directory is listed, so no change is missed.
+   *
+   * @return true if the directory is watched
+   */
+  public abstract boolean watch(File dir);
+
+  /**
+   * @return absolute paths of watched directories changed since the previous call or null if any directory could have
+   * changed
+   */
+  public abstract Set<String> drainChanged();
+}
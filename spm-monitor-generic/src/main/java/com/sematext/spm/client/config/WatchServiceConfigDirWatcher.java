@@ -0,0 +1,85 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.config;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Java 7+ only, created through {@link ConfigDirWatcher#create()}. Events are only polled, no thread is started.
+ */
+final class WatchServiceConfigDirWatcher extends ConfigDirWatcher {
+  private static final Log LOG = LogFactory.getLog(WatchServiceConfigDirWatcher.class);
+
+  private final WatchService watchService;
+  private final Map<WatchKey, String> keys = new HashMap<WatchKey, String>();
+
+  WatchServiceConfigDirWatcher() throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+  }
+
+  @Override
+  public synchronized boolean watch(File dir) {
+    String path = dir.getAbsolutePath();
+    if (keys.containsValue(path)) {
+      return true;
+    }
+    try {
+      keys.put(dir.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+      return true;
+    } catch (Exception e) {
+      LOG.warn("Can't watch config dir " + path + ", its configs will be checked on every reload: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public synchronized Set<String> drainChanged() {
+    Set<String> changed = new HashSet<String>();
+    WatchKey key;
+    while ((key = watchService.poll()) != null) {
+      // events themselves (including OVERFLOW) don't matter, the whole directory is checked again
+      key.pollEvents();
+      String path = keys.get(key);
+      if (path != null) {
+        changed.add(path);
+      }
+      if (!key.reset()) {
+        // directory was deleted or became inaccessible
+        keys.remove(key);
+      }
+    }
+    return changed;
+  }
+}
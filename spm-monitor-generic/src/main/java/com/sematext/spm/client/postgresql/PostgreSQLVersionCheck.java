@@ -23,10 +23,10 @@ package com.sematext.spm.client.postgresql;
 import com.sematext.spm.client.Log;
 import com.sematext.spm.client.LogFactory;
 import com.sematext.spm.client.db.DbConnectionManager;
+import com.sematext.spm.client.db.DbPooledConnection;
 import com.sematext.spm.client.db.DbStatsExtractorConfig;
 import com.sematext.spm.client.observation.BaseVersionConditionCheck;
 
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.regex.Matcher;
@@ -34,6 +34,7 @@ import java.util.regex.Pattern;
 
 public class PostgreSQLVersionCheck extends BaseVersionConditionCheck {
     private static final Log LOG = LogFactory.getLog(PostgreSQLVersionCheck.class);
+    private static final long CONNECTION_WAIT_MS = 5000;
 
     @Override
     protected String readVersion() {
@@ -53,23 +54,31 @@ public class PostgreSQLVersionCheck extends BaseVersionConditionCheck {
                 dbConnectionManager = new DbConnectionManager(dbUrl, dbDriverClass, dbUser, dbPassword, dbAdditionalConnectionParams);
             }
 
-            Connection conn = dbConnectionManager.getConnection();
+            DbPooledConnection conn = dbConnectionManager.borrowConnection(CONNECTION_WAIT_MS);
             if (conn == null) {
                 LOG.error("DB connection not available, skipping query");
 
                 return null;
             }
 
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery("SHOW SERVER_VERSION;");
+            Statement stmt = null;
+            try {
+                stmt = conn.getConnection().createStatement();
+                ResultSet rs = stmt.executeQuery("SHOW SERVER_VERSION;");
 
-            if (rs.next()) {
-                String version = rs.getString(1).trim();
+                if (rs.next()) {
+                    String version = rs.getString(1).trim();
 
-                return getVersion(version);
-            }
+                    return getVersion(version);
+                }
 
-            return null;
+                return null;
+            } finally {
+                if (stmt != null) {
+                    stmt.close();
+                }
+                dbConnectionManager.releaseConnection(conn, true);
+            }
         } catch (Exception e) {
             LOG.error("Error while reading postgresql version", e);
 
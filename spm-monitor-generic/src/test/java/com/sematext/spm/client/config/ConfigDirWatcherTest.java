@@ -0,0 +1,67 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Set;
+
+import com.sematext.spm.client.util.test.TmpFS;
+
+public class ConfigDirWatcherTest {
+  @Test
+  public void testReportsChangedDirs() throws Exception {
+    final TmpFS fs = TmpFS.fs();
+    try {
+      File watchedDir = fs.createDirectory();
+      File otherDir = fs.createDirectory();
+
+      ConfigDirWatcher watcher = ConfigDirWatcher.create();
+      assertTrue(watcher.watch(watchedDir));
+      assertTrue(watcher.drainChanged().isEmpty());
+
+      fs.createFile(otherDir, "other.yml", "type: jmx");
+      fs.createFile(watchedDir, "jmx.yml", "type: jmx");
+
+      // some WatchService implementations poll the file system, so changes are reported with a delay
+      Set<String> changed = watcher.drainChanged();
+      long deadline = System.currentTimeMillis() + 30000;
+      while (changed.isEmpty() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+        changed = watcher.drainChanged();
+      }
+      assertTrue(changed.contains(watchedDir.getAbsolutePath()));
+      assertFalse(changed.contains(otherDir.getAbsolutePath()));
+    } finally {
+      fs.cleanup();
+    }
+  }
+
+  @Test
+  public void testNoneReportsEverythingAsChanged() {
+    assertFalse(ConfigDirWatcher.NONE.watch(new File(".")));
+    assertNull(ConfigDirWatcher.NONE.drainChanged());
+  }
+}
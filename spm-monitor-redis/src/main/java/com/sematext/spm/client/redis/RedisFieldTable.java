@@ -0,0 +1,116 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.redis;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Names of fields which are read from Redis replies, mapped to slots of {@link RedisValues}. Fields are registered
+ * when metric extractors are created, parsers look names up directly in reply bytes and skip all unknown fields.
+ */
+final class RedisFieldTable {
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  private static final class Snapshot {
+    private final byte[][] names;
+    // open addressing, slot + 1 or 0 for free entry
+    private final int[] entries;
+
+    private Snapshot(byte[][] names, int[] entries) {
+      this.names = names;
+      this.entries = entries;
+    }
+  }
+
+  private volatile Snapshot snapshot = new Snapshot(new byte[0][], new int[16]);
+
+  synchronized int register(String name) {
+    final byte[] bytes = name.getBytes(ASCII);
+    final int existing = find(bytes, 0, bytes.length);
+    if (existing >= 0) {
+      return existing;
+    }
+    final byte[][] names = Arrays.copyOf(snapshot.names, snapshot.names.length + 1);
+    names[names.length - 1] = bytes;
+    int capacity = 16;
+    while (capacity < names.length * 4) {
+      capacity <<= 1;
+    }
+    final int[] entries = new int[capacity];
+    for (int slot = 0; slot < names.length; slot++) {
+      int i = hash(names[slot], 0, names[slot].length) & (capacity - 1);
+      while (entries[i] != 0) {
+        i = (i + 1) & (capacity - 1);
+      }
+      entries[i] = slot + 1;
+    }
+    snapshot = new Snapshot(names, entries);
+    return names.length - 1;
+  }
+
+  /**
+   * @return slot of the field named by bytes from (inclusive) to (exclusive) or -1 if field isn't registered
+   */
+  int find(byte[] bytes, int from, int to) {
+    final Snapshot s = snapshot;
+    final int mask = s.entries.length - 1;
+    int i = hash(bytes, from, to) & mask;
+    while (true) {
+      final int entry = s.entries[i];
+      if (entry == 0) {
+        return -1;
+      }
+      if (equals(s.names[entry - 1], bytes, from, to)) {
+        return entry - 1;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  int find(String name) {
+    final byte[] bytes = name.getBytes(ASCII);
+    return find(bytes, 0, bytes.length);
+  }
+
+  int size() {
+    return snapshot.names.length;
+  }
+
+  private static int hash(byte[] bytes, int from, int to) {
+    int h = 0;
+    for (int i = from; i < to; i++) {
+      h = 31 * h + bytes[i];
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean equals(byte[] name, byte[] bytes, int from, int to) {
+    if (name.length != to - from) {
+      return false;
+    }
+    for (int i = 0; i < name.length; i++) {
+      if (name[i] != bytes[from + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -19,70 +19,222 @@
  */
 package com.sematext.spm.client.redis;
 
-import org.apache.commons.lang.StringUtils;
-import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.eclipse.collections.impl.set.mutable.UnifiedSet;
 
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Set;
 
+/**
+ * Values of registered fields from INFO reply and optionally from LATENCY LATEST and MEMORY STATS replies. Replies are
+ * parsed from bytes, only fields read by metric extractors are kept.
+ */
 public final class RedisInfo {
-  private final Map<String, String> stats;
-  private final Map<String, Map<String, String>> dbStats;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  // Redis has 16 databases by default, names of those are shared
+  private static final String[] DB_NAMES = new String[16];
+  private static final int MAX_DB = 0xffff;
+  private static final RedisValues[] NO_DBS = new RedisValues[0];
+
+  static final RedisFieldTable INFO_FIELDS = new RedisFieldTable();
+  static final RedisFieldTable DB_FIELDS = new RedisFieldTable();
+  static final RedisFieldTable MEMORY_STATS_FIELDS = new RedisFieldTable();
+
+  static {
+    for (int i = 0; i < DB_NAMES.length; i++) {
+      DB_NAMES[i] = "db" + i;
+    }
+    DB_FIELDS.register("keys");
+    DB_FIELDS.register("expires");
+    DB_FIELDS.register("avg_ttl");
+  }
+
+  private final RedisValues stats;
+  private RedisValues[] dbs = NO_DBS;
+  private RedisValues memoryStats;
+  // event timestamp (seconds) and latest latency (ms) of each event
+  private long[] latencyEvents;
+  private int latencyEventsCount;
+  private boolean empty = true;
 
-  private RedisInfo() {
-    stats = new UnifiedMap<String, String>();
-    dbStats = new UnifiedMap<String, Map<String, String>>();
+  RedisInfo() {
+    stats = new RedisValues(INFO_FIELDS.size());
   }
 
   public String get(String metricName) {
-    return stats.get(metricName);
+    return stats.format(INFO_FIELDS.find(metricName));
   }
 
   public String get(String db, String metricName) {
-    Map<String, String> dbMetrics = dbStats.get(db);
-    if (dbMetrics == null) {
+    final int dbIndex = dbIndex(db);
+    if (dbIndex < 0 || dbIndex >= dbs.length || dbs[dbIndex] == null) {
       return null;
     }
-    return dbMetrics.get(metricName);
+    return dbs[dbIndex].format(DB_FIELDS.find(metricName));
   }
 
   public Set<String> getDatabases() {
-    return dbStats.keySet();
+    final Set<String> databases = new UnifiedSet<String>();
+    for (int db = nextDatabase(0); db >= 0; db = nextDatabase(db + 1)) {
+      databases.add(getDatabaseName(db));
+    }
+    return databases;
   }
 
   public boolean isEmpty() {
-    return stats.isEmpty();
+    return empty;
   }
 
-  @SuppressWarnings("unused")
-  public static RedisInfo empty() {
-    return new RedisInfo();
+  RedisValues getStats() {
+    return stats;
   }
 
-  public static RedisInfo parse(String info) {
-    final RedisInfo redisStats = new RedisInfo();
+  /**
+   * @return number of the first database with stats starting from given one or -1 if there are no more databases
+   */
+  int nextDatabase(int from) {
+    for (int db = from; db < dbs.length; db++) {
+      if (dbs[db] != null) {
+        return db;
+      }
+    }
+    return -1;
+  }
 
-    String[] lines = info.split("\n");
-    for (String line : lines) {
-      if (!StringUtils.chomp(line, " ").startsWith("#") && !line.trim().isEmpty()) {
-        String[] parts = line.split(":");
-        if (parts.length == 2) {
-          if (parts[0].matches("^db[0-9]+")) {
-            String[] dbPropertiesParts = parts[1].split("[,=]");
-            for (int i = 0; i < dbPropertiesParts.length; i += 2) {
-              Map<String, String> dbStats = redisStats.dbStats.get(parts[0]);
-              if (dbStats == null) {
-                dbStats = new UnifiedMap<String, String>();
-              }
-              dbStats.put(dbPropertiesParts[i], dbPropertiesParts[i + 1].trim());
-              redisStats.dbStats.put(parts[0], dbStats);
-            }
+  RedisValues getDatabase(int db) {
+    return dbs[db];
+  }
+
+  static String getDatabaseName(int db) {
+    return db < DB_NAMES.length ? DB_NAMES[db] : "db" + db;
+  }
+
+  /**
+   * @return values from MEMORY STATS or null if they were not requested or are not supported
+   */
+  RedisValues getMemoryStats() {
+    return memoryStats;
+  }
+
+  void setMemoryStats(RedisValues memoryStats) {
+    this.memoryStats = memoryStats;
+  }
+
+  int getLatencyEventsCount() {
+    return latencyEventsCount;
+  }
+
+  long getLatencyEventTime(int event) {
+    return latencyEvents[event * 2];
+  }
+
+  long getLatencyEventLatest(int event) {
+    return latencyEvents[event * 2 + 1];
+  }
+
+  void addLatencyEvent(long time, long latest) {
+    if (latencyEvents == null) {
+      latencyEvents = new long[2 * 4];
+    } else if (latencyEvents.length < (latencyEventsCount + 1) * 2) {
+      latencyEvents = Arrays.copyOf(latencyEvents, latencyEvents.length * 2);
+    }
+    latencyEvents[latencyEventsCount * 2] = time;
+    latencyEvents[latencyEventsCount * 2 + 1] = latest;
+    latencyEventsCount++;
+  }
+
+  /**
+   * Reads INFO text ("field:value" lines, "# Section" headers and "dbN:field=value,..." keyspace lines).
+   */
+  void readInfo(byte[] bytes, int from, int to) {
+    int lineStart = from;
+    while (lineStart < to) {
+      int lineEnd = indexOf(bytes, (byte) '\n', lineStart, to);
+      if (lineEnd < 0) {
+        lineEnd = to;
+      }
+      int end = lineEnd;
+      if (end > lineStart && bytes[end - 1] == '\r') {
+        end--;
+      }
+      if (end > lineStart && bytes[lineStart] != '#') {
+        final int colon = indexOf(bytes, (byte) ':', lineStart, end);
+        if (colon > lineStart) {
+          empty = false;
+          final int db = parseDbNumber(bytes, lineStart, colon);
+          if (db >= 0) {
+            readDbStats(db, bytes, colon + 1, end);
           } else {
-            redisStats.stats.put(parts[0], parts[1].trim());
+            stats.set(INFO_FIELDS.find(bytes, lineStart, colon), bytes, colon + 1, end);
           }
         }
       }
+      lineStart = lineEnd + 1;
+    }
+  }
+
+  private void readDbStats(int db, byte[] bytes, int from, int to) {
+    if (db >= dbs.length) {
+      dbs = Arrays.copyOf(dbs, Math.max(db + 1, DB_NAMES.length));
+    }
+    if (dbs[db] == null) {
+      dbs[db] = new RedisValues(DB_FIELDS.size());
+    }
+    int pairStart = from;
+    while (pairStart < to) {
+      int pairEnd = indexOf(bytes, (byte) ',', pairStart, to);
+      if (pairEnd < 0) {
+        pairEnd = to;
+      }
+      final int eq = indexOf(bytes, (byte) '=', pairStart, pairEnd);
+      if (eq > pairStart) {
+        dbs[db].set(DB_FIELDS.find(bytes, pairStart, eq), bytes, eq + 1, pairEnd);
+      }
+      pairStart = pairEnd + 1;
+    }
+  }
+
+  /**
+   * @return N for "dbN" name or -1 if name isn't a database name
+   */
+  private static int parseDbNumber(byte[] bytes, int from, int to) {
+    if (to - from < 3 || to - from > 7 || bytes[from] != 'd' || bytes[from + 1] != 'b') {
+      return -1;
+    }
+    int db = 0;
+    for (int i = from + 2; i < to; i++) {
+      final int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      db = db * 10 + digit;
     }
+    return db <= MAX_DB ? db : -1;
+  }
+
+  private static int dbIndex(String db) {
+    final byte[] bytes = db.getBytes(UTF_8);
+    return parseDbNumber(bytes, 0, bytes.length);
+  }
+
+  static int indexOf(byte[] bytes, byte b, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unused")
+  public static RedisInfo empty() {
+    return new RedisInfo();
+  }
+
+  public static RedisInfo parse(String info) {
+    final RedisInfo redisStats = new RedisInfo();
+    final byte[] bytes = info.getBytes(UTF_8);
+    redisStats.readInfo(bytes, 0, bytes.length);
     return redisStats;
   }
 }
@@ -97,6 +97,30 @@ public enum RedisInfoMetric {
     public RedisInfoMetricExtractor<Object> createMetricExtractor() {
       return RedisInfoMetricExtractors.longDBExtractor("expires");
     }
+  },
+  MEMORY_DATASET {
+    @Override
+    public RedisInfoMetricExtractor<Object> createMetricExtractor() {
+      return RedisInfoMetricExtractors.memoryStatsLongExtractor("dataset.bytes");
+    }
+  },
+  MEMORY_OVERHEAD {
+    @Override
+    public RedisInfoMetricExtractor<Object> createMetricExtractor() {
+      return RedisInfoMetricExtractors.memoryStatsLongExtractor("overhead.total");
+    }
+  },
+  MEMORY_CLIENTS {
+    @Override
+    public RedisInfoMetricExtractor<Object> createMetricExtractor() {
+      return RedisInfoMetricExtractors.memoryStatsLongExtractor("clients.normal");
+    }
+  },
+  LATENCY_SPIKE_MAX {
+    @Override
+    public RedisInfoMetricExtractor<Object> createMetricExtractor() {
+      return RedisInfoMetricExtractors.latencySpikeExtractor();
+    }
   };
 
   public abstract RedisInfoMetricExtractor<Object> createMetricExtractor();
@@ -32,7 +32,7 @@ public final class RedisInfoMetricExtractors {
   }
 
   private static final class BaseDBExtractor<T> implements RedisInfoMetricExtractor<List<Tuple<String, T>>> {
-    private final String fieldName;
+    private final int field;
     private final ValueHolders.ValueHolderFactory<T> holderFactory;
     private final ValueInjections.ValueInjection<T> injection;
     private final Map<String, ValueHolders.ValueHolder<T>> holders = new UnifiedMap<String, ValueHolders.ValueHolder<T>>();
@@ -41,7 +41,7 @@ public final class RedisInfoMetricExtractors {
                             ValueInjections.ValueInjection<T> injection) {
       this.holderFactory = holderFactory;
       this.injection = injection;
-      this.fieldName = fieldName;
+      this.field = RedisInfo.DB_FIELDS.register(fieldName);
     }
 
     private ValueHolders.ValueHolder<T> getHolder(String db) {
@@ -56,11 +56,12 @@ public final class RedisInfoMetricExtractors {
     @Override
     public List<Tuple<String, T>> extract(RedisInfo info) {
       List<Tuple<String, T>> dbMetrics = new FastList<Tuple<String, T>>();
-      for (String db : info.getDatabases()) {
-        String metricValue = info.get(db, fieldName);
-        if (metricValue != null) {
-          T value = injection.inject(metricValue);
-          dbMetrics.add(Tuple.tuple(db, getHolder(db).updateValue(value)));
+      for (int db = info.nextDatabase(0); db >= 0; db = info.nextDatabase(db + 1)) {
+        RedisValues values = info.getDatabase(db);
+        if (values.has(field)) {
+          T value = injection.inject(values, field);
+          String dbName = RedisInfo.getDatabaseName(db);
+          dbMetrics.add(Tuple.tuple(dbName, getHolder(dbName).updateValue(value)));
         }
       }
       return dbMetrics;
@@ -68,38 +69,65 @@ public final class RedisInfoMetricExtractors {
   }
 
   private static final class BaseExtractor<T> implements RedisInfoMetricExtractor<T> {
-    private final String fieldName;
+    private final int field;
+    private final boolean memoryStats;
     private final ValueHolders.ValueHolder<T> valueHolder;
     private final ValueInjections.ValueInjection<T> valueInjection;
 
-    private BaseExtractor(String fieldName, ValueHolders.ValueHolder<T> valueHolder,
+    private BaseExtractor(String fieldName, boolean memoryStats, ValueHolders.ValueHolder<T> valueHolder,
                           ValueInjections.ValueInjection<T> valueInjection) {
-      this.fieldName = fieldName;
+      this.field = (memoryStats ? RedisInfo.MEMORY_STATS_FIELDS : RedisInfo.INFO_FIELDS).register(fieldName);
+      this.memoryStats = memoryStats;
       this.valueHolder = valueHolder;
       this.valueInjection = valueInjection;
     }
 
     @Override
     public T extract(RedisInfo info) {
-      return valueHolder.updateValue(valueInjection.inject(info.get(fieldName)));
+      RedisValues values = memoryStats ? info.getMemoryStats() : info.getStats();
+      return valueHolder.updateValue(valueInjection.inject(values, field));
+    }
+  }
+
+  /**
+   * Highest latest latency (ms) of LATENCY LATEST events which happened since the previous extraction. Events which
+   * happened before the first extraction are not reported.
+   */
+  private static final class LatencySpikeExtractor implements RedisInfoMetricExtractor<Object> {
+    private long lastEventTime = -1;
+
+    @Override
+    public Object extract(RedisInfo info) {
+      long max = 0;
+      long newestEventTime = Math.max(lastEventTime, 0);
+      for (int event = 0; event < info.getLatencyEventsCount(); event++) {
+        long time = info.getLatencyEventTime(event);
+        if (lastEventTime >= 0 && time > lastEventTime) {
+          max = Math.max(max, info.getLatencyEventLatest(event));
+        }
+        newestEventTime = Math.max(newestEventTime, time);
+      }
+      lastEventTime = newestEventTime;
+      return max;
     }
   }
 
   @SuppressWarnings("unchecked")
   public static RedisInfoMetricExtractor<Object> doubleExtractor(final String fieldName) {
-    return new BaseExtractor(fieldName, ValueHolders.identityHolderFactory(Double.class)
+    return new BaseExtractor(fieldName, false, ValueHolders.identityHolderFactory(Double.class)
         .create(), ValueInjections.DOUBLE_INJECTION);
   }
 
   @SuppressWarnings("unchecked")
   public static RedisInfoMetricExtractor<Object> longExtractor(final String fieldName) {
-    return new BaseExtractor(fieldName, ValueHolders.identityHolderFactory(Long.class)
+    return new BaseExtractor(fieldName, false, ValueHolders.identityHolderFactory(Long.class)
         .create(), ValueInjections.LONG_INJECTION);
   }
 
   @SuppressWarnings("unchecked")
   public static RedisInfoMetricExtractor<Object> counterExtractor(final String fieldName) {
-    return new BaseExtractor(fieldName, ValueHolders.counterHolderFactory().create(), ValueInjections.LONG_INJECTION);
+    return new BaseExtractor(fieldName, false, ValueHolders.counterHolderFactory().create(),
+                             ValueInjections.LONG_INJECTION);
   }
 
   @SuppressWarnings("unchecked")
@@ -107,4 +135,14 @@ public final class RedisInfoMetricExtractors {
     return new BaseDBExtractor(fieldName, ValueHolders
         .identityHolderFactory(Long.class), ValueInjections.LONG_INJECTION);
   }
+
+  @SuppressWarnings("unchecked")
+  public static RedisInfoMetricExtractor<Object> memoryStatsLongExtractor(final String fieldName) {
+    return new BaseExtractor(fieldName, true, ValueHolders.identityHolderFactory(Long.class)
+        .create(), ValueInjections.LONG_INJECTION);
+  }
+
+  public static RedisInfoMetricExtractor<Object> latencySpikeExtractor() {
+    return new LatencySpikeExtractor();
+  }
 }
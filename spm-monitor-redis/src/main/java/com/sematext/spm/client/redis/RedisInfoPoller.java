@@ -0,0 +1,413 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.redis;
+
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Polls all Redis instances monitored by the agent over non-blocking connections from the calling thread. Commands are
+ * pipelined (INFO and optionally LATENCY LATEST and MEMORY STATS are sent in one write) and replies are parsed straight
+ * from connection read buffers. The requested instance is polled together with other instances whose cached info
+ * expired, so their collectors usually find fresh info instead of waiting for Redis one after another.
+ */
+final class RedisInfoPoller {
+  private static final Log LOG = LogFactory.getLog(RedisInfoPoller.class);
+
+  // same as default Jedis socket timeout
+  static final int DEFAULT_TIMEOUT_MS = 2000;
+  static final RedisInfoPoller GLOBAL = new RedisInfoPoller(DEFAULT_TIMEOUT_MS);
+
+  // instances nobody asked about for that long are not polled anymore and their connections are closed
+  private static final long PREFETCH_REQUEST_AGE_MS = 5 * 60 * 1000L;
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte AUTH = 0;
+  private static final byte INFO = 1;
+  private static final byte LATENCY_LATEST = 2;
+  private static final byte MEMORY_STATS = 3;
+
+  private final int timeoutMs;
+  private final Map<RedisInfoSource, Connection> connections = new UnifiedMap<RedisInfoSource, Connection>();
+  private Selector selector;
+
+  RedisInfoPoller(int timeoutMs) {
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Fetches fresh info of requested source unless it was fetched by another thread meanwhile. Fresh info is stored to
+   * polled sources.
+   *
+   * @throws IOException if requested source couldn't be polled
+   */
+  synchronized void poll(RedisInfoSource requested) throws IOException {
+    final long now = System.currentTimeMillis();
+    if (!requested.isExpired(now)) {
+      return;
+    }
+    if (selector == null) {
+      selector = Selector.open();
+    }
+
+    Connection requestedConnection = connections.get(requested);
+    if (requestedConnection == null) {
+      requestedConnection = new Connection(requested);
+      connections.put(requested, requestedConnection);
+    }
+    final List<Connection> round = new FastList<Connection>();
+    final List<Connection> idle = new FastList<Connection>();
+    round.add(requestedConnection);
+    for (Connection connection : connections.values()) {
+      if (connection == requestedConnection) {
+        continue;
+      }
+      if (now - connection.source.getLastRequestTime() > PREFETCH_REQUEST_AGE_MS) {
+        idle.add(connection);
+      } else if (connection.source.isExpired(now)) {
+        round.add(connection);
+      }
+    }
+    for (Connection connection : idle) {
+      connection.close();
+      connections.remove(connection.source);
+    }
+
+    for (Connection connection : round) {
+      connection.begin(selector);
+    }
+    try {
+      runRound(round, now + timeoutMs);
+    } catch (IOException e) {
+      for (Connection connection : round) {
+        connection.fail(e);
+      }
+    }
+
+    final long finished = System.currentTimeMillis();
+    for (Connection connection : round) {
+      if (connection.failure == null) {
+        connection.source.update(connection.info, finished);
+      }
+    }
+    if (requestedConnection.failure != null) {
+      throw requestedConnection.failure;
+    }
+  }
+
+  private void runRound(List<Connection> round, long deadline) throws IOException {
+    while (true) {
+      boolean pending = false;
+      for (Connection connection : round) {
+        pending |= !connection.done;
+      }
+      if (!pending) {
+        return;
+      }
+      final long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0) {
+        break;
+      }
+      selector.select(wait);
+      final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        final SelectionKey key = keys.next();
+        keys.remove();
+        final Connection connection = (Connection) key.attachment();
+        if (!key.isValid() || connection.done) {
+          continue;
+        }
+        try {
+          connection.handle();
+        } catch (IOException e) {
+          connection.retryOrFail(e, selector);
+        }
+      }
+    }
+    for (Connection connection : round) {
+      if (!connection.done) {
+        connection.fail(new SocketTimeoutException(
+            "Redis at " + connection.source.getAddress() + " didn't reply in " + timeoutMs + " ms"));
+      }
+    }
+  }
+
+  private static final class Connection {
+    private final RedisInfoSource source;
+    private boolean latencyStats;
+    private boolean memoryStats;
+    private byte[] pollRequest;
+    private byte[] connectRequest;
+    private final byte[] replies = new byte[4];
+    private int repliesCount;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean reused;
+    private boolean retried;
+    private ByteBuffer out;
+    private byte[] in = new byte[INITIAL_BUFFER_SIZE];
+    private ByteBuffer inBuffer = ByteBuffer.wrap(in);
+    private int inLength;
+    private int replyIndex;
+
+    private RedisInfo info;
+    private boolean done;
+    private IOException failure;
+
+    private Connection(RedisInfoSource source) {
+      this.source = source;
+      this.latencyStats = source.isLatencyStatsEnabled();
+      this.memoryStats = source.isMemoryStatsEnabled();
+      buildRequests();
+    }
+
+    private void buildRequests() {
+      final ByteArrayOutputStream request = new ByteArrayOutputStream();
+      appendCommand(request, "INFO");
+      if (latencyStats) {
+        appendCommand(request, "LATENCY", "LATEST");
+      }
+      if (memoryStats) {
+        appendCommand(request, "MEMORY", "STATS");
+      }
+      pollRequest = request.toByteArray();
+
+      final String password = source.getPassword();
+      if (password != null && !password.isEmpty()) {
+        request.reset();
+        appendCommand(request, "AUTH", password);
+        request.write(pollRequest, 0, pollRequest.length);
+        connectRequest = request.toByteArray();
+      } else {
+        connectRequest = pollRequest;
+      }
+    }
+
+    private static void appendCommand(ByteArrayOutputStream request, String... args) {
+      appendLine(request, "*" + args.length);
+      for (String arg : args) {
+        final byte[] bytes = arg.getBytes(UTF_8);
+        appendLine(request, "$" + bytes.length);
+        request.write(bytes, 0, bytes.length);
+        request.write('\r');
+        request.write('\n');
+      }
+    }
+
+    private static void appendLine(ByteArrayOutputStream request, String line) {
+      final byte[] bytes = line.getBytes(UTF_8);
+      request.write(bytes, 0, bytes.length);
+      request.write('\r');
+      request.write('\n');
+    }
+
+    private void begin(Selector selector) {
+      retried = false;
+      start(selector);
+    }
+
+    private void start(Selector selector) {
+      done = false;
+      failure = null;
+      info = new RedisInfo();
+      inLength = 0;
+      replyIndex = 0;
+      reused = channel != null;
+      try {
+        if (!reused) {
+          open(selector);
+        }
+        repliesCount = 0;
+        if (!reused && connectRequest != pollRequest) {
+          replies[repliesCount++] = AUTH;
+        }
+        replies[repliesCount++] = INFO;
+        if (latencyStats) {
+          replies[repliesCount++] = LATENCY_LATEST;
+        }
+        if (memoryStats) {
+          replies[repliesCount++] = MEMORY_STATS;
+        }
+        out = ByteBuffer.wrap(reused ? pollRequest : connectRequest);
+        key.interestOps(channel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_WRITE);
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+    private void open(Selector selector) throws IOException {
+      final InetSocketAddress address = new InetSocketAddress(source.getHost(), source.getPort());
+      if (address.isUnresolved()) {
+        throw new UnknownHostException(source.getHost());
+      }
+      channel = SocketChannel.open();
+      try {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.connect(address);
+        key = channel.register(selector, 0, this);
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    private void handle() throws IOException {
+      if (key.isConnectable()) {
+        if (!channel.finishConnect()) {
+          return;
+        }
+        key.interestOps(SelectionKey.OP_WRITE);
+      }
+      if (key.isWritable()) {
+        channel.write(out);
+        if (!out.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      }
+      if (key.isReadable()) {
+        read();
+      }
+    }
+
+    private void read() throws IOException {
+      if (inLength == in.length) {
+        if (in.length >= MAX_BUFFER_SIZE) {
+          throw new IOException("Reply of Redis at " + source.getAddress() + " is too big");
+        }
+        in = Arrays.copyOf(in, in.length * 2);
+        inBuffer = ByteBuffer.wrap(in);
+      }
+      inBuffer.limit(in.length);
+      inBuffer.position(inLength);
+      final int read = channel.read(inBuffer);
+      if (read < 0) {
+        throw new EOFException("Connection closed by Redis at " + source.getAddress());
+      }
+      inLength += read;
+
+      int pos = 0;
+      while (replyIndex < repliesCount) {
+        final int end = RespReader.skip(in, pos, inLength);
+        if (end == RespReader.INCOMPLETE) {
+          break;
+        }
+        readReply(replies[replyIndex], pos, end);
+        replyIndex++;
+        pos = end;
+      }
+      if (pos > 0) {
+        System.arraycopy(in, pos, in, 0, inLength - pos);
+        inLength -= pos;
+      }
+      if (replyIndex == repliesCount) {
+        if (inLength > 0) {
+          throw new IOException("Unexpected data from Redis at " + source.getAddress());
+        }
+        key.interestOps(0);
+        done = true;
+      }
+    }
+
+    private void readReply(byte kind, int pos, int end) throws IOException {
+      if (RespReader.isError(in, pos)) {
+        final String message = RespReader.errorMessage(in, pos, end);
+        if (kind == LATENCY_LATEST) {
+          LOG.warn("Can't get LATENCY LATEST from Redis at " + source.getAddress() + ", latency won't be collected: " +
+                       message);
+          latencyStats = false;
+          buildRequests();
+        } else if (kind == MEMORY_STATS) {
+          LOG.warn("Can't get MEMORY STATS from Redis at " + source.getAddress() +
+                       ", memory stats won't be collected: " + message);
+          memoryStats = false;
+          buildRequests();
+        } else {
+          throw new IOException("Redis at " + source.getAddress() + " replied with error: " + message);
+        }
+        return;
+      }
+      if (kind == INFO) {
+        RespReader.readInfo(in, pos, end, info);
+      } else if (kind == LATENCY_LATEST) {
+        RespReader.readLatencyLatest(in, pos, end, info);
+      } else if (kind == MEMORY_STATS) {
+        info.setMemoryStats(RespReader.readMemoryStats(in, pos, end));
+      }
+    }
+
+    /**
+     * Redis (or something in between) could have closed idle connection, so failed reused connection is opened again
+     * once if nothing was read from it.
+     */
+    private void retryOrFail(IOException e, Selector selector) {
+      if (reused && !retried && replyIndex == 0 && inLength == 0) {
+        retried = true;
+        close();
+        start(selector);
+      } else {
+        fail(e);
+      }
+    }
+
+    private void fail(IOException e) {
+      done = true;
+      failure = e;
+      close();
+    }
+
+    private void close() {
+      if (key != null) {
+        key.cancel();
+        key = null;
+      }
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // ignore, connection is not used anymore
+        }
+        channel = null;
+      }
+    }
+  }
+}
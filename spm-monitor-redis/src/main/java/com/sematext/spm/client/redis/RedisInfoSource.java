@@ -19,60 +19,104 @@
  */
 package com.sematext.spm.client.redis;
 
+import java.io.IOException;
+
 import com.sematext.spm.client.status.AgentStatusRecorder;
 import com.sematext.spm.client.status.AgentStatusRecorder.ConnectionStatus;
 
-import redis.clients.jedis.Jedis;
-
 public final class RedisInfoSource {
   private static final String DEFAULT_HOST = "localhost";
   private static final int DEFAULT_PORT = 6379;
   // we have 2 Collectors grabbing (different) data from Redis response, so we cache the response to avoid 2nd hit to Redis
   // 2000 ms is long-enough TTL to ensure the 2nd Collector gets the cached version
   private static final int CACHE_TTL = 2000;
-  private Jedis jedis;
-  private long lastQueryTime = System.currentTimeMillis();
-  private RedisInfo cachedInfo = RedisInfo.empty();
-  private String password;
+  private final String host;
+  private final int port;
+  private final String password;
+  private final boolean latencyStats;
+  private final boolean memoryStats;
+  private final RedisInfoPoller poller;
+  private volatile long lastQueryTime;
+  private volatile long lastRequestTime = System.currentTimeMillis();
+  private volatile RedisInfo cachedInfo = RedisInfo.empty();
 
-  private RedisInfoSource(final Jedis jedis, final String password) {
-    this.jedis = jedis;
+  RedisInfoSource(String host, int port, String password, boolean latencyStats, boolean memoryStats,
+                  RedisInfoPoller poller) {
+    this.host = host;
+    this.port = port;
     this.password = password;
+    this.latencyStats = latencyStats;
+    this.memoryStats = memoryStats;
+    this.poller = poller;
   }
 
-  private RedisInfoSource(final Jedis jedis) {
-    this(jedis, null);
-  }
-
-  public RedisInfo fetchInfo() {
-    boolean cacheExpired = System.currentTimeMillis() - lastQueryTime > CACHE_TTL;
+  public RedisInfo fetchInfo() throws IOException {
+    final long now = System.currentTimeMillis();
+    lastRequestTime = now;
 
-    if (cachedInfo.isEmpty() || cacheExpired) {
-      if (password != null && !password.isEmpty()) {
-        jedis.auth(password);
-      }
-      
-      String info;
+    if (isExpired(now)) {
       try {
-        info = jedis.info();
+        // other instances with expired info are polled at the same time
+        poller.poll(this);
         if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
           AgentStatusRecorder.GLOBAL_INSTANCE.updateConnectionStatus(ConnectionStatus.OK);
         }
-      } catch (RuntimeException re) {
+      } catch (IOException e) {
         if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
-          AgentStatusRecorder.GLOBAL_INSTANCE.updateConnectionStatus(ConnectionStatus.FAILED, re);
+          AgentStatusRecorder.GLOBAL_INSTANCE.updateConnectionStatus(ConnectionStatus.FAILED, e);
         }
-        throw re;
+        throw e;
       }
-      cachedInfo = RedisInfo.parse(info);
     }
     return cachedInfo;
   }
 
-  public static RedisInfoSource collector(String host, Integer port, String password) {
+  boolean isExpired(long now) {
+    return cachedInfo.isEmpty() || now - lastQueryTime > CACHE_TTL;
+  }
+
+  void update(RedisInfo info, long queryTime) {
+    cachedInfo = info;
+    lastQueryTime = queryTime;
+  }
+
+  long getLastRequestTime() {
+    return lastRequestTime;
+  }
+
+  String getHost() {
+    return host;
+  }
+
+  int getPort() {
+    return port;
+  }
+
+  String getAddress() {
+    return host + ":" + port;
+  }
+
+  String getPassword() {
+    return password;
+  }
+
+  boolean isLatencyStatsEnabled() {
+    return latencyStats;
+  }
+
+  boolean isMemoryStatsEnabled() {
+    return memoryStats;
+  }
+
+  public static RedisInfoSource collector(String host, Integer port, String password, boolean latencyStats,
+                                          boolean memoryStats) {
     final String fixedHost = host == null ? DEFAULT_HOST : host;
     final Integer fixedPort = port == null ? DEFAULT_PORT : port;
-    return new RedisInfoSource(new Jedis(fixedHost, fixedPort), password);
+    return new RedisInfoSource(fixedHost, fixedPort, password, latencyStats, memoryStats, RedisInfoPoller.GLOBAL);
+  }
+
+  public static RedisInfoSource collector(String host, Integer port, String password) {
+    return collector(host, port, password, false, false);
   }
 
   public static RedisInfoSource collector(final String uri) {
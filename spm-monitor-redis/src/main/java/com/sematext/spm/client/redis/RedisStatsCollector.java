@@ -54,7 +54,12 @@ public class RedisStatsCollector extends SingleStatsCollector {
     KEYSPACE_MISSES(com.sematext.spm.client.redis.RedisInfoMetric.KEYSPACE_MISSES),
     EVICTED_KEYS(com.sematext.spm.client.redis.RedisInfoMetric.EVICTED_KEYS),
     EXPIRED_KEYS(com.sematext.spm.client.redis.RedisInfoMetric.EXPIRED_KEYS),
-    TOTAL_COMMANDS_PROCESSED(com.sematext.spm.client.redis.RedisInfoMetric.TOTAL_COMMANDS_PROCESSED);
+    TOTAL_COMMANDS_PROCESSED(com.sematext.spm.client.redis.RedisInfoMetric.TOTAL_COMMANDS_PROCESSED),
+    // optional, from MEMORY STATS and LATENCY LATEST
+    MEMORY_DATASET(com.sematext.spm.client.redis.RedisInfoMetric.MEMORY_DATASET),
+    MEMORY_OVERHEAD(com.sematext.spm.client.redis.RedisInfoMetric.MEMORY_OVERHEAD),
+    MEMORY_CLIENTS(com.sematext.spm.client.redis.RedisInfoMetric.MEMORY_CLIENTS),
+    LATENCY_SPIKE_MAX(com.sematext.spm.client.redis.RedisInfoMetric.LATENCY_SPIKE_MAX);
 
     private com.sematext.spm.client.redis.RedisInfoMetric redisMetric;
 
@@ -100,6 +105,14 @@ public class RedisStatsCollector extends SingleStatsCollector {
     statValues.getMetrics().put("keyspace.evicted", extractors.get(8).extract(info));
     statValues.getMetrics().put("keyspace.expired", extractors.get(9).extract(info));
     statValues.getMetrics().put("commands.processed", extractors.get(10).extract(info));
+    if (infoSource.isMemoryStatsEnabled() && info.getMemoryStats() != null) {
+      statValues.getMetrics().put("memory.dataset", extractors.get(11).extract(info));
+      statValues.getMetrics().put("memory.overhead", extractors.get(12).extract(info));
+      statValues.getMetrics().put("memory.clients", extractors.get(13).extract(info));
+    }
+    if (infoSource.isLatencyStatsEnabled()) {
+      statValues.getMetrics().put("latency.spike.max", extractors.get(14).extract(info));
+    }
 
     statValues.setTags(new UnifiedMap<String, String>());
 
@@ -60,6 +60,10 @@ public class RedisStatsCollectorsFactory extends StatsCollectorsFactory<StatsCol
         MonitorUtil.getPropertyFromAnyNameVariant(monitorProperties, "REDIS_PASSWORD", ""));
     String portParam = MonitorUtil.stripQuotes(
         MonitorUtil.getPropertyFromAnyNameVariant(monitorProperties, "REDIS_PORT", "6379").trim()).trim();
+    boolean latencyStats = Boolean.parseBoolean(MonitorUtil.stripQuotes(
+        MonitorUtil.getPropertyFromAnyNameVariant(monitorProperties, "REDIS_LATENCY_STATS", "false").trim()).trim());
+    boolean memoryStats = Boolean.parseBoolean(MonitorUtil.stripQuotes(
+        MonitorUtil.getPropertyFromAnyNameVariant(monitorProperties, "REDIS_MEMORY_STATS", "false").trim()).trim());
 
     if (portParam != null && !portParam.isEmpty()) {
       try {
@@ -80,7 +84,8 @@ public class RedisStatsCollectorsFactory extends StatsCollectorsFactory<StatsCol
     if (collectorIds.isEmpty()) {
       return existingCollectors;
     } else {
-      final RedisInfoSource infoSource = RedisInfoSource.collector(hostParam, redisPort, passwordParam);
+      final RedisInfoSource infoSource = RedisInfoSource
+          .collector(hostParam, redisPort, passwordParam, latencyStats, memoryStats);
       return Arrays
           .asList(new RedisStatsCollector(infoSource, id, monitorConfig.getAppToken(), monitorConfig.getJvmName(),
                                           monitorConfig.getSubType()),
@@ -0,0 +1,115 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.redis;
+
+import java.nio.charset.Charset;
+
+/**
+ * Numeric values of fields registered in {@link RedisFieldTable}, parsed straight from reply bytes. Fields registered
+ * after the values were created are absent.
+ */
+final class RedisValues {
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  private static final byte ABSENT = 0;
+  private static final byte LONG = 1;
+  private static final byte DOUBLE = 2;
+
+  private final byte[] kinds;
+  private final long[] longs;
+  private final double[] doubles;
+
+  RedisValues(int size) {
+    kinds = new byte[size];
+    longs = new long[size];
+    doubles = new double[size];
+  }
+
+  boolean has(int slot) {
+    return slot >= 0 && slot < kinds.length && kinds[slot] != ABSENT;
+  }
+
+  boolean isLong(int slot) {
+    return has(slot) && kinds[slot] == LONG;
+  }
+
+  long getLong(int slot) {
+    return kinds[slot] == LONG ? longs[slot] : (long) doubles[slot];
+  }
+
+  double getDouble(int slot) {
+    return kinds[slot] == LONG ? longs[slot] : doubles[slot];
+  }
+
+  void setLong(int slot, long value) {
+    if (slot >= 0 && slot < kinds.length) {
+      kinds[slot] = LONG;
+      longs[slot] = value;
+    }
+  }
+
+  /**
+   * Parses value text, surrounding spaces are ignored. Value which isn't a number leaves the field absent.
+   */
+  void set(int slot, byte[] bytes, int from, int to) {
+    if (slot < 0 || slot >= kinds.length) {
+      return;
+    }
+    while (from < to && bytes[from] == ' ') {
+      from++;
+    }
+    while (to > from && (bytes[to - 1] == ' ' || bytes[to - 1] == '\r')) {
+      to--;
+    }
+    final boolean negative = from < to && bytes[from] == '-';
+    int i = negative ? from + 1 : from;
+    long value = 0;
+    boolean integral = i < to && to - i <= 18;
+    for (; integral && i < to; i++) {
+      final int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        integral = false;
+      } else {
+        value = value * 10 + digit;
+      }
+    }
+    if (integral) {
+      setLong(slot, negative ? -value : value);
+      return;
+    }
+    kinds[slot] = ABSENT;
+    if (from < to) {
+      try {
+        // decimals (ratios, cpu times) are rare, so they are parsed the simple way
+        doubles[slot] = Double.parseDouble(new String(bytes, from, to - from, ASCII));
+        kinds[slot] = DOUBLE;
+      } catch (NumberFormatException e) {
+        // not a number, field stays absent
+      }
+    }
+  }
+
+  String format(int slot) {
+    if (!has(slot)) {
+      return null;
+    }
+    return kinds[slot] == LONG ? String.valueOf(longs[slot]) : String.valueOf(doubles[slot]);
+  }
+}
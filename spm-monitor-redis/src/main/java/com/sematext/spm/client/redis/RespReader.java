@@ -0,0 +1,224 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.redis;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads RESP replies straight from connection buffer. Replies are first checked to be complete with
+ * {@link #skip(byte[], int, int)}, readers then assume the whole reply is in the buffer.
+ */
+final class RespReader {
+  static final int INCOMPLETE = -1;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int MAX_DEPTH = 8;
+
+  private RespReader() {
+  }
+
+  /**
+   * @return position after reply starting at pos or {@link #INCOMPLETE} if reply doesn't end before limit
+   */
+  static int skip(byte[] bytes, int pos, int limit) throws IOException {
+    return skip(bytes, pos, limit, 0);
+  }
+
+  private static int skip(byte[] bytes, int pos, int limit, int depth) throws IOException {
+    if (pos >= limit) {
+      return INCOMPLETE;
+    }
+    final int lineEnd = lineEnd(bytes, pos + 1, limit);
+    if (lineEnd == INCOMPLETE) {
+      return INCOMPLETE;
+    }
+    switch (bytes[pos]) {
+      case '+':
+      case '-':
+      case ':':
+      case ',':
+        return lineEnd + 2;
+      case '$':
+        final long length = parseLong(bytes, pos + 1, lineEnd);
+        if (length < 0) {
+          return lineEnd + 2;
+        }
+        final long end = lineEnd + 2 + length + 2;
+        return end <= limit ? (int) end : INCOMPLETE;
+      case '*':
+        if (depth >= MAX_DEPTH) {
+          throw new IOException("Redis reply nested too deep");
+        }
+        final long count = parseLong(bytes, pos + 1, lineEnd);
+        int next = lineEnd + 2;
+        for (long i = 0; i < count; i++) {
+          next = skip(bytes, next, limit, depth + 1);
+          if (next == INCOMPLETE) {
+            return INCOMPLETE;
+          }
+        }
+        return next;
+      default:
+        throw new IOException("Unexpected Redis reply type '" + (char) bytes[pos] + "'");
+    }
+  }
+
+  static boolean isError(byte[] bytes, int pos) {
+    return bytes[pos] == '-';
+  }
+
+  /**
+   * @return message of complete error reply starting at pos
+   */
+  static String errorMessage(byte[] bytes, int pos, int end) {
+    return new String(bytes, pos + 1, end - pos - 3, UTF_8);
+  }
+
+  /**
+   * Reads complete INFO bulk reply.
+   */
+  static void readInfo(byte[] bytes, int pos, int end, RedisInfo info) throws IOException {
+    if (bytes[pos] != '$') {
+      throw new IOException("Unexpected Redis reply type '" + (char) bytes[pos] + "' for INFO");
+    }
+    final int lineEnd = lineEnd(bytes, pos + 1, end);
+    if (parseLong(bytes, pos + 1, lineEnd) > 0) {
+      info.readInfo(bytes, lineEnd + 2, end - 2);
+    }
+  }
+
+  /**
+   * Reads complete LATENCY LATEST reply, array of [event name, timestamp, latest ms, all time max ms] arrays,
+   * all time max is ignored. Elements of unexpected shape are skipped.
+   */
+  static void readLatencyLatest(byte[] bytes, int pos, int end, RedisInfo info) throws IOException {
+    if (bytes[pos] != '*') {
+      return;
+    }
+    final int lineEnd = lineEnd(bytes, pos + 1, end);
+    final long events = parseLong(bytes, pos + 1, lineEnd);
+    int next = lineEnd + 2;
+    for (long event = 0; event < events; event++) {
+      final int eventEnd = skip(bytes, next, end);
+      final int eventLineEnd = lineEnd(bytes, next + 1, eventEnd);
+      if (bytes[next] == '*' && parseLong(bytes, next + 1, eventLineEnd) == 4) {
+        // event name is skipped, integers follow
+        int field = skip(bytes, eventLineEnd + 2, eventEnd);
+        long time = 0;
+        long latest = 0;
+        boolean integers = true;
+        for (int i = 0; i < 3 && integers; i++) {
+          integers = bytes[field] == ':';
+          if (integers && i < 2) {
+            final long value = parseLong(bytes, field + 1, lineEnd(bytes, field + 1, eventEnd));
+            if (i == 0) {
+              time = value;
+            } else {
+              latest = value;
+            }
+          }
+          field = skip(bytes, field, eventEnd);
+        }
+        if (integers) {
+          info.addLatencyEvent(time, latest);
+        }
+      }
+      next = eventEnd;
+    }
+  }
+
+  /**
+   * Reads complete MEMORY STATS reply, flat array of field names and values. Values are integers, doubles sent as
+   * bulk strings or nested arrays (per database overhead), which are skipped.
+   */
+  static RedisValues readMemoryStats(byte[] bytes, int pos, int end) throws IOException {
+    final RedisValues values = new RedisValues(RedisInfo.MEMORY_STATS_FIELDS.size());
+    if (bytes[pos] != '*') {
+      return values;
+    }
+    final int lineEnd = lineEnd(bytes, pos + 1, end);
+    final long count = parseLong(bytes, pos + 1, lineEnd);
+    int next = lineEnd + 2;
+    for (long i = 0; i + 1 < count; i += 2) {
+      final int valuePos = skip(bytes, next, end);
+      final int slot = findName(bytes, next, valuePos);
+      final int valueEnd = skip(bytes, valuePos, end);
+      if (slot >= 0) {
+        final int valueLineEnd = lineEnd(bytes, valuePos + 1, valueEnd);
+        switch (bytes[valuePos]) {
+          case ':':
+          case ',':
+          case '+':
+            values.set(slot, bytes, valuePos + 1, valueLineEnd);
+            break;
+          case '$':
+            if (valueEnd - valueLineEnd > 2) {
+              values.set(slot, bytes, valueLineEnd + 2, valueEnd - 2);
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      next = valueEnd;
+    }
+    return values;
+  }
+
+  private static int findName(byte[] bytes, int pos, int end) {
+    final int lineEnd = lineEnd(bytes, pos + 1, end);
+    if (bytes[pos] == '+') {
+      return RedisInfo.MEMORY_STATS_FIELDS.find(bytes, pos + 1, lineEnd);
+    } else if (bytes[pos] == '$' && end - lineEnd > 2) {
+      return RedisInfo.MEMORY_STATS_FIELDS.find(bytes, lineEnd + 2, end - 2);
+    }
+    return -1;
+  }
+
+  /**
+   * @return position of CR of CRLF which ends the line or {@link #INCOMPLETE}
+   */
+  private static int lineEnd(byte[] bytes, int pos, int limit) {
+    for (int i = pos; i + 1 < limit; i++) {
+      if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+        return i;
+      }
+    }
+    return INCOMPLETE;
+  }
+
+  private static long parseLong(byte[] bytes, int from, int to) throws IOException {
+    final boolean negative = from < to && bytes[from] == '-';
+    int i = negative ? from + 1 : from;
+    if (i == to || to - i > 18) {
+      throw new IOException("Invalid number in Redis reply");
+    }
+    long value = 0;
+    for (; i < to; i++) {
+      final int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new IOException("Invalid number in Redis reply");
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+}
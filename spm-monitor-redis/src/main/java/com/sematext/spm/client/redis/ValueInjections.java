@@ -24,36 +24,37 @@ final class ValueInjections {
   }
 
   static interface ValueInjection<T> {
-    T inject(String value);
+    /**
+     * @param values values parsed from Redis reply, null if reply wasn't received
+     */
+    T inject(RedisValues values, int field);
   }
 
   static final ValueInjection<Long> LONG_INJECTION = new ValueInjection<Long>() {
     @Override
-    public Long inject(String value) {
-      try {
-        Long parsed = Long.parseLong(value);
-        if (parsed < 0) {
-          return 0L;
-        }
-        return parsed;
-      } catch (Exception e) {
+    public Long inject(RedisValues values, int field) {
+      if (values == null || !values.isLong(field)) {
         return 0L;
       }
+      long parsed = values.getLong(field);
+      if (parsed < 0) {
+        return 0L;
+      }
+      return parsed;
     }
   };
 
   static final ValueInjection<Double> DOUBLE_INJECTION = new ValueInjection<Double>() {
     @Override
-    public Double inject(String value) {
-      try {
-        Double parsed = Double.parseDouble(value);
-        if (parsed < 0) {
-          return 0D;
-        }
-        return parsed;
-      } catch (Exception e) {
+    public Double inject(RedisValues values, int field) {
+      if (values == null || !values.has(field)) {
         return 0d;
       }
+      double parsed = values.getDouble(field);
+      if (parsed < 0) {
+        return 0D;
+      }
+      return parsed;
     }
   };
 }
@@ -0,0 +1,387 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RedisInfoPollerTest {
+  private static final String INFO = "# Server\r\n" +
+      "redis_version:7.0.11\r\n" +
+      "\r\n" +
+      "# Clients\r\n" +
+      "connected_clients:12\r\n" +
+      "\r\n" +
+      "# Memory\r\n" +
+      "used_memory:1048576\r\n" +
+      "mem_fragmentation_ratio:1.25\r\n" +
+      "\r\n" +
+      "# Stats\r\n" +
+      "total_commands_processed:3612\r\n" +
+      "\r\n" +
+      "# Keyspace\r\n" +
+      "db0:keys=6998,expires=2,avg_ttl=0\r\n" +
+      "db3:keys=1,expires=0,avg_ttl=0\r\n";
+
+  private static final String LATENCY_LATEST = "*2\r\n" +
+      "*4\r\n" + bulk("command") + ":1405067976\r\n:251\r\n:1001\r\n" +
+      "*4\r\n" + bulk("fast-command") + ":1405067822\r\n:10\r\n:10\r\n";
+
+  private static final String MEMORY_STATS = "*8\r\n" +
+      bulk("peak.allocated") + ":2000000\r\n" +
+      bulk("db.0") + "*4\r\n" + bulk("overhead.hashtable.main") + ":72\r\n" +
+      bulk("overhead.hashtable.expires") + ":0\r\n" +
+      bulk("dataset.bytes") + ":524288\r\n" +
+      bulk("fragmentation") + bulk("1.25");
+
+  private final List<FakeRedis> servers = new ArrayList<FakeRedis>();
+  private RedisInfoPoller poller;
+
+  @Before
+  public void setUp() {
+    poller = new RedisInfoPoller(1000);
+    RedisInfoMetric.USED_MEMORY.createMetricExtractor();
+    RedisInfoMetric.CONNECTED_CLIENTS.createMetricExtractor();
+    RedisInfoMetric.TOTAL_COMMANDS_PROCESSED.createMetricExtractor();
+    RedisInfoMetricExtractors.doubleExtractor("mem_fragmentation_ratio");
+  }
+
+  @After
+  public void tearDown() {
+    for (FakeRedis server : servers) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testPollInfo() throws Exception {
+    FakeRedis redis = start();
+    RedisInfo info = source(redis, null, false, false).fetchInfo();
+
+    assertFalse(info.isEmpty());
+    assertEquals("1048576", info.get("used_memory"));
+    assertEquals("12", info.get("connected_clients"));
+    assertEquals("3612", info.get("total_commands_processed"));
+    assertEquals("1.25", info.get("mem_fragmentation_ratio"));
+    assertNull(info.get("redis_version"));
+    assertEquals(2, info.getDatabases().size());
+    assertEquals("6998", info.get("db0", "keys"));
+    assertEquals("2", info.get("db0", "expires"));
+    assertEquals("1", info.get("db3", "keys"));
+    assertNull(info.getMemoryStats());
+    assertEquals(0, info.getLatencyEventsCount());
+    assertEquals(Collections.singletonList("INFO"), redis.commands);
+  }
+
+  @Test
+  public void testPipelinedCommandsWithAuth() throws Exception {
+    FakeRedis redis = start();
+    RedisInfoMetricExtractor<Object> dataset = RedisInfoMetric.MEMORY_DATASET.createMetricExtractor();
+    RedisInfoMetricExtractor<Object> latency = RedisInfoMetric.LATENCY_SPIKE_MAX.createMetricExtractor();
+    RedisInfoSource source = source(redis, "secret", true, true);
+
+    RedisInfo info = source.fetchInfo();
+    assertEquals(524288L, dataset.extract(info));
+    assertEquals(2, info.getLatencyEventsCount());
+    assertEquals(1405067976L, info.getLatencyEventTime(0));
+    assertEquals(251L, info.getLatencyEventLatest(0));
+    // spikes from before the first collection are not reported
+    assertEquals(0L, latency.extract(info));
+
+    redis.replies.put("LATENCY LATEST", "*1\r\n*4\r\n" + bulk("command") + ":1405067999\r\n:42\r\n:1001\r\n");
+    source.update(RedisInfo.empty(), 0);
+    info = source.fetchInfo();
+    assertEquals(42L, latency.extract(info));
+
+    // pipelined in one write, AUTH is sent once per connection
+    assertEquals(1, redis.connections);
+    assertEquals(2, redis.writes.size());
+    assertEquals(4, redis.writes.get(0).length);
+    assertEquals(3, redis.writes.get(1).length);
+    assertEquals(
+        Arrays.asList("AUTH secret", "INFO", "LATENCY LATEST", "MEMORY STATS", "INFO", "LATENCY LATEST",
+                                "MEMORY STATS"), redis.commands);
+  }
+
+  @Test
+  public void testUnsupportedOptionalCommand() throws Exception {
+    FakeRedis redis = start();
+    redis.replies.remove("MEMORY STATS");
+    RedisInfoSource source = source(redis, null, false, true);
+
+    RedisInfo info = source.fetchInfo();
+    assertEquals("1048576", info.get("used_memory"));
+    assertNull(info.getMemoryStats());
+
+    source.update(RedisInfo.empty(), 0);
+    source.fetchInfo();
+    assertEquals(Arrays.asList("INFO", "MEMORY STATS", "INFO"), redis.commands);
+  }
+
+  @Test
+  public void testAuthFailure() throws Exception {
+    FakeRedis redis = start();
+    redis.replies.put("AUTH wrong", "-WRONGPASS invalid username-password pair\r\n");
+    try {
+      source(redis, "wrong", false, false).fetchInfo();
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("WRONGPASS"));
+    }
+  }
+
+  @Test
+  public void testExpiredInstancesArePolledTogether() throws Exception {
+    FakeRedis first = start();
+    FakeRedis second = start();
+    second.replies.put("INFO", bulk("# Clients\r\nconnected_clients:7\r\n"));
+    RedisInfoSource firstSource = source(first, null, false, false);
+    RedisInfoSource secondSource = source(second, null, false, false);
+
+    firstSource.fetchInfo();
+    secondSource.fetchInfo();
+    assertEquals(1, first.commands.size());
+    assertEquals(1, second.commands.size());
+
+    firstSource.update(RedisInfo.empty(), 0);
+    secondSource.update(RedisInfo.empty(), 0);
+    assertEquals("12", firstSource.fetchInfo().get("connected_clients"));
+    assertEquals(2, second.commands.size());
+    assertEquals("7", secondSource.fetchInfo().get("connected_clients"));
+    assertEquals(2, second.commands.size());
+  }
+
+  @Test
+  public void testRepliesSplitIntoSmallChunks() throws Exception {
+    FakeRedis redis = start();
+    redis.chunkSize = 7;
+    RedisInfo info = source(redis, null, true, true).fetchInfo();
+    assertEquals("1048576", info.get("used_memory"));
+    assertEquals("6998", info.get("db0", "keys"));
+    assertEquals(2, info.getLatencyEventsCount());
+    assertTrue(info.getMemoryStats().has(RedisInfo.MEMORY_STATS_FIELDS.find("dataset.bytes")));
+  }
+
+  @Test
+  public void testReconnectsClosedConnection() throws Exception {
+    FakeRedis redis = start();
+    RedisInfoSource source = source(redis, "secret", false, false);
+    source.fetchInfo();
+    redis.dropConnections();
+
+    source.update(RedisInfo.empty(), 0);
+    assertEquals("1048576", source.fetchInfo().get("used_memory"));
+    assertEquals(2, redis.connections);
+    assertEquals(Arrays.asList("AUTH secret", "INFO", "AUTH secret", "INFO"), redis.commands);
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    FakeRedis redis = start();
+    redis.silent = true;
+    long start = System.currentTimeMillis();
+    try {
+      source(redis, null, false, false).fetchInfo();
+      fail();
+    } catch (SocketTimeoutException e) {
+      assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+  }
+
+  @Test
+  public void testConnectionRefused() throws Exception {
+    FakeRedis redis = start();
+    redis.close();
+    try {
+      source(redis, null, false, false).fetchInfo();
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private FakeRedis start() throws IOException {
+    FakeRedis server = new FakeRedis();
+    servers.add(server);
+    server.replies.put("INFO", bulk(INFO));
+    server.replies.put("LATENCY LATEST", LATENCY_LATEST);
+    server.replies.put("MEMORY STATS", MEMORY_STATS);
+    server.replies.put("AUTH secret", "+OK\r\n");
+    Thread thread = new Thread(server, "fake-redis");
+    thread.setDaemon(true);
+    thread.start();
+    return server;
+  }
+
+  private static String bulk(String value) {
+    return "$" + value.length() + "\r\n" + value + "\r\n";
+  }
+
+  private RedisInfoSource source(FakeRedis redis, String password, boolean latencyStats, boolean memoryStats) {
+    return new RedisInfoSource("127.0.0.1", redis.server.getLocalPort(), password, latencyStats, memoryStats, poller);
+  }
+
+  /**
+   * Replies to RESP commands with configured raw replies, unknown commands get an error.
+   */
+  private static final class FakeRedis implements Runnable {
+    private final ServerSocket server;
+    private final Map<String, String> replies = new ConcurrentHashMap<String, String>();
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+    // commands read with a single read call from the socket
+    private final List<String[]> writes = Collections.synchronizedList(new ArrayList<String[]>());
+    private final List<Socket> clients = Collections.synchronizedList(new ArrayList<Socket>());
+    private volatile int connections;
+    private volatile int chunkSize;
+    private volatile boolean silent;
+
+    private FakeRedis() throws IOException {
+      server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Socket client = server.accept();
+          connections++;
+          clients.add(client);
+          Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+              serve(client);
+            }
+          }, "fake-redis-client");
+          thread.setDaemon(true);
+          thread.start();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private void serve(Socket client) {
+      try {
+        InputStream in = client.getInputStream();
+        OutputStream out = client.getOutputStream();
+        List<String> pipelined = new ArrayList<String>();
+        while (true) {
+          String command = readCommand(in);
+          if (command == null) {
+            return;
+          }
+          commands.add(command);
+          pipelined.add(command);
+          if (in.available() == 0) {
+            writes.add(pipelined.toArray(new String[pipelined.size()]));
+            pipelined.clear();
+          }
+          if (silent) {
+            continue;
+          }
+          String reply = replies.get(command);
+          byte[] bytes = (reply != null ? reply : "-ERR unknown command '" + command + "'\r\n").getBytes("UTF-8");
+          int chunk = chunkSize > 0 ? chunkSize : bytes.length;
+          for (int i = 0; i < bytes.length; i += chunk) {
+            out.write(bytes, i, Math.min(chunk, bytes.length - i));
+            out.flush();
+          }
+        }
+      } catch (IOException e) {
+        // client gone
+      }
+    }
+
+    private static String readCommand(InputStream in) throws IOException {
+      String header = readLine(in);
+      if (header == null) {
+        return null;
+      }
+      int args = Integer.parseInt(header.substring(1));
+      StringBuilder command = new StringBuilder();
+      for (int i = 0; i < args; i++) {
+        int length = Integer.parseInt(readLine(in).substring(1));
+        byte[] arg = new byte[length + 2];
+        int read = 0;
+        while (read < arg.length) {
+          read += in.read(arg, read, arg.length - read);
+        }
+        if (i > 0) {
+          command.append(' ');
+        }
+        command.append(new String(arg, 0, length, "UTF-8"));
+      }
+      return command.toString();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+      StringBuilder line = new StringBuilder();
+      int c;
+      while ((c = in.read()) != '\n') {
+        if (c < 0) {
+          return null;
+        }
+        if (c != '\r') {
+          line.append((char) c);
+        }
+      }
+      return line.toString();
+    }
+
+    private void dropConnections() throws IOException {
+      synchronized (clients) {
+        for (Socket client : clients) {
+          client.close();
+        }
+        clients.clear();
+      }
+    }
+
+    private void close() {
+      try {
+        server.close();
+        dropConnections();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+}
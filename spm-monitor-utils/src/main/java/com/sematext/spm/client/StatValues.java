@@ -95,6 +95,10 @@ public class StatValues {
    * @return
    */
   public boolean isZeroRow() {
+    if (metrics instanceof MetricsRow) {
+      return ((MetricsRow) metrics).isZeroRow();
+    }
+
     boolean foundNumber = false;
     boolean skippedFirstNumber = false;
 
@@ -173,7 +177,9 @@ public class StatValues {
    * @return
    */
   public boolean isNullRow() {
-    if (metrics != null) {
+    if (metrics instanceof MetricsRow) {
+      return ((MetricsRow) metrics).isNullRow();
+    } else if (metrics != null) {
       for (String k : metrics.keySet()) {
         Object v = metrics.get(k);
         if (v != null) {
@@ -215,6 +221,18 @@ public class StatValues {
     }
   }
 
+  /**
+   * Writes this row as Influx line directly into given encoder, without building intermediate Strings.
+   *
+   * @return true if anything was written
+   */
+  public boolean encodeAsInflux(InfluxLineEncoder encoder) {
+    if (metrics == null) {
+      throw new IllegalStateException("Unsupported situation encountered - old metrics format can't be encoded");
+    }
+    return encoder.encode(metricNamespace, appToken, metrics, tags, timestamp);
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -39,6 +39,8 @@ public abstract class StatsCollector<T> {
 
   private String collectorId = null;
 
+  private volatile long failuresCount;
+
   protected StatsCollector(StatValuesSerializer<T> serializer) {
     this.serializer = serializer;
   }
@@ -60,16 +62,54 @@ public abstract class StatsCollector<T> {
       });
 
     } catch (StatsCollectionFailedException e) {
-      if (e instanceof MonitoredServiceUnavailableException) {
-        // no need to print the full trace in this case
-        LOG.error("Data collection failed, collector name: " + getName() + ", message: " + e.getMessage());
-      } else {
-        LOG.error("Data collection failed, collector name: " + getName(), e);
-      }
+      logCollectionFailure(e);
+      return emptyIterator();
+    }
+
+  }
 
+  /**
+   * Variant of collect() for collectors using Serializer.INFLUX. Each row is encoded straight into the passed
+   * encoder and returned as UTF-8 bytes ready to be used as event body, without building String lines.
+   *
+   * @param outerMetrics
+   * @param encoder encoder owned by the calling thread, it is reset before each row
+   * @return
+   */
+  public Iterator<byte[]> collectEncoded(Map<String, Object> outerMetrics, final InfluxLineEncoder encoder) {
+    try {
+      return CollectionUtils.transform(getStatsSlice(outerMetrics), new Function<StatValues, byte[]>() {
+
+        @Override
+        public byte[] apply(StatValues statValues) {
+          if (statValues.isNullRow()) {
+            return null;
+          }
+          try {
+            encoder.reset();
+            return statValues.encodeAsInflux(encoder) ? encoder.toByteArray() : null;
+          } catch (Throwable thr) {
+            failuresCount++;
+            LOG.error("Error while serializing data for " + StatsCollector.this, thr);
+            return null;
+          }
+        }
+      });
+
+    } catch (StatsCollectionFailedException e) {
+      logCollectionFailure(e);
       return emptyIterator();
     }
+  }
 
+  private void logCollectionFailure(StatsCollectionFailedException e) {
+    failuresCount++;
+    if (e instanceof MonitoredServiceUnavailableException) {
+      // no need to print the full trace in this case
+      LOG.error("Data collection failed, collector name: " + getName() + ", message: " + e.getMessage());
+    } else {
+      LOG.error("Data collection failed, collector name: " + getName(), e);
+    }
   }
 
   public Iterator<StatValues> collectRawStatValues(Map<String, Object> outerMetrics)
@@ -84,6 +124,7 @@ public abstract class StatsCollector<T> {
     try {
       return statValues.getAsSerialized(serializer);
     } catch (Throwable thr) {
+      failuresCount++;
       LOG.error("Error while serializing data for " + this, thr);
       return null;
     }
@@ -191,6 +232,22 @@ public abstract class StatsCollector<T> {
     return false;
   }
 
+  /**
+   * Subclasses which report on the whole collection run (for example, based on
+   * {@link CollectionStats#CURRENT_RUN_GATHERED_LINES}) should return "true", so they are not run concurrently with
+   * other collectors but after all of them finished.
+   */
+  public boolean runsAfterOtherCollectors() {
+    return false;
+  }
+
+  /**
+   * @return number of failed collections and rows which couldn't be serialized since collector was created
+   */
+  public long getFailuresCount() {
+    return failuresCount;
+  }
+
   public StatValuesSerializer<T> getSerializer() {
     return serializer;
   }
@@ -25,4 +25,7 @@ public final class SourceConfigProperties {
 
   public static final String SPM_MONITOR_TRACING_ENABLED = "SPM_MONITOR_TRACING_ENABLED";
   public static final String SPM_MONITOR_PROFILER_DISABLED = "SPM_MONITOR_PROFILER_DISABLED";
+  public static final String SPM_MONITOR_CONTINUOUS_PROFILER_ENABLED = "SPM_MONITOR_CONTINUOUS_PROFILER_ENABLED";
+  // max share of time spent sampling, in percent
+  public static final String SPM_MONITOR_CONTINUOUS_PROFILER_OVERHEAD = "SPM_MONITOR_CONTINUOUS_PROFILER_OVERHEAD";
 }
@@ -34,6 +34,7 @@ import com.sematext.spm.client.LogFactory;
 
 public final class BinarySequentialLog {
   private static final Log LOG = LogFactory.getLog(BinarySequentialLog.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
 
   private final String baseDir;
   private final String prefix;
@@ -101,7 +102,7 @@ public final class BinarySequentialLog {
     if (daos == null) {
       BufferedOutputStream bos = null;
       try {
-        bos = new BufferedOutputStream(new FileOutputStream(seqFile()), 1024);
+        bos = new BufferedOutputStream(new FileOutputStream(seqFile()), BUFFER_SIZE);
         files.addLast(seqFile());
       } catch (IOException e) {
         stderr("Can't create file " + seqFile() + ".");
@@ -120,13 +121,7 @@ public final class BinarySequentialLog {
       size += len;
     } catch (IOException e) {
       stderr("Can't write to log " + seqFile() + ".");
-      try {
-        daos.close();
-      } catch (IOException e1) {
-        stderr("Can't close file " + seqFile() + ".");
-      }
-      daos = null;
-      seqNo++;
+      closeOnError();
     }
   }
 
@@ -134,6 +129,34 @@ public final class BinarySequentialLog {
     write(b, 0, b.length);
   }
 
+  /**
+   * Writes records under a single lock and flushes them with one write to the file (unless the file is rolled
+   * within the batch).
+   */
+  public synchronized void write(List<byte[]> records) {
+    for (byte[] record : records) {
+      write(record, 0, record.length);
+    }
+    if (daos != null) {
+      try {
+        daos.flush();
+      } catch (IOException e) {
+        stderr("Can't flush file " + seqFile() + ".");
+        closeOnError();
+      }
+    }
+  }
+
+  private void closeOnError() {
+    try {
+      daos.close();
+    } catch (IOException e1) {
+      stderr("Can't close file " + seqFile() + ".");
+    }
+    daos = null;
+    seqNo++;
+  }
+
   // protected for tests
   synchronized void flush() {
     if (daos != null) {
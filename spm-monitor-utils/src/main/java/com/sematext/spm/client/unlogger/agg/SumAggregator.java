@@ -133,7 +133,7 @@ public class SumAggregator extends PointcutBasedAggregator {
 
   }
 
-  private final class SumAggregate implements Aggregate {
+  private final class SumAggregate implements MergeableAggregate {
 
     private final StatsKey groupingKey;
     private long count = 0;
@@ -156,6 +156,15 @@ public class SumAggregator extends PointcutBasedAggregator {
       }
     }
 
+    @Override
+    public void merge(Aggregate other) {
+      SumAggregate partial = (SumAggregate) other;
+      count += partial.count;
+      for (Key aggregate : aggregatesKeys) {
+        aggregates[aggregate.ordinal()] += partial.aggregates[aggregate.ordinal()];
+      }
+    }
+
     @Override
     public LogLine toOut() {
       LogLine res = logLineFactory.make(groupingKey.partitioner);
@@ -19,7 +19,12 @@
  */
 package com.sematext.spm.client.util;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
 public final class Threads {
+  private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = allocationBean();
+
   private Threads() {
   }
 
@@ -28,4 +33,33 @@ public final class Threads {
     t.setDaemon(true);
     return t;
   }
+
+  /**
+   * @return bytes allocated so far by the current thread or -1 if the JVM can't tell
+   */
+  public static long currentThreadAllocatedBytes() {
+    if (ALLOCATION_BEAN == null) {
+      return -1;
+    }
+    try {
+      return ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    } catch (Throwable thr) {
+      return -1;
+    }
+  }
+
+  private static com.sun.management.ThreadMXBean allocationBean() {
+    try {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+          return sunBean;
+        }
+      }
+    } catch (Throwable thr) {
+      // not a HotSpot-like JVM
+    }
+    return null;
+  }
 }
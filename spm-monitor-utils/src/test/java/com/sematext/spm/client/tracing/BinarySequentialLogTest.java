@@ -25,8 +25,11 @@ import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
+import java.util.Arrays;
 
 import com.sematext.spm.client.util.test.TmpFS;
 
@@ -110,4 +113,29 @@ public class BinarySequentialLogTest {
       fs.cleanup();
     }
   }
+
+  @Test
+  public void testShouldWriteBatchOfLengthPrefixedRecords() throws Exception {
+    final TmpFS fs = TmpFS.fs();
+    try {
+      File dir = fs.createDirectory();
+      BinarySequentialLog log = BinarySequentialLog.create(dir.getAbsolutePath(), "tracing", ".bin", 1024, 1);
+      log.write(Arrays.asList(new byte[] { 1, 2, 3 }, new byte[] { 4 }));
+
+      DataInputStream in = new DataInputStream(new FileInputStream(new File(dir, "tracing-0.bin")));
+      try {
+        assertEquals(3, in.readInt());
+        assertEquals(1, in.readByte());
+        assertEquals(2, in.readByte());
+        assertEquals(3, in.readByte());
+        assertEquals(1, in.readInt());
+        assertEquals(4, in.readByte());
+        assertEquals(-1, in.read());
+      } finally {
+        in.close();
+      }
+    } finally {
+      fs.cleanup();
+    }
+  }
 }
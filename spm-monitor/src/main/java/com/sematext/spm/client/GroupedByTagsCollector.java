@@ -22,12 +22,13 @@ package com.sematext.spm.client;
 import org.eclipse.collections.impl.list.mutable.FastList;
 import org.eclipse.collections.impl.map.mutable.UnifiedMap;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import com.sematext.spm.client.aggregation.MetricAggregator;
+import com.sematext.spm.client.aggregation.AgentAggregationFunction;
 import com.sematext.spm.client.attributes.MetricType;
 import com.sematext.spm.client.metrics.CompressingMetricsProcessor;
 import com.sematext.spm.client.metrics.DecideFlushMetricsProcessor;
@@ -36,8 +37,14 @@ import com.sematext.spm.client.metrics.MetricsProcessorContext;
 import com.sematext.spm.client.metrics.PercentilesMetricsProcessor;
 import com.sematext.spm.client.observation.PercentilesDefinition;
 
+/**
+ * Merges metrics of collectors with the same tags into a single row. Group members and slots of their metrics are
+ * resolved when collectors are accepted during collectors (re)configuration, so collecting only merges values into
+ * {@link GroupedMetricsAccumulator}.
+ */
 public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
   private static final Log LOG = LogFactory.getLog(GroupedByTagsCollector.class);
+  private static final int DEFAULT_EXPECTED_METRICS_COUNT = 16;
 
   private Map<String, String> tags;
   private String tagsAsString;
@@ -45,6 +52,10 @@ public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
   private String metricsNamespace;
 
   private List<StatsCollector<?>> collectors = new FastList<StatsCollector<?>>();
+  // slots of metrics in the order in which each collector (same index as in collectors) returned them last time
+  private List<CollectorSlots> collectorSlots = new FastList<CollectorSlots>();
+
+  private GroupedMetricsAccumulator accumulator = new GroupedMetricsAccumulator(DEFAULT_EXPECTED_METRICS_COUNT);
 
   private Map<String, PercentilesDefinition> pctlsDefinitions;
 
@@ -107,38 +118,27 @@ public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
     statValues.setAppToken(appToken);
     statValues.setMetricNamespace(metricsNamespace);
 
-    Map<String, Object> aggregatedMetrics = statValues.getMetrics();
-    if (aggregatedMetrics == null) {
-      aggregatedMetrics = new UnifiedMap<String, Object>(15);
-      statValues.setMetrics(aggregatedMetrics);
-    }
+    accumulator.clear();
+    Map<String, Object> mergedMetrics = accumulator.asMap();
 
-    for (StatsCollector<?> sc : collectors) {
+    for (int i = 0; i < collectors.size(); i++) {
+      StatsCollector<?> sc = collectors.get(i);
+      CollectorSlots slots = collectorSlots.get(i);
+      int position = 0;
       try {
-        Iterator<StatValues> iter = sc.collectRawStatValues(aggregatedMetrics);
+        Iterator<StatValues> iter = sc.collectRawStatValues(mergedMetrics);
         while (iter.hasNext()) {
           StatValues st = iter.next();
 
-          // TODO handle map logic more optimally? when adding more elements, first resize if we notice newly 
-          // added metrics are bigger than current size...
-
           if (st.getMetrics() != null) {
             for (Map.Entry<String, Object> metric : st.getMetrics().entrySet()) {
-              String metricKey = metric.getKey();
-              knownMetricTypes.put(metricKey, st.getMetricTypes().get(metricKey));
-              Object existingMetricValue = aggregatedMetrics.get(metricKey);
-
-              if (existingMetricValue != null) {
-                try {
-                  aggregatedMetrics.put(metricKey,
-                                        MetricAggregator.aggregate(existingMetricValue, metric.getValue(), metricKey,
-                                                                   st.getAgentAggregationFunctions().get(metricKey)));
-                } catch (Throwable thr) {
-                  // just skip, we don't want everything to break
-                  LOG.error("Error while aggregating metric " + metricKey, thr);
-                }
-              } else {
-                aggregatedMetrics.put(metricKey, metric.getValue());
+              int slot = slots.slotAt(position, metric.getKey(), st);
+              position++;
+              try {
+                accumulator.merge(slot, metric.getValue());
+              } catch (Throwable thr) {
+                // just skip, we don't want everything to break
+                LOG.error("Error while aggregating metric " + metric.getKey(), thr);
               }
             }
           }
@@ -147,8 +147,16 @@ public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
         LOG.error("Error while gathering stats from collector: " + sc, scfe);
         // don't throw an error, just skip to avoid breaking all collectors
       }
+      slots.truncate(position);
     }
 
+    Map<String, Object> aggregatedMetrics = statValues.getMetrics();
+    if (aggregatedMetrics == null) {
+      aggregatedMetrics = new UnifiedMap<String, Object>(accumulator.size());
+      statValues.setMetrics(aggregatedMetrics);
+    }
+    accumulator.writeTo(aggregatedMetrics);
+
     if (context != null) {
       context.reset();
       context.statValues = statValues;
@@ -177,7 +185,8 @@ public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
       // also must have matching appToken and collectorsGroup
       if (genCol.getAppToken().equals(appToken) && genCol.getMetricsNamespace().equals(metricsNamespace) &&
           tagsAsString.equals(genCol.getGenericExtractor().getPartlyResolvedObservationConfigTagsAsString())) {
-        collectors.add(sc);
+        add(sc, genCol.getGenericExtractor().getMetricTypes(),
+            genCol.getGenericExtractor().getAttributesToAgentAggregationFunctions());
 
         List<PercentilesDefinition> tmpPctlDefinitions = genCol.getGenericExtractor().getPercentilesDefinitions();
         if (tmpPctlDefinitions != null && tmpPctlDefinitions.size() > 0) {
@@ -197,6 +206,23 @@ public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
     return false;
   }
 
+  /**
+   * Adds collector to the group and defines slots of its metrics.
+   */
+  void add(StatsCollector<?> sc, Map<String, MetricType> metricTypes,
+           Map<String, AgentAggregationFunction> aggregationFunctions) {
+    collectors.add(sc);
+    collectorSlots.add(new CollectorSlots());
+
+    if (metricTypes != null) {
+      for (Map.Entry<String, MetricType> metric : metricTypes.entrySet()) {
+        accumulator.define(metric.getKey(),
+                           aggregationFunctions != null ? aggregationFunctions.get(metric.getKey()) : null);
+        knownMetricTypes.put(metric.getKey(), metric.getValue());
+      }
+    }
+  }
+
   @Override
   public String toString() {
     String res = "[";
@@ -213,6 +239,9 @@ public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
 
   public void reset() {
     collectors.clear();
+    collectorSlots.clear();
+    // aggregation functions could be changed by new config
+    accumulator = new GroupedMetricsAccumulator(Math.max(accumulator.size(), DEFAULT_EXPECTED_METRICS_COUNT));
 
     if (pctlsDefinitions != null) {
       pctlsDefinitions.clear();
@@ -223,4 +252,45 @@ public class GroupedByTagsCollector extends BaseSingleStatsCollector<String> {
   public int getCollectorsCount() {
     return collectors.size();
   }
+
+  /**
+   * Collectors return their metrics in the same order on each collection (same metric name instances), so slots
+   * resolved the last time can be reused without looking up the metric name.
+   */
+  private final class CollectorSlots {
+    private String[] names = new String[DEFAULT_EXPECTED_METRICS_COUNT];
+    private int[] slots = new int[DEFAULT_EXPECTED_METRICS_COUNT];
+    private int size;
+
+    private int slotAt(int position, String name, StatValues st) {
+      if (position < size && names[position] == name) {
+        return slots[position];
+      }
+
+      int slot = accumulator.slotOf(name);
+      if (slot < 0) {
+        // metric not known when the collector was added
+        AgentAggregationFunction function = st.getAgentAggregationFunctions() != null ?
+            st.getAgentAggregationFunctions().get(name) : null;
+        slot = accumulator.define(name, function);
+        knownMetricTypes.put(name, st.getMetricTypes() != null ? st.getMetricTypes().get(name) : null);
+      }
+
+      if (position == names.length) {
+        names = Arrays.copyOf(names, position * 2);
+        slots = Arrays.copyOf(slots, position * 2);
+      }
+      names[position] = name;
+      slots[position] = slot;
+      size = Math.max(size, position + 1);
+      return slot;
+    }
+
+    private void truncate(int newSize) {
+      if (newSize < size) {
+        Arrays.fill(names, newSize, size, null);
+        size = newSize;
+      }
+    }
+  }
 }
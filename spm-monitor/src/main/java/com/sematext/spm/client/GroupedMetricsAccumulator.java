@@ -0,0 +1,316 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.sematext.spm.client.aggregation.AgentAggregationFunction;
+
+/**
+ * Merges metrics of all collectors of {@link GroupedByTagsCollector} into primitive per-slot accumulators. Metric slots
+ * and their aggregation functions are defined when collectors are added to the group, so merging a value doesn't
+ * resolve the function or box intermediate results. Aggregation follows the rules of
+ * {@link com.sematext.spm.client.aggregation.MetricAggregator}: values of different types can't be merged, only numbers
+ * are aggregated and the first value is kept otherwise.
+ * <p>
+ * Not thread safe, used by the thread running the grouped collector.
+ */
+final class GroupedMetricsAccumulator {
+  private static final byte NULL = 0;
+  private static final byte INT = 1;
+  private static final byte LONG = 2;
+  private static final byte FLOAT = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte OBJECT = 5;
+
+  private final Map<String, Integer> slots;
+  private String[] names;
+  private AgentAggregationFunction[] functions;
+
+  // values merged in current collection, valid for slots in present
+  private byte[] kinds;
+  private long[] longs;
+  private double[] doubles;
+  private int[] counts;
+  private Object[] objects;
+  private final BitSet present = new BitSet();
+  private int size;
+
+  private final Map<String, Object> view = new MergedMetricsView();
+
+  GroupedMetricsAccumulator(int expectedSize) {
+    int capacity = Math.max(expectedSize, 8);
+    slots = new UnifiedMap<String, Integer>(capacity);
+    names = new String[capacity];
+    functions = new AgentAggregationFunction[capacity];
+    kinds = new byte[capacity];
+    longs = new long[capacity];
+    doubles = new double[capacity];
+    counts = new int[capacity];
+    objects = new Object[capacity];
+  }
+
+  /**
+   * @return slot of the metric, newly defined with given function if it wasn't defined before (function of already
+   * defined metric is not changed)
+   */
+  int define(String name, AgentAggregationFunction function) {
+    Integer slot = slots.get(name);
+    if (slot != null) {
+      return slot;
+    }
+    if (size == names.length) {
+      int capacity = size * 2;
+      names = Arrays.copyOf(names, capacity);
+      functions = Arrays.copyOf(functions, capacity);
+      kinds = Arrays.copyOf(kinds, capacity);
+      longs = Arrays.copyOf(longs, capacity);
+      doubles = Arrays.copyOf(doubles, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+      objects = Arrays.copyOf(objects, capacity);
+    }
+    names[size] = name;
+    functions[size] = function;
+    slots.put(name, size);
+    return size++;
+  }
+
+  /**
+   * @return slot of the metric or -1 if it wasn't defined
+   */
+  int slotOf(String name) {
+    Integer slot = slots.get(name);
+    return slot != null ? slot : -1;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Starts new collection, values merged in the previous one are forgotten.
+   */
+  void clear() {
+    present.clear();
+    Arrays.fill(objects, 0, size, null);
+  }
+
+  /**
+   * @throws IllegalArgumentException when the value can't be merged with the value already in the slot; the value in
+   *                                  the slot is kept in that case
+   */
+  void merge(int slot, Object value) {
+    if (!present.get(slot)) {
+      present.set(slot);
+      store(slot, value);
+      return;
+    }
+    if (value == null) {
+      return;
+    }
+    byte kind = kinds[slot];
+    if (kind == NULL) {
+      store(slot, value);
+      return;
+    }
+
+    byte newKind = kindOf(value);
+    if (newKind != kind || (kind == OBJECT && objects[slot].getClass() != value.getClass())) {
+      throw new IllegalArgumentException("Can't aggregate metric " + names[slot] + " when multiple types are used: " +
+                                             typeOf(slot) + ", " + value.getClass());
+    }
+    if (kind == OBJECT) {
+      throw new IllegalArgumentException("Only metrics of type Long or Double can be aggregated. Metric " +
+                                             names[slot] + " is of type " + value.getClass());
+    }
+
+    AgentAggregationFunction function = functions[slot];
+    if (function == AgentAggregationFunction.DISCARD) {
+      return;
+    } else if (function == null) {
+      throw new IllegalArgumentException(
+          "Can't do the aggregation for metric " + names[slot] + " using function : " + function);
+    }
+
+    if (kind == INT || kind == LONG) {
+      long v = ((Number) value).longValue();
+      long stored = longs[slot];
+      switch (function) {
+        case AVG:
+        case SUM:
+          longs[slot] = stored + v;
+          break;
+        case MAX:
+          longs[slot] = stored > v ? stored : v;
+          break;
+        case MIN:
+          longs[slot] = stored < v ? stored : v;
+          break;
+        default:
+          break;
+      }
+    } else {
+      double v = ((Number) value).doubleValue();
+      double stored = doubles[slot];
+      switch (function) {
+        case AVG:
+        case SUM:
+          doubles[slot] = stored == 0 ? v : (v == 0 ? stored : stored + v);
+          break;
+        case MAX:
+          doubles[slot] = stored > v ? stored : v;
+          break;
+        case MIN:
+          doubles[slot] = stored < v ? stored : v;
+          break;
+        default:
+          break;
+      }
+    }
+    counts[slot]++;
+  }
+
+  /**
+   * @return merged value, boxed to the type of merged values (average for AVG metrics); null if the slot has no value
+   */
+  Object get(int slot) {
+    if (!present.get(slot)) {
+      return null;
+    }
+    byte kind = kinds[slot];
+    if (kind == NULL || kind == OBJECT) {
+      return objects[slot];
+    }
+    boolean average = functions[slot] == AgentAggregationFunction.AVG && counts[slot] > 1;
+    switch (kind) {
+      case INT:
+        return average ? Long.valueOf(longAverage(slot)) : (Object) Integer.valueOf((int) longs[slot]);
+      case LONG:
+        return average ? longAverage(slot) : longs[slot];
+      case FLOAT:
+        return average ? Double.valueOf(doubleAverage(slot)) : (Object) Float.valueOf((float) doubles[slot]);
+      default:
+        return average ? doubleAverage(slot) : doubles[slot];
+    }
+  }
+
+  /**
+   * Puts all metrics present in current collection to the map.
+   */
+  void writeTo(Map<String, Object> metrics) {
+    for (int slot = present.nextSetBit(0); slot >= 0; slot = present.nextSetBit(slot + 1)) {
+      metrics.put(names[slot], get(slot));
+    }
+  }
+
+  /**
+   * @return read-only view of values merged so far, used as outer metrics for collectors of the group
+   */
+  Map<String, Object> asMap() {
+    return view;
+  }
+
+  private long longAverage(int slot) {
+    long sum = longs[slot];
+    return sum == 0 ? 0L : Math.round((double) sum / counts[slot]);
+  }
+
+  private double doubleAverage(int slot) {
+    double sum = doubles[slot];
+    return sum == 0 ? 0d : sum / counts[slot];
+  }
+
+  private void store(int slot, Object value) {
+    byte kind = kindOf(value);
+    kinds[slot] = kind;
+    counts[slot] = 1;
+    switch (kind) {
+      case INT:
+      case LONG:
+        longs[slot] = ((Number) value).longValue();
+        break;
+      case FLOAT:
+      case DOUBLE:
+        doubles[slot] = ((Number) value).doubleValue();
+        break;
+      default:
+        objects[slot] = value;
+        break;
+    }
+  }
+
+  private Class<?> typeOf(int slot) {
+    switch (kinds[slot]) {
+      case INT:
+        return Integer.class;
+      case LONG:
+        return Long.class;
+      case FLOAT:
+        return Float.class;
+      case DOUBLE:
+        return Double.class;
+      default:
+        return objects[slot].getClass();
+    }
+  }
+
+  private static byte kindOf(Object value) {
+    if (value == null) {
+      return NULL;
+    } else if (value instanceof Long) {
+      return LONG;
+    } else if (value instanceof Double) {
+      return DOUBLE;
+    } else if (value instanceof Integer) {
+      return INT;
+    } else if (value instanceof Float) {
+      return FLOAT;
+    }
+    return OBJECT;
+  }
+
+  private final class MergedMetricsView extends AbstractMap<String, Object> {
+    @Override
+    public Object get(Object key) {
+      Integer slot = slots.get(key);
+      return slot != null ? GroupedMetricsAccumulator.this.get(slot) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      Integer slot = slots.get(key);
+      return slot != null && present.get(slot);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+      // rarely used, calculation functions read single metrics
+      Map<String, Object> copy = new UnifiedMap<String, Object>(present.cardinality());
+      writeTo(copy);
+      return copy.entrySet();
+    }
+  }
+}
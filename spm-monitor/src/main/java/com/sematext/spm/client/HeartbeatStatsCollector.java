@@ -37,6 +37,9 @@ public class HeartbeatStatsCollector extends MultipleStatsCollector<Integer> {
   
   private static final Collection<Integer> NO_HEARTBEAT = new ArrayList<Integer>();
   private static final Collection<Integer> HEARTBEAT = new ArrayList<Integer>();
+
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder().addLong("alive").build();
+  private static final int ALIVE = SCHEMA.slotOf("alive");
   
   static {
     HEARTBEAT.add(1);
@@ -87,6 +90,11 @@ public class HeartbeatStatsCollector extends MultipleStatsCollector<Integer> {
     return jvmName;
   }
 
+  @Override
+  public boolean runsAfterOtherCollectors() {
+    return true;
+  }
+
   @Override
   protected Collection<Integer> getSlice(Map<String, Object> outerMetrics) throws StatsCollectionFailedException {
     return CollectionStats.CURRENT_RUN_GATHERED_LINES.get() > 0 ? HEARTBEAT : NO_HEARTBEAT;
@@ -94,8 +102,9 @@ public class HeartbeatStatsCollector extends MultipleStatsCollector<Integer> {
 
   @Override
   protected void appendStats(Integer protoStats, StatValues statValues) {
-    statValues.setMetrics(new UnifiedMap<String, Object>());
-    statValues.getMetrics().put("alive", 1);
+    MetricsRow metrics = SCHEMA.newRow();
+    metrics.setLong(ALIVE, 1);
+    statValues.setMetrics(metrics);
     statValues.setTags(new UnifiedMap<String, String>());
     
     // currently each agent monitors one specific MonitorConfig, but if we move to 1 agent monitoring
@@ -21,6 +21,7 @@ package com.sematext.spm.client;
 
 import java.io.File;
 import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -28,6 +29,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import com.sematext.spm.client.Sender.MonitorType;
+import com.sematext.spm.client.agent.profiler.ContinuousProfiler;
 import com.sematext.spm.client.command.BasicCommandPollingSetup.CommandPollingRunner;
 import com.sematext.spm.client.jmx.JmxServiceContext;
 import com.sematext.spm.client.monitor.SourceConfigProperties;
@@ -255,6 +257,36 @@ public final class MonitorAgent {
     } else {
       log.info("Command polling disabled for " + propsFile.getName());
     }
+
+    // continuous profiling makes sense only for in-process monitor
+    if (inst != null &&
+        "true".equalsIgnoreCase(props.get(SourceConfigProperties.SPM_MONITOR_CONTINUOUS_PROFILER_ENABLED))) {
+      startContinuousProfiler(props, metricsConfig, propsFile);
+    }
+  }
+
+  private static void startContinuousProfiler(Map<String, String> props, MonitorConfig config, File propsFile) {
+    try {
+      double overheadPercent = 1;
+      String overhead = props.get(SourceConfigProperties.SPM_MONITOR_CONTINUOUS_PROFILER_OVERHEAD);
+      if (overhead != null && !overhead.trim().isEmpty()) {
+        overheadPercent = Double.parseDouble(overhead.trim());
+      }
+      File dir = new File(new File(config.getLogBasedir(), "profiler"),
+                          MonitorUtil.getMonitorId(config.getMonitorPropertiesFile()));
+
+      ContinuousProfiler.builder()
+          .overheadBudget(overheadPercent / 100)
+          .excludeAgentClasses(!Boolean.getBoolean("spm.client.profiler.include.agent.classes"))
+          .threadMXBean(ManagementFactory.getThreadMXBean())
+          .gcMXBeans(ManagementFactory.getGarbageCollectorMXBeans())
+          .consumer(new ContinuousProfiler.FileConsumer(dir, 60))
+          .build()
+          .start();
+      log.info("Continuous profiler started for " + propsFile.getName() + ", snapshots are written to " + dir);
+    } catch (Exception e) {
+      log.error("Can't start continuous profiler for " + propsFile.getName(), e);
+    }
   }
 
   private static void startMonitorThread(final MonitorConfig config) {
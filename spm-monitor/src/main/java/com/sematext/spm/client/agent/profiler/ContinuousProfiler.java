@@ -0,0 +1,275 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.agent.profiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ThreadMXBean;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.agent.profiler.cpu.ThreadsCPUProfiler;
+
+/**
+ * Always-on low overhead CPU profiler. Samples a subset of threads with bounded stack depth and periodically hands
+ * stacks sampled in the last period, in collapsed format, to the {@link Consumer}. Sampling period is stretched when
+ * sampling takes longer than the overhead budget allows (e.g. with budget 0.01 sampling thread is busy at most 1% of
+ * the time).
+ */
+public final class ContinuousProfiler implements Runnable {
+
+  private static final Log LOG = LogFactory.getLog(ContinuousProfiler.class);
+
+  private long sampleIntervalMs = 100;
+  private long snapshotIntervalMs = TimeUnit.MINUTES.toMillis(1);
+  private double overheadBudget = 0.01;
+  private int maxThreadsPerSample = 64;
+  private int maxStackDepth = 64;
+  private int maxNodes = 100000;
+  private boolean excludeAgentClasses = true;
+  private ThreadMXBean threadMXBean;
+  private List<GarbageCollectorMXBean> gcMXBeans = Collections.emptyList();
+  private Consumer consumer;
+
+  private volatile Thread thread;
+
+  public interface Consumer {
+    /**
+     * @param timestamp       end of the period, ms since epoch
+     * @param collapsedStacks one line per stack: frames separated by ';' (outermost first), space, samples count
+     */
+    void consume(long timestamp, String collapsedStacks);
+  }
+
+  private ContinuousProfiler() {
+  }
+
+  public synchronized void start() {
+    if (thread != null) {
+      return;
+    }
+    thread = new Thread(this, "spm-continuous-profiler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public synchronized void stop() {
+    if (thread != null) {
+      thread.interrupt();
+      thread = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    ThreadsCPUProfiler profiler = new ThreadsCPUProfiler(threadMXBean, gcMXBeans, excludeAgentClasses,
+                                                         maxThreadsPerSample, maxStackDepth, maxNodes);
+    long sampleIntervalNs = TimeUnit.MILLISECONDS.toNanos(sampleIntervalMs);
+    long snapshotIntervalNs = TimeUnit.MILLISECONDS.toNanos(snapshotIntervalMs);
+
+    profiler.preStart();
+    long periodStart = System.nanoTime();
+    long samples = 0;
+    long samplingTimeNs = 0;
+
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        long start = System.nanoTime();
+        profiler.sample();
+        long cost = System.nanoTime() - start;
+        samples++;
+        samplingTimeNs += cost;
+
+        if (start + cost - periodStart >= snapshotIntervalNs) {
+          emit(profiler, samples, samplingTimeNs, start + cost - periodStart);
+          profiler.reset(periodStart);
+          periodStart = System.nanoTime();
+          samples = 0;
+          samplingTimeNs = 0;
+        }
+
+        // sampling cost / (sampling cost + sleep) shouldn't exceed the budget
+        long sleepNs = Math.max(sampleIntervalNs, (long) (cost / overheadBudget)) - cost;
+        if (sleepNs > 0) {
+          TimeUnit.NANOSECONDS.sleep(sleepNs);
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.info("Continuous profiler stopped.");
+    } catch (Throwable thr) {
+      LOG.error("Continuous profiler failed, stopping.", thr);
+    }
+  }
+
+  private void emit(ThreadsCPUProfiler profiler, long samples, long samplingTimeNs, long periodNs) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Continuous profiler took " + samples + " samples of " + profiler.getSampledThreadsCount() +
+                    " threads in " + TimeUnit.NANOSECONDS.toMillis(periodNs) + "ms, sampling took " +
+                    TimeUnit.NANOSECONDS.toMillis(samplingTimeNs) + "ms.");
+    }
+    StringBuilder collapsed = new StringBuilder();
+    profiler.writeCollapsedStacks(collapsed);
+    try {
+      consumer.consume(System.currentTimeMillis(), collapsed.toString());
+    } catch (Throwable thr) {
+      LOG.error("Can't consume continuous profiler snapshot.", thr);
+    }
+  }
+
+  /**
+   * Writes each snapshot to its own file named by its timestamp, keeps only the newest files.
+   */
+  public static final class FileConsumer implements Consumer {
+    private static final String FILE_PREFIX = "cpu-";
+    private static final String FILE_SUFFIX = ".collapsed";
+
+    private final File dir;
+    private final int maxFiles;
+
+    public FileConsumer(File dir, int maxFiles) {
+      this.dir = dir;
+      this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public void consume(long timestamp, String collapsedStacks) {
+      if (!dir.exists() && !dir.mkdirs()) {
+        LOG.warn("Can't create continuous profiler dir " + dir);
+        return;
+      }
+      String name = FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(timestamp)) + FILE_SUFFIX;
+      File tmp = new File(dir, name + ".tmp");
+      try {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try {
+          writer.write(collapsedStacks);
+        } finally {
+          writer.close();
+        }
+        if (!tmp.renameTo(new File(dir, name))) {
+          LOG.warn("Can't rename " + tmp + " to " + name);
+          tmp.delete();
+        }
+      } catch (IOException e) {
+        LOG.error("Can't write continuous profiler snapshot to " + tmp, e);
+        tmp.delete();
+      }
+      removeOldFiles();
+    }
+
+    private void removeOldFiles() {
+      String[] names = dir.list();
+      if (names == null) {
+        return;
+      }
+      Arrays.sort(names);
+      int snapshots = 0;
+      for (int i = names.length - 1; i >= 0; i--) {
+        if (names[i].startsWith(FILE_PREFIX) && names[i].endsWith(FILE_SUFFIX) && ++snapshots > maxFiles) {
+          new File(dir, names[i]).delete();
+        }
+      }
+    }
+  }
+
+  public static class Builder {
+    private ContinuousProfiler profiler = new ContinuousProfiler();
+
+    private Builder() {
+    }
+
+    public Builder sampleInterval(long interval, TimeUnit unit) {
+      profiler.sampleIntervalMs = unit.toMillis(interval);
+      return this;
+    }
+
+    public Builder snapshotInterval(long interval, TimeUnit unit) {
+      profiler.snapshotIntervalMs = unit.toMillis(interval);
+      return this;
+    }
+
+    /**
+     * @param budget max fraction of time the sampling thread can spend sampling, e.g. 0.01
+     */
+    public Builder overheadBudget(double budget) {
+      if (budget <= 0 || budget > 1) {
+        throw new IllegalArgumentException("Overhead budget should be in (0, 1], got: " + budget);
+      }
+      profiler.overheadBudget = budget;
+      return this;
+    }
+
+    public Builder maxThreadsPerSample(int maxThreads) {
+      profiler.maxThreadsPerSample = maxThreads;
+      return this;
+    }
+
+    public Builder maxStackDepth(int maxDepth) {
+      profiler.maxStackDepth = maxDepth;
+      return this;
+    }
+
+    public Builder maxNodes(int maxNodes) {
+      profiler.maxNodes = maxNodes;
+      return this;
+    }
+
+    public Builder excludeAgentClasses(boolean exclude) {
+      profiler.excludeAgentClasses = exclude;
+      return this;
+    }
+
+    public Builder threadMXBean(ThreadMXBean threadMXBean) {
+      profiler.threadMXBean = threadMXBean;
+      return this;
+    }
+
+    public Builder gcMXBeans(List<GarbageCollectorMXBean> gcMXBeans) {
+      profiler.gcMXBeans = gcMXBeans;
+      return this;
+    }
+
+    public Builder consumer(Consumer consumer) {
+      profiler.consumer = consumer;
+      return this;
+    }
+
+    public ContinuousProfiler build() {
+      if (profiler.threadMXBean == null || profiler.consumer == null) {
+        throw new IllegalStateException("threadMXBean and consumer should be set");
+      }
+      return profiler;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+}
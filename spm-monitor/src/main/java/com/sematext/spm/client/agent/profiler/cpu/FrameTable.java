@@ -0,0 +1,99 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.agent.profiler.cpu;
+
+import java.util.Arrays;
+
+/**
+ * Interns stack frames to int ids (0, 1, 2...). Open addressing hash table with linear probing, so looking up a frame
+ * seen before doesn't allocate.
+ */
+final class FrameTable {
+  private final int maxFrames;
+  private StackTraceElement[] frames;
+  // frame id + 1 by hash slot, 0 marks empty slot
+  private int[] slots;
+  private int size;
+
+  FrameTable(int maxFrames) {
+    this.maxFrames = maxFrames;
+    this.frames = new StackTraceElement[64];
+    this.slots = new int[128];
+  }
+
+  /**
+   * @return id of the frame or -1 if the frame is new and table is full
+   */
+  int intern(StackTraceElement frame) {
+    int mask = slots.length - 1;
+    int slot = StackTree.mix(frame.hashCode()) & mask;
+    while (true) {
+      int id = slots[slot] - 1;
+      if (id < 0) {
+        break;
+      }
+      if (frames[id].equals(frame)) {
+        return id;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (size >= maxFrames) {
+      return -1;
+    }
+    int id = size++;
+    if (id == frames.length) {
+      frames = Arrays.copyOf(frames, frames.length * 2);
+    }
+    frames[id] = frame;
+    slots[slot] = id + 1;
+    if (size * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    return id;
+  }
+
+  StackTraceElement get(int id) {
+    return frames[id];
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    Arrays.fill(frames, 0, size, null);
+    Arrays.fill(slots, 0);
+    size = 0;
+  }
+
+  private void rehash(int capacity) {
+    int[] newSlots = new int[capacity];
+    int mask = capacity - 1;
+    for (int id = 0; id < size; id++) {
+      int slot = StackTree.mix(frames[id].hashCode()) & mask;
+      while (newSlots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      newSlots[slot] = id + 1;
+    }
+    slots = newSlots;
+  }
+}
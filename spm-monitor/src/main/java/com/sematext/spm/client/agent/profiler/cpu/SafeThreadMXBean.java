@@ -53,6 +53,17 @@ public final class SafeThreadMXBean {
     return this.bean.dumpAllThreads(lockedMonitors, lockedSynchronizers);
   }
 
+  public long[] getAllThreadIds() {
+    return this.bean.getAllThreadIds();
+  }
+
+  /**
+   * @return thread infos without locks, null for threads which are not alive anymore
+   */
+  public ThreadInfo[] getThreadInfo(long[] ids, int maxDepth) {
+    return this.bean.getThreadInfo(ids, maxDepth);
+  }
+
   public static SafeThreadMXBean make(ThreadMXBean bean) {
     boolean supported = false;
     if (bean.isThreadCpuTimeSupported()) {
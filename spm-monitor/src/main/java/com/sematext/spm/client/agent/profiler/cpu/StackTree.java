@@ -0,0 +1,210 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.agent.profiler.cpu;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sematext.spm.client.agent.profiler.CallTree;
+
+/**
+ * Call tree of sampled stacks, stored in parallel primitive arrays indexed by node id. Node 0 is the root, children
+ * are found through open addressing hash table keyed by (parent node id, frame id) pair, so adding a sample which
+ * follows known path doesn't allocate. Number of nodes is bounded, samples going deeper than the tree can grow are
+ * counted in the deepest node which could be added.
+ */
+final class StackTree {
+  static final int ROOT = 0;
+
+  private final int maxNodes;
+
+  private int[] frames;
+  private int[] parents;
+  private long[] samples;
+  private long[] cpuTimes;
+  private long[] userCpuTimes;
+  private long[] times;
+  private int size;
+
+  // child node id by hash slot, 0 marks empty slot (root is never a child)
+  private int[] children;
+
+  StackTree(int maxNodes) {
+    this.maxNodes = maxNodes;
+    allocate(64);
+    this.children = new int[128];
+    this.size = 1;
+    this.frames[ROOT] = -1;
+    this.parents[ROOT] = -1;
+  }
+
+  /**
+   * @return id of the child node with the frame, created if it doesn't exist, or -1 if tree is full
+   */
+  int child(int parent, int frame) {
+    int mask = children.length - 1;
+    int slot = mix(parent * 31 + frame) & mask;
+    while (true) {
+      int node = children[slot];
+      if (node == 0) {
+        break;
+      }
+      if (parents[node] == parent && frames[node] == frame) {
+        return node;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (size >= maxNodes) {
+      return -1;
+    }
+    int node = size++;
+    if (node == frames.length) {
+      grow(frames.length * 2);
+    }
+    frames[node] = frame;
+    parents[node] = parent;
+    children[slot] = node;
+    if (size * 2 > children.length) {
+      rehash(children.length * 2);
+    }
+    return node;
+  }
+
+  void addSample(int node, long cpuTime, long userCpuTime, long time) {
+    samples[node]++;
+    cpuTimes[node] += cpuTime;
+    userCpuTimes[node] += userCpuTime;
+    times[node] += time;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    Arrays.fill(samples, 0, size, 0);
+    Arrays.fill(cpuTimes, 0, size, 0);
+    Arrays.fill(userCpuTimes, 0, size, 0);
+    Arrays.fill(times, 0, size, 0);
+    Arrays.fill(children, 0);
+    size = 1;
+  }
+
+  CallTree toCallTree(FrameTable frameTable) {
+    CallTree tree = new CallTree();
+    CallTree.Node[] nodes = new CallTree.Node[size];
+    nodes[ROOT] = tree.getRoot();
+    // parent is always created before its children
+    for (int node = 1; node < size; node++) {
+      nodes[node] = new CallTree.Node(frameTable.get(frames[node]), samples[node], userCpuTimes[node],
+                                      cpuTimes[node], times[node]);
+      nodes[parents[node]].addChild(nodes[node]);
+    }
+    return tree;
+  }
+
+  /**
+   * Writes stacks in collapsed format (used by flame graph tools), one line per distinct stack with number of samples
+   * in which it was on top: frames from the outermost one separated by ';', space, samples count.
+   */
+  void writeCollapsed(FrameTable frameTable, StringBuilder out) {
+    long[] selfSamples = Arrays.copyOf(samples, size);
+    for (int node = 1; node < size; node++) {
+      if (parents[node] != ROOT) {
+        selfSamples[parents[node]] -= samples[node];
+      }
+    }
+
+    // same method on different lines has different frames, but the same collapsed stack
+    Map<String, Long> stacks = new LinkedHashMap<String, Long>();
+    int[] path = new int[16];
+    StringBuilder stack = new StringBuilder();
+    for (int node = 1; node < size; node++) {
+      if (selfSamples[node] <= 0) {
+        continue;
+      }
+      int depth = 0;
+      for (int n = node; n != ROOT; n = parents[n]) {
+        if (depth == path.length) {
+          path = Arrays.copyOf(path, depth * 2);
+        }
+        path[depth++] = frames[n];
+      }
+      stack.setLength(0);
+      for (int i = depth - 1; i >= 0; i--) {
+        StackTraceElement frame = frameTable.get(path[i]);
+        stack.append(frame.getClassName()).append('.').append(frame.getMethodName());
+        if (i > 0) {
+          stack.append(';');
+        }
+      }
+      String key = stack.toString();
+      Long existing = stacks.get(key);
+      stacks.put(key, existing == null ? selfSamples[node] : existing + selfSamples[node]);
+    }
+
+    for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+      out.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+    }
+  }
+
+  private void allocate(int capacity) {
+    frames = new int[capacity];
+    parents = new int[capacity];
+    samples = new long[capacity];
+    cpuTimes = new long[capacity];
+    userCpuTimes = new long[capacity];
+    times = new long[capacity];
+  }
+
+  private void grow(int capacity) {
+    frames = Arrays.copyOf(frames, capacity);
+    parents = Arrays.copyOf(parents, capacity);
+    samples = Arrays.copyOf(samples, capacity);
+    cpuTimes = Arrays.copyOf(cpuTimes, capacity);
+    userCpuTimes = Arrays.copyOf(userCpuTimes, capacity);
+    times = Arrays.copyOf(times, capacity);
+  }
+
+  private void rehash(int capacity) {
+    int[] newChildren = new int[capacity];
+    int mask = capacity - 1;
+    for (int node = 1; node < size; node++) {
+      int slot = mix(parents[node] * 31 + frames[node]) & mask;
+      while (newChildren[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      newChildren[slot] = node;
+    }
+    children = newChildren;
+  }
+
+  static int mix(int hash) {
+    // murmur3 finalizer, spreads sequential ids and poor hash codes over the whole table
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+}
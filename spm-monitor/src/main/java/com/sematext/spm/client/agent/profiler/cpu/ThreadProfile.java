@@ -22,11 +22,13 @@ package com.sematext.spm.client.agent.profiler.cpu;
 import java.lang.management.ThreadInfo;
 import java.util.concurrent.TimeUnit;
 
-import com.sematext.spm.client.agent.profiler.CallTree;
-
+/**
+ * Times of one profiled thread. Its samples are added to the tree shared by all threads of the profiler.
+ */
 public class ThreadProfile {
 
-  private final CallTree callTree = new CallTree();
+  private final StackTree tree;
+  private final FrameTable frameTable;
 
   private long timestamp0;
   private long cpuTime0;
@@ -34,11 +36,13 @@ public class ThreadProfile {
   private long waitedTime;
   private long blockedTime;
   private long samples;
-  private final long baselineTimestamp;
-  private final long baselineCPUTime;
-  private final long baselineUserCPUTime;
+  private long baselineTimestamp;
+  private long baselineCPUTime;
+  private long baselineUserCPUTime;
 
-  public ThreadProfile(long timestamp0, long cpuTime0, long userCPUTime0) {
+  ThreadProfile(StackTree tree, FrameTable frameTable, long timestamp0, long cpuTime0, long userCPUTime0) {
+    this.tree = tree;
+    this.frameTable = frameTable;
     this.timestamp0 = timestamp0;
     this.cpuTime0 = cpuTime0;
     this.userCPUTime0 = userCPUTime0;
@@ -66,37 +70,27 @@ public class ThreadProfile {
   }
 
   public void update(StackTraceElement[] elements, long cpuTime, long userCPUTime, long timestamp) {
-    int i = elements.length - 1;
-    CallTree.Node parent = callTree.getRoot();
-
-    while (i >= 0) {
-      CallTree.Node existing = parent.findChild(elements[i]);
-
-      if (existing != null) {
-        existing.incrSamples(1);
-
-        existing.incrCPUTime(cpuTime - cpuTime0);
-        existing.incrTime(timestamp - timestamp0);
-        existing.incrUserCPUTime(userCPUTime - userCPUTime0);
-        i--;
-        parent = existing;
-      } else {
+    int node = StackTree.ROOT;
+    for (int i = elements.length - 1; i >= 0; i--) {
+      int frame = frameTable.intern(elements[i]);
+      int child = frame < 0 ? -1 : tree.child(node, frame);
+      if (child < 0) {
+        // tree is full, rest of the stack is accounted to the deepest known frame
         break;
       }
-    }
-
-    while (i >= 0) {
-      CallTree.Node node = new CallTree.Node(elements[i], 1,
-                                             userCPUTime - userCPUTime0, cpuTime - cpuTime0, timestamp - timestamp0);
-      parent.addChild(node);
-
-      parent = node;
-      i--;
+      tree.addSample(child, cpuTime - cpuTime0, userCPUTime - userCPUTime0, timestamp - timestamp0);
+      node = child;
     }
   }
 
-  public CallTree getCallTree() {
-    return callTree;
+  /**
+   * Starts new profiling period from the last sample, used when the shared tree is cleared.
+   */
+  void rebase() {
+    baselineTimestamp = timestamp0;
+    baselineCPUTime = cpuTime0;
+    baselineUserCPUTime = userCPUTime0;
+    samples = 0;
   }
 
   public long getTotalCPUTimeMs() {
@@ -141,7 +135,6 @@ public class ThreadProfile {
         .append(", CPU: ").append(String.format("%2.2f", cpuPerc)).append("%, User CPU:")
         .append(String.format("%2.2f", userCPUPerc)).append("%")
         .append("]\n");
-    builder.append(callTree.dump());
     return builder.toString();
   }
 }
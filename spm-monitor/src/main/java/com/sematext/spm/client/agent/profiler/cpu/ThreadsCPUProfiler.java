@@ -19,36 +19,75 @@
  */
 package com.sematext.spm.client.agent.profiler.cpu;
 
-import org.eclipse.collections.impl.list.mutable.FastList;
 import org.eclipse.collections.impl.map.mutable.UnifiedMap;
 
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import com.sematext.spm.client.agent.profiler.CallTree;
-
+/**
+ * Samples stacks of threads into a call tree shared by all threads. Each sample can be limited to a subset of threads
+ * (taken round robin, so all threads get sampled over time) and to top frames of their stacks, which keeps sampling
+ * cost low on JVMs with many threads.
+ */
 public class ThreadsCPUProfiler {
   private static final String AGENT_CLASSES_PKG_PREFIX = "com.sematext.spm.client";
 
+  public static final int ALL_THREADS = Integer.MAX_VALUE;
+  public static final int FULL_STACK = Integer.MAX_VALUE;
+  public static final int DEFAULT_MAX_NODES = 1 << 20;
+
   private final Map<Long, ThreadProfile> profiles = new UnifiedMap<Long, ThreadProfile>();
   private final SafeThreadMXBean threadMXBean;
   private final List<GarbageCollectorMXBean> gcMXBeans;
   private final boolean excludeAgentClasses;
+  private final int maxThreadsPerSample;
+  private final int maxStackDepth;
+  private final StackTree tree;
+  private final FrameTable frameTable;
+  private int nextThreadIndex;
   private long baselineGCTIme;
 
   public ThreadsCPUProfiler(ThreadMXBean threadMXBean, List<GarbageCollectorMXBean> gcMXBeans,
                             boolean excludeAgentClasses) {
+    this(threadMXBean, gcMXBeans, excludeAgentClasses, ALL_THREADS, FULL_STACK, DEFAULT_MAX_NODES);
+  }
+
+  public ThreadsCPUProfiler(ThreadMXBean threadMXBean, List<GarbageCollectorMXBean> gcMXBeans,
+                            boolean excludeAgentClasses, int maxThreadsPerSample, int maxStackDepth, int maxNodes) {
     this.threadMXBean = SafeThreadMXBean.make(threadMXBean);
     this.excludeAgentClasses = excludeAgentClasses;
     this.gcMXBeans = gcMXBeans;
+    this.maxThreadsPerSample = maxThreadsPerSample;
+    this.maxStackDepth = maxStackDepth;
+    this.tree = new StackTree(maxNodes);
+    this.frameTable = new FrameTable(maxNodes);
+  }
+
+  private long[] nextThreadIds() {
+    long[] ids = threadMXBean.getAllThreadIds();
+    if (ids.length <= maxThreadsPerSample) {
+      return ids;
+    }
+    long[] subset = new long[maxThreadsPerSample];
+    int start = nextThreadIndex % ids.length;
+    for (int i = 0; i < subset.length; i++) {
+      subset[i] = ids[(start + i) % ids.length];
+    }
+    nextThreadIndex = (start + subset.length) % ids.length;
+    return subset;
   }
 
   public void sample() {
-    for (ThreadInfo info : threadMXBean.dumpAllThreads(false, false)) {
+    for (ThreadInfo info : threadMXBean.getThreadInfo(nextThreadIds(), maxStackDepth)) {
+      if (info == null) {
+        // thread died in the meantime
+        continue;
+      }
 
       boolean skipThreadInfo = false;
 
@@ -75,7 +114,7 @@ public class ThreadsCPUProfiler {
       long cpuTime = threadMXBean.getThreadCpuTime(info.getThreadId());
       long userCPUTime = threadMXBean.getThreadUserTime(info.getThreadId());
       if (profile == null) {
-        profile = new ThreadProfile(timestamp, cpuTime, userCPUTime);
+        profile = new ThreadProfile(tree, frameTable, timestamp, cpuTime, userCPUTime);
         profiles.put(info.getThreadId(), profile);
       }
 
@@ -95,6 +134,38 @@ public class ThreadsCPUProfiler {
     baselineGCTIme = getGCCollectionTime();
   }
 
+  /**
+   * Clears sampled stacks and starts new profiling period. Threads not sampled since previous reset are forgotten.
+   *
+   * @param periodStart System.nanoTime() of the previous reset
+   */
+  public void reset(long periodStart) {
+    tree.clear();
+    frameTable.clear();
+    Iterator<ThreadProfile> iter = profiles.values().iterator();
+    while (iter.hasNext()) {
+      ThreadProfile profile = iter.next();
+      if (profile.getTimestamp0() < periodStart) {
+        iter.remove();
+      } else {
+        profile.rebase();
+      }
+    }
+    baselineGCTIme = getGCCollectionTime();
+  }
+
+  /**
+   * Appends stacks sampled since the start (or last reset) in collapsed format, see
+   * {@link StackTree#writeCollapsed(FrameTable, StringBuilder)}.
+   */
+  public void writeCollapsedStacks(StringBuilder out) {
+    tree.writeCollapsed(frameTable, out);
+  }
+
+  public int getSampledThreadsCount() {
+    return profiles.size();
+  }
+
   public AllThreadsProfileSnapshot mkAllThreadsSnapshot() {
     long cpuTime = 0, userCPUTime = 0, waitedTime = 0, blockedTime = 0, samples = 0, ts0 = 0, baselineTs = 0;
 
@@ -104,7 +175,6 @@ public class ThreadsCPUProfiler {
       baselineTs = first.getBaselineTimestamp();
     }
 
-    List<CallTree> trees = new FastList<CallTree>();
     for (ThreadProfile profile : profiles.values()) {
       cpuTime += profile.getTotalCPUTimeMs();
       userCPUTime += profile.getTotalUserCPUTimeMs();
@@ -114,8 +184,6 @@ public class ThreadsCPUProfiler {
 
       ts0 = Math.max(ts0, profile.getTimestamp0());
       baselineTs = Math.min(baselineTs, profile.getBaselineTimestamp());
-
-      trees.add(profile.getCallTree());
     }
 
     return AllThreadsProfileSnapshot.builder()
@@ -127,7 +195,7 @@ public class ThreadsCPUProfiler {
         .blockedTime(blockedTime)
         .gcTime(getGCCollectionTime() - baselineGCTIme)
         .cpuTimeSupported(threadMXBean.isCpuTimeSupported())
-        .tree(CallTree.merge(trees))
+        .tree(tree.toCallTree(frameTable))
         .build();
   }
 
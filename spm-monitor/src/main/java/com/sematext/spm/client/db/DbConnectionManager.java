@@ -21,18 +21,31 @@ package com.sematext.spm.client.db;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import com.sematext.spm.client.DbQuerySelfMetrics;
 import com.sematext.spm.client.Log;
 import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.PriorityThreadFactory;
 import com.sematext.spm.client.status.AgentStatusRecorder;
 import com.sematext.spm.client.status.AgentStatusRecorder.ConnectionStatus;
 
 /**
- * Handles creation of single connection to some DB, knows how to reconnect in case of problems, takes care of
+ * Handles a small pool of connections to some DB, knows how to reconnect in case of problems, takes care of
  * long/short retry intervals to avoid overloading the DB in case there is some connection related issue, takes
  * care that logs are not filled with too many same stacktraces.
+ * <p>
+ * Also runs queries of {@link DbDataSourceBase}s using the DB: when one of them has to be refreshed, other stale ones
+ * are refreshed in parallel as well (up to pool size queries at once), so one slow query doesn't delay the others.
  */
 public class DbConnectionManager {
   private static final Log LOG = LogFactory.getLog(DbConnectionManager.class);
@@ -43,34 +56,65 @@ public class DbConnectionManager {
   private static final long TIME_BETWEEN_LONG_RETRIES = 45 * 1000;
   private static final long MAX_SHORT_RETRIES_PERIOD = 5 * 60 * 1000;
 
+  public static final int DEFAULT_MAX_CONNECTIONS = 3;
+  private static final long QUERY_THREAD_KEEP_ALIVE_SECONDS = 60;
+
   private String dbUrl;
   private String dbDriverClass;
   private String user;
   private String password;
   private String additionalConnectionParams;
+  private final int maxConnections;
 
-  private Connection dbConnection = null;
+  // pool state, guarded by this
+  private final LinkedList<DbPooledConnection> idleConnections = new LinkedList<DbPooledConnection>();
+  private int openConnections = 0;
+  // incremented by close(), connections borrowed before that are closed when released
+  private int generation = 0;
 
+  // retry state, guarded by connectLock
+  private final Object connectLock = new Object();
   private long lastSuccessTime = System.currentTimeMillis();
   private long lastFailedTime = 0L;
   private int consecutiveConnErrors = 0;
 
+  private final List<DbDataSourceBase> dataSources = new CopyOnWriteArrayList<DbDataSourceBase>();
+  private final ExecutorService queryExecutor;
+  private volatile DbQuerySelfMetrics queryMetrics;
+
   public DbConnectionManager(String dbUrl, String dbDriverClass, String user, String password,
                              String additionalConnectionParams) {
+    this(dbUrl, dbDriverClass, user, password, additionalConnectionParams, DEFAULT_MAX_CONNECTIONS);
+  }
+
+  public DbConnectionManager(String dbUrl, String dbDriverClass, String user, String password,
+                             String additionalConnectionParams, int maxConnections) {
     this.dbUrl = dbUrl;
     this.dbDriverClass = dbDriverClass;
     this.user = user;
     this.password = password;
     this.additionalConnectionParams = additionalConnectionParams;
+    this.maxConnections = Math.max(1, maxConnections);
 
     synchronized (DB_CONNECTION_MANAGERS) {
       if (DB_CONNECTION_MANAGERS.containsKey(dbUrl)) {
         throw new IllegalStateException("DbConnectionManager for dbUrl: " + dbUrl + " already created!");
       } else {
-        if (createNewConnection() == null) {
+        Connection connection = createNewConnection();
+        if (connection == null) {
           throw new IllegalStateException("Can't create connection for url: " + dbUrl + ", user: " + user +
                                               ", additional params: " + additionalConnectionParams);
         }
+        idleConnections.add(new DbPooledConnection(connection, generation));
+        openConnections = 1;
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            this.maxConnections, this.maxConnections, QUERY_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new PriorityThreadFactory(Executors.defaultThreadFactory(), "db-query", Thread.MIN_PRIORITY));
+        // queries run once per collection interval, no need to keep threads in between
+        executor.allowCoreThreadTimeOut(true);
+        this.queryExecutor = executor;
 
         DB_CONNECTION_MANAGERS.put(dbUrl, this);
       }
@@ -78,125 +122,191 @@ public class DbConnectionManager {
   }
 
   /**
-   * Should be used if using existing connection resulted in error.
+   * Returns idle connection or opens a new one if less than max connections are open. Connection has to be returned
+   * with {@link #releaseConnection(DbPooledConnection, boolean)}.
    *
-   * @return connection or null
+   * @param timeoutMs max time to wait for a connection when all of them are in use
+   * @return connection or null if it couldn't be opened or none became available in time
    */
-  public Connection reconnect() {
-    LOG.info("Reconnecting to DB...");
-    return createNewConnection();
-  }
+  public DbPooledConnection borrowConnection(long timeoutMs) {
+    int connectionGeneration;
+    synchronized (this) {
+      long deadline = System.currentTimeMillis() + timeoutMs;
+      while (idleConnections.isEmpty() && openConnections >= maxConnections) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          LOG.warn("All " + maxConnections + " connections to " + dbUrl + " in use, skipping query");
+          return null;
+        }
+        try {
+          wait(wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+      if (!idleConnections.isEmpty()) {
+        return idleConnections.removeFirst();
+      }
+      // reserve the slot, connection is opened outside of the lock
+      openConnections++;
+      connectionGeneration = generation;
+    }
 
-  public Connection getConnection() {
-    if (dbConnection != null) {
-      return dbConnection;
-    } else {
-      return createNewConnection();
+    Connection connection = null;
+    try {
+      connection = createNewConnection();
+    } finally {
+      if (connection == null) {
+        synchronized (this) {
+          openConnections--;
+          notifyAll();
+        }
+      }
     }
+    return connection != null ? new DbPooledConnection(connection, connectionGeneration) : null;
   }
 
-  private Connection createNewConnection() {
-    LOG.info("Creating new connection to DB - old connection (if exists) will be closed, new one created");
-
-    // if old connection exists, try to close it first
-    if (dbConnection != null) {
-      try {
-        dbConnection.close();
-      } catch (Throwable thr) {
-        // just debug level log, nothing else
-        LOG.debug("Error while closing old connection", thr);
+  /**
+   * @param reusable false if connection is broken and should be closed
+   */
+  public void releaseConnection(DbPooledConnection connection, boolean reusable) {
+    synchronized (this) {
+      if (reusable && connection.getGeneration() == generation) {
+        idleConnections.addFirst(connection);
+        notifyAll();
+        return;
       }
-
-      dbConnection = null;
+      openConnections--;
+      notifyAll();
     }
+    LOG.info("Closing connection to DB, url: " + dbUrl + ", user: " + user);
+    connection.close();
+  }
 
-    LOG.info("Initializing new DB connection for url: " + dbUrl + ", user: " + user);
+  private Connection createNewConnection() {
+    synchronized (connectLock) {
+      LOG.info("Initializing new DB connection for url: " + dbUrl + ", user: " + user);
 
-    long currentTime = System.currentTimeMillis();
-    long timeSinceLastFailed = currentTime - lastFailedTime;
-    long timeSinceLastSucceeded = currentTime - lastSuccessTime;
+      long currentTime = System.currentTimeMillis();
+      long timeSinceLastFailed = currentTime - lastFailedTime;
+      long timeSinceLastSucceeded = currentTime - lastSuccessTime;
 
-    LOG.info("Current time: " + currentTime + ", timeSinceLastFailed: " + timeSinceLastFailed +
-                 ", timeSinceLastSucceeded: " + timeSinceLastSucceeded);
+      LOG.info("Current time: " + currentTime + ", timeSinceLastFailed: " + timeSinceLastFailed +
+                   ", timeSinceLastSucceeded: " + timeSinceLastSucceeded);
 
-    if (timeSinceLastSucceeded > MAX_SHORT_RETRIES_PERIOD) {
-      LOG.info("Long retries period active");
-      if (timeSinceLastFailed > TIME_BETWEEN_LONG_RETRIES) {
-        LOG.info("TIME_BETWEEN_LONG_RETRIES: " + TIME_BETWEEN_LONG_RETRIES +
-                     " passed, new DB connection will be created...");
-      } else {
-        return null;
-      }
-    } else {
-      LOG.info("Short retries period active");
-      if (timeSinceLastFailed > TIME_BETWEEN_SHORT_RETRIES) {
-        LOG.info("TIME_BETWEEN_SHORT_RETRIES: " + TIME_BETWEEN_SHORT_RETRIES +
-                     " passed, new DB connection will be created...");
+      if (timeSinceLastSucceeded > MAX_SHORT_RETRIES_PERIOD) {
+        LOG.info("Long retries period active");
+        if (timeSinceLastFailed > TIME_BETWEEN_LONG_RETRIES) {
+          LOG.info("TIME_BETWEEN_LONG_RETRIES: " + TIME_BETWEEN_LONG_RETRIES +
+                       " passed, new DB connection will be created...");
+        } else {
+          return null;
+        }
       } else {
-        return null;
+        LOG.info("Short retries period active");
+        if (timeSinceLastFailed > TIME_BETWEEN_SHORT_RETRIES) {
+          LOG.info("TIME_BETWEEN_SHORT_RETRIES: " + TIME_BETWEEN_SHORT_RETRIES +
+                       " passed, new DB connection will be created...");
+        } else {
+          return null;
+        }
       }
-    }
 
-    // create new connection
-    try {
-      String dbConnUrl = dbUrl;
-      if (additionalConnectionParams != null && !"".equals(additionalConnectionParams.trim())) {
-        if (dbConnUrl.contains("?")) {
-          dbConnUrl = dbConnUrl + "&" + additionalConnectionParams;
+      // create new connection
+      Connection dbConnection = null;
+      try {
+        String dbConnUrl = dbUrl;
+        if (additionalConnectionParams != null && !"".equals(additionalConnectionParams.trim())) {
+          if (dbConnUrl.contains("?")) {
+            dbConnUrl = dbConnUrl + "&" + additionalConnectionParams;
+          } else {
+            dbConnUrl = dbConnUrl + "?" + additionalConnectionParams;
+          }
+        }
+
+        Class.forName(dbDriverClass);
+        dbConnection = DriverManager.getConnection(dbConnUrl, user, password);
+
+        if (dbConnection != null) {
+          // reset error counters
+          lastSuccessTime = System.currentTimeMillis();
+          lastFailedTime = 0L;
+          consecutiveConnErrors = 0;
         } else {
-          dbConnUrl = dbConnUrl + "?" + additionalConnectionParams;
+          throw new IllegalStateException("DriverManager.getConnection didn't produce connection or error for " +
+                                              "url: " + dbUrl + ", user: " + user);
         }
-      }
 
-      Class.forName(dbDriverClass);
-      dbConnection = DriverManager.getConnection(dbConnUrl, user, password);
+        if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
+          AgentStatusRecorder.GLOBAL_INSTANCE.updateConnectionStatus(ConnectionStatus.OK);
+        }
+      } catch (Throwable thr) {
+        if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
+          AgentStatusRecorder.GLOBAL_INSTANCE.updateConnectionStatus(ConnectionStatus.FAILED, thr);
+        }
+        if (consecutiveConnErrors == 0) {
+          // print stacktrace only for first error, no need to fill logs with pile of exactly the same exception traces
+          LOG.error("Error while creating DB connection to url:" + dbUrl + ", user: " + user +
+                        ", additional params: " + additionalConnectionParams, thr);
+        } else {
+          LOG.error("Error while creating DB connection to url:" + dbUrl + ", user: " + user +
+                        ", additional params: " + additionalConnectionParams + " error message: " + thr.getMessage());
+        }
 
-      if (dbConnection != null) {
-        // reset error counters
-        lastSuccessTime = System.currentTimeMillis();
-        lastFailedTime = 0L;
-        consecutiveConnErrors = 0;
-      } else {
-        throw new IllegalStateException("DriverManager.getConnection didn't produce connection or error for " +
-                                            "url: " + dbUrl + ", user: " + user);
-      }
-      
-      if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
-        AgentStatusRecorder.GLOBAL_INSTANCE.updateConnectionStatus(ConnectionStatus.OK);
-      }
-    } catch (Throwable thr) {
-      if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
-        AgentStatusRecorder.GLOBAL_INSTANCE.updateConnectionStatus(ConnectionStatus.FAILED, thr);
-      }
-      if (consecutiveConnErrors == 0) {
-        // print stacktrace only for first error, no need to fill logs with pile of exactly the same exception traces
-        LOG.error("Error while creating DB connection to url:" + dbUrl + ", user: " + user +
-                      ", additional params: " + additionalConnectionParams, thr);
-      } else {
-        LOG.error("Error while creating DB connection to url:" + dbUrl + ", user: " + user +
-                      ", additional params: " + additionalConnectionParams + " error message: " + thr.getMessage());
+        consecutiveConnErrors++;
+        lastFailedTime = System.currentTimeMillis();
       }
 
-      consecutiveConnErrors++;
-      lastFailedTime = System.currentTimeMillis();
+      return dbConnection;
+    }
+  }
+
+  void register(DbDataSourceBase dataSource) {
+    dataSources.add(dataSource);
+  }
+
+  /**
+   * Starts refresh of all registered data sources which need it, the given one included.
+   */
+  void refreshStale(DbDataSourceBase requested) {
+    long now = System.currentTimeMillis();
+    for (DbDataSourceBase dataSource : dataSources) {
+      if (dataSource == requested || dataSource.shouldPrefetch(now)) {
+        dataSource.scheduleRefresh(queryExecutor, now);
+      }
     }
+  }
+
+  public DbQuerySelfMetrics getQueryMetrics() {
+    return queryMetrics;
+  }
 
-    return dbConnection;
+  public void setQueryMetrics(DbQuerySelfMetrics queryMetrics) {
+    this.queryMetrics = queryMetrics;
   }
 
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Closes idle connections, connections in use are closed when released. Manager can still be used afterwards,
+   * new connections are opened when needed.
+   */
   public void close() {
     LOG.info("Closing DBConnectionManager");
 
-    if (dbConnection != null) {
-      synchronized (dbConnection) {
-        try {
-          dbConnection.close();
-        } catch (Throwable thr) {
-          LOG.error("Error while closing connection for dbUrl: " + dbUrl + ", user: " + user, thr);
-        } finally {
-          dbConnection = null;
-        }
-      }
+    List<DbPooledConnection> toClose;
+    synchronized (this) {
+      generation++;
+      toClose = new LinkedList<DbPooledConnection>(idleConnections);
+      openConnections -= idleConnections.size();
+      idleConnections.clear();
+      notifyAll();
+    }
+    for (DbPooledConnection connection : toClose) {
+      connection.close();
     }
   }
 
@@ -21,24 +21,35 @@ package com.sematext.spm.client.db;
 
 import org.eclipse.collections.impl.map.mutable.UnifiedMap;
 
-import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sematext.spm.client.DbQuerySelfMetrics;
 import com.sematext.spm.client.Log;
 import com.sematext.spm.client.LogFactory;
 
 /**
  * For each monitored DB, for each metrics query, use one DbDataSourceBase instance.
+ * <p>
+ * Query is executed as a prepared statement (cached per pooled connection) with a query timeout, on the query threads
+ * of {@link DbConnectionManager}. Callers of {@link #fetchData()} wait for the result at most
+ * {@link #MAX_WAIT_MS}, so a hanging query delays its own collectors only.
  */
 public class DbDataSourceBase {
   private static final Log LOG = LogFactory.getLog(DbDataSourceBase.class);
 
-  private static final int DEFAULT_VERTICAL_MODEL_ENTITIES_COUNT = 1;
   private static final int DEFAULT_VERTICAL_MODEL_EXPECTED_ATTRIBUTE_COUNT = 20;
   private static final int DEFAULT_HORIZONTAL_MODEL_EXPECTED_ROWS_COUNT = 10;
   private static final int DEFAULT_HORIZONTAL_MODEL_EXPECTED_ATTRIBUTE_COUNT = 20;
@@ -48,10 +59,23 @@ public class DbDataSourceBase {
   private static final long FRESH_DATA_TIMEOUT_MS = 5000;
   private static final long MAX_SUCCESSIVE_FAILED_TRIES = 5;
   private static final long ERROR_STATE_INACTIVITY_PAUSE = 2 * 60 * 1000; // 2 minutes
-  private static final int CONNECTION_VALID_CHECK_TIMEOUT = 30 * 1000;
+  private static final int CONNECTION_VALID_CHECK_TIMEOUT = 30;
+
+  static final int QUERY_TIMEOUT_SECONDS = 10;
+  static final long CONNECTION_WAIT_MS = 5000;
+  static final long MAX_WAIT_MS = CONNECTION_WAIT_MS + QUERY_TIMEOUT_SECONDS * 1000 + 1000;
+  // data sources not read by any collector for this long (e.g. their config was removed) are not refreshed together
+  // with other data sources of the same DB
+  private static final long PREFETCH_IDLE_LIMIT_MS = 5 * 60 * 1000;
+  // rows fetched per round trip (for drivers which respect it), based on rows count returned last time
+  private static final int MIN_FETCH_SIZE = 100;
+  private static final int MAX_FETCH_SIZE = 1000;
+  private static final int MAX_QUERY_ID_LENGTH = 100;
 
   private DbConnectionManager dbConnectionManager;
   private String dbQuery;
+  private final long freshDataTimeoutMs;
+  private final String queryId;
 
   // vertical model is the one where each attribute of some entity is a new row; traditional model (horizontal one) is where
   // one row represents an entity where its attributes are each in its own column of that row
@@ -61,23 +85,49 @@ public class DbDataSourceBase {
   // which means that particular DataSource and its StatsCollectors will be ignored; after the inactivity
   // period lasting ERROR_STATE_INACTIVITY_PAUSE ms passes, the DataSource will again be tested for
   // MAX_SUCCESSIVE_FAILED_TRIES attempts.
-  private boolean active = true;
-  private long inactivityPeriodStartTime = 0L;
+  private volatile boolean active = true;
+  private volatile long inactivityPeriodStartTime = 0L;
   private int successiveFailedTries = 0;
 
+  // result lists are never modified once published, collectors may still be reading the previous one while the
+  // next one is fetched
   private volatile List<Map<String, Object>> freshDbData;
-  private long lastDataFetchTime = 0L;
+  private volatile long lastDataFetchTime = 0L;
+  private volatile long lastRequestTime = 0L;
+  private int lastRowsCount = 0;
+  private int lastAttributesCount = 0;
+
+  // guarded by this
+  private Future<?> pendingRefresh;
+
+  private final Runnable refreshTask = new Runnable() {
+    @Override
+    public void run() {
+      refresh();
+    }
+  };
 
   public DbDataSourceBase(DbConnectionManager dbConnectionManager, String dbQuery, boolean verticalDataModel) {
+    this(dbConnectionManager, dbQuery, verticalDataModel, FRESH_DATA_TIMEOUT_MS);
+  }
+
+  DbDataSourceBase(DbConnectionManager dbConnectionManager, String dbQuery, boolean verticalDataModel,
+                   long freshDataTimeoutMs) {
     this.dbConnectionManager = dbConnectionManager;
+    this.freshDataTimeoutMs = freshDataTimeoutMs;
     this.dbQuery = dbQuery;
+    this.queryId = createQueryId(dbQuery);
     this.verticalDataModel = verticalDataModel;
+    this.lastRequestTime = System.currentTimeMillis();
+    dbConnectionManager.register(this);
   }
 
   /**
    * @return Map with fresh data, or null if that map would be empty or there was some error while fetching
    */
   public List<Map<String, Object>> fetchData() {
+    lastRequestTime = System.currentTimeMillis();
+
     if (!active) {
       long currentTime = System.currentTimeMillis();
 
@@ -85,192 +135,271 @@ public class DbDataSourceBase {
       if ((currentTime - inactivityPeriodStartTime) > ERROR_STATE_INACTIVITY_PAUSE) {
         activate();
       } else {
-        freshDbData = null;
-        return freshDbData;
+        return null;
       }
     }
 
     // if refresh interval still hasn't passed, return existing data
-    if (!((System.currentTimeMillis() - lastDataFetchTime) > FRESH_DATA_TIMEOUT_MS)) {
+    if (!isStale(System.currentTimeMillis())) {
       return freshDbData;
     }
 
+    // stale data sources of the same DB are refreshed in parallel with this one
+    dbConnectionManager.refreshStale(this);
+
+    Future<?> refresh;
     synchronized (this) {
-      // if refresh interval still hasn't passed, return existing data
-      if (!((System.currentTimeMillis() - lastDataFetchTime) > FRESH_DATA_TIMEOUT_MS)) {
-        return freshDbData;
+      refresh = pendingRefresh;
+    }
+    if (refresh != null) {
+      try {
+        refresh.get(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        LOG.error("Query " + dbQuery + " on db: '" + dbConnectionManager.getDbUrl() + "' didn't finish in " +
+                      MAX_WAIT_MS + " ms, skipping its data in this collection");
+        return null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } catch (ExecutionException e) {
+        // refresh handles its errors, shouldn't happen
+        LOG.error("Error while fetching data for query " + dbQuery, e.getCause());
+        return null;
       }
+    }
+
+    return freshDbData;
+  }
+
+  private boolean isStale(long now) {
+    return (now - lastDataFetchTime) > freshDataTimeoutMs;
+  }
+
+  boolean shouldPrefetch(long now) {
+    return active && isStale(now) && (now - lastRequestTime) < PREFETCH_IDLE_LIMIT_MS;
+  }
+
+  synchronized void scheduleRefresh(ExecutorService executor, long now) {
+    if (pendingRefresh != null && !pendingRefresh.isDone()) {
+      return;
+    }
+    if (!isStale(now)) {
+      return;
+    }
+    try {
+      pendingRefresh = executor.submit(refreshTask);
+    } catch (RejectedExecutionException e) {
+      LOG.error("Can't schedule query " + dbQuery + ", skipping it", e);
+      pendingRefresh = null;
+    }
+  }
 
-      Statement stmt = null;
-      ResultSet rs = null;
-      Connection conn = null;
-      
+  private void refresh() {
+    DbPooledConnection conn = dbConnectionManager.borrowConnection(CONNECTION_WAIT_MS);
+    if (conn == null) {
+      LOG.error("DB connection not available, skipping query");
+      freshDbData = null;
+      return;
+    }
+
+    boolean reusable = true;
+    long startTime = System.nanoTime();
+    ResultSet rs = null;
+    try {
+      LOG.info("Executing '" + dbQuery + "' on db: '" + dbConnectionManager.getDbUrl() + "'");
+      PreparedStatement stmt = conn.prepare(dbQuery);
+      stmt.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+      stmt.setFetchSize(Math.min(MAX_FETCH_SIZE, Math.max(MIN_FETCH_SIZE, lastRowsCount + 1)));
+      rs = stmt.executeQuery();
+
+      List<Map<String, Object>> data;
+      if (verticalDataModel) {
+        data = readVerticalModel(rs);
+      } else {
+        data = readHorizontalModel(rs);
+      }
+
+      recordQuery(System.nanoTime() - startTime, lastRowsCount, false);
+
+      if (data.isEmpty()) {
+        LOG.warn("Empty result set found for query: " + dbQuery + ", dbUrl: " + dbConnectionManager.getDbUrl());
+        data = null;
+      }
+
+      freshDbData = data;
+      lastDataFetchTime = System.currentTimeMillis();
+      synchronized (this) {
+        successiveFailedTries = 0;
+      }
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Result for " + dbQuery + " : " + freshDbData);
+      }
+    } catch (Throwable thr) {
+      recordQuery(System.nanoTime() - startTime, 0, true);
+
+      LOG.error("Error while fetching data with " + this.getClass().getCanonicalName() +
+                    " for query " + dbQuery + ". Message: " + thr.getMessage());
+
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(thr);
+      }
+
+      recordFailedRequest();
+
+      // statement may be unusable after the error (e.g. query cancelled by timeout)
+      conn.discard(dbQuery);
+      LOG.info("Checking connection validity...");
+      if (!conn.isValid(CONNECTION_VALID_CHECK_TIMEOUT)) {
+        LOG.info("Connection is not valid, it will be closed");
+        reusable = false;
+      } else {
+        LOG.info("Connection is valid");
+      }
+    } finally {
       try {
-        conn = dbConnectionManager.getConnection();
-
-        if (conn == null) {
-          LOG.error("DB connection not available, skipping query");
-          freshDbData = null;
-          return freshDbData;
-        } else {
-          LOG.info("Executing '" + dbQuery + "' on db: '" + dbConnectionManager.getDbUrl() + "'");
-          stmt = conn.createStatement();
-          rs = stmt.executeQuery(dbQuery);
-
-          if (freshDbData == null) {
-            // use slightly bigger map than needed, just in case
-            if (verticalDataModel) {
-              freshDbData = new ArrayList<Map<String, Object>>(DEFAULT_VERTICAL_MODEL_ENTITIES_COUNT);
-            } else {
-              freshDbData = new ArrayList<Map<String, Object>>(DEFAULT_HORIZONTAL_MODEL_EXPECTED_ROWS_COUNT);
-            }
-          }
-
-          if (verticalDataModel) {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Processing vertical model for " + dbQuery);
-            }
-            // expect N rows for single resulting Map; reuse the map that was possibly previously used
-            Map<String, Object> data;
-            if (freshDbData.size() == 1) {
-              data = freshDbData.get(0);
-              data.clear();
-            } else {
-              freshDbData.clear();
-              data = new UnifiedMap<String, Object>(DEFAULT_VERTICAL_MODEL_EXPECTED_ATTRIBUTE_COUNT);
-              freshDbData.add(data);
-            }
-
-            int counter = 0;
-            while (rs.next()) {
-              counter++;
-              data.put(rs.getString(1).trim(), rs.getObject(2));
-            }
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Processed for " + dbQuery + " " + counter + " RS entries with result: " + data);
-            }
-          } else {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Processing horizontal model for " + dbQuery);
-            }
-            // expect N rows for N resulting Maps
-            // we'll try to reuse Map objects that exist from previous collections
-            int currentRow = 0;
-            while (rs.next()) {
-              Map<String, Object> data;
-              if (currentRow < freshDbData.size()) {
-                data = freshDbData.get(currentRow);
-                data.clear();
-              } else {
-                data = new UnifiedMap<String, Object>(DEFAULT_HORIZONTAL_MODEL_EXPECTED_ATTRIBUTE_COUNT);
-                freshDbData.add(data);
-              }
-
-              ResultSetMetaData rsmd = rs.getMetaData();
-              for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-                String name = rsmd.getColumnLabel(i);
-                Object value = rs.getObject(name);
-                data.put(name, value);
-              }
-              currentRow++;
-            }
-
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Processed for " + dbQuery + " " + currentRow + " RS entries with result before cleaning : " + freshDbData);
-            }
-
-            // in the end remove any rows that were left in freshDbData from before
-            if (currentRow < freshDbData.size()) {
-              // if there are 4 rows, value of "currentRow" at this point will be 4 (equal to count of rows found in this iteration)
-              freshDbData.subList(currentRow, freshDbData.size()).clear();
-            }
-            
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("For " + dbQuery + " RS entries with result after cleaning : " + freshDbData);
-            }
-          }
-
-          if (freshDbData.isEmpty()) {
-            LOG.warn("Empty result set found for query: " + dbQuery + ", dbUrl: " + dbConnectionManager.getDbUrl());
-            freshDbData = null;
-          }
-
-          lastDataFetchTime = System.currentTimeMillis();
-          successiveFailedTries = 0;
-
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("Result for " + dbQuery + " : " + freshDbData);
-          }
-
-          return freshDbData;
+        if (rs != null) {
+          rs.close();
         }
       } catch (Throwable thr) {
-        LOG.error("Error while fetching data with " + this.getClass().getCanonicalName() +
-                      " for query " + dbQuery + ". Message: " + thr.getMessage());
+        LOG.error("Error while closing ResultSet for query: " + dbQuery, thr);
+      }
+      dbConnectionManager.releaseConnection(conn, reusable);
+    }
+  }
 
-        if (LOG.isDebugEnabled()) {
-          LOG.debug(thr);
-        }
+  private List<Map<String, Object>> readVerticalModel(ResultSet rs) throws Exception {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Processing vertical model for " + dbQuery);
+    }
+    // expect N rows for single resulting Map
+    List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(1);
+    Map<String, Object> data = new UnifiedMap<String, Object>(
+        Math.max(lastRowsCount, DEFAULT_VERTICAL_MODEL_EXPECTED_ATTRIBUTE_COUNT));
+
+    int counter = 0;
+    while (rs.next()) {
+      counter++;
+      data.put(rs.getString(1).trim(), rs.getObject(2));
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Processed for " + dbQuery + " " + counter + " RS entries with result: " + data);
+    }
+    lastRowsCount = counter;
 
-        recordFailedRequest();
-        
-        if (conn != null) {
-          try {
-            LOG.info("Checking connection validity...");
-            if (!conn.isValid(CONNECTION_VALID_CHECK_TIMEOUT)) {
-              dbConnectionManager.reconnect();
-            } else {
-              LOG.info("Connection is valid");
-            }
-          } catch (Throwable thr1) {
-            LOG.error("Error while checking connection validity", thr1);
-          }
-        }
+    result.add(data);
+    return result;
+  }
 
-        freshDbData = null;
-        return freshDbData;
-      } finally {
-        try {
-          if (rs != null) {
-            rs.close();
-          }
-        } catch (Throwable thr) {
-          LOG.error("Error while closing ResultSet for query: " + dbQuery, thr);
+  private List<Map<String, Object>> readHorizontalModel(ResultSet rs) throws Exception {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Processing horizontal model for " + dbQuery);
+    }
+    // expect N rows for N resulting Maps
+    List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(
+        Math.max(lastRowsCount, DEFAULT_HORIZONTAL_MODEL_EXPECTED_ROWS_COUNT));
+
+    // column labels are read once per query execution; when more columns have the same label, value of the first one
+    // is used
+    String[] labels = null;
+    int attributesCount = Math.max(lastAttributesCount, DEFAULT_HORIZONTAL_MODEL_EXPECTED_ATTRIBUTE_COUNT);
+    while (rs.next()) {
+      if (labels == null) {
+        labels = readColumnLabels(rs.getMetaData());
+      }
+      Map<String, Object> data = new UnifiedMap<String, Object>(attributesCount);
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i] != null) {
+          data.put(labels[i], rs.getObject(i + 1));
         }
-        try {
-          if (stmt != null) {
-            stmt.close();
-          }
-        } catch (Throwable thr) {
-          LOG.error("Error while closing Statement for query: " + dbQuery, thr);
+      }
+      result.add(data);
+    }
+    if (labels != null) {
+      lastAttributesCount = labels.length;
+    }
+    lastRowsCount = result.size();
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Processed for " + dbQuery + " " + result.size() + " RS entries with result : " + result);
+    }
+    return result;
+  }
+
+  /**
+   * @return column labels, null for columns with label already used by some previous column
+   */
+  private static String[] readColumnLabels(ResultSetMetaData rsmd) throws Exception {
+    String[] labels = new String[rsmd.getColumnCount()];
+    Set<String> seen = new HashSet<String>(labels.length * 2);
+    for (int i = 0; i < labels.length; i++) {
+      String label = rsmd.getColumnLabel(i + 1);
+      if (seen.add(label)) {
+        labels[i] = label;
+      }
+    }
+    return labels;
+  }
+
+  private void recordQuery(long nanos, int rows, boolean failed) {
+    DbQuerySelfMetrics queryMetrics = dbConnectionManager.getQueryMetrics();
+    if (queryMetrics != null) {
+      queryMetrics.recordQuery(queryId, nanos, rows, failed);
+    }
+  }
+
+  /**
+   * @return query with whitespace collapsed, shortened to {@link #MAX_QUERY_ID_LENGTH} chars
+   */
+  static String createQueryId(String query) {
+    StringBuilder sb = new StringBuilder(Math.min(query.length(), MAX_QUERY_ID_LENGTH));
+    boolean pendingSpace = false;
+    for (int i = 0; i < query.length() && sb.length() < MAX_QUERY_ID_LENGTH; i++) {
+      char c = query.charAt(i);
+      if (Character.isWhitespace(c)) {
+        pendingSpace = true;
+      } else {
+        if (pendingSpace && sb.length() > 0) {
+          sb.append(' ');
         }
+        pendingSpace = false;
+        sb.append(c);
       }
     }
+    return sb.toString();
   }
 
   protected void activate() {
     LOG.info("Activating data source for query " + dbQuery);
-    active = true;
-    inactivityPeriodStartTime = 0L;
-    successiveFailedTries = 0;
+    synchronized (this) {
+      active = true;
+      inactivityPeriodStartTime = 0L;
+      successiveFailedTries = 0;
+    }
   }
 
   protected void recordFailedRequest() {
-    successiveFailedTries++;
-    freshDbData = null;
-    lastDataFetchTime = System.currentTimeMillis();
-
-    if (successiveFailedTries >= MAX_SUCCESSIVE_FAILED_TRIES) {
-      LOG.error("Max allowed successive failed calls reached " + successiveFailedTries + " for query " +
-                    dbQuery + ". Setting data collector to inactive state for " + ERROR_STATE_INACTIVITY_PAUSE +
-                    " ms");
-
-      active = false;
-      inactivityPeriodStartTime = System.currentTimeMillis();
-      successiveFailedTries = 0;
+    synchronized (this) {
+      successiveFailedTries++;
+      freshDbData = null;
+      lastDataFetchTime = System.currentTimeMillis();
+
+      if (successiveFailedTries >= MAX_SUCCESSIVE_FAILED_TRIES) {
+        LOG.error("Max allowed successive failed calls reached " + successiveFailedTries + " for query " +
+                      dbQuery + ". Setting data collector to inactive state for " + ERROR_STATE_INACTIVITY_PAUSE +
+                      " ms");
+
+        active = false;
+        inactivityPeriodStartTime = System.currentTimeMillis();
+        successiveFailedTries = 0;
+      }
     }
   }
 
+  public String getQueryId() {
+    return queryId;
+  }
+
   public void close() {
     if (dbConnectionManager != null) {
       dbConnectionManager.close();
@@ -0,0 +1,107 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.db;
+
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Connection handed out by {@link DbConnectionManager}. Keeps statements prepared on it, so each metrics query is
+ * parsed once per connection and not once per collection. Used by one thread at a time (between borrow and release).
+ */
+public final class DbPooledConnection {
+  private static final Log LOG = LogFactory.getLog(DbPooledConnection.class);
+
+  private final Connection connection;
+  private final int generation;
+  private final Map<String, PreparedStatement> statements = new UnifiedMap<String, PreparedStatement>(4);
+
+  DbPooledConnection(Connection connection, int generation) {
+    this.connection = connection;
+    this.generation = generation;
+  }
+
+  public Connection getConnection() {
+    return connection;
+  }
+
+  int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * @return statement prepared earlier for the same query or a newly prepared one
+   */
+  public PreparedStatement prepare(String query) throws SQLException {
+    PreparedStatement stmt = statements.get(query);
+    if (stmt == null) {
+      stmt = connection.prepareStatement(query);
+      statements.put(query, stmt);
+    }
+    return stmt;
+  }
+
+  /**
+   * Closes and forgets statement prepared for the query, should be used when executing it failed.
+   */
+  public void discard(String query) {
+    PreparedStatement stmt = statements.remove(query);
+    if (stmt != null) {
+      closeStatement(query, stmt);
+    }
+  }
+
+  boolean isValid(int timeoutSeconds) {
+    try {
+      return connection.isValid(timeoutSeconds);
+    } catch (Throwable thr) {
+      LOG.error("Error while checking connection validity", thr);
+      return false;
+    }
+  }
+
+  void close() {
+    for (Map.Entry<String, PreparedStatement> entry : statements.entrySet()) {
+      closeStatement(entry.getKey(), entry.getValue());
+    }
+    statements.clear();
+    try {
+      connection.close();
+    } catch (Throwable thr) {
+      // just debug level log, nothing else
+      LOG.debug("Error while closing connection", thr);
+    }
+  }
+
+  private static void closeStatement(String query, PreparedStatement stmt) {
+    try {
+      stmt.close();
+    } catch (Throwable thr) {
+      LOG.debug("Error while closing Statement for query: " + query, thr);
+    }
+  }
+}
@@ -202,6 +202,13 @@ public class CachableReliableDataSourceBase<T, D extends DataProvider<T>> {
     return active;
   }
 
+  /**
+   * Makes the next fetch go to the data provider even if cached data is still fresh.
+   */
+  public synchronized void invalidate() {
+    lastDataFetchTime = 0L;
+  }
+
   public void setFreshData(T freshData) {
     data.setData(freshData);
   }
@@ -187,6 +187,9 @@ public final class JmxMBeanServerConnectionWrapper {
   }
 
   public void closeConnection() {
+    if (mbeanServer != null) {
+      MBeanDiscoveryCache.release(mbeanServer);
+    }
     if (connector != null) {
       try {
         connector.close();
@@ -0,0 +1,97 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Counts JMX calls made while collecting and calls saved by bulk attribute reads and cached MBean discovery.
+ * Summary is logged periodically.
+ */
+public final class JmxRoundTripStats {
+  private static final Log LOG = LogFactory.getLog(JmxRoundTripStats.class);
+  private static final long LOG_INTERVAL_MS = 10 * 60 * 1000;
+
+  private static final AtomicLong ATTRIBUTE_READS = new AtomicLong();
+  private static final AtomicLong BULK_ATTRIBUTE_READS = new AtomicLong();
+  private static final AtomicLong PREFETCHED_ATTRIBUTES_USED = new AtomicLong();
+  private static final AtomicLong MBEAN_QUERIES = new AtomicLong();
+  private static final AtomicLong MBEAN_QUERIES_SAVED = new AtomicLong();
+  private static final AtomicLong LAST_LOG_TIME = new AtomicLong(System.currentTimeMillis());
+
+  private JmxRoundTripStats() {
+  }
+
+  static void attributeRead() {
+    ATTRIBUTE_READS.incrementAndGet();
+  }
+
+  static void bulkAttributeRead() {
+    BULK_ATTRIBUTE_READS.incrementAndGet();
+  }
+
+  static void prefetchedAttributeUsed() {
+    PREFETCHED_ATTRIBUTES_USED.incrementAndGet();
+  }
+
+  static void mbeanQuery() {
+    MBEAN_QUERIES.incrementAndGet();
+  }
+
+  static void mbeanQuerySaved() {
+    MBEAN_QUERIES_SAVED.incrementAndGet();
+  }
+
+  /**
+   * @return JMX calls made for reading attributes and querying beans
+   */
+  public static long getRoundTrips() {
+    return ATTRIBUTE_READS.get() + BULK_ATTRIBUTE_READS.get() + MBEAN_QUERIES.get();
+  }
+
+  /**
+   * @return JMX calls which would be made without bulk reads and discovery cache
+   */
+  public static long getRoundTripsSaved() {
+    return getAttributeReadsSaved() + MBEAN_QUERIES_SAVED.get();
+  }
+
+  public static long getAttributeReadsSaved() {
+    return Math.max(0, PREFETCHED_ATTRIBUTES_USED.get() - BULK_ATTRIBUTE_READS.get());
+  }
+
+  public static long getMBeanQueriesSaved() {
+    return MBEAN_QUERIES_SAVED.get();
+  }
+
+  static void logIfDue() {
+    long now = System.currentTimeMillis();
+    long lastLogTime = LAST_LOG_TIME.get();
+    if (now - lastLogTime >= LOG_INTERVAL_MS && LAST_LOG_TIME.compareAndSet(lastLogTime, now)) {
+      LOG.info("JMX round trips: " + getRoundTrips() + ", saved: " + getRoundTripsSaved() + " (attribute reads: " +
+                   ATTRIBUTE_READS.get() + ", bulk reads: " + BULK_ATTRIBUTE_READS.get() + ", attribute reads saved: " +
+                   getAttributeReadsSaved() + ", bean queries: " + MBEAN_QUERIES.get() + ", bean queries saved: " +
+                   MBEAN_QUERIES_SAVED.get() + ")");
+    }
+  }
+}
@@ -61,6 +61,7 @@ public class JmxStatsExtractor extends StatsExtractor<JmxStatsExtractorConfig, M
         .getInstance(getConfig().getJmxServiceContext());
 
     if (connection != null) {
+      JmxRoundTripStats.logIfDue();
       return observation.collectStats(MBeanObservationContext.make(connection.getMbeanServerConnection(),
                                                                    contextEvaluator.evaluate()));
     } else {
@@ -58,13 +58,14 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
     COMPLEX(COMPLEX_ATTRIBUTE_MARKER) {
       @Override
       protected Object concreteEval(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                    ObjectInstance discoveredObject, String attributeName, boolean optional)
+                                    ObjectInstance discoveredObject, String attributeName, boolean optional,
+                                    Map<String, Object> prefetched)
           throws Exception {
         int indexOfLastPoint = attributeName.lastIndexOf('.');
         String complexAttributeName = attributeName.substring(0, indexOfLastPoint);
         String propertyName = attributeName.substring(indexOfLastPoint + 1);
 
-        Object attr = mbeanServer.getAttribute(discoveredObject.getObjectName(), complexAttributeName);
+        Object attr = getAttribute(mbeanServer, discoveredObject, complexAttributeName, prefetched);
 
         CompositeDataSupport complexAttribute = (CompositeDataSupport) attr;
         return complexAttribute.get(propertyName);
@@ -73,14 +74,15 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
     REFLECT(REFLECT_ATTRIBUTE_MARKER) {
       @Override
       protected Object concreteEval(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                    ObjectInstance discoveredObject, String attributeName, boolean optional)
+                                    ObjectInstance discoveredObject, String attributeName, boolean optional,
+                                    Map<String, Object> prefetched)
           throws Exception {
 
         final String parts[] = attributeName.split("[.]");
         final String reflectAttributeName = parts[0];
         final String invokeMethodName = parts[1];
 
-        Object attr = mbeanServer.getAttribute(discoveredObject.getObjectName(), reflectAttributeName);
+        Object attr = getAttribute(mbeanServer, discoveredObject, reflectAttributeName, prefetched);
 
         final Method method = attr.getClass().getMethod(invokeMethodName);
 
@@ -90,7 +92,8 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
     EVAL(EVAL_ATTRIBUTE_MARKER) {
       @Override
       protected Object concreteEval(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                    ObjectInstance discoveredObject, String attributeName, boolean optional)
+                                    ObjectInstance discoveredObject, String attributeName, boolean optional,
+                                    Map<String, Object> prefetched)
           throws Exception {
         Result result = CONST_EVAL_PATTERN.match(attributeName);
         if (result != null) {
@@ -99,21 +102,22 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
 
         Matcher matcher = FORMULA_EVAL_PATTERN.matcher(attributeName);
         if (matcher.matches()) {
-          return evalAsFormula(mbeanServer, context, discoveredObject, matcher, optional);
+          return evalAsFormula(mbeanServer, context, discoveredObject, matcher, optional, prefetched);
         }
         throw new IllegalStateException(
             "Now, only one type of formulas like (a*b) is supported, or constant evaluation as ${value}");
       }
 
       private Object evalAsFormula(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                   ObjectInstance discoveredObject, Matcher matcher, boolean optional)
+                                   ObjectInstance discoveredObject, Matcher matcher, boolean optional,
+                                   Map<String, Object> prefetched)
           throws Exception {
         String left = matcher.group(1);
         String op = matcher.group(2);
         String right = matcher.group(3);
 
-        Double leftVal = evalDouble(mbeanServer, context, discoveredObject, left, optional);
-        Double rightVal = evalDouble(mbeanServer, context, discoveredObject, right, optional);
+        Double leftVal = evalDouble(mbeanServer, context, discoveredObject, left, optional, prefetched);
+        Double rightVal = evalDouble(mbeanServer, context, discoveredObject, right, optional, prefetched);
         if (leftVal == null || rightVal == null) {
           return null;
         }
@@ -153,13 +157,14 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
       }
 
       private Double evalDouble(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                ObjectInstance discoveredObject, String attributeName, boolean optional)
+                                ObjectInstance discoveredObject, String attributeName, boolean optional,
+                                Map<String, Object> prefetched)
           throws Exception {
         Object val;
         if (attributeName.startsWith(CONST_ATTRIBUTE_MARKER)) {
           val = attributeName.substring(CONST_ATTRIBUTE_MARKER.length());
         } else {
-          val = evaluate(mbeanServer, context, discoveredObject, attributeName, optional);
+          val = evaluate(mbeanServer, context, discoveredObject, attributeName, optional, prefetched);
         }
 
         return val == null ? null : Double.valueOf(String.valueOf(val));
@@ -168,9 +173,10 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
     SIMPLE(null) {
       @Override
       protected Object concreteEval(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                    ObjectInstance discoveredObject, String attributeName, boolean optional)
+                                    ObjectInstance discoveredObject, String attributeName, boolean optional,
+                                    Map<String, Object> prefetched)
           throws Exception {
-        return mbeanServer.getAttribute(discoveredObject.getObjectName(), attributeName);
+        return getAttribute(mbeanServer, discoveredObject, attributeName, prefetched);
       }
     };
 
@@ -194,14 +200,45 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
      * @throws Exception
      */
     protected abstract Object concreteEval(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                           ObjectInstance discoveredObject, String attributeName, boolean optional)
+                                           ObjectInstance discoveredObject, String attributeName, boolean optional,
+                                           Map<String, Object> prefetched)
         throws Exception;
 
     public final Object eval(final MBeanServerConnection mbeanServer, final Map<String, ?> context,
-                             final ObjectInstance discoveredObject, final String attributeName, boolean optional)
+                             final ObjectInstance discoveredObject, final String attributeName, boolean optional,
+                             Map<String, Object> prefetched)
         throws Exception {
       return concreteEval(mbeanServer, context, discoveredObject,
-                          marker == null ? attributeName : attributeName.substring(marker.length()), optional);
+                          marker == null ? attributeName : attributeName.substring(marker.length()), optional,
+                          prefetched);
+    }
+
+    /**
+     * @return name of the bean attribute this eval reads (without marker and property part) or null if it reads
+     * none or more of them
+     */
+    private String readAttributeName(String attributeName) {
+      String name = marker == null ? attributeName : attributeName.substring(marker.length());
+      if (this == SIMPLE) {
+        return name;
+      } else if (this == COMPLEX) {
+        int indexOfLastPoint = name.lastIndexOf('.');
+        return indexOfLastPoint > 0 ? name.substring(0, indexOfLastPoint) : null;
+      } else if (this == REFLECT) {
+        int indexOfPoint = name.indexOf('.');
+        return indexOfPoint > 0 ? name.substring(0, indexOfPoint) : null;
+      }
+      return null;
+    }
+
+    private static Object getAttribute(MBeanServerConnection mbeanServer, ObjectInstance discoveredObject,
+                                       String attributeName, Map<String, Object> prefetched) throws Exception {
+      if (prefetched != null && prefetched.containsKey(attributeName)) {
+        JmxRoundTripStats.prefetchedAttributeUsed();
+        return prefetched.get(attributeName);
+      }
+      JmxRoundTripStats.attributeRead();
+      return mbeanServer.getAttribute(discoveredObject.getObjectName(), attributeName);
     }
 
     private static Eval find(String eval) {
@@ -214,10 +251,11 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
     }
 
     public static Object evaluate(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                  ObjectInstance discoveredObject, String attributeName, boolean optional)
+                                  ObjectInstance discoveredObject, String attributeName, boolean optional,
+                                  Map<String, Object> prefetched)
         throws Exception {
       try {
-        return find(attributeName).eval(mbeanServer, context, discoveredObject, attributeName, optional);
+        return find(attributeName).eval(mbeanServer, context, discoveredObject, attributeName, optional, prefetched);
       } catch (AttributeNotFoundException ex) {
         if (LOG.isDebugEnabled()) {
           if (!optional) {
@@ -247,13 +285,25 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
 
   public abstract MBeanAttributeObservation getCopy(String newAttributeName);
 
+  /**
+   * @return name of the bean attribute read by this observation, used to read attributes of a bean in bulk; null if
+   * the observation doesn't read exactly one attribute (e.g. formulas)
+   */
+  public String getBulkReadableAttributeName() {
+    String attributeName = getAttributeName();
+    return attributeName == null ? null : Eval.find(attributeName).readAttributeName(attributeName);
+  }
+
   @Override
   // TODO Check for alternative solution to var-args
   public Object getValue(ObservationBean<?, ?> parentObservation, MBeanServerConnection data, Map<String, ?> context,
                          Object... additionalParams)
       throws StatsCollectionFailedException {
     final ObjectInstance instance = (ObjectInstance) additionalParams[0];
-    Object measurement = readAttributeUsingPattern(data, context, instance);
+    // optional second param holds attributes of the bean already read in bulk
+    final Map<String, Object> prefetched = additionalParams.length > 1 ? (Map<String, Object>) additionalParams[1] :
+        null;
+    Object measurement = readAttributeUsingPattern(data, context, instance, prefetched);
 
     if (measurement == null) {
       return null;
@@ -272,8 +322,10 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
    * @throws StatsCollectionFailedException
    */
   private Object readAttributeUsingPattern(MBeanServerConnection mbeanServer, Map<String, ?> context,
-                                           ObjectInstance observation) throws StatsCollectionFailedException {
-    return readAttributeUsingPattern(mbeanServer, context, observation, getAttributeName(), isOptional());
+                                           ObjectInstance observation, Map<String, Object> prefetched)
+      throws StatsCollectionFailedException {
+    return readAttributeUsingPattern(mbeanServer, context, observation, getAttributeName(), isOptional(),
+                                     prefetched);
   }
 
   /**
@@ -295,10 +347,11 @@ public abstract class MBeanAttributeObservation extends AttributeObservation<MBe
    */
   private static Object readAttributeUsingPattern(final MBeanServerConnection mbeanServer, Map<String, ?> context,
                                                   final ObjectInstance discoveredObject, final String attributeName,
-                                                  boolean optional) throws StatsCollectionFailedException {
+                                                  boolean optional, Map<String, Object> prefetched)
+      throws StatsCollectionFailedException {
     try {
       // for complex attributes, special logic
-      return Eval.evaluate(mbeanServer, context, discoveredObject, attributeName, optional);
+      return Eval.evaluate(mbeanServer, context, discoveredObject, attributeName, optional, prefetched);
     } catch (Exception e) {
       LOG.error("Failed to fetch data for, objectName: " + discoveredObject.getObjectName() + ", attributeName: " +
                     attributeName + ", error: " + e.getMessage());
@@ -0,0 +1,160 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.jmx;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.relation.MBeanServerNotificationFilter;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Caches queryMBeans results per ObjectName pattern for one MBeanServerConnection. A cached result is dropped when
+ * MBeanServerNotification reports registration or unregistration of a bean matching the pattern, so beans are not
+ * queried again in every interval. Since notifications of remote connections can get lost, results are also
+ * refreshed every FULL_REFRESH_INTERVAL_MS. If listener can't be registered, every call queries the server.
+ * Caches of closed connections should be dropped with {@link #release(MBeanServerConnection)}.
+ */
+public final class MBeanDiscoveryCache implements NotificationListener {
+  private static final Log LOG = LogFactory.getLog(MBeanDiscoveryCache.class);
+  private static final long FULL_REFRESH_INTERVAL_MS = 10 * 60 * 1000;
+
+  // connections are replaced on reconnect, weak keys let caches of dead connections go away; caches must not
+  // reference their connection strongly, otherwise the key is always reachable from the value
+  private static final Map<MBeanServerConnection, MBeanDiscoveryCache> CACHES =
+      new WeakHashMap<MBeanServerConnection, MBeanDiscoveryCache>();
+
+  private final WeakReference<MBeanServerConnection> connectionRef;
+  private final boolean listening;
+  private final ConcurrentMap<ObjectName, Entry> entries = new ConcurrentHashMap<ObjectName, Entry>();
+
+  private MBeanDiscoveryCache(MBeanServerConnection connection) {
+    this.connectionRef = new WeakReference<MBeanServerConnection>(connection);
+    this.listening = register(connection);
+  }
+
+  public static MBeanDiscoveryCache forConnection(MBeanServerConnection connection) {
+    synchronized (CACHES) {
+      MBeanDiscoveryCache cache = CACHES.get(connection);
+      if (cache == null) {
+        cache = new MBeanDiscoveryCache(connection);
+        CACHES.put(connection, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Drops the cache of given connection and unregisters its listener. Should be called before the connection is
+   * closed or replaced.
+   */
+  public static void release(MBeanServerConnection connection) {
+    MBeanDiscoveryCache cache;
+    synchronized (CACHES) {
+      cache = CACHES.remove(connection);
+    }
+    if (cache == null || !cache.listening) {
+      return;
+    }
+    try {
+      connection.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, cache);
+    } catch (Exception e) {
+      // connection may be already dead, nothing else to clean up in that case
+      LOG.debug("Can't remove MBean registrations listener: " + e.getMessage());
+    }
+  }
+
+  private boolean register(MBeanServerConnection connection) {
+    try {
+      MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+      filter.enableAllObjectNames();
+      connection.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this, filter, null);
+      return true;
+    } catch (Exception e) {
+      LOG.warn("Can't listen for MBean registrations, beans will be queried in every collection: " + e.getMessage());
+      return false;
+    }
+  }
+
+  public Set<ObjectInstance> queryMBeans(ObjectName pattern) throws IOException {
+    MBeanServerConnection connection = connectionRef.get();
+    if (connection == null) {
+      throw new IOException("MBean server connection was already closed");
+    }
+    if (!listening) {
+      JmxRoundTripStats.mbeanQuery();
+      return connection.queryMBeans(pattern, null);
+    }
+
+    long now = System.currentTimeMillis();
+    Entry entry = entries.get(pattern);
+    if (entry != null && entry.instances != null && !entry.invalidated &&
+        now - entry.queryTime < FULL_REFRESH_INTERVAL_MS) {
+      JmxRoundTripStats.mbeanQuerySaved();
+      return entry.instances;
+    }
+
+    // entry is put before querying, so notification arriving while query is running invalidates it
+    Entry fresh = new Entry(now);
+    entries.put(pattern, fresh);
+    JmxRoundTripStats.mbeanQuery();
+    Set<ObjectInstance> instances = Collections.unmodifiableSet(connection.queryMBeans(pattern, null));
+    fresh.instances = instances;
+    return instances;
+  }
+
+  @Override
+  public void handleNotification(Notification notification, Object handback) {
+    if (!(notification instanceof MBeanServerNotification)) {
+      return;
+    }
+    ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+    for (Map.Entry<ObjectName, Entry> entry : entries.entrySet()) {
+      if (entry.getKey().apply(name)) {
+        entry.getValue().invalidated = true;
+      }
+    }
+  }
+
+  private static final class Entry {
+    private final long queryTime;
+    private volatile Set<ObjectInstance> instances;
+    private volatile boolean invalidated;
+
+    private Entry(long queryTime) {
+      this.queryTime = queryTime;
+    }
+  }
+}
@@ -24,10 +24,13 @@ import org.eclipse.collections.impl.map.mutable.UnifiedMap;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectInstance;
@@ -66,6 +69,8 @@ public class MBeanObservation extends ObservationBean<MBeanAttributeObservation,
 
   private Name name;
   private String objectName;
+  // distinct attribute names read by attribute observations, lazily resolved
+  private volatile String[] bulkReadableAttributes;
 
   private static final class Name {
     private final String originalName;
@@ -188,7 +193,8 @@ public class MBeanObservation extends ObservationBean<MBeanAttributeObservation,
     // ObjectName discoveredObject = objectName;
     try {
       MBeanServerConnection mbeanServer = observationContext.getConnection();
-      Set<ObjectInstance> objects = mbeanServer.queryMBeans(name.getObjectNamePattern(), null);
+      Set<ObjectInstance> objects = MBeanDiscoveryCache.forConnection(mbeanServer)
+          .queryMBeans(name.getObjectNamePattern());
       // first find any beans matching our objectName (such objectName can contain wildcard characters)
 
       Set<ObservationBeanDump> res = new HashSet<ObservationBeanDump>();
@@ -217,10 +223,11 @@ public class MBeanObservation extends ObservationBean<MBeanAttributeObservation,
     ObservationBeanDump stats = new ObservationBeanDump(ObservationBeanName
                                                             .mkBean(name, discoveredObject.getObjectName()
                                                                 .getKeyPropertyList()));
+    Map<String, Object> prefetched = prefetchAttributes(mbeanServer, discoveredObject);
     for (MBeanAttributeObservation attributeObservation : getAttributeObservations()) {
       Object value = null;
       try {
-        value = attributeObservation.getValue(this, mbeanServer, context, discoveredObject);
+        value = attributeObservation.getValue(this, mbeanServer, context, discoveredObject, prefetched);
       } catch (StatsCollectionFailedException e) {
         if (LOG.isDebugEnabled()) {
           LOG.debug("Failed to extract stats value, name: " + name + ", attribute name: " +
@@ -249,6 +256,51 @@ public class MBeanObservation extends ObservationBean<MBeanAttributeObservation,
     return stats;
   }
 
+  /**
+   * Reads all plain attributes of the bean with a single getAttributes call instead of one round trip per attribute.
+   * Attributes missing from the result (e.g. failed to read) are later read one by one, so their errors are reported
+   * the same way as before.
+   *
+   * @return attribute values by name or null if bulk read doesn't pay off or failed
+   */
+  private Map<String, Object> prefetchAttributes(MBeanServerConnection mbeanServer, ObjectInstance discoveredObject) {
+    String[] attributeNames = getBulkReadableAttributes();
+    if (attributeNames.length < 2) {
+      return null;
+    }
+    try {
+      AttributeList attributes = mbeanServer.getAttributes(discoveredObject.getObjectName(), attributeNames);
+      JmxRoundTripStats.bulkAttributeRead();
+      Map<String, Object> prefetched = new UnifiedMap<String, Object>(attributes.size());
+      for (Object attribute : attributes) {
+        prefetched.put(((Attribute) attribute).getName(), ((Attribute) attribute).getValue());
+      }
+      return prefetched;
+    } catch (Exception e) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Bulk read of attributes failed, object name: " + discoveredObject.getObjectName() +
+                      ", message: " + e.getMessage());
+      }
+      return null;
+    }
+  }
+
+  private String[] getBulkReadableAttributes() {
+    String[] attributeNames = bulkReadableAttributes;
+    if (attributeNames == null) {
+      Set<String> names = new LinkedHashSet<String>();
+      for (MBeanAttributeObservation attributeObservation : getAttributeObservations()) {
+        String attributeName = attributeObservation.getBulkReadableAttributeName();
+        if (attributeName != null) {
+          names.add(attributeName);
+        }
+      }
+      attributeNames = names.toArray(new String[names.size()]);
+      bulkReadableAttributes = attributeNames;
+    }
+    return attributeNames;
+  }
+
   @Override
   public void read(ObservationDefinitionConfig observationDefinition) throws ConfigurationFailedException {
     String name = observationDefinition.getName();
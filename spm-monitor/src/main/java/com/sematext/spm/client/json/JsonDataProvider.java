@@ -20,6 +20,7 @@
 package com.sematext.spm.client.json;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.smile.SmileFactory;
@@ -32,6 +33,9 @@ import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import com.sematext.spm.client.http.HttpDataProvider;
 import com.sematext.spm.client.http.HttpDataSourceAuthentication;
@@ -44,6 +48,11 @@ public class JsonDataProvider extends HttpDataProvider<Object> {
 
   private CustomJsonHandler<Object> customJsonHandler;
 
+  // paths read from this data source by its consumers; null automaton means full documents are read
+  private final Set<String> dataNodePaths = new HashSet<String>();
+  private boolean fullDocumentRequired = false;
+  private volatile JsonPathAutomaton pathAutomaton;
+
   public JsonDataProvider(boolean https, String host, String port, String dataRequestUrl,
                           HttpDataSourceAuthentication auth, boolean useSmile) {
     super(https, host, port, dataRequestUrl, auth);
@@ -79,6 +88,11 @@ public class JsonDataProvider extends HttpDataProvider<Object> {
         TypeReference<Object> typeRef = new TypeReference<Object>() {
         };
 
+        JsonPathAutomaton automaton = pathAutomaton;
+        if (customJsonHandler == null && automaton != null) {
+          return readPaths(is, useSmile ? JSON_MAPPER_SMILE : JSON_MAPPER_STANDARD, automaton);
+        }
+
         if (useSmile) {
           if (customJsonHandler == null) {
             return JSON_MAPPER_SMILE.readValue(is, typeRef);
@@ -105,6 +119,42 @@ public class JsonDataProvider extends HttpDataProvider<Object> {
     return null;
   }
 
+  private static Object readPaths(InputStream is, ObjectMapper mapper, JsonPathAutomaton automaton)
+      throws IOException {
+    JsonParser parser = mapper.getFactory().createParser(is);
+    try {
+      return automaton.read(parser);
+    } finally {
+      parser.close();
+    }
+  }
+
+  /**
+   * Registers paths (as used with {@link JsonUtil#findMatchingPaths(Object, String)}) some consumer of this data
+   * source reads. As long as all consumers register their paths, responses are streamed through
+   * {@link JsonPathAutomaton} and only the parts of the document those paths can reach are kept in memory.
+   *
+   * @param paths paths to register, null if the consumer needs full documents
+   * @return true if parts of the document read from now on changed, meaning already fetched data may lack them
+   */
+  public synchronized boolean registerDataNodePaths(Collection<String> paths) {
+    if (fullDocumentRequired) {
+      return false;
+    }
+    if (paths == null) {
+      fullDocumentRequired = true;
+      boolean wasPruning = pathAutomaton != null;
+      pathAutomaton = null;
+      return wasPruning;
+    }
+    if (!dataNodePaths.addAll(paths)) {
+      return false;
+    }
+    JsonPathAutomaton automaton = JsonPathAutomaton.compile(dataNodePaths);
+    pathAutomaton = automaton.isKeepingAll() ? null : automaton;
+    return true;
+  }
+
   @Override
   protected void setHeaders(HttpRequestBase request) {
     if (useSmile) {
@@ -21,6 +21,7 @@ package com.sematext.spm.client.json;
 
 import org.eclipse.collections.impl.map.mutable.UnifiedMap;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -97,6 +98,28 @@ public final class JsonDataSourceCachedFactory {
                                                                                        String dataRequestUrl,
                                                                                        boolean async, boolean useSmile,
                                                                                        String customJsonHandlerClassName) {
+    return getDataSource(jsonServerInfo, dataRequestUrl, async, useSmile, customJsonHandlerClassName, null);
+  }
+
+  /**
+   * @param dataNodePaths paths the caller will read from fetched data, null if it needs full documents. Data sources
+   *                      whose all callers provide paths keep only the parts of responses those paths can reach
+   */
+  public static CachableReliableDataSourceBase<Object, JsonDataProvider> getDataSource(
+      ServerInfo jsonServerInfo, String dataRequestUrl, boolean async, boolean useSmile,
+      String customJsonHandlerClassName, Collection<String> dataNodePaths) {
+    CachableReliableDataSourceBase<Object, JsonDataProvider> ds = getOrCreateDataSource(jsonServerInfo,
+        dataRequestUrl, async, useSmile, customJsonHandlerClassName);
+    if (ds != null && ds.getDataProvider().registerDataNodePaths(dataNodePaths)) {
+      // data fetched so far may lack parts which are needed from now on
+      ds.invalidate();
+    }
+    return ds;
+  }
+
+  private static CachableReliableDataSourceBase<Object, JsonDataProvider> getOrCreateDataSource(
+      ServerInfo jsonServerInfo, String dataRequestUrl, boolean async, boolean useSmile,
+      String customJsonHandlerClassName) {
     if (dataRequestUrl == null) {
       return null;
     }
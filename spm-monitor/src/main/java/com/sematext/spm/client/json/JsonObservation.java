@@ -38,6 +38,8 @@ public class JsonObservation extends ObservationBean<JsonAttributeObservation, O
 
   private String beanName;
   private String jsonDataNodePath;
+  // path from the config, possibly with placeholders, which jsonDataNodePath was resolved from
+  private String configDataNodePath;
   private ServerInfo jsonServerInfo;
 
   // used when instantiating a "real" JsonObservation object for some particular json bean (resulting object is not just a 
@@ -46,6 +48,7 @@ public class JsonObservation extends ObservationBean<JsonAttributeObservation, O
     super(orig, beanPathTags);
     this.beanName = beanName;
     this.jsonDataNodePath = realBeanPath;
+    this.configDataNodePath = orig.getConfigDataNodePath();
     this.jsonServerInfo = orig.getJsonServerInfo();
   }
 
@@ -98,6 +101,7 @@ public class JsonObservation extends ObservationBean<JsonAttributeObservation, O
     if (jsonDataNodePath == null || "".equals(jsonDataNodePath.toString().trim())) {
       throw new ConfigurationFailedException("JSON observation missing required attribute 'path'");
     }
+    configDataNodePath = jsonDataNodePath;
 
     readAttributeObservations(observationDefinition);
     readTagDefinitions(observationDefinition);
@@ -135,6 +139,10 @@ public class JsonObservation extends ObservationBean<JsonAttributeObservation, O
     return jsonDataNodePath;
   }
 
+  public String getConfigDataNodePath() {
+    return configDataNodePath;
+  }
+
   public ServerInfo getJsonServerInfo() {
     return jsonServerInfo;
   }
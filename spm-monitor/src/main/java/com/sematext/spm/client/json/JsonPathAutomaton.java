@@ -0,0 +1,279 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Combines all paths read from one JSON data source into a single automaton which is run over the parser token stream.
+ * Only parts of the document which some path can reach are materialized, everything else is skipped without creating
+ * any objects. Matched nodes (and nodes passed to functions or checked by bracket expressions) are kept whole, so
+ * {@link JsonUtil#findMatchingPaths(Object, String)} returns the same results on the pruned document as on the full
+ * one. Lists are never shortened, positional expressions keep working.
+ * <p/>
+ * Placeholder names don't matter for pruning, so all placeholders on the same level share one transition; the
+ * automaton is determinized eagerly and is immutable afterwards.
+ */
+public final class JsonPathAutomaton {
+  private final State start;
+
+  private JsonPathAutomaton(State start) {
+    this.start = start;
+  }
+
+  public static JsonPathAutomaton compile(Collection<String> paths) {
+    Node root = new Node();
+    for (String path : paths) {
+      addPath(root, path);
+    }
+    return new JsonPathAutomaton(new Determinizer().state(Collections.singleton(root)));
+  }
+
+  /**
+   * @return true if every document is read in full, e.g. because some path matches the root
+   */
+  public boolean isKeepingAll() {
+    return start.keepAll;
+  }
+
+  /**
+   * Reads the next value from the parser, the same way ObjectMapper would read it into untyped Object, leaving out
+   * parts no path can reach.
+   */
+  public Object read(JsonParser parser) throws IOException {
+    JsonToken token = parser.getCurrentToken() != null ? parser.getCurrentToken() : parser.nextToken();
+    if (token == null) {
+      return null;
+    }
+    return readValue(parser, token, start);
+  }
+
+  private static Object readValue(JsonParser parser, JsonToken token, State state) throws IOException {
+    if (token == JsonToken.START_OBJECT) {
+      if (state.keepAll) {
+        return parser.readValueAs(Object.class);
+      }
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken valueToken = parser.nextToken();
+        State next = state.next(name);
+        if (next == null) {
+          parser.skipChildren();
+        } else {
+          map.put(name, readValue(parser, valueToken, next));
+        }
+      }
+      return map;
+    } else if (token == JsonToken.START_ARRAY) {
+      if (state.keepAll) {
+        return parser.readValueAs(Object.class);
+      }
+      List<Object> list = new ArrayList<Object>();
+      JsonToken elementToken;
+      while ((elementToken = parser.nextToken()) != JsonToken.END_ARRAY) {
+        if (state.element == null) {
+          // keep positions of elements, only their content is dropped
+          parser.skipChildren();
+          list.add(null);
+        } else {
+          list.add(readValue(parser, elementToken, state.element));
+        }
+      }
+      return list;
+    } else {
+      return readScalar(parser, token);
+    }
+  }
+
+  private static Object readScalar(JsonParser parser, JsonToken token) throws IOException {
+    switch (token) {
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getNumberValue();
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      case VALUE_EMBEDDED_OBJECT:
+        return parser.getEmbeddedObject();
+      default:
+        return null;
+    }
+  }
+
+  private static void addPath(Node root, String path) {
+    path = path.trim();
+    if (!path.startsWith("$")) {
+      // JsonUtil will reject such path, just don't prune anything
+      root.keepAll = true;
+      return;
+    }
+
+    String[] nodes = JsonPathExpressionParser.parseNodes(path.substring(1).trim());
+    Node current = root;
+    for (String rawNode : nodes) {
+      String node = rawNode.trim();
+      if (JsonPathExpressionParser.isFunction(node)) {
+        // functions are evaluated on the whole value
+        current.keepAll = true;
+        return;
+      }
+      Node next = current.child(node);
+      if (JsonPathExpressionParser.isBracketExpression(node)) {
+        addBracketClauses(next, node);
+      }
+      current = next;
+    }
+    current.keepAll = true;
+  }
+
+  /**
+   * Bracket expression clauses are evaluated on each list element, the values they read have to be kept too.
+   */
+  private static void addBracketClauses(Node element, String node) {
+    String expressions = node.substring(2, node.length() - 1);
+    for (String expression : JsonPathExpressionParser.extractExpressions(expressions)) {
+      expression = expression.trim();
+      if (expression.equals("")) {
+        continue;
+      }
+      int indexOfEquals = expression.indexOf("=");
+      if (indexOfEquals == -1) {
+        element.keepAll = true;
+        continue;
+      }
+      Node current = element;
+      for (String clauseNode : JsonPathExpressionParser.extractExpressionClauses(
+          expression.substring(0, indexOfEquals).trim(), ".")) {
+        if (JsonPathExpressionParser.isFunction(clauseNode)) {
+          break;
+        }
+        current = current.child(clauseNode);
+      }
+      current.keepAll = true;
+    }
+  }
+
+  /**
+   * One position in the compiled paths.
+   */
+  private static final class Node {
+    private boolean keepAll;
+    private final Map<String, Node> named = new UnifiedMap<String, Node>();
+    private Node anyName;
+
+    private Node child(String node) {
+      if (JsonPathExpressionParser.isPlaceholder(node)) {
+        if (anyName == null) {
+          anyName = new Node();
+        }
+        return anyName;
+      }
+      Node child = named.get(node);
+      if (child == null) {
+        child = new Node();
+        named.put(node, child);
+      }
+      return child;
+    }
+  }
+
+  /**
+   * Set of positions a value can be reached with.
+   */
+  private static final class State {
+    private boolean keepAll;
+    private Map<String, State> named = Collections.emptyMap();
+    private State anyName;
+    private State element;
+
+    private State next(String name) {
+      State next = named.get(name);
+      return next != null ? next : anyName;
+    }
+  }
+
+  private static final class Determinizer {
+    private final Map<Set<Node>, State> states = new HashMap<Set<Node>, State>();
+
+    private State state(Set<Node> nodes) {
+      if (nodes.isEmpty()) {
+        return null;
+      }
+      State state = states.get(nodes);
+      if (state != null) {
+        return state;
+      }
+      state = new State();
+      states.put(nodes, state);
+
+      Set<Node> anyNameNodes = new HashSet<Node>();
+      Set<Node> elementNodes = new HashSet<Node>();
+      Set<String> names = new HashSet<String>();
+      for (Node node : nodes) {
+        state.keepAll |= node.keepAll;
+        if (node.anyName != null) {
+          anyNameNodes.add(node.anyName);
+          elementNodes.add(node.anyName);
+        }
+        elementNodes.addAll(node.named.values());
+        names.addAll(node.named.keySet());
+      }
+      if (state.keepAll) {
+        return state;
+      }
+
+      // in objects, names are matched literally or by placeholders; in lists, every expression applies to elements
+      if (!names.isEmpty()) {
+        state.named = new UnifiedMap<String, State>(names.size());
+        for (String name : names) {
+          Set<Node> targets = new HashSet<Node>(anyNameNodes);
+          for (Node node : nodes) {
+            Node target = node.named.get(name);
+            if (target != null) {
+              targets.add(target);
+            }
+          }
+          state.named.put(name, state(targets));
+        }
+      }
+      state.anyName = state(anyNameNodes);
+      state.element = state(elementNodes);
+      return state;
+    }
+  }
+}
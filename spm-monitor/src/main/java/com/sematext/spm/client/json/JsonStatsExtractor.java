@@ -33,7 +33,7 @@ public class JsonStatsExtractor extends StatsExtractor<JsonStatsExtractorConfig,
 
     dataSource = JsonDataSourceCachedFactory
         .getDataSource(config.getJsonServerInfo(), config.getDataRequestUrl(), config.isAsync(), config
-            .isUseSmile(), config.getJsonHandlerClass());
+            .isUseSmile(), config.getJsonHandlerClass(), config.getDataNodePaths());
   }
 
   @Override
@@ -167,6 +167,17 @@ public class JsonStatsExtractorConfig extends StatsExtractorConfig<JsonObservati
     this.jsonServerInfo = ((JsonStatsExtractorConfig) origConfig).jsonServerInfo;
   }
 
+  /**
+   * @return paths of all observations as defined in the config, read by this config from its data source
+   */
+  public Set<String> getDataNodePaths() {
+    Set<String> paths = new HashSet<String>();
+    for (JsonObservation observation : getObservations()) {
+      paths.add(observation.getConfigDataNodePath());
+    }
+    return paths;
+  }
+
   public ServerInfo getJsonServerInfo() {
     return jsonServerInfo;
   }
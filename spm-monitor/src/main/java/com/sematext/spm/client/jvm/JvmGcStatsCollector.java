@@ -29,6 +29,13 @@ import com.sematext.spm.client.*;
 public class JvmGcStatsCollector extends SingleStatsCollector {
   private static final Log LOG = LogFactory.getLog(JvmGcStatsCollector.class);
 
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("gc.collection.count")
+      .addLong("gc.collection.time")
+      .build();
+  private static final int COLLECTION_COUNT = SCHEMA.slotOf("gc.collection.count");
+  private static final int COLLECTION_TIME = SCHEMA.slotOf("gc.collection.time");
+
   private JvmGcStatsExtractor gcStatsExtractor;
   private final String appToken;
   private final String jvmName;
@@ -58,9 +65,10 @@ public class JvmGcStatsCollector extends SingleStatsCollector {
       throws StatsCollectionFailedException {
     JvmGcStatsExtractor.GcStats gcStats = gcStatsExtractor.getStats();
 
-    statValues.setMetrics(new UnifiedMap<String, Object>());
-    statValues.getMetrics().put("gc.collection.count", gcStats.getCollectionCount());
-    statValues.getMetrics().put("gc.collection.time", gcStats.getCollectionTime());
+    MetricsRow metrics = SCHEMA.newRow();
+    metrics.setNumber(COLLECTION_COUNT, gcStats.getCollectionCount());
+    metrics.setNumber(COLLECTION_TIME, gcStats.getCollectionTime());
+    statValues.setMetrics(metrics);
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put("jvm.gc", gcStats.getGcName());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
@@ -29,6 +29,13 @@ import com.sematext.spm.client.*;
 public class JvmMemoryPoolStatsCollector extends SingleStatsCollector {
   private static final Log LOG = LogFactory.getLog(JvmMemoryPoolStatsCollector.class);
 
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("pool.used")
+      .addLong("pool.max")
+      .build();
+  private static final int POOL_USED = SCHEMA.slotOf("pool.used");
+  private static final int POOL_MAX = SCHEMA.slotOf("pool.max");
+
   private JvmMemoryPoolStatsExtractor memoryPoolStatsExtractor;
   private final String appToken;
   private final String jvmName;
@@ -58,9 +65,10 @@ public class JvmMemoryPoolStatsCollector extends SingleStatsCollector {
       throws StatsCollectionFailedException {
     JvmMemoryPoolStatsExtractor.MemoryPoolStats stats = memoryPoolStatsExtractor.getStats();
 
-    statValues.setMetrics(new UnifiedMap<String, Object>());
-    statValues.getMetrics().put("pool.used", stats.getUsed());
-    statValues.getMetrics().put("pool.max", stats.getMax());
+    MetricsRow metrics = SCHEMA.newRow();
+    metrics.setNumber(POOL_USED, stats.getUsed());
+    metrics.setNumber(POOL_MAX, stats.getMax());
+    statValues.setMetrics(metrics);
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
     statValues.getTags().put("jvm.memory.pool", stats.getPoolName());
@@ -29,6 +29,13 @@ import com.sematext.spm.client.*;
 public class JvmMemoryStatsCollector extends SingleStatsCollector {
   private static final Log LOG = LogFactory.getLog(JvmMemoryStatsCollector.class);
 
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("heap.used")
+      .addLong("nonheap.used")
+      .build();
+  private static final int HEAP_USED = SCHEMA.slotOf("heap.used");
+  private static final int NONHEAP_USED = SCHEMA.slotOf("nonheap.used");
+
   private JvmMemoryStatsExtractor memoryStatsExtractor;
   private final String appToken;
   private final String jvmName;
@@ -58,9 +65,10 @@ public class JvmMemoryStatsCollector extends SingleStatsCollector {
       throws StatsCollectionFailedException {
     JvmMemoryStatsExtractor.MemoryStats memoryStats = memoryStatsExtractor.getStats();
 
-    statValues.setMetrics(new UnifiedMap<String, Object>());
-    statValues.getMetrics().put("heap.used", memoryStats.getHeapUsed());
-    statValues.getMetrics().put("nonheap.used", memoryStats.getNonHeapUsed());
+    MetricsRow metrics = SCHEMA.newRow();
+    metrics.setNumber(HEAP_USED, memoryStats.getHeapUsed());
+    metrics.setNumber(NONHEAP_USED, memoryStats.getNonHeapUsed());
+    statValues.setMetrics(metrics);
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
 
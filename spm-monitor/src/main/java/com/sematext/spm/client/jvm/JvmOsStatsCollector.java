@@ -47,6 +47,13 @@ public class JvmOsStatsCollector extends SingleStatsCollector {
 
   private static final Log LOG = LogFactory.getLog(JvmOsStatsCollector.class);
 
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("files.open")
+      .addLong("files.max")
+      .build();
+  private static final int FILES_OPEN = SCHEMA.slotOf("files.open");
+  private static final int FILES_MAX = SCHEMA.slotOf("files.max");
+
   public JvmOsStatsCollector(String appToken, String jvmName, String subType, MonitorConfig monitorConfig)
       throws StatsCollectorBadConfigurationException {
     super(Serializer.INFLUX);
@@ -84,9 +91,10 @@ public class JvmOsStatsCollector extends SingleStatsCollector {
 
     // OperatingSystem system MBean contains a dozen of additional params,
     // but we are interested only in open files handlers.
-    statValues.setMetrics(new UnifiedMap<String, Object>());
-    statValues.getMetrics().put("files.open", openFileDescriptorsCount);
-    statValues.getMetrics().put("files.max", maxFileDescriptorsCount);
+    MetricsRow metrics = SCHEMA.newRow();
+    metrics.setNumber(FILES_OPEN, openFileDescriptorsCount);
+    metrics.setNumber(FILES_MAX, maxFileDescriptorsCount);
+    statValues.setMetrics(metrics);
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
 
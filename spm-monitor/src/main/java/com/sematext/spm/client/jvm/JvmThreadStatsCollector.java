@@ -29,6 +29,17 @@ import com.sematext.spm.client.*;
 public class JvmThreadStatsCollector extends SingleStatsCollector {
   private static final Log LOG = LogFactory.getLog(JvmThreadStatsCollector.class);
 
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("threads")
+      .addLong("threads.peak")
+      .addLong("threads.deamon")
+      .addLong("threads.started.total")
+      .build();
+  private static final int THREADS = SCHEMA.slotOf("threads");
+  private static final int THREADS_PEAK = SCHEMA.slotOf("threads.peak");
+  private static final int THREADS_DAEMON = SCHEMA.slotOf("threads.deamon");
+  private static final int THREADS_STARTED_TOTAL = SCHEMA.slotOf("threads.started.total");
+
   private JvmThreadStatsExtractor threadStatsExtractor;
   private final String appToken;
   private final String jvmName;
@@ -58,11 +69,12 @@ public class JvmThreadStatsCollector extends SingleStatsCollector {
       throws StatsCollectionFailedException {
     JvmThreadStatsExtractor.ThreadStats threadStats = threadStatsExtractor.getStats();
 
-    statValues.setMetrics(new UnifiedMap<String, Object>());
-    statValues.getMetrics().put("threads", threadStats.getThreadCount());
-    statValues.getMetrics().put("threads.peak", threadStats.getPeakThreadCount());
-    statValues.getMetrics().put("threads.deamon", threadStats.getDaemonThreadCount());
-    statValues.getMetrics().put("threads.started.total", threadStats.getTotalStartedThreadCount());
+    MetricsRow metrics = SCHEMA.newRow();
+    metrics.setNumber(THREADS, threadStats.getThreadCount());
+    metrics.setNumber(THREADS_PEAK, threadStats.getPeakThreadCount());
+    metrics.setNumber(THREADS_DAEMON, threadStats.getDaemonThreadCount());
+    metrics.setNumber(THREADS_STARTED_TOTAL, threadStats.getTotalStartedThreadCount());
+    statValues.setMetrics(metrics);
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
 
@@ -19,7 +19,7 @@
  */
 package com.sematext.spm.client.metrics;
 
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.Map;
 
 import com.sematext.spm.client.Log;
@@ -37,11 +37,17 @@ import com.sematext.spm.client.attributes.MetricType;
  * - pctls the same as counters
  * - gauges are sent when the minute starts and after they change their value
  * - the rest is always sent as-is
+ * <p>
+ * Last recorded values are kept per metric slot in {@link RecordedMetricValues}, so change detection and counter
+ * accumulation don't box numbers on every collection.
  */
 public class CompressingMetricsProcessor implements MetricsProcessor {
   private static final Log LOG = LogFactory.getLog(CompressingMetricsProcessor.class);
 
-  private Map<String, Object> lastRecordedValues = new HashMap<String, Object>(100);
+  private final RecordedMetricValues lastRecordedValues = new RecordedMetricValues(100);
+
+  // slots of metrics present in currently processed stats
+  private final BitSet currentSlots = new BitSet();
 
   @Override
   public void process(MetricsProcessorContext context) {
@@ -49,6 +55,7 @@ public class CompressingMetricsProcessor implements MetricsProcessor {
     Map<String, MetricType> knownMetricTypes = context.knownMetricTypes;
     Map<String, Object> aggregatedMetrics = statValues.getMetrics();
 
+    currentSlots.clear();
     for (Map.Entry<String, Object> metric : aggregatedMetrics.entrySet()) {
       String metricName = metric.getKey();
       Object metricValue = metric.getValue();
@@ -56,19 +63,21 @@ public class CompressingMetricsProcessor implements MetricsProcessor {
         metricValue = ((AvgAggregationHolder) metricValue).getAverage();
       }
       MetricType metricType = knownMetricTypes.get(metricName);
-      Object lastRecordedValue = lastRecordedValues.get(metricName);
+      if (metricType != MetricType.COUNTER && metricType != MetricType.GAUGE && metricType != MetricType.TEXT &&
+          metricType != MetricType.OTHER && metricType != MetricType.PERCENTILE) {
+        throw new UnsupportedOperationException(
+            "Currently unsupported metric type " + metricType + " for metric " + metricName);
+      }
+
+      int slot = lastRecordedValues.slot(metricName, metricType);
+      currentSlots.set(slot);
 
       if (metricType == MetricType.COUNTER) {
-        processCounter(context.shouldFlush, metric, metricName, metricValue, metricType, lastRecordedValue);
+        processCounter(context.shouldFlush, metric, slot, metricValue);
       } else if (metricType == MetricType.GAUGE || metricType == MetricType.TEXT) {
-        processGauge(metric, metricName, metricValue, lastRecordedValue);
-      } else if (metricType == MetricType.OTHER) {
-        lastRecordedValues.put(metricName, metricValue);
-      } else if (metricType == MetricType.PERCENTILE) {
-        lastRecordedValues.put(metricName, metricValue);
+        processGauge(metric, slot, metricValue);
       } else {
-        throw new UnsupportedOperationException(
-            "Currently unsupported metric type " + metricType + " for metric " + metricName);
+        lastRecordedValues.set(slot, metricValue);
       }
     }
 
@@ -76,13 +85,11 @@ public class CompressingMetricsProcessor implements MetricsProcessor {
       // check if there are any counter metrics in lastRecordedValue that are not present in current aggregatedMetrics
       // if yes, then those metrics should be added to statValues now since flush is happening; we don't care about gauges and
       // others since they were already sent before (they don't accumulate, we don't hold off sending them until the minute ends)
-      Map<String, Object> currentMetrics = aggregatedMetrics;
-      for (Map.Entry<String, Object> metric : lastRecordedValues.entrySet()) {
-        String metricName = metric.getKey();
-        MetricType metricType = knownMetricTypes.get(metricName);
-        if ((metricType == MetricType.COUNTER || metricType == MetricType.PERCENTILE) && !currentMetrics
-            .containsKey(metricName)) {
-          currentMetrics.put(metricName, metric.getValue());
+      for (int slot = lastRecordedValues.nextRecorded(0); slot >= 0;
+           slot = lastRecordedValues.nextRecorded(slot + 1)) {
+        MetricType metricType = lastRecordedValues.getType(slot);
+        if ((metricType == MetricType.COUNTER || metricType == MetricType.PERCENTILE) && !currentSlots.get(slot)) {
+          aggregatedMetrics.put(lastRecordedValues.getName(slot), lastRecordedValues.get(slot));
         }
       }
 
@@ -91,50 +98,29 @@ public class CompressingMetricsProcessor implements MetricsProcessor {
     }
   }
 
-  public void processGauge(Map.Entry<String, Object> metric, String metricName, Object metricValue,
-                           Object lastRecordedValue) {
+  private void processGauge(Map.Entry<String, Object> metric, int slot, Object metricValue) {
     // if changed from last measurement, return it as result, otherwise set to null
-    if (metricValue != null && !metricValue.equals(lastRecordedValue)) {
-      // all ok, we'll record it
-    } else {
-      // otherwise set it to null in current metrics response
+    if (metricValue == null || lastRecordedValues.isSame(slot, metricValue)) {
       metric.setValue(null);
     }
 
-    lastRecordedValues.put(metricName, metricValue);
+    lastRecordedValues.set(slot, metricValue);
   }
 
-  public void processCounter(boolean flushMetrics, Map.Entry<String, Object> metric, String metricName,
-                             Object metricValue, MetricType metricType, Object lastRecordedValue) {
-    Object newValue = null;
-
-    if (lastRecordedValue == null && metricValue == null) {
-      // do nothing;
-    } else if (lastRecordedValue == null) {
-      newValue = metricValue;
-    } else if (metricValue == null) {
-      newValue = lastRecordedValue;
-    } else {
-      if ((metricValue instanceof Long || metricValue instanceof Integer) &&
-          (lastRecordedValue instanceof Long || lastRecordedValue instanceof Integer)) {
-        newValue = ((Number) metricValue).longValue() + ((Number) lastRecordedValue).longValue();
-      } else if ((metricValue instanceof Double || metricValue instanceof Float) &&
-          (lastRecordedValue instanceof Double || lastRecordedValue instanceof Float)) {
-        newValue = ((Number) metricValue).doubleValue() + ((Number) lastRecordedValue).doubleValue();
-      } else {
-        LOG.error("Unsupported data type of new measurement " + metricValue.getClass() +
-                      " in combination with previous measurement type " + lastRecordedValue.getClass() +
-                      " for metric of type " + metricType + ", metric name was: " + metricName);
-        newValue = lastRecordedValue;
-      }
+  private void processCounter(boolean flushMetrics, Map.Entry<String, Object> metric, int slot, Object metricValue) {
+    if (!lastRecordedValues.hasValue(slot)) {
+      lastRecordedValues.set(slot, metricValue);
+      metric.setValue(flushMetrics ? metricValue : null);
+      return;
     }
 
-    lastRecordedValues.put(metricName, newValue);
-
-    if (flushMetrics) {
-      metric.setValue(newValue);
-    } else {
-      metric.setValue(null);
+    if (metricValue != null && !lastRecordedValues.add(slot, metricValue)) {
+      Object lastRecordedValue = lastRecordedValues.get(slot);
+      LOG.error("Unsupported data type of new measurement " + metricValue.getClass() +
+                    " in combination with previous measurement type " + lastRecordedValue.getClass() +
+                    " for metric of type " + MetricType.COUNTER + ", metric name was: " + metric.getKey());
     }
+
+    metric.setValue(flushMetrics ? lastRecordedValues.get(slot) : null);
   }
 }
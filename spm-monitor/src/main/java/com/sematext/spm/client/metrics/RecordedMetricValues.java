@@ -0,0 +1,230 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.metrics;
+
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+import com.sematext.spm.client.attributes.MetricType;
+
+/**
+ * Last recorded values of one collector's metrics. Each metric name gets a slot on first use, numbers are kept
+ * unboxed in long[]/double[] arrays (with the kind of the original boxed value, so it can be restored as the same
+ * type), other values in Object[]. Slots are never released, the set of metric names of a collector is bounded by its
+ * config.
+ */
+final class RecordedMetricValues {
+  static final byte NULL = 0;
+  static final byte INT = 1;
+  static final byte LONG = 2;
+  static final byte FLOAT = 3;
+  static final byte DOUBLE = 4;
+  static final byte OBJECT = 5;
+
+  private final Map<String, Integer> slots = new UnifiedMap<String, Integer>(100);
+  private String[] names;
+  private MetricType[] types;
+  private byte[] kinds;
+  private long[] longs;
+  private double[] doubles;
+  private Object[] objects;
+  private final BitSet recorded = new BitSet();
+
+  RecordedMetricValues(int initialCapacity) {
+    int capacity = Math.max(initialCapacity, 8);
+    names = new String[capacity];
+    types = new MetricType[capacity];
+    kinds = new byte[capacity];
+    longs = new long[capacity];
+    doubles = new double[capacity];
+    objects = new Object[capacity];
+  }
+
+  /**
+   * @return slot of the metric, created if metric wasn't seen before
+   */
+  int slot(String name, MetricType type) {
+    Integer slot = slots.get(name);
+    if (slot == null) {
+      slot = slots.size();
+      if (slot == names.length) {
+        grow();
+      }
+      names[slot] = name;
+      slots.put(name, slot);
+    }
+    types[slot] = type;
+    return slot;
+  }
+
+  String getName(int slot) {
+    return names[slot];
+  }
+
+  MetricType getType(int slot) {
+    return types[slot];
+  }
+
+  /**
+   * @return true if a non-null value was recorded since the last {@link #clear()}
+   */
+  boolean hasValue(int slot) {
+    return recorded.get(slot) && kinds[slot] != NULL;
+  }
+
+  /**
+   * @return index of the first slot with recorded value, starting from fromSlot, or -1
+   */
+  int nextRecorded(int fromSlot) {
+    return recorded.nextSetBit(fromSlot);
+  }
+
+  void set(int slot, Object value) {
+    byte kind = kindOf(value);
+    switch (kind) {
+      case INT:
+      case LONG:
+        longs[slot] = ((Number) value).longValue();
+        objects[slot] = null;
+        break;
+      case FLOAT:
+      case DOUBLE:
+        doubles[slot] = ((Number) value).doubleValue();
+        objects[slot] = null;
+        break;
+      default:
+        objects[slot] = value;
+    }
+    kinds[slot] = kind;
+    recorded.set(slot);
+  }
+
+  /**
+   * Adds the value to recorded one, integer types are summed as long, floating point types as double.
+   *
+   * @return false if recorded value and the value can't be summed (recorded value is left as is)
+   */
+  boolean add(int slot, Object value) {
+    byte kind = kindOf(value);
+    byte recordedKind = kinds[slot];
+    if (isIntegral(kind) && isIntegral(recordedKind)) {
+      longs[slot] += ((Number) value).longValue();
+      kinds[slot] = LONG;
+      return true;
+    } else if (isFloatingPoint(kind) && isFloatingPoint(recordedKind)) {
+      doubles[slot] += ((Number) value).doubleValue();
+      kinds[slot] = DOUBLE;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Same as value.equals(recordedValue) for non-null value, without boxing the recorded value.
+   */
+  boolean isSame(int slot, Object value) {
+    if (!recorded.get(slot)) {
+      return false;
+    }
+    byte kind = kindOf(value);
+    if (kind != kinds[slot]) {
+      return false;
+    }
+    switch (kind) {
+      case INT:
+      case LONG:
+        return longs[slot] == ((Number) value).longValue();
+      case FLOAT:
+      case DOUBLE:
+        // Float and Double equals compare bits, NaN equals NaN and 0.0 doesn't equal -0.0
+        return Double.doubleToLongBits(doubles[slot]) == Double.doubleToLongBits(((Number) value).doubleValue());
+      case OBJECT:
+        return value.equals(objects[slot]);
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return recorded value boxed to the type it was recorded with
+   */
+  Object get(int slot) {
+    if (!recorded.get(slot)) {
+      return null;
+    }
+    switch (kinds[slot]) {
+      case INT:
+        return Integer.valueOf((int) longs[slot]);
+      case LONG:
+        return Long.valueOf(longs[slot]);
+      case FLOAT:
+        return Float.valueOf((float) doubles[slot]);
+      case DOUBLE:
+        return Double.valueOf(doubles[slot]);
+      case OBJECT:
+        return objects[slot];
+      default:
+        return null;
+    }
+  }
+
+  void clear() {
+    for (int slot = recorded.nextSetBit(0); slot >= 0; slot = recorded.nextSetBit(slot + 1)) {
+      objects[slot] = null;
+    }
+    recorded.clear();
+  }
+
+  private void grow() {
+    int capacity = names.length * 2;
+    names = Arrays.copyOf(names, capacity);
+    types = Arrays.copyOf(types, capacity);
+    kinds = Arrays.copyOf(kinds, capacity);
+    longs = Arrays.copyOf(longs, capacity);
+    doubles = Arrays.copyOf(doubles, capacity);
+    objects = Arrays.copyOf(objects, capacity);
+  }
+
+  static byte kindOf(Object value) {
+    if (value == null) {
+      return NULL;
+    } else if (value instanceof Long) {
+      return LONG;
+    } else if (value instanceof Double) {
+      return DOUBLE;
+    } else if (value instanceof Integer) {
+      return INT;
+    } else if (value instanceof Float) {
+      return FLOAT;
+    }
+    return OBJECT;
+  }
+
+  private static boolean isIntegral(byte kind) {
+    return kind == INT || kind == LONG;
+  }
+
+  private static boolean isFloatingPoint(byte kind) {
+    return kind == FLOAT || kind == DOUBLE;
+  }
+}
@@ -19,6 +19,7 @@
  */
 package com.sematext.spm.client.observation;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -105,7 +106,8 @@ public class JsonExpressionFunction implements CalculationFunction {
 
   protected CachableReliableDataSourceBase<Object, JsonDataProvider> getDataSource(String url, boolean useSmile) {
     // can't be async since we need the result right away; no support for custom json handlers for json expressions yet
-    return JsonDataSourceCachedFactory.getDataSource(parentObservation.getJsonServerInfo(), url, false, useSmile, null);
+    return JsonDataSourceCachedFactory.getDataSource(parentObservation.getJsonServerInfo(), url, false, useSmile, null,
+                                                     Collections.singleton(jsonDataNodePath));
   }
 
   protected Object calculate() {
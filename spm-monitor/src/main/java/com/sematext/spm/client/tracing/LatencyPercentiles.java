@@ -0,0 +1,72 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing;
+
+import java.io.File;
+import java.util.Map;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.MonitorUtil;
+import com.sematext.spm.client.tracing.agent.stats.HistogramSnapshot;
+import com.sematext.spm.client.util.PercentileUtils;
+import com.sematext.spm.client.util.StringUtils;
+
+/**
+ * Turns latency histogram of a single interval into percentile metrics named like
+ * {@link PercentileUtils#getPctlToNameMap(String, String)} names them, plus max.
+ */
+final class LatencyPercentiles {
+  private static final Log LOG = LogFactory.getLog(LatencyPercentiles.class);
+
+  static final String PERCENTILES_PROPERTY = "TRACING_LATENCY_PERCENTILES";
+  private static final String DEFAULT_PERCENTILES = "50, 90, 99";
+
+  private final Map<Long, String> pctlsToNames;
+  private final String maxName;
+
+  LatencyPercentiles(File propsFile, String baseMetricName) {
+    this(StringUtils.removeQuotes(MonitorUtil.loadMonitorProperties(propsFile)
+                                      .getProperty(PERCENTILES_PROPERTY, DEFAULT_PERCENTILES)), baseMetricName);
+  }
+
+  LatencyPercentiles(String definition, String baseMetricName) {
+    Map<Long, String> names;
+    try {
+      names = PercentileUtils.getPctlToNameMap(definition, baseMetricName);
+    } catch (RuntimeException e) {
+      LOG.warn(PERCENTILES_PROPERTY + " property has wrong value: " + definition + ", using default value: " +
+                   DEFAULT_PERCENTILES + ".", e);
+      names = PercentileUtils.getPctlToNameMap(DEFAULT_PERCENTILES, baseMetricName);
+    }
+    this.pctlsToNames = names;
+    this.maxName = baseMetricName + ".max";
+  }
+
+  void append(HistogramSnapshot latency, Map<String, Object> metrics) {
+    if (latency.getCount() == 0) {
+      return;
+    }
+    for (Map.Entry<Long, String> pctl : pctlsToNames.entrySet()) {
+      metrics.put(pctl.getValue(), latency.getValueAtPercentile(pctl.getKey()));
+    }
+    metrics.put(maxName, latency.getMax());
+  }
+}
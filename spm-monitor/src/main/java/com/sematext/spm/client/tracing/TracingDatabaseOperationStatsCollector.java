@@ -39,6 +39,7 @@ public class TracingDatabaseOperationStatsCollector extends MultipleStatsCollect
   private final String subType;
   private final File propsFile;
   private final String finalJvmName;
+  private final LatencyPercentiles latencyPercentiles;
 
   public TracingDatabaseOperationStatsCollector(Serializer serializer, String appToken, String jvmName,
                                                 String subType) {
@@ -53,6 +54,7 @@ public class TracingDatabaseOperationStatsCollector extends MultipleStatsCollect
     }
 
     this.propsFile = MonitorUtil.fetchSpmMonitorPropertiesFileObject(appToken, jvmName, subType);
+    this.latencyPercentiles = new LatencyPercentiles(propsFile, "database.ops.latency");
   }
 
   @Override
@@ -65,6 +67,7 @@ public class TracingDatabaseOperationStatsCollector extends MultipleStatsCollect
     statValues.setMetrics(new UnifiedMap<String, Object>());
     statValues.getMetrics().put("database.ops", s.count());
     statValues.getMetrics().put("database.ops.time", s.duration());
+    latencyPercentiles.append(s.latency(), statValues.getMetrics());
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
     statValues.getTags().put("tracing.db.operation.db", s.getId().getDatabase());
@@ -39,6 +39,7 @@ public class TracingExternalCallStatsCollector extends MultipleStatsCollector<Ex
   private final String subType;
   private final File propsFile;
   private final String finalJvmName;
+  private final LatencyPercentiles latencyPercentiles;
 
   public TracingExternalCallStatsCollector(Serializer serializer, String appToken, String jvmName, String subType) {
     super(serializer);
@@ -52,6 +53,7 @@ public class TracingExternalCallStatsCollector extends MultipleStatsCollector<Ex
     }
 
     this.propsFile = MonitorUtil.fetchSpmMonitorPropertiesFileObject(appToken, jvmName, subType);
+    this.latencyPercentiles = new LatencyPercentiles(propsFile, "external.call.latency");
   }
 
   @Override
@@ -64,6 +66,7 @@ public class TracingExternalCallStatsCollector extends MultipleStatsCollector<Ex
     statValues.setMetrics(new UnifiedMap<String, Object>());
     statValues.getMetrics().put("external.call.duration", call.duration());
     statValues.getMetrics().put("external.calls.count", call.callsCount());
+    latencyPercentiles.append(call.latency(), statValues.getMetrics());
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
     statValues.getTags().put("tracing.external.call.destination", call.dstHostname());
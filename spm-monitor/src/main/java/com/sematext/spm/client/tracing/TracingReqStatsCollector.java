@@ -53,6 +53,7 @@ public class TracingReqStatsCollector extends MultipleStatsCollector<RequestMetr
   private final MetricsProcessorContext context;
   private final DecideFlushMetricsProcessor decideFlushProcessor;
   private final PercentilesMetricsProcessor pctlsProcessor;
+  private final LatencyPercentiles latencyPercentiles;
 
   public TracingReqStatsCollector(Serializer serializer, String appToken, String jvmName, String subType,
                                   MonitorConfig monitorConfig) {
@@ -67,6 +68,7 @@ public class TracingReqStatsCollector extends MultipleStatsCollector<RequestMetr
     }
 
     this.propsFile = MonitorUtil.fetchSpmMonitorPropertiesFileObject(appToken, jvmName, subType);
+    this.latencyPercentiles = new LatencyPercentiles(propsFile, "requests.latency");
 
     this.decideFlushProcessor = new DecideFlushMetricsProcessor(monitorConfig.getMonitorCollectInterval());
     this.pctlsProcessor = new PercentilesMetricsProcessor();
@@ -94,6 +96,7 @@ public class TracingReqStatsCollector extends MultipleStatsCollector<RequestMetr
     statValues.setMetrics(new UnifiedMap<String, Object>());
     statValues.getMetrics().put("requests.count", count);
     statValues.getMetrics().put("requests.time", duration);
+    latencyPercentiles.append(s.getLatency(), statValues.getMetrics());
     statValues.setTags(new UnifiedMap<String, String>());
     statValues.getTags().put(GenericExtractor.JVM_NAME_TAG, finalJvmName);
     statValues.getTags().put("tracing.request", s.getId());
@@ -24,6 +24,8 @@ import java.util.concurrent.atomic.AtomicLong;
 import com.sematext.spm.client.attributes.RealCounterValueHolder;
 import com.sematext.spm.client.tracing.agent.config.ServiceLocator;
 import com.sematext.spm.client.tracing.agent.stats.DiffCounterVar;
+import com.sematext.spm.client.tracing.agent.stats.HistogramVar;
+import com.sematext.spm.client.tracing.agent.stats.LogLinearHistogramVar;
 import com.sematext.spm.client.tracing.agent.stats.MutableVarProvider;
 import com.sematext.spm.client.tracing.agent.stats.StatisticsView;
 import com.sematext.spm.client.tracing.agent.stats.TracingStatistics;
@@ -65,6 +67,11 @@ public final class TracingStatsExtractors {
       }
       throw new IllegalArgumentException("Counter of type '" + klass + "' is not implemented.");
     }
+
+    @Override
+    public HistogramVar newHistogram() {
+      return new LogLinearHistogramVar();
+    }
   };
 
   public static StatisticsView callStatisticsView() {
@@ -0,0 +1,327 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.unlogger;
+
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.unlogger.agg.Aggregate;
+import com.sematext.spm.client.unlogger.agg.MergeableAggregate;
+import com.sematext.spm.client.unlogger.agg.ResultAggregator;
+import com.sematext.spm.client.unlogger.agg.SumAggregator;
+import com.sematext.spm.client.unlogger.utils.UnloggerThreadFactory;
+import com.sematext.spm.client.unlogger.utils.UnloggerThreadFactory.NamedRunnable;
+
+/**
+ * Moves log lines from instrumented threads to the aggregation thread. Bounded and lossy by design, instrumented code
+ * never waits and the memory used doesn't depend on the load:
+ * <ul>
+ * <li>lines of sections aggregated only by {@link SumAggregator} are pre-aggregated in the instrumented thread, the
+ * aggregation thread merges per-thread aggregates into the slice, so calls with the same group by key cost one map
+ * lookup and no publishing</li>
+ * <li>other lines are published to a fixed size {@link LogLineRingBuffer}, lines which don't fit are dropped</li>
+ * <li>slice keeps at most {@link #MAX_SLICE_LINES} ungrouped lines and {@link #MAX_SLICE_GROUPS} groups between two
+ * collections, the rest is dropped</li>
+ * </ul>
+ * Dropped lines are counted and reported in the log at most once a minute.
+ */
+final class AggregationFlow implements LogLineCollector, NamedRunnable {
+  private static final Log LOG = LogFactory.getLog(AggregationFlow.class);
+
+  private static final ExecutorService EXECUTOR_SERVICE = Executors.newCachedThreadPool(new UnloggerThreadFactory(
+      "unlogger-agg"));
+
+  static final int RING_BUFFER_CAPACITY = 16384;
+  static final int MAX_LOCAL_GROUPS = 1024;
+  static final int MAX_SLICE_LINES = 65536;
+  static final int MAX_SLICE_GROUPS = 65536;
+
+  private static final long ONE_SECOND = 1000;
+  private static final long DROPS_REPORT_INTERVAL_MS = 60 * ONE_SECOND;
+
+  private static final Collection<LogLine> NO_UNGROUPED = Collections.emptyList();
+
+  private final String name;
+  private final long pumpingDelay;
+
+  // read by instrumented threads, written by the configuring thread
+  private final Map<String, Section> sections = new ConcurrentHashMap<String, Section>();
+
+  // We use one global buffer per collector
+  // to maintain global order from all pointcuts
+  private final LogLineRingBuffer aggregateStream;
+
+  private final Queue<LocalAggregation> localAggregations = new ConcurrentLinkedQueue<LocalAggregation>();
+  private final ThreadLocal<LocalAggregation> localAggregation = new ThreadLocal<LocalAggregation>() {
+    @Override
+    protected LocalAggregation initialValue() {
+      LocalAggregation aggregation = new LocalAggregation(Thread.currentThread());
+      localAggregations.add(aggregation);
+      return aggregation;
+    }
+  };
+
+  private final AtomicLong droppedInSlice = new AtomicLong();
+  private long lastReportedDrops = 0;
+  private long lastDropsReportTime = 0;
+
+  private final Slice slice = new Slice();
+
+  AggregationFlow(String name, long pumpingDelay, int ringBufferCapacity) {
+    this.name = name;
+    this.pumpingDelay = pumpingDelay;
+    this.aggregateStream = new LogLineRingBuffer(ringBufferCapacity);
+  }
+
+  public static AggregationFlow make(String name) {
+    // Due to profiling 0.1s it is compomise between size of buffer
+    // of unaggregated events and overheads of threads wakeups, etc.
+    return new AggregationFlow(name, ONE_SECOND / 10, RING_BUFFER_CAPACITY);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  private class Slice {
+
+    private final List<LogLine> ungrouped = new FastList<LogLine>();
+    private final Map<Object, Aggregate> grouped = new UnifiedMap<Object, Aggregate>();
+
+    public synchronized void log(LogLineRingBuffer aggregateStream) {
+      for (LogLine line = aggregateStream.poll();
+        //
+           line != null;
+        //
+           line = aggregateStream.poll()) {
+
+        Collection<? extends ResultAggregator> aggregators = aggregatorsFor(line.getName());
+        if (aggregators == null) {
+          if (ungrouped.size() < MAX_SLICE_LINES) {
+            ungrouped.add(line);
+          } else {
+            droppedInSlice.incrementAndGet();
+          }
+          continue;
+        }
+        if (ungrouped.size() >= MAX_SLICE_LINES || grouped.size() >= MAX_SLICE_GROUPS) {
+          // aggregators could add to any of them
+          droppedInSlice.incrementAndGet();
+          continue;
+        }
+        for (ResultAggregator aggregator : aggregators) {
+          aggregator.aggregate(line, ungrouped, grouped);
+        }
+      }
+    }
+
+    private Collection<? extends ResultAggregator> aggregatorsFor(String sectionName) {
+      Section section = sections.get(sectionName);
+      return section != null ? section.aggregators : null;
+    }
+
+    public synchronized void merge(Map<Object, Aggregate> partial) {
+      for (Map.Entry<Object, Aggregate> entry : partial.entrySet()) {
+        Aggregate existing = grouped.get(entry.getKey());
+        if (existing != null) {
+          ((MergeableAggregate) existing).merge(entry.getValue());
+        } else if (grouped.size() < MAX_SLICE_GROUPS) {
+          grouped.put(entry.getKey(), entry.getValue());
+        } else {
+          droppedInSlice.incrementAndGet();
+        }
+      }
+    }
+
+    public synchronized Collection<LogLine> get() {
+      Collection<LogLine> res = new FastList<LogLine>();
+      res.addAll(ungrouped);
+
+      for (Aggregate aggregate : grouped.values()) {
+        res.add(aggregate.toOut());
+      }
+
+      ungrouped.clear();
+      grouped.clear();
+      return res;
+    }
+  }
+
+  /**
+   * Aggregates of one instrumented thread. Lock is taken by its thread on every line and by the aggregation thread once
+   * per pumping cycle, so it is practically uncontended.
+   */
+  private static final class LocalAggregation {
+    private final WeakReference<Thread> owner;
+    private Map<Object, Aggregate> grouped = new UnifiedMap<Object, Aggregate>();
+
+    private LocalAggregation(Thread owner) {
+      this.owner = new WeakReference<Thread>(owner);
+    }
+
+    /**
+     * @return false if there are too many groups already and line should be published as is
+     */
+    synchronized boolean aggregate(LogLine line, Collection<? extends ResultAggregator> aggregators) {
+      if (grouped.size() >= MAX_LOCAL_GROUPS) {
+        return false;
+      }
+      for (ResultAggregator aggregator : aggregators) {
+        aggregator.aggregate(line, NO_UNGROUPED, grouped);
+      }
+      return true;
+    }
+
+    synchronized Map<Object, Aggregate> drain() {
+      if (grouped.isEmpty()) {
+        return null;
+      }
+      Map<Object, Aggregate> res = grouped;
+      grouped = new UnifiedMap<Object, Aggregate>();
+      return res;
+    }
+
+    boolean isOwnerAlive() {
+      Thread thread = owner.get();
+      return thread != null && thread.isAlive();
+    }
+  }
+
+  protected Collection<LogLine> getSlice() {
+    return slice.get();
+  }
+
+  @Override
+  public void log(LogLine line) {
+    Section section = sections.get(line.getName());
+    if (section != null && section.preAggregated && localAggregation.get().aggregate(line, section.aggregators)) {
+      return;
+    }
+    aggregateStream.publish(line);
+  }
+
+  @Override
+  public void log(Collection<? extends LogLine> lines) {
+    for (LogLine line : lines) {
+      log(line);
+    }
+  }
+
+  public synchronized void start() {
+    EXECUTOR_SERVICE.execute(this);
+  }
+
+  protected synchronized void addAggregators(String sectionName, Collection<? extends ResultAggregator> aggregators) {
+    boolean mergeable = !aggregators.isEmpty();
+    for (ResultAggregator aggregator : aggregators) {
+      mergeable &= aggregator instanceof SumAggregator;
+    }
+    sections.put(sectionName, new Section(aggregators, mergeable));
+  }
+
+  long getDroppedCount() {
+    return aggregateStream.getDroppedCount() + droppedInSlice.get();
+  }
+
+  /**
+   * Moves everything published and pre-aggregated so far to the slice. Called by the aggregation thread.
+   */
+  void pump() {
+    slice.log(aggregateStream);
+
+    Iterator<LocalAggregation> iter = localAggregations.iterator();
+    while (iter.hasNext()) {
+      LocalAggregation local = iter.next();
+      // check before drain, so lines logged by thread right before it died are not lost
+      boolean ownerAlive = local.isOwnerAlive();
+      Map<Object, Aggregate> partial = local.drain();
+      if (partial != null) {
+        slice.merge(partial);
+      }
+      if (!ownerAlive) {
+        iter.remove();
+      }
+    }
+  }
+
+  private void reportDrops() {
+    long now = System.currentTimeMillis();
+    if (now - lastDropsReportTime < DROPS_REPORT_INTERVAL_MS) {
+      return;
+    }
+    long drops = getDroppedCount();
+    if (drops > lastReportedDrops) {
+      LOG.warn("Dropped " + (drops - lastReportedDrops) + " log lines of " + name + " (" + drops + " in total), " +
+                   "instrumented methods are called faster than they can be aggregated");
+      lastReportedDrops = drops;
+    }
+    lastDropsReportTime = now;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        pump();
+        reportDrops();
+        // No blocking queue here to minimize influence to monitored code.
+        // So, the monitored code publishes information from pointcuts
+        // to the ring buffer (or aggregates it locally) without waiting.
+        // Due to some "pumping" periods the aggregation thread is woken up
+        // and performs aggregation, sooner if the buffer is filling up.
+        if (aggregateStream.size() < aggregateStream.capacity() / 2) {
+          Thread.sleep(pumpingDelay);
+        }
+      }
+    } catch (Exception e) {
+      LOG.error("Aggregation interrupted for -> " + Thread.currentThread().getName(), e);
+    }
+  }
+
+  /**
+   * Aggregators of one section together with the flag telling whether its lines can be pre-aggregated, replaced as a
+   * whole so instrumented threads never see one without the other.
+   */
+  private static final class Section {
+    private final Collection<? extends ResultAggregator> aggregators;
+    private final boolean preAggregated;
+
+    private Section(Collection<? extends ResultAggregator> aggregators, boolean preAggregated) {
+      this.aggregators = aggregators;
+      this.preAggregated = preAggregated;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.unlogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed capacity ring buffer, written by many instrumented threads and read by a single aggregation thread. Never
+ * blocks and never allocates on publish: when the buffer is full the line is dropped and counted, instrumented code
+ * must not wait for (or fill the heap because of) a slow aggregation thread.
+ */
+final class LogLineRingBuffer {
+  private final AtomicReferenceArray<LogLine> lines;
+  private final int mask;
+
+  // next sequence to be claimed by producers
+  private final AtomicLong tail = new AtomicLong();
+  // next sequence to be read by the consumer, written only by the consumer thread
+  private final AtomicLong head = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  LogLineRingBuffer(int capacity) {
+    if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity should be power of 2, got: " + capacity);
+    }
+    this.lines = new AtomicReferenceArray<LogLine>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * @return false if buffer is full and the line was dropped
+   */
+  boolean publish(LogLine line) {
+    while (true) {
+      long sequence = tail.get();
+      if (sequence - head.get() >= lines.length()) {
+        dropped.incrementAndGet();
+        return false;
+      }
+      if (tail.compareAndSet(sequence, sequence + 1)) {
+        lines.lazySet((int) sequence & mask, line);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Should be called only from the consumer thread.
+   *
+   * @return next line or null if buffer is empty (or the next line is claimed, but not written yet)
+   */
+  LogLine poll() {
+    long sequence = head.get();
+    int index = (int) sequence & mask;
+    LogLine line = lines.get(index);
+    if (line == null) {
+      return null;
+    }
+    lines.lazySet(index, null);
+    head.lazySet(sequence + 1);
+    return line;
+  }
+
+  int size() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+
+  int capacity() {
+    return lines.length();
+  }
+
+  long getDroppedCount() {
+    return dropped.get();
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.sematext.spm.client.aggregation.AgentAggregationFunction;
+import com.sematext.spm.client.aggregation.MetricAggregator;
+import com.sematext.spm.client.attributes.MetricType;
+import com.sematext.spm.client.util.Threads;
+
+/**
+ * Merges metrics of 50k collectors (e.g. per-shard collectors of ES/Solr) into 500 groups, with
+ * {@link GroupedByTagsCollector} and with the previous per-metric {@link MetricAggregator} based merge. Collectors
+ * return prepared values, so only merging is measured.
+ * <p/>
+ * Prints time and bytes allocated per collection of all groups.
+ */
+public class GroupedByTagsCollectorBenchmark {
+  private static final int COLLECTORS = 50000;
+  private static final int GROUPS = 500;
+  private static final int METRICS = 20;
+  private static final int WARMUP_ITERATIONS = 50;
+  private static final int ITERATIONS = 100;
+
+  public static void main(String[] args) throws Exception {
+    Map<String, MetricType> types = new UnifiedMap<String, MetricType>();
+    Map<String, AgentAggregationFunction> functions = new UnifiedMap<String, AgentAggregationFunction>();
+    String[] names = new String[METRICS];
+    for (int i = 0; i < METRICS; i++) {
+      names[i] = "metric." + i;
+      types.put(names[i], i % 2 == 0 ? MetricType.COUNTER : MetricType.GAUGE);
+      functions.put(names[i], i % 4 == 1 ? AgentAggregationFunction.AVG :
+          (i % 4 == 3 ? AgentAggregationFunction.MAX : AgentAggregationFunction.SUM));
+    }
+
+    GroupedByTagsCollector[] groups = new GroupedByTagsCollector[GROUPS];
+    List<List<StatsCollector<?>>> groupMembers = new FastList<List<StatsCollector<?>>>(GROUPS);
+    for (int g = 0; g < GROUPS; g++) {
+      groups[g] = new GroupedByTagsCollector("ns", "token", Collections.singletonMap("index", "index" + g),
+                                             Serializer.INFLUX, null, false, false);
+      groupMembers.add(new FastList<StatsCollector<?>>());
+    }
+    for (int c = 0; c < COLLECTORS; c++) {
+      Map<String, Object> metrics = new UnifiedMap<String, Object>(METRICS);
+      for (int i = 0; i < METRICS; i++) {
+        metrics.put(names[i], i % 2 == 0 ? (Object) Long.valueOf(c + i) : (Object) Double.valueOf(c * 0.5d + i));
+      }
+      StatValues statValues = new StatValues();
+      statValues.setMetrics(metrics);
+      statValues.setMetricTypes(types);
+      statValues.setAgentAggregationFunctions(functions);
+      PreparedCollector collector = new PreparedCollector(statValues);
+      groups[c % GROUPS].add(collector, types, functions);
+      groupMembers.get(c % GROUPS).add(collector);
+    }
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      collectGrouped(groups);
+      collectLegacy(groupMembers);
+    }
+
+    long groupedAllocated = Threads.currentThreadAllocatedBytes();
+    long groupedStart = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      collectGrouped(groups);
+    }
+    long groupedNanos = System.nanoTime() - groupedStart;
+    groupedAllocated = Threads.currentThreadAllocatedBytes() - groupedAllocated;
+
+    long legacyAllocated = Threads.currentThreadAllocatedBytes();
+    long legacyStart = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      collectLegacy(groupMembers);
+    }
+    long legacyNanos = System.nanoTime() - legacyStart;
+    legacyAllocated = Threads.currentThreadAllocatedBytes() - legacyAllocated;
+
+    System.out.println(String.format("%d collectors, %d groups, %d metrics each", COLLECTORS, GROUPS, METRICS));
+    System.out.println(String.format("legacy:  %10.2f us/op %10d B/op", legacyNanos / 1000d / ITERATIONS,
+                                     legacyAllocated / ITERATIONS));
+    System.out.println(String.format("grouped: %10.2f us/op %10d B/op", groupedNanos / 1000d / ITERATIONS,
+                                     groupedAllocated / ITERATIONS));
+  }
+
+  private static void collectGrouped(GroupedByTagsCollector[] groups) throws StatsCollectionFailedException {
+    for (GroupedByTagsCollector group : groups) {
+      group.collectRawStatValues(null).next();
+    }
+  }
+
+  /**
+   * Merge done by GroupedByTagsCollector before metric slots were introduced.
+   */
+  private static void collectLegacy(List<List<StatsCollector<?>>> groupMembers)
+      throws StatsCollectionFailedException {
+    Map<String, MetricType> knownMetricTypes = new UnifiedMap<String, MetricType>(100);
+    for (List<StatsCollector<?>> members : groupMembers) {
+      Map<String, Object> aggregatedMetrics = new UnifiedMap<String, Object>(15);
+      for (StatsCollector<?> sc : members) {
+        Iterator<StatValues> iter = sc.collectRawStatValues(aggregatedMetrics);
+        while (iter.hasNext()) {
+          StatValues st = iter.next();
+          for (Map.Entry<String, Object> metric : st.getMetrics().entrySet()) {
+            String metricKey = metric.getKey();
+            knownMetricTypes.put(metricKey, st.getMetricTypes().get(metricKey));
+            Object existingMetricValue = aggregatedMetrics.get(metricKey);
+            if (existingMetricValue != null) {
+              aggregatedMetrics.put(metricKey,
+                                    MetricAggregator.aggregate(existingMetricValue, metric.getValue(), metricKey,
+                                                               st.getAgentAggregationFunctions().get(metricKey)));
+            } else {
+              aggregatedMetrics.put(metricKey, metric.getValue());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static final class PreparedCollector extends StatsCollector<String> {
+    private final List<StatValues> statValues;
+
+    private PreparedCollector(StatValues statValues) {
+      super(Serializer.INFLUX);
+      this.statValues = Collections.singletonList(statValues);
+    }
+
+    @Override
+    protected Iterator<StatValues> getStatsSlice(Map<String, Object> outerMetrics) {
+      return statValues.iterator();
+    }
+
+    @Override
+    public String getName() {
+      return "prepared";
+    }
+
+    @Override
+    public String getCollectorIdentifier() {
+      return "prepared";
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sematext.spm.client.aggregation.AgentAggregationFunction;
+import com.sematext.spm.client.attributes.MetricType;
+
+public class GroupedByTagsCollectorTest {
+  private final Map<String, MetricType> types = new HashMap<String, MetricType>();
+  private final Map<String, AgentAggregationFunction> functions = new HashMap<String, AgentAggregationFunction>();
+  private final GroupedByTagsCollector grouped = new GroupedByTagsCollector(
+      "ns", "token", Collections.singletonMap("host", "h1"), Serializer.INFLUX, null, false, false);
+  @Test
+  public void testMergesUsingAggregationFunctions() throws Exception {
+    define("sum", AgentAggregationFunction.SUM);
+    define("avg", AgentAggregationFunction.AVG);
+    define("max", AgentAggregationFunction.MAX);
+    define("min", AgentAggregationFunction.MIN);
+    define("discard", AgentAggregationFunction.DISCARD);
+
+    add(new FakeCollector(metrics("sum", 1L, "avg", 10L, "max", 1.5d, "min", 7, "discard", 1L)));
+    add(new FakeCollector(metrics("sum", 2L, "avg", 15L, "max", 3.5d, "min", 3, "discard", 2L)));
+    add(new FakeCollector(metrics("sum", 4L, "avg", 20L, "max", 2.5d, "min", 5, "discard", 3L)));
+
+    Map<String, Object> merged = collect();
+    assertEquals(5, merged.size());
+    assertEquals(7L, merged.get("sum"));
+    assertEquals(15L, merged.get("avg"));
+    assertEquals(3.5d, merged.get("max"));
+    assertEquals(3, merged.get("min"));
+    assertEquals(1L, merged.get("discard"));
+  }
+
+  @Test
+  public void testAverageOfSingleValueKeepsType() throws Exception {
+    define("avg", AgentAggregationFunction.AVG);
+    define("davg", AgentAggregationFunction.AVG);
+    add(new FakeCollector(metrics("avg", 3, "davg", 1.5d)));
+    add(new FakeCollector(metrics("avg", null, "davg", 2.0d)));
+
+    Map<String, Object> merged = collect();
+    assertEquals(3, merged.get("avg"));
+    assertEquals(1.75d, merged.get("davg"));
+  }
+
+  @Test
+  public void testNulls() throws Exception {
+    define("sum", AgentAggregationFunction.SUM);
+    define("empty", AgentAggregationFunction.SUM);
+    add(new FakeCollector(metrics("sum", null, "empty", null)));
+    add(new FakeCollector(metrics("sum", 2L, "empty", null)));
+    add(new FakeCollector(metrics("sum", null)));
+
+    Map<String, Object> merged = collect();
+    assertEquals(2L, merged.get("sum"));
+    assertTrue(merged.containsKey("empty"));
+    assertNull(merged.get("empty"));
+  }
+
+  @Test
+  public void testCollectorsSeeValuesMergedBefore() throws Exception {
+    define("sum", AgentAggregationFunction.SUM);
+    define("outer", AgentAggregationFunction.SUM);
+    add(new FakeCollector(metrics("sum", 2L)));
+    add(new FakeCollector(metrics("sum", 3L)) {
+      @Override
+      protected Iterator<StatValues> getStatsSlice(Map<String, Object> outerMetrics) {
+        Map<String, Object> values = metrics("outer", outerMetrics.get("sum"));
+        return Collections.singletonList(statValues(values)).iterator();
+      }
+    });
+
+    Map<String, Object> merged = collect();
+    assertEquals(2L, merged.get("sum"));
+    assertEquals(2L, merged.get("outer"));
+  }
+
+  @Test
+  public void testRepeatedCollections() throws Exception {
+    define("sum", AgentAggregationFunction.SUM);
+    FakeCollector first = new FakeCollector(metrics("sum", 1L));
+    FakeCollector second = new FakeCollector(metrics("sum", 2L));
+    add(first);
+    add(second);
+    assertEquals(3L, collect().get("sum"));
+
+    // metrics which weren't known when collectors were added use aggregation function of the collector
+    functions.put("new", AgentAggregationFunction.MAX);
+    first.values = Arrays.asList(metrics("sum", 10L, "new", 4L), metrics("new", 6L));
+    second.values = Collections.singletonList(metrics("new", 5L, "sum", 20L));
+    Map<String, Object> merged = collect();
+    assertEquals(30L, merged.get("sum"));
+    assertEquals(6L, merged.get("new"));
+
+    second.values = Collections.singletonList(metrics("new", 1L));
+    merged = collect();
+    assertEquals(10L, merged.get("sum"));
+    assertEquals(6L, merged.get("new"));
+
+    first.values = Collections.emptyList();
+    merged = collect();
+    assertFalse(merged.containsKey("sum"));
+    assertEquals(1L, merged.get("new"));
+  }
+
+  @Test
+  public void testReset() throws Exception {
+    define("sum", AgentAggregationFunction.SUM);
+    add(new FakeCollector(metrics("sum", 1L)));
+    assertEquals(1, grouped.getCollectorsCount());
+
+    grouped.reset();
+    assertEquals(0, grouped.getCollectorsCount());
+    assertTrue(collect().isEmpty());
+
+    functions.put("sum", AgentAggregationFunction.MAX);
+    add(new FakeCollector(metrics("sum", 1L)));
+    add(new FakeCollector(metrics("sum", 2L)));
+    assertEquals(2L, collect().get("sum"));
+  }
+
+  private void define(String name, AgentAggregationFunction function) {
+    types.put(name, MetricType.GAUGE);
+    functions.put(name, function);
+  }
+
+  private void add(FakeCollector collector) {
+    grouped.add(collector, types, functions);
+  }
+
+  private Map<String, Object> collect() throws Exception {
+    Iterator<StatValues> iter = grouped.collectRawStatValues(null);
+    Map<String, Object> metrics = iter.next().getMetrics();
+    assertFalse(iter.hasNext());
+    return metrics;
+  }
+
+  private StatValues statValues(Map<String, Object> values) {
+    StatValues statValues = new StatValues();
+    statValues.setMetrics(values);
+    statValues.setMetricTypes(types);
+    statValues.setAgentAggregationFunctions(functions);
+    return statValues;
+  }
+
+  private static Map<String, Object> metrics(Object... namesAndValues) {
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      metrics.put((String) namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return metrics;
+  }
+
+  private class FakeCollector extends StatsCollector<String> {
+    private List<Map<String, Object>> values;
+
+    FakeCollector(Map<String, Object> values) {
+      super(Serializer.INFLUX);
+      this.values = Collections.singletonList(values);
+    }
+
+    @Override
+    protected Iterator<StatValues> getStatsSlice(Map<String, Object> outerMetrics) {
+      List<StatValues> result = new ArrayList<StatValues>();
+      for (Map<String, Object> value : values) {
+        result.add(statValues(value));
+      }
+      return result.iterator();
+    }
+
+    @Override
+    public String getName() {
+      return "fake";
+    }
+
+    @Override
+    public String getCollectorIdentifier() {
+      return "fake";
+    }
+  }
+}
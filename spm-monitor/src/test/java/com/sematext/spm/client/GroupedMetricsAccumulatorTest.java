@@ -0,0 +1,73 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.sematext.spm.client.aggregation.AgentAggregationFunction;
+
+public class GroupedMetricsAccumulatorTest {
+  private final GroupedMetricsAccumulator accumulator = new GroupedMetricsAccumulator(4);
+
+  @Test
+  public void testTextValuesKeepFirstValue() {
+    int text = accumulator.define("text", null);
+    accumulator.merge(text, "a");
+    try {
+      accumulator.merge(text, "b");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Only metrics of type Long or Double can be aggregated. Metric text is of type " + String.class,
+                   e.getMessage());
+    }
+    assertEquals("a", accumulator.get(text));
+  }
+
+  @Test
+  public void testIncompatibleTypeIsSkipped() {
+    int mixed = accumulator.define("mixed", AgentAggregationFunction.SUM);
+    accumulator.merge(mixed, 5L);
+    try {
+      accumulator.merge(mixed, 1.5d);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Can't aggregate metric mixed when multiple types are used: " + Long.class + ", " + Double.class,
+                   e.getMessage());
+    }
+    accumulator.merge(mixed, 2L);
+    assertEquals(7L, accumulator.get(mixed));
+  }
+
+  @Test
+  public void testMissingFunction() {
+    int noFunction = accumulator.define("noFunction", null);
+    accumulator.merge(noFunction, 1L);
+    try {
+      accumulator.merge(noFunction, 2L);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Can't do the aggregation for metric noFunction using function : null", e.getMessage());
+    }
+    assertEquals(1L, accumulator.get(noFunction));
+  }
+}
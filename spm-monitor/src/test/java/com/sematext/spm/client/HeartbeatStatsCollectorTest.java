@@ -0,0 +1,147 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.flume.Event;
+import org.apache.flume.agent.embedded.EmbeddedSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public class HeartbeatStatsCollectorTest {
+  private final List<String> sentLines = new ArrayList<String>();
+  private final EmbeddedSource source = new EmbeddedSource() {
+    @Override
+    public void put(Event event) {
+      sentLines.add(new String(event.getBody(), InfluxLineEncoder.UTF_8));
+    }
+  };
+  private StatsMetricsLogLineSender sender;
+  private CollectorsExecutor executor;
+
+  @BeforeClass
+  public static void initLogging() {
+    // heartbeat env tags log warnings with exceptions when agent home doesn't exist, they must not stay buffered in
+    // LogFactory until some other test initializes it
+    LogFactory.init(new LogWriter<String>() {
+      @Override
+      public void write(String logLine) {
+      }
+
+      @Override
+      public void write(String logLine, Throwable throwable) {
+      }
+    });
+  }
+
+  @Before
+  public void setUp() {
+    sender = new StatsMetricsLogLineSender();
+    executor = new CollectorsExecutor("test-collectors", 2, 5000);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testHeartbeatSentWhenCollectorsRunSerially() {
+    sender.build(collectors(), source);
+
+    assertHeartbeatSentLast();
+  }
+
+  @Test
+  public void testHeartbeatSentWhenCollectorsRunConcurrently() {
+    sender.setCollectorsExecutor(executor);
+    sender.build(collectors(), source);
+
+    assertHeartbeatSentLast();
+  }
+
+  @Test
+  public void testNoHeartbeatWithoutOtherLines() {
+    sender.setCollectorsExecutor(executor);
+    sender.build(Arrays.<StatsCollector<String>>asList(heartbeat()), source);
+
+    assertTrue(sentLines.isEmpty());
+  }
+
+  private void assertHeartbeatSentLast() {
+    assertEquals(3, sentLines.size());
+    assertTrue(sentLines.get(0), sentLines.get(0).startsWith("test,"));
+    assertTrue(sentLines.get(1), sentLines.get(1).startsWith("test,"));
+    assertTrue(sentLines.get(2), sentLines.get(2).startsWith("heartbeat,"));
+  }
+
+  private List<StatsCollector<String>> collectors() {
+    // heartbeat is first on purpose, it has to be run after all other collectors anyway
+    return Arrays.<StatsCollector<String>>asList(heartbeat(), new TestCollector("a"), new TestCollector("b"));
+  }
+
+  private static HeartbeatStatsCollector heartbeat() {
+    return new HeartbeatStatsCollector(Serializer.INFLUX, "token", "jvm", null);
+  }
+
+  private static final class TestCollector extends StatsCollector<String> {
+    private final String name;
+
+    private TestCollector(String name) {
+      super(Serializer.INFLUX);
+      this.name = name;
+    }
+
+    @Override
+    protected Iterator<StatValues> getStatsSlice(Map<String, Object> outerMetrics) {
+      StatValues statValues = new StatValues();
+      Map<String, Object> metrics = new HashMap<String, Object>();
+      metrics.put("value", 1L);
+      statValues.setMetrics(metrics);
+      statValues.setTags(Collections.singletonMap("name", name));
+      statValues.setMetricNamespace("test");
+      statValues.setAppToken("token");
+      statValues.setTimestamp(System.currentTimeMillis());
+      return Collections.singletonList(statValues).iterator();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getCollectorIdentifier() {
+      return name;
+    }
+  }
+}
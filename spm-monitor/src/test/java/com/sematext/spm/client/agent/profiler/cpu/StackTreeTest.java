@@ -0,0 +1,128 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.agent.profiler.cpu;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.sematext.spm.client.agent.profiler.CallTree;
+
+public class StackTreeTest {
+
+  private static StackTraceElement[] stack(String... methods) {
+    // top of the stack first, like Thread.getStackTrace()
+    StackTraceElement[] stack = new StackTraceElement[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      stack[i] = new StackTraceElement("Cls", methods[i], "Cls.java", 1);
+    }
+    return stack;
+  }
+
+  @Test
+  public void testInternsFrames() {
+    FrameTable frames = new FrameTable(10000);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, frames.intern(new StackTraceElement("Cls", "m" + i, "Cls.java", i)));
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, frames.intern(new StackTraceElement("Cls", "m" + i, "Cls.java", i)));
+      assertEquals("m" + i, frames.get(i).getMethodName());
+    }
+    assertEquals(1000, frames.size());
+
+    frames.clear();
+    assertEquals(0, frames.intern(new StackTraceElement("Cls", "m999", "Cls.java", 999)));
+  }
+
+  @Test
+  public void testBuildsCallTreeFromSamplesOfAllThreads() {
+    StackTree tree = new StackTree(1000);
+    FrameTable frames = new FrameTable(1000);
+    ThreadProfile thread1 = new ThreadProfile(tree, frames, 0, 0, 0);
+    ThreadProfile thread2 = new ThreadProfile(tree, frames, 0, 0, 0);
+
+    thread1.update(stack("c", "b", "a"), 10, 5, 100);
+    thread2.update(stack("b", "a"), 20, 10, 100);
+    thread2.update(stack("d", "a"), 30, 15, 200);
+
+    CallTree callTree = tree.toCallTree(frames);
+    assertEquals(1, callTree.getRoot().getChildren().size());
+    CallTree.Node a = callTree.getRoot().getChildren().get(0);
+    assertEquals("a", a.getElement().getMethodName());
+    assertEquals(3, a.getSamples());
+    // times are relative to the last update with ThreadInfo, which didn't happen
+    assertEquals(10 + 20 + 30, a.getCpuTime());
+    assertEquals(5 + 10 + 15, a.getUserCpuTime());
+    assertEquals(100 + 100 + 200, a.getTime());
+
+    assertEquals(2, a.getChildren().size());
+    CallTree.Node b = a.getChildren().get(0);
+    assertEquals("b", b.getElement().getMethodName());
+    assertEquals(2, b.getSamples());
+    assertEquals("c", b.getChildren().get(0).getElement().getMethodName());
+    assertEquals("d", a.getChildren().get(1).getElement().getMethodName());
+
+    StringBuilder collapsed = new StringBuilder();
+    tree.writeCollapsed(frames, collapsed);
+    assertEquals("Cls.a;Cls.b 1\nCls.a;Cls.b;Cls.c 1\nCls.a;Cls.d 1\n", collapsed.toString());
+  }
+
+  @Test
+  public void testCountsSamplesInDeepestNodeWhenFull() {
+    // root + 2 nodes
+    StackTree tree = new StackTree(3);
+    FrameTable frames = new FrameTable(1000);
+    ThreadProfile thread = new ThreadProfile(tree, frames, 0, 0, 0);
+
+    thread.update(stack("c", "b", "a"), 0, 0, 0);
+    thread.update(stack("d", "a"), 0, 0, 0);
+    assertEquals(3, tree.size());
+
+    StringBuilder collapsed = new StringBuilder();
+    tree.writeCollapsed(frames, collapsed);
+    assertEquals("Cls.a 1\nCls.a;Cls.b 1\n", collapsed.toString());
+
+    tree.clear();
+    frames.clear();
+    thread.update(stack("d", "a"), 0, 0, 0);
+    collapsed.setLength(0);
+    tree.writeCollapsed(frames, collapsed);
+    assertEquals("Cls.a;Cls.d 1\n", collapsed.toString());
+  }
+
+  @Test
+  public void testManyNodes() {
+    StackTree tree = new StackTree(100000);
+    for (int parent = 0; parent < 100; parent++) {
+      for (int frame = 0; frame < 100; frame++) {
+        tree.child(parent, frame);
+      }
+    }
+    int size = tree.size();
+    for (int parent = 0; parent < 100; parent++) {
+      for (int frame = 0; frame < 100; frame++) {
+        int node = tree.child(parent, frame);
+        assertEquals(node, tree.child(parent, frame));
+      }
+    }
+    assertEquals(size, tree.size());
+  }
+}
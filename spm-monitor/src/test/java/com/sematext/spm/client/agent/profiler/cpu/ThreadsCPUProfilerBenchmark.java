@@ -0,0 +1,90 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.agent.profiler.cpu;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures cost of a single {@link ThreadsCPUProfiler#sample()} with many threads (800 by default, every 10th one
+ * busy, others parked) with deep stacks:
+ * full sampling used by on demand profiling vs. thread subset with bounded depth used by continuous profiling.
+ * Arguments: [threads] [stack depth].
+ */
+public class ThreadsCPUProfilerBenchmark {
+  private static final int SAMPLES = 200;
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length >= 1 ? Integer.parseInt(args[0]) : 800;
+    final int depth = args.length >= 2 ? Integer.parseInt(args[1]) : 150;
+
+    final CountDownLatch started = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      final boolean busy = i % 10 == 0;
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          recurse(depth, busy, started);
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+    started.await();
+
+    run("full", new ThreadsCPUProfiler(ManagementFactory.getThreadMXBean(),
+                                       Collections.<java.lang.management.GarbageCollectorMXBean>emptyList(), false));
+    run("subset", new ThreadsCPUProfiler(ManagementFactory.getThreadMXBean(),
+                                         Collections.<java.lang.management.GarbageCollectorMXBean>emptyList(), false,
+                                         64, 64, 100000));
+  }
+
+  private static void run(String name, ThreadsCPUProfiler profiler) {
+    for (int i = 0; i < SAMPLES / 4; i++) {
+      profiler.sample();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < SAMPLES; i++) {
+      profiler.sample();
+    }
+    long nanos = System.nanoTime() - start;
+    StringBuilder collapsed = new StringBuilder();
+    profiler.writeCollapsedStacks(collapsed);
+    System.out.println(String.format("%-7s %8.2f ms/sample, collapsed snapshot %d bytes", name,
+                                     nanos / 1000000d / SAMPLES, collapsed.length()));
+  }
+
+  private static void recurse(int depth, boolean busy, CountDownLatch started) {
+    if (depth == 0) {
+      started.countDown();
+      // only stacks of runnable threads are added to the tree, but all threads are dumped
+      while (true) {
+        if (busy) {
+          Thread.yield();
+        } else {
+          LockSupport.park();
+        }
+      }
+    }
+    recurse(depth - 1, busy, started);
+  }
+}
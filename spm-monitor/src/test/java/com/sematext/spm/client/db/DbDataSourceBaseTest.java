@@ -0,0 +1,270 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+public class DbDataSourceBaseTest {
+  @Test
+  public void testStatementPreparedOncePerConnection() throws Exception {
+    FakeDriver.reset();
+    DbConnectionManager manager = newManager("prepared", 1);
+    DbDataSourceBase dataSource = new DbDataSourceBase(manager, "select 0 3", false, 0);
+
+    List<Map<String, Object>> data = dataSource.fetchData();
+    assertEquals(3, data.size());
+    assertEquals("row2", data.get(2).get("name"));
+    assertEquals(2, data.get(2).get("value"));
+
+    Thread.sleep(5);
+    assertEquals(3, dataSource.fetchData().size());
+    assertEquals(2, FakeDriver.EXECUTED.get());
+    assertEquals(1, FakeDriver.PREPARED.get());
+    assertEquals(DbDataSourceBase.QUERY_TIMEOUT_SECONDS, FakeDriver.queryTimeout);
+    assertTrue(FakeDriver.fetchSize >= 3);
+  }
+
+  @Test
+  public void testVerticalModel() throws Exception {
+    FakeDriver.reset();
+    DbConnectionManager manager = newManager("vertical", 1);
+    DbDataSourceBase dataSource = new DbDataSourceBase(manager, "select 0 2", true, 0);
+
+    List<Map<String, Object>> data = dataSource.fetchData();
+    assertEquals(1, data.size());
+    assertEquals(0, data.get(0).get("row0"));
+    assertEquals(1, data.get(0).get("row1"));
+  }
+
+  @Test
+  public void testStaleQueriesOfSameDbRunInParallel() throws Exception {
+    FakeDriver.reset();
+    DbConnectionManager manager = newManager("parallel", 3);
+    DbDataSourceBase first = new DbDataSourceBase(manager, "select 500 1", false, 1000);
+    DbDataSourceBase second = new DbDataSourceBase(manager, "select 500 2", false, 1000);
+    DbDataSourceBase third = new DbDataSourceBase(manager, "select 500 3", false, 1000);
+
+    long start = System.currentTimeMillis();
+    assertEquals(1, first.fetchData().size());
+    assertEquals(2, second.fetchData().size());
+    assertEquals(3, third.fetchData().size());
+    long duration = System.currentTimeMillis() - start;
+
+    assertEquals(3, FakeDriver.EXECUTED.get());
+    assertTrue("took " + duration + " ms", duration < 1200);
+    assertTrue(FakeDriver.maxConcurrentQueries > 1);
+  }
+
+  @Test
+  public void testFailedStatementPreparedAgain() throws Exception {
+    FakeDriver.reset();
+    DbConnectionManager manager = newManager("failed", 1);
+    DbDataSourceBase dataSource = new DbDataSourceBase(manager, "select 0 1", false, 0);
+
+    FakeDriver.failNext = true;
+    assertNull(dataSource.fetchData());
+    Thread.sleep(5);
+    assertNotNull(dataSource.fetchData());
+    assertEquals(2, FakeDriver.PREPARED.get());
+  }
+
+  @Test
+  public void testQueryId() {
+    assertEquals("select a, b from t where x = 1",
+                 DbDataSourceBase.createQueryId("  select a, b\n  from t\n\twhere x = 1\n"));
+    StringBuilder longQuery = new StringBuilder("select ");
+    for (int i = 0; i < 100; i++) {
+      longQuery.append("column").append(i).append(", ");
+    }
+    assertEquals(100, DbDataSourceBase.createQueryId(longQuery.toString()).length());
+  }
+
+  private static DbConnectionManager newManager(String name, int maxConnections) {
+    return new DbConnectionManager("jdbc:fake:" + name + ":" + System.nanoTime(), FakeDriver.class.getName(),
+                                   "user", "password", null, maxConnections);
+  }
+
+  /**
+   * Executes queries "select [sleep ms] [rows]", returning given number of rows with columns "name" and "value".
+   */
+  public static final class FakeDriver implements Driver {
+    static final AtomicInteger PREPARED = new AtomicInteger();
+    static final AtomicInteger EXECUTED = new AtomicInteger();
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+    static volatile int maxConcurrentQueries;
+    static volatile int queryTimeout;
+    static volatile int fetchSize;
+    static volatile boolean failNext;
+
+    static {
+      try {
+        DriverManager.registerDriver(new FakeDriver());
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    static void reset() {
+      PREPARED.set(0);
+      EXECUTED.set(0);
+      maxConcurrentQueries = 0;
+      queryTimeout = 0;
+      fetchSize = 0;
+      failNext = false;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+      if (!acceptsURL(url)) {
+        return null;
+      }
+      return proxy(Connection.class, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          if (method.getName().equals("prepareStatement")) {
+            PREPARED.incrementAndGet();
+            return statement((String) args[0]);
+          } else if (method.getName().equals("isValid")) {
+            return true;
+          }
+          return null;
+        }
+      });
+    }
+
+    private static PreparedStatement statement(String query) {
+      String[] parts = query.split(" ");
+      final long sleep = Long.parseLong(parts[1]);
+      final int rows = Integer.parseInt(parts[2]);
+      return proxy(PreparedStatement.class, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if (method.getName().equals("setQueryTimeout")) {
+            queryTimeout = (Integer) args[0];
+          } else if (method.getName().equals("setFetchSize")) {
+            fetchSize = (Integer) args[0];
+          } else if (method.getName().equals("executeQuery")) {
+            EXECUTED.incrementAndGet();
+            if (failNext) {
+              failNext = false;
+              throw new SQLException("failed");
+            }
+            int running = RUNNING.incrementAndGet();
+            maxConcurrentQueries = Math.max(maxConcurrentQueries, running);
+            try {
+              Thread.sleep(sleep);
+            } finally {
+              RUNNING.decrementAndGet();
+            }
+            return resultSet(rows);
+          }
+          return null;
+        }
+      });
+    }
+
+    private static ResultSet resultSet(final int rows) {
+      final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          if (method.getName().equals("getColumnCount")) {
+            return 2;
+          } else if (method.getName().equals("getColumnLabel")) {
+            return (Integer) args[0] == 1 ? "name" : "value";
+          }
+          return null;
+        }
+      });
+      return proxy(ResultSet.class, new InvocationHandler() {
+        private int row = -1;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+          if (method.getName().equals("next")) {
+            row++;
+            return row < rows;
+          } else if (method.getName().equals("getMetaData")) {
+            return metaData;
+          } else if (method.getName().equals("getString") || method.getName().equals("getObject")) {
+            return (Integer) args[0] == 1 ? "row" + row : (Object) row;
+          }
+          return null;
+        }
+      });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+      return (T) Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return url.startsWith("jdbc:fake:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+  }
+}
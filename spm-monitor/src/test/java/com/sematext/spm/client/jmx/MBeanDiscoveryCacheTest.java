@@ -0,0 +1,96 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.jmx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+public class MBeanDiscoveryCacheTest {
+  private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+  public interface DummyMBean {
+    long getValue();
+  }
+
+  public static class Dummy implements DummyMBean {
+    @Override
+    public long getValue() {
+      return 1;
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (ObjectName name : server.queryNames(new ObjectName("discovery.test:*"), null)) {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void testCachedUntilRegistrationChanges() throws Exception {
+    ObjectName pattern = new ObjectName("discovery.test:type=Dummy,*");
+    MBeanDiscoveryCache cache = MBeanDiscoveryCache.forConnection(server);
+
+    server.registerMBean(new Dummy(), new ObjectName("discovery.test:type=Dummy,name=a"));
+    assertEquals(1, cache.queryMBeans(pattern).size());
+
+    long saved = JmxRoundTripStats.getMBeanQueriesSaved();
+    assertEquals(1, cache.queryMBeans(pattern).size());
+    assertEquals(saved + 1, JmxRoundTripStats.getMBeanQueriesSaved());
+
+    server.registerMBean(new Dummy(), new ObjectName("discovery.test:type=Dummy,name=b"));
+    assertEquals(2, cache.queryMBeans(pattern).size());
+
+    // not matching the pattern, cached result stays valid
+    server.registerMBean(new Dummy(), new ObjectName("discovery.test:type=Other"));
+    saved = JmxRoundTripStats.getMBeanQueriesSaved();
+    assertEquals(2, cache.queryMBeans(pattern).size());
+    assertEquals(saved + 1, JmxRoundTripStats.getMBeanQueriesSaved());
+
+    server.unregisterMBean(new ObjectName("discovery.test:type=Dummy,name=a"));
+    assertEquals(1, cache.queryMBeans(pattern).size());
+  }
+
+  @Test
+  public void testReleaseRemovesListener() throws Exception {
+    MBeanServer otherServer = MBeanServerFactory.newMBeanServer();
+    ObjectName pattern = new ObjectName("discovery.test:type=Dummy,*");
+    MBeanDiscoveryCache cache = MBeanDiscoveryCache.forConnection(otherServer);
+    assertEquals(0, cache.queryMBeans(pattern).size());
+
+    MBeanDiscoveryCache.release(otherServer);
+    assertNotSame(cache, MBeanDiscoveryCache.forConnection(otherServer));
+
+    // released cache doesn't get notifications anymore, so it keeps the stale result
+    otherServer.registerMBean(new Dummy(), new ObjectName("discovery.test:type=Dummy,name=a"));
+    assertEquals(0, cache.queryMBeans(pattern).size());
+    assertEquals(1, MBeanDiscoveryCache.forConnection(otherServer).queryMBeans(pattern).size());
+    MBeanDiscoveryCache.release(otherServer);
+  }
+}
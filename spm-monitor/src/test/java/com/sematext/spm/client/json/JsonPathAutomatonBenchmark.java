@@ -0,0 +1,144 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sematext.spm.client.util.Threads;
+
+/**
+ * Compares reading a recorded payload into the full tree and matching paths on it with reading it through
+ * {@link JsonPathAutomaton}. Runs on payloads from test resources by default; a different payload can be given as
+ * arguments: <payload file> <path>...
+ * <p/>
+ * Prints time and bytes allocated per iteration of each variant.
+ */
+public class JsonPathAutomatonBenchmark {
+  private static final ObjectMapper MAPPER = new ObjectMapper(new JsonFactory());
+  private static final int WARMUP_ITERATIONS = 2000;
+  private static final int ITERATIONS = 5000;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length >= 2) {
+      run(args[0], readFile(args[0]), Arrays.asList(args).subList(1, args.length));
+      return;
+    }
+
+    run("es-indexStats.json", readResource("es-indexStats.json"), Arrays.asList(
+        "$.indices.${indexName}.shards.${shard}[?(@.routing.node=${nodeId} && @.routing.primary=true)].merges",
+        "$.indices.${indexName}.primaries.docs"));
+    run("es-shards.json", readResource("es-shards.json"), Arrays.asList(
+        "$.routing_table.indices.${indexName}.shards.${shard}[?(@.node=${nodeId} && @.primary=true)]"));
+    run("es-jvm.json", readResource("es-jvm.json"), Arrays.asList("$.nodes.${nodeId}.jvm.gc.collectors.${gcName}"));
+    run("nginx-plus.json", readResource("nginx-plus.json"), Arrays.asList("$.server_zones.${zone}",
+                                                                          "$.upstreams.${upstream}.peers[*]"));
+  }
+
+  private static void run(String name, byte[] payload, List<String> paths) throws IOException {
+    JsonPathAutomaton automaton = JsonPathAutomaton.compile(paths);
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      readTree(payload, paths);
+      readPaths(payload, paths, automaton);
+    }
+
+    long treeAllocated = Threads.currentThreadAllocatedBytes();
+    long treeStart = System.nanoTime();
+    int treeMatches = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      treeMatches += readTree(payload, paths);
+    }
+    long treeNanos = System.nanoTime() - treeStart;
+    treeAllocated = Threads.currentThreadAllocatedBytes() - treeAllocated;
+
+    long streamAllocated = Threads.currentThreadAllocatedBytes();
+    long streamStart = System.nanoTime();
+    int streamMatches = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      streamMatches += readPaths(payload, paths, automaton);
+    }
+    long streamNanos = System.nanoTime() - streamStart;
+    streamAllocated = Threads.currentThreadAllocatedBytes() - streamAllocated;
+
+    if (treeMatches != streamMatches) {
+      throw new IllegalStateException("Different number of matches for " + name + ": " + treeMatches + " vs " +
+                                          streamMatches);
+    }
+
+    System.out.println(String.format("%-20s %8d bytes | tree: %8.1f us/op %10d B/op | streaming: %8.1f us/op %10d B/op",
+                                     name, payload.length, treeNanos / 1000d / ITERATIONS, treeAllocated / ITERATIONS,
+                                     streamNanos / 1000d / ITERATIONS, streamAllocated / ITERATIONS));
+  }
+
+  private static int readTree(byte[] payload, List<String> paths) throws IOException {
+    Object data = MAPPER.readValue(payload, new TypeReference<Object>() {
+    });
+    return countMatches(data, paths);
+  }
+
+  private static int readPaths(byte[] payload, List<String> paths, JsonPathAutomaton automaton) throws IOException {
+    JsonParser parser = MAPPER.getFactory().createParser(payload);
+    try {
+      return countMatches(automaton.read(parser), paths);
+    } finally {
+      parser.close();
+    }
+  }
+
+  private static int countMatches(Object data, List<String> paths) {
+    int matches = 0;
+    for (String path : paths) {
+      matches += JsonUtil.findMatchingPaths(data, path).size();
+    }
+    return matches;
+  }
+
+  private static byte[] readResource(String resource) throws IOException {
+    return read(JsonPathAutomatonBenchmark.class.getResourceAsStream(resource));
+  }
+
+  private static byte[] readFile(String file) throws IOException {
+    return read(new FileInputStream(file));
+  }
+
+  private static byte[] read(InputStream is) throws IOException {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } finally {
+      is.close();
+    }
+  }
+}
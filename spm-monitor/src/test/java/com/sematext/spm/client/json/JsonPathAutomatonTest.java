@@ -0,0 +1,147 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class JsonPathAutomatonTest {
+  private static final ObjectMapper JSON_MAPPER = new ObjectMapper(new JsonFactory());
+  private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+  @Test
+  public void testEsIndexStats() throws IOException {
+    Object pruned = assertSameMatches("es-indexStats.json",
+        "$.indices.${indexName}.shards.${shard}[?(@.routing.node=${nodeId} && @.routing.primary=true)].merges",
+        "$.indices.${indexName}.primaries.docs");
+
+    Map<String, Object> root = (Map<String, Object>) pruned;
+    assertFalse(root.containsKey("_all"));
+    assertFalse(root.containsKey("_shards"));
+    Map<String, Object> primaries = (Map<String, Object>) ((Map<String, Object>) ((Map<String, Object>) root
+        .get("indices")).values().iterator().next()).get("primaries");
+    assertEquals(Arrays.asList("docs"), Arrays.asList(primaries.keySet().toArray()));
+  }
+
+  @Test
+  public void testEsShards() throws IOException {
+    assertSameMatches("es-shards.json",
+        "$.routing_table.indices.${indexName}.shards.${shard}[?(@.node=${nodeId} && @.primary=true)]",
+        "$.routing_table.indices.${indexName}.shards.${shard}[?(@.primary=false && @.state=STARTED)]",
+        "$.routing_nodes.nodes.${nodeId}[?(@.state=STARTED && @.primary=true && @.index=${indexName})]",
+        "$.routing_nodes.nodes.${nodeId}[?(@.index=${indexName})]");
+  }
+
+  @Test
+  public void testEsJvmAndThreadPools() throws IOException {
+    assertSameMatches("es-jvm.json", "$.nodes.${nodeId}.jvm.gc.collectors.${gcName}");
+    assertSameMatches("es-threadpools.json", "$.[?(@.name=${threadPool})]", "$[?(@.name=${threadPool})]");
+    assertSameMatches("flink-stats.json", "$.[?(@.id=numRegisteredTaskManagers)].value", "$.[*].value",
+                      "$[*][value]");
+  }
+
+  @Test
+  public void testNginxPlus() throws IOException {
+    Object pruned = assertSameMatches("nginx-plus.json",
+        "$.server_zones.hg\\.nginx\\.org.${data}", "$.server_zones.${zone}", "$.upstreams.hg-backend.peers[1].state",
+        "$.upstreams.hg-backend.peers[:2].length()", "$.upstreams.hg-backend.peers[9999].requests",
+        "$.stream.upstreams.unused_tcp_backends");
+    assertFalse(((Map<String, Object>) pruned).containsKey("caches"));
+
+    // elements are not dropped, positions stay the same
+    List<Object> peers = (List<Object>) JsonUtil.findMatchingPaths(pruned, "$.upstreams.hg-backend.peers").get(0)
+        .getMatchedObject();
+    assertEquals(2, peers.size());
+  }
+
+  @Test
+  public void testRootPathKeepsEverything() throws IOException {
+    assertTrue(JsonPathAutomaton.compile(Arrays.asList("$.")).isKeepingAll());
+    assertTrue(JsonPathAutomaton.compile(Arrays.asList("$.a", "$.length()")).isKeepingAll());
+    assertFalse(JsonPathAutomaton.compile(Arrays.asList("$.a", "$.b.length()")).isKeepingAll());
+  }
+
+  private Object assertSameMatches(String resource, String... paths) throws IOException {
+    byte[] json = read(resource);
+    JsonPathAutomaton automaton = JsonPathAutomaton.compile(Arrays.asList(paths));
+
+    Object full = JSON_MAPPER.readValue(json, new TypeReference<Object>() {
+    });
+    Object pruned = read(JSON_MAPPER, json, automaton);
+    byte[] smile = SMILE_MAPPER.writeValueAsBytes(full);
+    Object prunedSmile = read(SMILE_MAPPER, smile, automaton);
+
+    for (String path : paths) {
+      List<JsonMatchingPath> expected = JsonUtil.findMatchingPaths(full, path);
+      assertSameMatches(path, expected, JsonUtil.findMatchingPaths(pruned, path));
+      assertSameMatches(path, expected, JsonUtil.findMatchingPaths(prunedSmile, path));
+    }
+    return pruned;
+  }
+
+  private static void assertSameMatches(String path, List<JsonMatchingPath> expected, List<JsonMatchingPath> actual) {
+    assertEquals(path, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(path, expected.get(i).getFullObjectPath(), actual.get(i).getFullObjectPath());
+      assertEquals(path, expected.get(i).getPathAttributes(), actual.get(i).getPathAttributes());
+      assertEquals(path, expected.get(i).getMatchedObject(), actual.get(i).getMatchedObject());
+    }
+  }
+
+  private static Object read(ObjectMapper mapper, byte[] data, JsonPathAutomaton automaton) throws IOException {
+    JsonParser parser = mapper.getFactory().createParser(data);
+    try {
+      return automaton.read(parser);
+    } finally {
+      parser.close();
+    }
+  }
+
+  private byte[] read(String resource) throws IOException {
+    InputStream is = getClass().getResourceAsStream(resource);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } finally {
+      is.close();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sematext.spm.client.StatValues;
+import com.sematext.spm.client.attributes.MetricType;
+
+public class CompressingMetricsProcessorTest {
+  private final CompressingMetricsProcessor processor = new CompressingMetricsProcessor();
+  private final Map<String, MetricType> knownMetricTypes = new HashMap<String, MetricType>();
+
+  @Test
+  public void testCountersAreAccumulatedUntilFlush() {
+    knownMetricTypes.put("requests", MetricType.COUNTER);
+    knownMetricTypes.put("time", MetricType.COUNTER);
+
+    Map<String, Object> metrics = process(false, "requests", 5L, "time", 1.5d);
+    assertNull(metrics.get("requests"));
+    assertNull(metrics.get("time"));
+
+    metrics = process(false, "requests", 3, "time", null);
+    assertNull(metrics.get("requests"));
+    assertNull(metrics.get("time"));
+
+    metrics = process(true, "requests", 2L, "time", 0.5f);
+    assertEquals(10L, metrics.get("requests"));
+    assertEquals(2.0d, metrics.get("time"));
+
+    // state is cleared after flush
+    metrics = process(true, "requests", 4L, "time", 1.0d);
+    assertEquals(4L, metrics.get("requests"));
+    assertEquals(1.0d, metrics.get("time"));
+  }
+
+  @Test
+  public void testCounterKeepsTypeOfSingleMeasurement() {
+    knownMetricTypes.put("requests", MetricType.COUNTER);
+
+    process(false, "requests", null);
+    Map<String, Object> metrics = process(true, "requests", 7);
+    assertEquals(Integer.valueOf(7), metrics.get("requests"));
+  }
+
+  @Test
+  public void testCounterWithIncompatibleTypeKeepsRecordedValue() {
+    knownMetricTypes.put("requests", MetricType.COUNTER);
+
+    process(false, "requests", 5L);
+    Map<String, Object> metrics = process(true, "requests", 1.5d);
+    assertEquals(5L, metrics.get("requests"));
+  }
+
+  @Test
+  public void testMissingCountersAndPercentilesAreAddedOnFlush() {
+    knownMetricTypes.put("requests", MetricType.COUNTER);
+    knownMetricTypes.put("latency.p99", MetricType.PERCENTILE);
+    knownMetricTypes.put("heap", MetricType.GAUGE);
+
+    process(false, "requests", 5L, "latency.p99", 120.0d, "heap", 1024L);
+    Map<String, Object> metrics = process(true, "heap", 2048L);
+    assertEquals(5L, metrics.get("requests"));
+    assertEquals(120.0d, metrics.get("latency.p99"));
+    assertEquals(2048L, metrics.get("heap"));
+
+    metrics = process(true, "heap", 4096L);
+    assertFalse(metrics.containsKey("requests"));
+    assertFalse(metrics.containsKey("latency.p99"));
+  }
+
+  @Test
+  public void testUnchangedGaugesAreNotSent() {
+    knownMetricTypes.put("heap", MetricType.GAUGE);
+    knownMetricTypes.put("load", MetricType.GAUGE);
+    knownMetricTypes.put("state", MetricType.TEXT);
+
+    Map<String, Object> metrics = process(false, "heap", 1024L, "load", 0.5d, "state", "RUNNING");
+    assertEquals(1024L, metrics.get("heap"));
+    assertEquals(0.5d, metrics.get("load"));
+    assertEquals("RUNNING", metrics.get("state"));
+
+    metrics = process(false, "heap", 1024L, "load", 0.5d, "state", "RUNNING");
+    assertNull(metrics.get("heap"));
+    assertNull(metrics.get("load"));
+    assertNull(metrics.get("state"));
+
+    // same number of different type is a change, just like with equals
+    metrics = process(false, "heap", 1024, "load", Double.NaN, "state", "STOPPED");
+    assertEquals(1024, metrics.get("heap"));
+    assertTrue(Double.isNaN((Double) metrics.get("load")));
+    assertEquals("STOPPED", metrics.get("state"));
+
+    metrics = process(true, "heap", 1024, "load", Double.NaN, "state", "STOPPED");
+    assertNull(metrics.get("heap"));
+    assertNull(metrics.get("load"));
+    assertNull(metrics.get("state"));
+
+    // gauges are sent again after flush
+    metrics = process(false, "heap", 1024, "load", Double.NaN, "state", "STOPPED");
+    assertEquals(1024, metrics.get("heap"));
+    assertTrue(Double.isNaN((Double) metrics.get("load")));
+    assertEquals("STOPPED", metrics.get("state"));
+  }
+
+  @Test
+  public void testManyMetrics() {
+    for (int i = 0; i < 1000; i++) {
+      knownMetricTypes.put("counter" + i, MetricType.COUNTER);
+    }
+    for (int round = 0; round < 3; round++) {
+      Map<String, Object> metrics = new HashMap<String, Object>();
+      for (int i = 0; i < 1000; i++) {
+        metrics.put("counter" + i, (long) i);
+      }
+      process(round == 2, metrics);
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(round == 2 ? Long.valueOf(3L * i) : null, metrics.get("counter" + i));
+      }
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testUnknownMetricType() {
+    process(false, "unknown", 1L);
+  }
+
+  private Map<String, Object> process(boolean flush, Object... namesAndValues) {
+    Map<String, Object> metrics = new HashMap<String, Object>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      metrics.put((String) namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return process(flush, metrics);
+  }
+
+  private Map<String, Object> process(boolean flush, Map<String, Object> metrics) {
+    StatValues statValues = new StatValues();
+    statValues.setMetrics(metrics);
+
+    MetricsProcessorContext context = new MetricsProcessorContext();
+    context.knownMetricTypes = knownMetricTypes;
+    context.statValues = statValues;
+    context.shouldFlush = flush;
+    processor.process(context);
+    return metrics;
+  }
+}
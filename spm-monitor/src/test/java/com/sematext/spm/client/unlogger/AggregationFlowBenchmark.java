@@ -0,0 +1,131 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.unlogger;
+
+import static com.sematext.spm.client.unlogger.LogLine.Key.CLASS_SIMPLE_NAME;
+import static com.sematext.spm.client.unlogger.LogLine.Key.DURATION_OWN_TOTAL;
+import static com.sematext.spm.client.unlogger.LogLine.Key.LUCENE_QUERY;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sematext.spm.client.unlogger.LogLine.Key;
+import com.sematext.spm.client.unlogger.agg.SumAggregator;
+import com.sematext.spm.client.unlogger.annotations.SumGroupBy;
+import com.sematext.spm.client.util.Threads;
+
+/**
+ * Calls {@link AggregationFlow#log(LogLine)} from several threads at a fixed total rate (100k calls/s by default),
+ * half of the lines go to a pre-aggregated section, half through the ring buffer. Runs once with a working aggregation
+ * thread and once with stalled one (never started), prints time and heap allocated per call, dropped lines and heap
+ * used after the run. Arguments: [calls per second] [seconds] [threads].
+ */
+public class AggregationFlowBenchmark {
+  private static final int CALLS_PER_TICK = 10;
+
+  public static void main(String[] args) throws Exception {
+    int callsPerSecond = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+    int seconds = args.length >= 2 ? Integer.parseInt(args[1]) : 10;
+    int threads = args.length >= 3 ? Integer.parseInt(args[2]) : 4;
+
+    run("warmup", callsPerSecond, 2, threads, true);
+    run("aggregating", callsPerSecond, seconds, threads, true);
+    run("stalled", callsPerSecond, seconds, threads, false);
+  }
+
+  private static void run(String name, int callsPerSecond, int seconds, int threadsCount, boolean startAggregation)
+      throws Exception {
+    final AggregationFlow flow = new AggregationFlow(name, 100, AggregationFlow.RING_BUFFER_CAPACITY);
+    flow.addAggregators("aggregated", Collections.singletonList(
+        new SumAggregator(TestLogger.class.getAnnotation(SumGroupBy.class), "aggregated")));
+    if (startAggregation) {
+      flow.start();
+    }
+
+    final long tickNanos = TimeUnit.SECONDS.toNanos(1) * CALLS_PER_TICK * threadsCount / callsPerSecond;
+    final long ticks = TimeUnit.SECONDS.toNanos(seconds) / tickNanos;
+    final AtomicLong calls = new AtomicLong();
+    final AtomicLong callNanos = new AtomicLong();
+    final AtomicLong allocated = new AtomicLong();
+
+    Thread[] threads = new Thread[threadsCount];
+    for (int t = 0; t < threadsCount; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          // lines are created by pointcuts in any case, measure only publishing
+          LogLine[] lines = new LogLine[CALLS_PER_TICK];
+          Key[] keys = { CLASS_SIMPLE_NAME, LUCENE_QUERY, DURATION_OWN_TOTAL };
+          for (int i = 0; i < lines.length; i++) {
+            lines[i] = LogLine.Factory.make(keys).make(i % 2 == 0 ? "aggregated" : "not-aggregated");
+            lines[i].put(CLASS_SIMPLE_NAME, "Class" + (i % 4));
+            lines[i].put(DURATION_OWN_TOTAL, 1000L);
+          }
+
+          long nanos = 0;
+          long startAllocated = Threads.currentThreadAllocatedBytes();
+          long next = System.nanoTime();
+          for (long tick = 0; tick < ticks; tick++) {
+            long start = System.nanoTime();
+            for (LogLine line : lines) {
+              flow.log(line);
+            }
+            nanos += System.nanoTime() - start;
+
+            next += tickNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+              LockSupport.parkNanos(sleep);
+            }
+          }
+          allocated.addAndGet(Threads.currentThreadAllocatedBytes() - startAllocated);
+          callNanos.addAndGet(nanos);
+          calls.addAndGet(ticks * lines.length);
+        }
+      };
+      threads[t].start();
+    }
+
+    // collector takes the slice every second
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+    long collected = 0;
+    while (System.currentTimeMillis() < deadline) {
+      Thread.sleep(1000);
+      collected += flow.getSlice().size();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    System.gc();
+    long heapUsed = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    System.out.println(String.format(
+        "%-12s %d calls, %8.1f ns/call %6d B/call, dropped %d, collected %d lines, heap used %d KB",
+        name, calls.get(), (double) callNanos.get() / calls.get(), allocated.get() / calls.get(),
+        flow.getDroppedCount(), collected, heapUsed / 1024));
+  }
+
+  @SumGroupBy(aggregate = DURATION_OWN_TOTAL, groupBy = { CLASS_SIMPLE_NAME, LUCENE_QUERY })
+  private static class TestLogger {
+
+  }
+}
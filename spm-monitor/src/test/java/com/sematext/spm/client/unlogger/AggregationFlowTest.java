@@ -0,0 +1,120 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.unlogger;
+
+import static com.sematext.spm.client.unlogger.LogLine.Key.CLASS_SIMPLE_NAME;
+import static com.sematext.spm.client.unlogger.LogLine.Key.COUNT;
+import static com.sematext.spm.client.unlogger.LogLine.Key.DURATION_OWN_TOTAL;
+import static com.sematext.spm.client.unlogger.LogLine.Key.LUCENE_QUERY;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.sematext.spm.client.unlogger.LogLine.Key;
+import com.sematext.spm.client.unlogger.agg.SumAggregator;
+import com.sematext.spm.client.unlogger.annotations.SumGroupBy;
+
+public class AggregationFlowTest {
+
+  private static final LogLine.Factory LINES = LogLine.Factory
+      .make(new Key[] { CLASS_SIMPLE_NAME, LUCENE_QUERY, DURATION_OWN_TOTAL });
+
+  @Test
+  public void testRingBufferDropsWhenFull() {
+    LogLineRingBuffer buffer = new LogLineRingBuffer(4);
+    List<LogLine> lines = new ArrayList<LogLine>();
+    for (int i = 0; i < 6; i++) {
+      LogLine line = LINES.make("section");
+      lines.add(line);
+      Assert.assertEquals(i < 4, buffer.publish(line));
+    }
+    Assert.assertEquals(2, buffer.getDroppedCount());
+    Assert.assertEquals(4, buffer.size());
+
+    for (int i = 0; i < 4; i++) {
+      Assert.assertSame(lines.get(i), buffer.poll());
+    }
+    Assert.assertNull(buffer.poll());
+
+    Assert.assertTrue(buffer.publish(lines.get(5)));
+    Assert.assertSame(lines.get(5), buffer.poll());
+  }
+
+  @Test
+  public void testPreAggregatesInInstrumentedThreads() throws InterruptedException {
+    final AggregationFlow flow = new AggregationFlow("test", 10, 16);
+    flow.addAggregators("section", Collections.singletonList(
+        new SumAggregator(TestLogger.class.getAnnotation(SumGroupBy.class), "section")));
+
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 1000; i++) {
+            LogLine line = LINES.make("section");
+            line.put(CLASS_SIMPLE_NAME, i % 2 == 0 ? "A" : "B");
+            line.put(DURATION_OWN_TOTAL, 2L);
+            flow.log(line);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    flow.pump();
+    Collection<LogLine> slice = flow.getSlice();
+    Assert.assertEquals(2, slice.size());
+    for (LogLine line : slice) {
+      Assert.assertEquals(2000L, line.get(COUNT));
+      Assert.assertEquals(4000L, line.get(DURATION_OWN_TOTAL));
+    }
+    Assert.assertEquals(0, flow.getDroppedCount());
+
+    // aggregates of dead threads were moved to the slice and aren't reported again
+    flow.pump();
+    Assert.assertTrue(flow.getSlice().isEmpty());
+  }
+
+  @Test
+  public void testDropsLinesWhenAggregationStalls() {
+    AggregationFlow flow = new AggregationFlow("test", 10, 16);
+    for (int i = 0; i < 20; i++) {
+      flow.log(LINES.make("not-aggregated"));
+    }
+    Assert.assertEquals(4, flow.getDroppedCount());
+
+    flow.pump();
+    Assert.assertEquals(16, flow.getSlice().size());
+  }
+
+  @SumGroupBy(aggregate = DURATION_OWN_TOTAL, groupBy = { CLASS_SIMPLE_NAME, LUCENE_QUERY })
+  private static class TestLogger {
+
+  }
+}
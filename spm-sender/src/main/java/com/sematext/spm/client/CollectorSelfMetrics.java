@@ -0,0 +1,271 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sematext.spm.client.util.Threads;
+
+/**
+ * Tracks how expensive each collector is (collect time percentiles, lines, errors, bytes allocated while collecting)
+ * together with time spent serializing lines and writing them to the channel. Recording is always on; once per export
+ * interval the numbers are turned into lines of {@link #NAMESPACE} namespace which are sent along with regular
+ * metrics. Stats of other agent parts are kept in their own {@link SelfMetricsGroup}s (DB queries, series cache,
+ * config reload) and exported as lines of the same namespace.
+ * <p>
+ * Collectors may be recorded concurrently from collector threads, export is done by the thread building the lines.
+ */
+public final class CollectorSelfMetrics {
+  private static final Log LOG = LogFactory.getLog(CollectorSelfMetrics.class);
+
+  public static final String NAMESPACE = "agent";
+  public static final String COLLECTOR_TAG = "agent.collector";
+  public static final String JVM_NAME_TAG = "jvm";
+  static final long EXPORT_INTERVAL_MS = 60 * 1000;
+  // latest collect times kept per collector and export interval, enough for 1 sec collect interval
+  private static final int MAX_LATENCY_SAMPLES = 64;
+
+  private static final MetricsSchema COLLECTOR_SCHEMA = MetricsSchema.builder()
+      .addLong("collect.count")
+      .addDouble("collect.time.pctl.50")
+      .addDouble("collect.time.pctl.95")
+      .addDouble("collect.time.pctl.99")
+      .addDouble("collect.time.max")
+      .addLong("collect.lines")
+      .addLong("collect.errors")
+      .addLong("collect.allocated.bytes")
+      .build();
+  private static final int COLLECT_COUNT = COLLECTOR_SCHEMA.slotOf("collect.count");
+  private static final int COLLECT_TIME_PCTL_50 = COLLECTOR_SCHEMA.slotOf("collect.time.pctl.50");
+  private static final int COLLECT_TIME_PCTL_95 = COLLECTOR_SCHEMA.slotOf("collect.time.pctl.95");
+  private static final int COLLECT_TIME_PCTL_99 = COLLECTOR_SCHEMA.slotOf("collect.time.pctl.99");
+  private static final int COLLECT_TIME_MAX = COLLECTOR_SCHEMA.slotOf("collect.time.max");
+  private static final int COLLECT_LINES = COLLECTOR_SCHEMA.slotOf("collect.lines");
+  private static final int COLLECT_ERRORS = COLLECTOR_SCHEMA.slotOf("collect.errors");
+  private static final int COLLECT_ALLOCATED_BYTES = COLLECTOR_SCHEMA.slotOf("collect.allocated.bytes");
+
+  private static final MetricsSchema TOTALS_SCHEMA = MetricsSchema.builder()
+      .addLong("collectors")
+      .addLong("lines")
+      .addDouble("serialize.time")
+      .addDouble("channel.put.time")
+      .build();
+  private static final int COLLECTORS = TOTALS_SCHEMA.slotOf("collectors");
+  private static final int LINES = TOTALS_SCHEMA.slotOf("lines");
+  private static final int SERIALIZE_TIME = TOTALS_SCHEMA.slotOf("serialize.time");
+  private static final int CHANNEL_PUT_TIME = TOTALS_SCHEMA.slotOf("channel.put.time");
+
+  static {
+    if (Threads.currentThreadAllocatedBytes() < 0) {
+      LOG.info("Thread allocated memory not available, collectors allocated bytes will not be recorded");
+    }
+  }
+
+  private final String appToken;
+  private final String jvmName;
+  private final ConcurrentMap<String, CollectorStats> collectorStats = new ConcurrentHashMap<String, CollectorStats>();
+  private final AtomicLong serializeNanos = new AtomicLong();
+  private final AtomicLong channelPutNanos = new AtomicLong();
+  private final AtomicLong lines = new AtomicLong();
+  private final DbQuerySelfMetrics dbQueryMetrics = new DbQuerySelfMetrics();
+  private final ConfigReloadSelfMetrics configReloadMetrics = new ConfigReloadSelfMetrics();
+  private final List<SelfMetricsGroup> groups;
+  private long lastExportTime;
+
+  public CollectorSelfMetrics(String appToken, String jvmName) {
+    this(appToken, jvmName, SeriesKeyCache.INSTANCE);
+  }
+
+  CollectorSelfMetrics(String appToken, String jvmName, SeriesKeyCache seriesKeyCache) {
+    this.appToken = appToken;
+    this.jvmName = jvmName;
+    this.groups = FastList.<SelfMetricsGroup>newListWith(dbQueryMetrics, new SeriesCacheSelfMetrics(seriesKeyCache),
+                                                         configReloadMetrics);
+    this.lastExportTime = System.currentTimeMillis();
+  }
+
+  /**
+   * @param allocatedBytes bytes allocated by the collector, negative if unknown
+   */
+  public void recordCollector(String collectorId, long collectNanos, int linesCount, long allocatedBytes,
+                              long errors) {
+    CollectorStats stats = collectorStats.get(collectorId);
+    if (stats == null) {
+      CollectorStats newStats = new CollectorStats();
+      stats = collectorStats.putIfAbsent(collectorId, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    stats.record(collectNanos, linesCount, allocatedBytes, errors);
+    lines.addAndGet(linesCount);
+  }
+
+  public void recordSerialization(long nanos) {
+    serializeNanos.addAndGet(nanos);
+  }
+
+  public void recordChannelPut(long nanos) {
+    channelPutNanos.addAndGet(nanos);
+  }
+
+  public DbQuerySelfMetrics getDbQueryMetrics() {
+    return dbQueryMetrics;
+  }
+
+  public ConfigReloadSelfMetrics getConfigReloadMetrics() {
+    return configReloadMetrics;
+  }
+
+  public boolean shouldExport(long now) {
+    return now - lastExportTime >= EXPORT_INTERVAL_MS;
+  }
+
+  /**
+   * Encodes stats gathered since the previous export and starts a new export interval. Collectors which weren't run
+   * during the interval (e.g. removed by config reload) are forgotten.
+   *
+   * @return encoded lines, one per collector, one with totals and lines of other self metrics groups
+   */
+  public List<byte[]> export(final long now, final InfluxLineEncoder encoder) {
+    lastExportTime = now;
+    final List<byte[]> result = new FastList<byte[]>(collectorStats.size() + 1 + groups.size());
+
+    Iterator<Map.Entry<String, CollectorStats>> iterator = collectorStats.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, CollectorStats> entry = iterator.next();
+      MetricsRow row = entry.getValue().drain();
+      if (row == null) {
+        iterator.remove();
+        continue;
+      }
+      Map<String, String> tags = newTags();
+      tags.put(COLLECTOR_TAG, entry.getKey());
+      encode(encoder, row, tags, now, result);
+    }
+
+    MetricsRow totals = TOTALS_SCHEMA.newRow();
+    totals.setLong(COLLECTORS, result.size());
+    totals.setLong(LINES, lines.getAndSet(0));
+    totals.setDouble(SERIALIZE_TIME, toMillis(serializeNanos.getAndSet(0)));
+    totals.setDouble(CHANNEL_PUT_TIME, toMillis(channelPutNanos.getAndSet(0)));
+    encode(encoder, totals, newTags(), now, result);
+
+    SelfMetricsGroup.Rows rows = new SelfMetricsGroup.Rows() {
+      @Override
+      public void add(MetricsRow row, String tag, String tagValue) {
+        Map<String, String> tags = newTags();
+        if (tag != null) {
+          tags.put(tag, tagValue);
+        }
+        encode(encoder, row, tags, now, result);
+      }
+    };
+    for (SelfMetricsGroup group : groups) {
+      group.export(rows);
+    }
+
+    return result;
+  }
+
+  private void encode(InfluxLineEncoder encoder, MetricsRow row, Map<String, String> tags, long now,
+                      List<byte[]> result) {
+    encoder.reset();
+    if (encoder.encode(NAMESPACE, appToken, row, tags, now)) {
+      result.add(encoder.toByteArray());
+    }
+  }
+
+  private Map<String, String> newTags() {
+    Map<String, String> tags = new UnifiedMap<String, String>(2);
+    if (jvmName != null) {
+      tags.put(JVM_NAME_TAG, jvmName);
+    }
+    return tags;
+  }
+
+  static double toMillis(long nanos) {
+    return nanos / 1000000d;
+  }
+
+  private static final class CollectorStats {
+    private final long[] latencies = new long[MAX_LATENCY_SAMPLES];
+    private int count;
+    private long maxNanos;
+    private long lines;
+    private long errors;
+    private long allocatedBytes = -1;
+
+    private synchronized void record(long collectNanos, int linesCount, long allocated, long errorsCount) {
+      latencies[count % MAX_LATENCY_SAMPLES] = collectNanos;
+      count++;
+      maxNanos = Math.max(maxNanos, collectNanos);
+      lines += linesCount;
+      errors += errorsCount;
+      if (allocated >= 0) {
+        allocatedBytes = Math.max(allocatedBytes, 0) + allocated;
+      }
+    }
+
+    /**
+     * @return stats since last call or null if the collector wasn't run in the meantime
+     */
+    private synchronized MetricsRow drain() {
+      if (count == 0) {
+        return null;
+      }
+      long[] sorted = Arrays.copyOf(latencies, Math.min(count, MAX_LATENCY_SAMPLES));
+      Arrays.sort(sorted);
+
+      MetricsRow row = COLLECTOR_SCHEMA.newRow();
+      row.setLong(COLLECT_COUNT, count);
+      row.setDouble(COLLECT_TIME_PCTL_50, toMillis(percentile(sorted, 50)));
+      row.setDouble(COLLECT_TIME_PCTL_95, toMillis(percentile(sorted, 95)));
+      row.setDouble(COLLECT_TIME_PCTL_99, toMillis(percentile(sorted, 99)));
+      row.setDouble(COLLECT_TIME_MAX, toMillis(maxNanos));
+      row.setLong(COLLECT_LINES, lines);
+      row.setLong(COLLECT_ERRORS, errors);
+      if (allocatedBytes >= 0) {
+        row.setLong(COLLECT_ALLOCATED_BYTES, allocatedBytes);
+      }
+
+      count = 0;
+      maxNanos = 0;
+      lines = 0;
+      errors = 0;
+      allocatedBytes = -1;
+      return row;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+      int index = (int) Math.ceil(percentile / 100d * sorted.length) - 1;
+      return sorted[Math.max(0, index)];
+    }
+  }
+}
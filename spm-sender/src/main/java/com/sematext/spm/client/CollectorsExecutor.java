@@ -0,0 +1,151 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs stats collectors concurrently on a bounded thread pool. Each collection run has a deadline: collectors which
+ * don't finish in time are reported as timed out, cancelled (interrupted) and their results are dropped for that
+ * interval, so a single slow data source doesn't delay the rest of the snapshot. A timed out collector which ignores
+ * the interruption is not started again until its previous run finishes, so collectors are never invoked concurrently
+ * with themselves.
+ */
+public class CollectorsExecutor {
+  private static final Log LOG = LogFactory.getLog(CollectorsExecutor.class);
+
+  public interface CollectorTask<R> {
+    R run(StatsCollector<String> collector) throws Exception;
+  }
+
+  private final ExecutorService executor;
+  private final int threads;
+  private final long timeoutMs;
+
+  // collectors whose task is currently running on the pool; cancelled futures report isDone() immediately, so this is
+  // tracked by the tasks themselves
+  private final Set<StatsCollector<?>> running = Collections.synchronizedSet(
+      Collections.newSetFromMap(new IdentityHashMap<StatsCollector<?>, Boolean>()));
+  // accessed only by the thread calling execute()
+  private long timedOutCount = 0;
+  private long skippedCount = 0;
+
+  public CollectorsExecutor(String name, int threads, long timeoutMs) {
+    this.threads = threads;
+    this.timeoutMs = timeoutMs;
+    this.executor = Executors.newFixedThreadPool(threads, new PriorityThreadFactory(Executors.defaultThreadFactory(),
+                                                                                     name, Thread.MIN_PRIORITY));
+  }
+
+  /**
+   * Runs the task for each collector and waits for results until the deadline.
+   *
+   * @return results in the same order as collectors; null for collectors which failed, timed out or were skipped
+   */
+  public <R> List<R> execute(List<StatsCollector<String>> collectors, final CollectorTask<R> task) {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+
+    List<Future<R>> futures = new ArrayList<Future<R>>(collectors.size());
+    for (final StatsCollector<String> collector : collectors) {
+      if (running.contains(collector)) {
+        skippedCount++;
+        LOG.warn("Collector " + collector.getId() + " is still running since previous interval, skipping it");
+        futures.add(null);
+        continue;
+      }
+
+      futures.add(executor.submit(new Callable<R>() {
+        @Override
+        public R call() throws Exception {
+          running.add(collector);
+          try {
+            return task.run(collector);
+          } finally {
+            running.remove(collector);
+          }
+        }
+      }));
+    }
+
+    List<R> results = new ArrayList<R>(collectors.size());
+    for (int i = 0; i < collectors.size(); i++) {
+      Future<R> future = futures.get(i);
+      StatsCollector<String> collector = collectors.get(i);
+      R result = null;
+
+      if (future != null) {
+        try {
+          result = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          timedOutCount++;
+          future.cancel(true);
+          LOG.warn("Collector " + collector.getId() + " didn't finish within " + timeoutMs +
+                       " ms, cancelling it, its data will be skipped for this interval");
+        } catch (ExecutionException e) {
+          LOG.error("Gathering stats failed, collector: " + collector, e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          LOG.warn("Interrupted while waiting for collectors");
+          break;
+        }
+      }
+
+      results.add(result);
+    }
+
+    while (results.size() < collectors.size()) {
+      results.add(null);
+    }
+
+    return results;
+  }
+
+  public boolean isSameAs(int threads, long timeoutMs) {
+    return this.threads == threads && this.timeoutMs == timeoutMs;
+  }
+
+  public long getTimedOutCount() {
+    return timedOutCount;
+  }
+
+  public long getSkippedCount() {
+    return skippedCount;
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "CollectorsExecutor{threads=" + threads + ", timeoutMs=" + timeoutMs + '}';
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number and duration of collectors config reloads, together with number of config files which had to be parsed
+ * again. Exported only for intervals in which config was reloaded.
+ */
+public final class ConfigReloadSelfMetrics implements SelfMetricsGroup {
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("config.reload.count")
+      .addDouble("config.reload.time")
+      .addLong("config.reload.parsed")
+      .build();
+  private static final int CONFIG_RELOAD_COUNT = SCHEMA.slotOf("config.reload.count");
+  private static final int CONFIG_RELOAD_TIME = SCHEMA.slotOf("config.reload.time");
+  private static final int CONFIG_RELOAD_PARSED = SCHEMA.slotOf("config.reload.parsed");
+
+  private final AtomicLong reloads = new AtomicLong();
+  private final AtomicLong reloadNanos = new AtomicLong();
+  private final AtomicLong configsParsed = new AtomicLong();
+
+  public void recordReload(long nanos) {
+    reloads.incrementAndGet();
+    reloadNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Records a collector config file which had to be read and parsed again (new or changed file) during reload.
+   */
+  public void recordConfigParsed() {
+    configsParsed.incrementAndGet();
+  }
+
+  @Override
+  public void export(Rows rows) {
+    long reloadsCount = reloads.getAndSet(0);
+    if (reloadsCount == 0) {
+      return;
+    }
+    MetricsRow row = SCHEMA.newRow();
+    row.setLong(CONFIG_RELOAD_COUNT, reloadsCount);
+    row.setDouble(CONFIG_RELOAD_TIME, CollectorSelfMetrics.toMillis(reloadNanos.getAndSet(0)));
+    row.setLong(CONFIG_RELOAD_PARSED, configsParsed.getAndSet(0));
+    rows.add(row, null, null);
+  }
+}
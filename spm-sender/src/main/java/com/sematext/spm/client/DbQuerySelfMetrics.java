@@ -0,0 +1,117 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Count, time, rows and errors of queries run by DB collectors, exported as one row per query. Queries which weren't
+ * run during the export interval are forgotten.
+ */
+public final class DbQuerySelfMetrics implements SelfMetricsGroup {
+  public static final String DB_QUERY_TAG = "agent.db.query";
+
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("db.query.count")
+      .addDouble("db.query.time.avg")
+      .addDouble("db.query.time.max")
+      .addLong("db.query.rows")
+      .addLong("db.query.errors")
+      .build();
+  private static final int DB_QUERY_COUNT = SCHEMA.slotOf("db.query.count");
+  private static final int DB_QUERY_TIME_AVG = SCHEMA.slotOf("db.query.time.avg");
+  private static final int DB_QUERY_TIME_MAX = SCHEMA.slotOf("db.query.time.max");
+  private static final int DB_QUERY_ROWS = SCHEMA.slotOf("db.query.rows");
+  private static final int DB_QUERY_ERRORS = SCHEMA.slotOf("db.query.errors");
+
+  private final ConcurrentMap<String, QueryStats> queryStats = new ConcurrentHashMap<String, QueryStats>();
+
+  /**
+   * @param queryId short identifier of the query, used as tag value
+   */
+  public void recordQuery(String queryId, long queryNanos, int rows, boolean failed) {
+    QueryStats stats = queryStats.get(queryId);
+    if (stats == null) {
+      QueryStats newStats = new QueryStats();
+      stats = queryStats.putIfAbsent(queryId, newStats);
+      if (stats == null) {
+        stats = newStats;
+      }
+    }
+    stats.record(queryNanos, rows, failed);
+  }
+
+  @Override
+  public void export(Rows rows) {
+    Iterator<Map.Entry<String, QueryStats>> iterator = queryStats.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, QueryStats> entry = iterator.next();
+      MetricsRow row = entry.getValue().drain();
+      if (row == null) {
+        iterator.remove();
+        continue;
+      }
+      rows.add(row, DB_QUERY_TAG, entry.getKey());
+    }
+  }
+
+  private static final class QueryStats {
+    private int count;
+    private long totalNanos;
+    private long maxNanos;
+    private long rows;
+    private long errors;
+
+    private synchronized void record(long queryNanos, int rowsCount, boolean failed) {
+      count++;
+      totalNanos += queryNanos;
+      maxNanos = Math.max(maxNanos, queryNanos);
+      rows += rowsCount;
+      if (failed) {
+        errors++;
+      }
+    }
+
+    /**
+     * @return stats since last call or null if the query wasn't run in the meantime
+     */
+    private synchronized MetricsRow drain() {
+      if (count == 0) {
+        return null;
+      }
+      MetricsRow row = SCHEMA.newRow();
+      row.setLong(DB_QUERY_COUNT, count);
+      row.setDouble(DB_QUERY_TIME_AVG, CollectorSelfMetrics.toMillis(totalNanos / count));
+      row.setDouble(DB_QUERY_TIME_MAX, CollectorSelfMetrics.toMillis(maxNanos));
+      row.setLong(DB_QUERY_ROWS, rows);
+      row.setLong(DB_QUERY_ERRORS, errors);
+
+      count = 0;
+      totalNanos = 0;
+      maxNanos = 0;
+      rows = 0;
+      errors = 0;
+      return row;
+    }
+  }
+}
@@ -45,6 +45,13 @@ public class MonitorConfig extends InMemoryConfig {
   public static final int MAX_ALLOWED_MONITOR_INTERVAL = 60000; //60 sec
   private static final long MAX_LOG_FILE_SIZE_BYTES = 10 * 1024 * 1024;
 
+  // number of threads used to run collectors concurrently; 1 means collectors run serially in monitor thread
+  public static final String COLLECTION_THREADS_PROPERTY = "SPM_MONITOR_COLLECTION_THREADS";
+  // max time in ms collectors have to finish during single collection run, by default part of collect interval
+  public static final String COLLECTOR_TIMEOUT_PROPERTY = "SPM_MONITOR_COLLECTOR_TIMEOUT";
+  public static final int MAX_COLLECTION_THREADS = 64;
+  private static final double DEFAULT_COLLECTOR_TIMEOUT_INTERVAL_RATIO = 0.8d;
+
   private long lastJmxInfoReload = 0L;
   private long configFirstReloadInterval = DEFAULT_FIRST_RELOAD_INTERVAL;
   private long configReloadInterval = DEFAULT_RELOAD_INTERVAL;
@@ -71,6 +78,8 @@ public class MonitorConfig extends InMemoryConfig {
   private DataFormat format;
 
   private StatsLogLineBuilder statsLogLineBuilder;
+  private final CollectorSelfMetrics selfMetrics;
+  private CollectorsExecutor collectorsExecutor;
 
   private boolean hasMetainfo;
   private MetricsMetainfoSender metricsMetainfoSender;
@@ -91,6 +100,8 @@ public class MonitorConfig extends InMemoryConfig {
     this.processOrdinal = processOrdinal;
     this.format = format;
     this.statusRecorder = new AgentStatusRecorder(appToken, monitorPropertiesFile, processOrdinal);
+    String finalJvmName = subType == null || subType.trim().equals("") ? jvmName : jvmName + "-" + subType;
+    this.selfMetrics = new CollectorSelfMetrics(appToken, finalJvmName);
     loadConfig();
   }
 
@@ -134,7 +145,9 @@ public class MonitorConfig extends InMemoryConfig {
       long oldConfigReloadInterval = configReloadInterval;
 
       try {
+        long reloadStart = System.nanoTime();
         reloadConfig();
+        selfMetrics.getConfigReloadMetrics().recordReload(System.nanoTime() - reloadStart);
 
         // only if reload succeeded
         if (oldCollectors != collectors) {
@@ -185,6 +198,7 @@ public class MonitorConfig extends InMemoryConfig {
     readLoggingInfo(monitorProperties);
     readCollectors(monitorProperties);
     readStatsLogLineBuilder();
+    readCollectorsExecutor(monitorProperties);
     readMetainfoSender(monitorProperties);
     readStatsLogger(getLogBasedir(), getLogMaxFileSize(), getLogMaxBackups(), format, processOrdinal);
 
@@ -305,6 +319,46 @@ public class MonitorConfig extends InMemoryConfig {
     }
   }
 
+  private void readCollectorsExecutor(Properties monitorProperties) throws ConfigurationFailedException {
+    int threads;
+    long timeoutMs;
+    String threadsStr = StringUtils.removeQuotes(monitorProperties.getProperty(COLLECTION_THREADS_PROPERTY, "1"))
+        .trim();
+    String timeoutStr = StringUtils.removeQuotes(monitorProperties.getProperty(COLLECTOR_TIMEOUT_PROPERTY, ""))
+        .trim();
+    try {
+      threads = Math.min(MAX_COLLECTION_THREADS, Math.max(1, Integer.parseInt(threadsStr)));
+      if (timeoutStr.equals("")) {
+        timeoutMs = (long) (monitorCollectInterval * DEFAULT_COLLECTOR_TIMEOUT_INTERVAL_RATIO);
+      } else {
+        // never wait longer than one interval, otherwise next run would be skipped anyway
+        timeoutMs = Math.min(monitorCollectInterval, Long.parseLong(timeoutStr));
+      }
+    } catch (NumberFormatException e) {
+      throw new ConfigurationFailedException("Parsing " + COLLECTION_THREADS_PROPERTY + " or " +
+                                                 COLLECTOR_TIMEOUT_PROPERTY + " failed", e);
+    }
+
+    if (threads == 1) {
+      if (collectorsExecutor != null) {
+        LOG.info("Collectors will be run serially");
+        collectorsExecutor.shutdown();
+        collectorsExecutor = null;
+      }
+    } else if (collectorsExecutor == null || !collectorsExecutor.isSameAs(threads, timeoutMs)) {
+      if (collectorsExecutor != null) {
+        collectorsExecutor.shutdown();
+      }
+      collectorsExecutor = new CollectorsExecutor(String.format("collectors-%s", MonitorUtil
+          .getMonitorId(monitorPropertiesFile)), threads, timeoutMs);
+      LOG.info("Collectors will be run concurrently using " + collectorsExecutor);
+    }
+
+    if (statsLogLineBuilder instanceof StatsMetricsLogLineSender) {
+      ((StatsMetricsLogLineSender) statsLogLineBuilder).setCollectorsExecutor(collectorsExecutor);
+    }
+  }
+
   private void readMetainfoSender(Properties monitorProperties) {
     if (!hasMetainfo) {
       LOG.warn("Monitor doesn't support metainfo, will not send any");
@@ -370,7 +424,7 @@ public class MonitorConfig extends InMemoryConfig {
 
   private void readStatsLogLineBuilder() {
     if (this.statsLogLineBuilder == null) {
-      this.statsLogLineBuilder = new StatsMetricsLogLineSender();
+      this.statsLogLineBuilder = new StatsMetricsLogLineSender(selfMetrics);
     }
   }
 
@@ -389,4 +443,8 @@ public class MonitorConfig extends InMemoryConfig {
   public AgentStatusRecorder getStatusRecorder() {
     return statusRecorder;
   }
+
+  public CollectorSelfMetrics getSelfMetrics() {
+    return selfMetrics;
+  }
 }
@@ -0,0 +1,39 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+/**
+ * Group of agent self metrics which is exported by {@link CollectorSelfMetrics} along with collectors stats, as lines
+ * of the same namespace.
+ */
+interface SelfMetricsGroup {
+  interface Rows {
+    /**
+     * @param tag      name of the tag identifying the row; null if the group has just one row
+     * @param tagValue value of the identifying tag
+     */
+    void add(MetricsRow row, String tag, String tagValue);
+  }
+
+  /**
+   * Adds rows with stats gathered since the previous export and starts a new export interval.
+   */
+  void export(Rows rows);
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+/**
+ * Hit ratio and size of {@link SeriesKeyCache}. Hit ratio is calculated from lookups done since the previous export.
+ */
+final class SeriesCacheSelfMetrics implements SelfMetricsGroup {
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addDouble("series.cache.hit.ratio")
+      .addLong("series.cache.size")
+      .build();
+  private static final int SERIES_CACHE_HIT_RATIO = SCHEMA.slotOf("series.cache.hit.ratio");
+  private static final int SERIES_CACHE_SIZE = SCHEMA.slotOf("series.cache.size");
+
+  private final SeriesKeyCache seriesKeyCache;
+  // accessed only by the exporting thread
+  private long lastHits;
+  private long lastMisses;
+
+  SeriesCacheSelfMetrics(SeriesKeyCache seriesKeyCache) {
+    this.seriesKeyCache = seriesKeyCache;
+  }
+
+  @Override
+  public void export(Rows rows) {
+    long hits = seriesKeyCache.getHits();
+    long misses = seriesKeyCache.getMisses();
+    long lookups = hits - lastHits + misses - lastMisses;
+
+    MetricsRow row = SCHEMA.newRow();
+    if (lookups > 0) {
+      row.setDouble(SERIES_CACHE_HIT_RATIO, (hits - lastHits) * 100d / lookups);
+    }
+    row.setLong(SERIES_CACHE_SIZE, seriesKeyCache.size());
+    lastHits = hits;
+    lastMisses = misses;
+    rows.add(row, null, null);
+  }
+}
@@ -24,6 +24,7 @@ import org.apache.flume.Event;
 import org.apache.flume.agent.embedded.EmbeddedSource;
 import org.apache.flume.event.SimpleEvent;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -35,6 +36,7 @@ import java.util.Map;
 
 import com.sematext.spm.client.Sender.SenderType;
 import com.sematext.spm.client.status.AgentStatusRecorder;
+import com.sematext.spm.client.util.Threads;
 
 public class StatsMetricsLogLineSender implements StatsLogLineBuilder<String, StatsCollector<String>> {
   private static final Log LOG = LogFactory.getLog(StatsMetricsLogLineSender.class);
@@ -61,12 +63,37 @@ public class StatsMetricsLogLineSender implements StatsLogLineBuilder<String, St
 
   public static long TOTAL_COLLECTING_TIME = 0;
 
+  private volatile CollectorsExecutor collectorsExecutor;
+
+  private final CollectorSelfMetrics selfMetrics;
+
+  private static final ThreadLocal<InfluxLineEncoder> ENCODER = new ThreadLocal<InfluxLineEncoder>() {
+    @Override
+    protected InfluxLineEncoder initialValue() {
+      return new InfluxLineEncoder();
+    }
+  };
+
+  public StatsMetricsLogLineSender() {
+    this(null);
+  }
+
+  /**
+   * @param selfMetrics where to record collectors timings; null disables recording
+   */
+  public StatsMetricsLogLineSender(CollectorSelfMetrics selfMetrics) {
+    this.selfMetrics = selfMetrics;
+  }
+
   @Override
   public String build(List<StatsCollector<String>> statsCollectors) {
+    return build(statsCollectors, getSource());
+  }
+
+  String build(List<StatsCollector<String>> statsCollectors, EmbeddedSource source) {
     long t0 = System.currentTimeMillis();
     long totalCollectingTime = 0;
 
-    EmbeddedSource source = getSource();
     if (source == null) {
       LOG.warn("Source is still null, can't write metrics");
       return null;
@@ -85,20 +112,34 @@ public class StatsMetricsLogLineSender implements StatsLogLineBuilder<String, St
     
     CollectionStats.CURRENT_RUN_GATHERED_LINES.set(0);
     
+    // collectors which report on the whole run (like heartbeat) can run only once all other lines were written
+    List<StatsCollector<String>> otherCollectors = new ArrayList<StatsCollector<String>>(statsCollectors.size());
+    List<StatsCollector<String>> lastCollectors = new ArrayList<StatsCollector<String>>();
     for (StatsCollector<String> collector : statsCollectors) {
-      try {
-        int gatheredLines = processCollector(statsCollectors, source, logLines, sb,
-            collectingTimePerCollector, collector);
-        
-        CollectionStats.CURRENT_RUN_GATHERED_LINES.set(CollectionStats.CURRENT_RUN_GATHERED_LINES.get() + gatheredLines);
-      } catch (ChannelException ce) {
-        // handling channel errors, like channel-full
-        // in this case we will stop further writing to the channel
-        LOG.error("Failed to add stats line to flume channel, skipping writing of remaining lines", ce);
-        break;
+      if (collector.runsAfterOtherCollectors()) {
+        lastCollectors.add(collector);
+      } else {
+        otherCollectors.add(collector);
       }
     }
+
+    CollectorsExecutor executor = collectorsExecutor;
+    boolean written;
+    if (executor != null) {
+      written = processCollectorsConcurrently(executor, otherCollectors, source, logLines, sb,
+                                              collectingTimePerCollector);
+    } else {
+      written = processCollectorsSerially(statsCollectors, otherCollectors, source, logLines, sb,
+                                          collectingTimePerCollector);
+    }
+    if (written) {
+      processCollectorsSerially(statsCollectors, lastCollectors, source, logLines, sb, collectingTimePerCollector);
+    }
     
+    if (selfMetrics != null && selfMetrics.shouldExport(System.currentTimeMillis())) {
+      exportSelfMetrics(source, logLines, sb);
+    }
+
     if (CollectionStats.CURRENT_RUN_GATHERED_LINES.get() > 0) {
       if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
         AgentStatusRecorder.GLOBAL_INSTANCE.updateMetricsCollected(true);
@@ -120,31 +161,42 @@ public class StatsMetricsLogLineSender implements StatsLogLineBuilder<String, St
       EmbeddedSource source, boolean logLines, StringBuilder sb, Map<String, Long> collectingTimePerCollector,
       StatsCollector<String> collector) {
     int countGatheredLines = 0;
+    CollectorRun run = new CollectorRun(collector);
     
     try {
+      if (collector.getSerializer() == Serializer.INFLUX) {
+        countGatheredLines = processEncodedCollector(source, logLines, sb, collectingTimePerCollector, collector,
+                                                     run);
+        return countGatheredLines;
+      }
+
       long t1 = System.currentTimeMillis();
       Iterator<String> data = collector.collect(null);
       long collectingTime = System.currentTimeMillis() - t1;
+      run.collected();
 
       if (LOG.isDebugEnabled()) {
         collectingTimePerCollector.put(collector.getId(), collectingTime);
       }
 
       TOTAL_COLLECTING_TIME += collectingTime;
-      t1 = System.currentTimeMillis();
-      while (data.hasNext()) {
+      while (true) {
+        long serializeStart = System.nanoTime();
+        if (!data.hasNext()) {
+          break;
+        }
         // this handles stats logs
         String statLine = data.next();
         String spmLogLine = StatsLogLineFormat.buildSpmLogLineToSend(statLine, System.currentTimeMillis(),
                                                                      collector.getSerializer()
                                                                          .shouldGeneratePrefix());
+        byte[] body = spmLogLine.getBytes();
+        run.serialized(serializeStart);
         
         countGatheredLines++;
 
         // write to sender channel
-        Event newEvent = new SimpleEvent();
-        newEvent.setBody(spmLogLine.getBytes());
-        source.put(newEvent);
+        putEvent(source, body);
 
         if (logLines) {
           sb.append(spmLogLine).append(MonitorUtil.LINE_SEPARATOR);
@@ -153,6 +205,7 @@ public class StatsMetricsLogLineSender implements StatsLogLineBuilder<String, St
     } catch (ChannelException ce) {
       throw ce;
     } catch (Throwable thr) {
+      run.failed();
       // catching all exceptions here to prevent all stats gathering failure
       if (statsCollectors != null && statsCollectors.size() < 50) {
         LOG.error("Gathering stats failed, collector: " + collector + ", collectors: " + statsCollectors, thr);
@@ -160,11 +213,266 @@ public class StatsMetricsLogLineSender implements StatsLogLineBuilder<String, St
         LOG.error("Gathering stats failed, collector: " + collector, thr);
       }
       // DO NOTHING
+    } finally {
+      run.finish(countGatheredLines);
+    }
+
+    return countGatheredLines;
+  }
+
+  /**
+   * Influx lines are encoded by the collector directly into bytes which are used as event bodies as they are, so no
+   * String is created for them (unless lines are being logged).
+   */
+  private int processEncodedCollector(EmbeddedSource source, boolean logLines, StringBuilder sb,
+                                      Map<String, Long> collectingTimePerCollector, StatsCollector<String> collector,
+                                      CollectorRun run) {
+    int countGatheredLines = 0;
+
+    long t1 = System.currentTimeMillis();
+    Iterator<byte[]> data = collector.collectEncoded(null, ENCODER.get());
+    long collectingTime = System.currentTimeMillis() - t1;
+    run.collected();
+
+    if (LOG.isDebugEnabled()) {
+      collectingTimePerCollector.put(collector.getId(), collectingTime);
+    }
+
+    TOTAL_COLLECTING_TIME += collectingTime;
+    while (true) {
+      // rows are encoded lazily, while iterating
+      long serializeStart = System.nanoTime();
+      if (!data.hasNext()) {
+        break;
+      }
+      byte[] line = data.next();
+      run.serialized(serializeStart);
+
+      countGatheredLines++;
+
+      // write to sender channel
+      putEvent(source, line);
+
+      if (logLines) {
+        sb.append(new String(line, InfluxLineEncoder.UTF_8)).append(MonitorUtil.LINE_SEPARATOR);
+      }
     }
 
     return countGatheredLines;
   }
 
+  /**
+   * Collectors are run on the executor, each one gathering its lines into memory. Lines are then written to the
+   * channel by the calling thread in the original collectors order; lines of collectors which didn't finish before
+   * the deadline are skipped for this interval.
+   *
+   * @return false if writing to the channel failed
+   */
+  private boolean processCollectorsConcurrently(CollectorsExecutor executor,
+                                                List<StatsCollector<String>> statsCollectors, EmbeddedSource source,
+                                                boolean logLines, StringBuilder sb,
+                                                Map<String, Long> collectingTimePerCollector) {
+    CollectorsExecutor.CollectorTask<CollectedLines> task = new CollectorsExecutor.CollectorTask<CollectedLines>() {
+      @Override
+      public CollectedLines run(StatsCollector<String> collector) {
+        return gatherLines(collector);
+      }
+    };
+    List<CollectedLines> results = executor.execute(statsCollectors, task);
+
+    for (int i = 0; i < results.size(); i++) {
+      CollectedLines collected = results.get(i);
+      if (collected == null) {
+        continue;
+      }
+
+      if (LOG.isDebugEnabled()) {
+        collectingTimePerCollector.put(statsCollectors.get(i).getId(), collected.collectingTime);
+      }
+      TOTAL_COLLECTING_TIME += collected.collectingTime;
+
+      try {
+        for (byte[] line : collected.lines) {
+          putEvent(source, line);
+
+          if (logLines) {
+            sb.append(new String(line, InfluxLineEncoder.UTF_8)).append(MonitorUtil.LINE_SEPARATOR);
+          }
+        }
+        CollectionStats.CURRENT_RUN_GATHERED_LINES.addAndGet(collected.lines.size());
+      } catch (ChannelException ce) {
+        // handling channel errors, like channel-full
+        // in this case we will stop further writing to the channel
+        LOG.error("Failed to add stats line to flume channel, skipping writing of remaining lines", ce);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param allCollectors all collectors of this run, used only when reporting failures
+   * @return false if writing to the channel failed
+   */
+  private boolean processCollectorsSerially(List<StatsCollector<String>> allCollectors,
+                                            List<StatsCollector<String>> statsCollectors, EmbeddedSource source,
+                                            boolean logLines, StringBuilder sb,
+                                            Map<String, Long> collectingTimePerCollector) {
+    for (StatsCollector<String> collector : statsCollectors) {
+      try {
+        int gatheredLines = processCollector(allCollectors, source, logLines, sb,
+            collectingTimePerCollector, collector);
+
+        CollectionStats.CURRENT_RUN_GATHERED_LINES.addAndGet(gatheredLines);
+      } catch (ChannelException ce) {
+        // handling channel errors, like channel-full
+        // in this case we will stop further writing to the channel
+        LOG.error("Failed to add stats line to flume channel, skipping writing of remaining lines", ce);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private CollectedLines gatherLines(StatsCollector<String> collector) {
+    long t1 = System.currentTimeMillis();
+    List<byte[]> lines = new ArrayList<byte[]>();
+    CollectorRun run = new CollectorRun(collector);
+
+    try {
+      if (collector.getSerializer() == Serializer.INFLUX) {
+        Iterator<byte[]> data = collector.collectEncoded(null, ENCODER.get());
+        run.collected();
+        long serializeStart = System.nanoTime();
+        while (data.hasNext()) {
+          lines.add(data.next());
+        }
+        run.serialized(serializeStart);
+      } else {
+        Iterator<String> data = collector.collect(null);
+        run.collected();
+        long serializeStart = System.nanoTime();
+        while (data.hasNext()) {
+          String spmLogLine = StatsLogLineFormat.buildSpmLogLineToSend(data.next(), System.currentTimeMillis(),
+                                                                       collector.getSerializer()
+                                                                           .shouldGeneratePrefix());
+          lines.add(spmLogLine.getBytes());
+        }
+        run.serialized(serializeStart);
+      }
+    } catch (RuntimeException e) {
+      run.failed();
+      throw e;
+    } finally {
+      run.finish(lines.size());
+    }
+
+    return new CollectedLines(lines, System.currentTimeMillis() - t1);
+  }
+
+  private void putEvent(EmbeddedSource source, byte[] body) {
+    long start = selfMetrics != null ? System.nanoTime() : 0;
+    Event newEvent = new SimpleEvent();
+    newEvent.setBody(body);
+    source.put(newEvent);
+    if (selfMetrics != null) {
+      selfMetrics.recordChannelPut(System.nanoTime() - start);
+    }
+  }
+
+  private void exportSelfMetrics(EmbeddedSource source, boolean logLines, StringBuilder sb) {
+    try {
+      for (byte[] line : selfMetrics.export(System.currentTimeMillis(), ENCODER.get())) {
+        putEvent(source, line);
+        if (logLines) {
+          sb.append(new String(line, InfluxLineEncoder.UTF_8)).append(MonitorUtil.LINE_SEPARATOR);
+        }
+      }
+    } catch (ChannelException ce) {
+      LOG.error("Failed to add agent self metrics to flume channel", ce);
+    }
+  }
+
+  /**
+   * Measures one run of a collector: time to gather its data, time spent serializing lines, bytes allocated by the
+   * running thread and failures. Does nothing when self metrics are disabled.
+   */
+  private final class CollectorRun {
+    private final StatsCollector<String> collector;
+    private final long failuresBefore;
+    private final long allocatedBefore;
+    private final long start;
+    private long collectNanos = -1;
+    private long serializeNanos;
+    private boolean failed;
+
+    private CollectorRun(StatsCollector<String> collector) {
+      this.collector = collector;
+      if (selfMetrics != null) {
+        this.failuresBefore = collector.getFailuresCount();
+        this.allocatedBefore = Threads.currentThreadAllocatedBytes();
+        this.start = System.nanoTime();
+      } else {
+        this.failuresBefore = 0;
+        this.allocatedBefore = -1;
+        this.start = 0;
+      }
+    }
+
+    private void collected() {
+      if (selfMetrics != null) {
+        collectNanos = System.nanoTime() - start;
+      }
+    }
+
+    private void serialized(long serializeStart) {
+      if (selfMetrics != null) {
+        serializeNanos += System.nanoTime() - serializeStart;
+      }
+    }
+
+    private void failed() {
+      failed = true;
+    }
+
+    private void finish(int lines) {
+      if (selfMetrics == null) {
+        return;
+      }
+      long errors = collector.getFailuresCount() - failuresBefore + (failed ? 1 : 0);
+      long allocated = -1;
+      if (allocatedBefore >= 0) {
+        long allocatedAfter = Threads.currentThreadAllocatedBytes();
+        allocated = allocatedAfter >= 0 ? allocatedAfter - allocatedBefore : -1;
+      }
+      selfMetrics.recordCollector(collector.getId(), collectNanos >= 0 ? collectNanos : System.nanoTime() - start,
+                                  lines, allocated, errors);
+      selfMetrics.recordSerialization(serializeNanos);
+    }
+  }
+
+  private static final class CollectedLines {
+    private final List<byte[]> lines;
+    private final long collectingTime;
+
+    private CollectedLines(List<byte[]> lines, long collectingTime) {
+      this.lines = lines;
+      this.collectingTime = collectingTime;
+    }
+  }
+
+  /**
+   * @param collectorsExecutor executor to run collectors concurrently with; null means collectors are run serially
+   *                           by the calling thread
+   */
+  public void setCollectorsExecutor(CollectorsExecutor collectorsExecutor) {
+    this.collectorsExecutor = collectorsExecutor;
+  }
+
+  public CollectorsExecutor getCollectorsExecutor() {
+    return collectorsExecutor;
+  }
+
   private EmbeddedSource getSource() {
     return Sender.getSource(SenderType.STATS);
   }
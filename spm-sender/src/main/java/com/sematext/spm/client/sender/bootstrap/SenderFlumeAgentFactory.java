@@ -34,6 +34,7 @@ import com.sematext.spm.client.sender.config.Configuration;
 import com.sematext.spm.client.sender.config.SenderConfig;
 import com.sematext.spm.client.sender.flume.SenderEmbeddedAgent;
 import com.sematext.spm.client.sender.flume.SinkConstants;
+import com.sematext.spm.client.sender.flume.channel.SegmentQueueChannel;
 import com.sematext.spm.client.sender.flume.influx.InfluxClient;
 import com.sematext.spm.client.sender.flume.influx.InfluxSink;
 import com.sematext.spm.client.util.FileUtil;
@@ -111,6 +112,7 @@ public final class SenderFlumeAgentFactory {
 
       // file properties
       properties.put("maxFileSize", "200000");
+      properties.put(SegmentQueueChannel.MAX_BYTES, String.valueOf(4 * 1024 * 1024));
     } else if (tagsSender) {
       // even smaller capacity for tags
       properties.put("memoryCapacity", "100");
@@ -121,14 +123,18 @@ public final class SenderFlumeAgentFactory {
 
       // file properties
       properties.put("maxFileSize", "20000");
+      properties.put(SegmentQueueChannel.MAX_BYTES, String.valueOf(1024 * 1024));
     } else {
       properties.put("memoryCapacity", "20000");
       properties.put("overflowCapacity", "500000");
       properties.put("overflowTimeout", "1");
       properties.put("avgEventSize", "100");
+      // allows sink batches to grow up to its byte budget
+      properties.put("transactionCapacity", "1000");
 
       // file properties
       properties.put("maxFileSize", "100000000");
+      properties.put(SegmentQueueChannel.MAX_BYTES, String.valueOf(128 * 1024 * 1024));
     }
 
     String receiverUrl = senderConfig.getReceiverUrl().trim();
@@ -144,6 +150,9 @@ public final class SenderFlumeAgentFactory {
     }
 
     properties.put("sinkClass", senderConfig.getSinkClass());
+    if (senderConfig.getChannelType() != null) {
+      properties.put(SenderEmbeddedAgent.CHANNEL_TYPE_PARAM, senderConfig.getChannelType().trim());
+    }
     properties.put("http.post.sink.url", senderConfig.getReceiverUrl() + "/thrift");
     properties.put("http.post.sink.batch.size", "100");
 
@@ -166,5 +175,15 @@ public final class SenderFlumeAgentFactory {
       properties.put(InfluxSink.PROXY_PASSWORD, senderConfig.getProxyPassword());
       properties.put(InfluxSink.PROXY_SECURE, String.valueOf(senderConfig.isProxySecure()));
     }
+
+    if (senderConfig.getCompression() != null) {
+      properties.put(InfluxSink.COMPRESSION, senderConfig.getCompression());
+    }
+    if (senderConfig.getMaxInFlightBatches() != null) {
+      properties.put(InfluxSink.MAX_IN_FLIGHT_BATCHES, String.valueOf(senderConfig.getMaxInFlightBatches()));
+    }
+    if (senderConfig.isAdaptiveBatching() != null) {
+      properties.put(InfluxSink.ADAPTIVE_BATCHING, String.valueOf(senderConfig.isAdaptiveBatching()));
+    }
   }
 }
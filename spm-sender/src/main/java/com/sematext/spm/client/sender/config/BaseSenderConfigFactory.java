@@ -57,7 +57,13 @@ public abstract class BaseSenderConfigFactory implements SenderConfigFactory {
                           Integer.valueOf(properties.get("proxy_port").trim()) : null).
         setProxyUser(properties.get("proxy_user_name")).
         setProxyPassword(properties.get("proxy_password")).
-        setProxySecure(Boolean.parseBoolean(properties.get("proxy_secure")));
+        setProxySecure(Boolean.parseBoolean(properties.get("proxy_secure"))).
+        setCompression(properties.get("spm_sender_compression")).
+        setMaxInFlightBatches(properties.get("spm_sender_max_in_flight_batches") != null &&
+                                  !properties.get("spm_sender_max_in_flight_batches").trim().equals("") ?
+                                  Integer.valueOf(properties.get("spm_sender_max_in_flight_batches").trim()) : null).
+        setAdaptiveBatching(Boolean.parseBoolean(properties.get("spm_sender_adaptive_batching"))).
+        setChannelType(properties.get("spm_sender_channel_type"));
 
     postProcess(builder);
 
@@ -39,6 +39,10 @@ public final class SenderConfig {
   private String flumeSubdir;
   private String sinkClass;
   private Boolean proxySecure;
+  private String compression;
+  private Integer maxInFlightBatches;
+  private Boolean adaptiveBatching;
+  private String channelType;
 
   private long creationTime = System.currentTimeMillis();
 
@@ -89,6 +93,22 @@ public final class SenderConfig {
     return sinkClass;
   }
 
+  public String getCompression() {
+    return compression;
+  }
+
+  public Integer getMaxInFlightBatches() {
+    return maxInFlightBatches;
+  }
+
+  public Boolean isAdaptiveBatching() {
+    return adaptiveBatching;
+  }
+
+  public String getChannelType() {
+    return channelType;
+  }
+
   /*CHECKSTYLE:OFF*/
   @Override
   public boolean equals(Object o) {
@@ -108,6 +128,10 @@ public final class SenderConfig {
     if (tagAliasesEndpoint != null ? !tagAliasesEndpoint.equals(that.tagAliasesEndpoint) : that.tagAliasesEndpoint != null) return false;
     if (metainfoEndpoint != null ? !metainfoEndpoint.equals(that.metainfoEndpoint) : that.metainfoEndpoint != null) return false;
     if (tokens != null ? !tokens.equals(that.tokens) : that.tokens != null) return false;
+    if (compression != null ? !compression.equals(that.compression) : that.compression != null) return false;
+    if (maxInFlightBatches != null ? !maxInFlightBatches.equals(that.maxInFlightBatches) : that.maxInFlightBatches != null) return false;
+    if (adaptiveBatching != null ? !adaptiveBatching.equals(that.adaptiveBatching) : that.adaptiveBatching != null) return false;
+    if (channelType != null ? !channelType.equals(that.channelType) : that.channelType != null) return false;
 
     return true;
   }
@@ -125,6 +149,10 @@ public final class SenderConfig {
     result = 31 * result + (proxyUser != null ? proxyUser.hashCode() : 0);
     result = 31 * result + (proxyPassword != null ? proxyPassword.hashCode() : 0);
     result = 31 * result + (proxySecure != null ? proxySecure.hashCode() : 0);
+    result = 31 * result + (compression != null ? compression.hashCode() : 0);
+    result = 31 * result + (maxInFlightBatches != null ? maxInFlightBatches.hashCode() : 0);
+    result = 31 * result + (adaptiveBatching != null ? adaptiveBatching.hashCode() : 0);
+    result = 31 * result + (channelType != null ? channelType.hashCode() : 0);
     return result;
   }
   /*CHECKSTYLE:ON*/
@@ -144,6 +172,10 @@ public final class SenderConfig {
         ", proxyPassword='" + proxyPassword + '\'' +
         ", proxySecure=" + proxySecure +
         ", sinkClass=\'" + sinkClass + '\'' +
+        ", compression='" + compression + '\'' +
+        ", maxInFlightBatches=" + maxInFlightBatches +
+        ", adaptiveBatching=" + adaptiveBatching +
+        ", channelType='" + channelType + '\'' +
         '}';
   }
 
@@ -225,6 +257,26 @@ public final class SenderConfig {
       return this;
     }
 
+    public Builder setCompression(String compression) {
+      this.config.compression = compression;
+      return this;
+    }
+
+    public Builder setMaxInFlightBatches(Integer maxInFlightBatches) {
+      this.config.maxInFlightBatches = maxInFlightBatches;
+      return this;
+    }
+
+    public Builder setAdaptiveBatching(Boolean adaptiveBatching) {
+      this.config.adaptiveBatching = adaptiveBatching;
+      return this;
+    }
+
+    public Builder setChannelType(String channelType) {
+      this.config.channelType = channelType;
+      return this;
+    }
+
     public SenderConfig config() {
       return config;
     }
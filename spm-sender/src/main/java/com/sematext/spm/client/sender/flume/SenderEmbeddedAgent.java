@@ -50,6 +50,7 @@ import java.util.TreeSet;
 
 import com.sematext.spm.client.Log;
 import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.sender.flume.channel.SegmentQueueChannel;
 import com.sematext.spm.client.sender.flume.influx.InfluxSink;
 import com.sematext.spm.client.sender.util.DynamicUrlParamSink;
 
@@ -62,6 +63,8 @@ public class SenderEmbeddedAgent {
   private static final Log LOGGER = LogFactory.getLog(SenderEmbeddedAgent.class);
 
   public static String SINK_CLASS_PARAM = "sinkClass";
+  // type of disk backed channel: spillable (default) or segmentQueue
+  public static String CHANNEL_TYPE_PARAM = "channelType";
 
   private State state;
   private final DaemonLifecycleSupervisor supervisor;
@@ -118,6 +121,9 @@ public class SenderEmbeddedAgent {
     if (properties.get("checkpointDir") == null) {
       channel = new MemoryChannel();
       channel.setName("Sender event - memory channel");
+    } else if (SegmentQueueChannel.TYPE.equals(properties.get(CHANNEL_TYPE_PARAM))) {
+      channel = new SegmentQueueChannel();
+      channel.setName("Sender event - segment queue channel");
     } else {
       channel = new DaemonSpillableMemoryChannel();
       channel.setName("Sender event - spillable channel");
@@ -0,0 +1,449 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.channel;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Append-only queue of byte records stored in memory-mapped segment files.
+ * <p>
+ * Records are addressed by logical position: base position of a segment (which is also its file name) plus offset of
+ * the record in it. Each record is stored as [length][crc32][bytes]; length is written last, so a record is never
+ * visible half written. Length -1 marks the end of a segment.
+ * <p>
+ * Read position of the oldest record which wasn't acknowledged yet is kept in a small mapped file, so after a crash
+ * reading continues from there (records taken but not acknowledged before the crash are delivered again). Data is
+ * written to the page cache only, which survives a crash of the JVM but not of the OS.
+ * <p>
+ * When segments take more than maxBytes, oldest segments are deleted even if they weren't read yet.
+ * All methods are synchronized, queue is meant to be used by one writer and a few readers.
+ */
+public final class MappedSegmentQueue {
+  private static final Log LOG = LogFactory.getLog(MappedSegmentQueue.class);
+
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String OFFSET_FILE = "read.offset";
+  private static final int RECORD_HEADER = 8;
+  private static final int END_OF_SEGMENT = -1;
+  private static final long OFFSET_CHECK = 0x5e6a5e6a5e6a5e6aL;
+
+  public static final class Record {
+    private final long position;
+    private final byte[] data;
+
+    private Record(long position, byte[] data) {
+      this.position = position;
+      this.data = data;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+  }
+
+  private static final class Segment {
+    private final long base;
+    private final File file;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+
+    private Segment(long base, File file, int capacity, MappedByteBuffer buffer) {
+      this.base = base;
+      this.file = file;
+      this.capacity = capacity;
+      this.buffer = buffer;
+    }
+  }
+
+  private final File dir;
+  private final int segmentSize;
+  private final long maxBytes;
+
+  private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+  private final CRC32 crc = new CRC32();
+  private MappedByteBuffer offsetBuffer;
+
+  private long writePosition;
+  private long readPosition;
+  // taken but not yet acknowledged records, including those waiting for redelivery
+  private final TreeSet<Long> unacknowledged = new TreeSet<Long>();
+  private final Deque<Record> redelivery = new ArrayDeque<Record>();
+  private long pendingCount;
+  private long droppedCount;
+  private long committedOffset;
+
+  /**
+   * @param segmentSize size of each segment file; records bigger than that can't be stored
+   * @param maxBytes    max disk space taken by segments, at least 2 segments are always kept
+   */
+  public MappedSegmentQueue(File dir, int segmentSize, long maxBytes) throws IOException {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.maxBytes = maxBytes;
+
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't create queue dir " + dir);
+    }
+    open();
+  }
+
+  private void open() throws IOException {
+    File[] files = dir.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File d, String name) {
+        return name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        if (file.length() < RECORD_HEADER + 4) {
+          // segment creation didn't finish
+          if (!file.delete()) {
+            LOG.warn("Can't delete incomplete queue segment " + file);
+          }
+          continue;
+        }
+        try {
+          long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+          segments.put(base, map(base, file, (int) file.length()));
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring unexpected file in queue dir: " + file);
+        }
+      }
+    }
+
+    offsetBuffer = mapOffsetFile();
+    long savedOffset = offsetBuffer.getLong(0);
+    boolean offsetValid = (savedOffset ^ OFFSET_CHECK) == offsetBuffer.getLong(8);
+
+    if (segments.isEmpty()) {
+      long base = offsetValid ? savedOffset : 0;
+      segments.put(base, createSegment(base));
+      writePosition = base;
+      readPosition = base;
+    } else {
+      Segment last = segments.lastEntry().getValue();
+      writePosition = last.base + findEnd(last);
+
+      long first = segments.firstKey();
+      if (!offsetValid || savedOffset < first || savedOffset > writePosition) {
+        if (offsetValid) {
+          LOG.warn("Stored read offset " + savedOffset + " is outside of the queue, reading from its start");
+        }
+        savedOffset = first;
+      }
+      readPosition = savedOffset;
+      pendingCount = countRecords(readPosition, writePosition);
+    }
+    saveOffset(readPosition);
+
+    LOG.info("Opened segment queue in " + dir + ", segments: " + segments.size() + ", pending records: " +
+                 pendingCount);
+  }
+
+  /**
+   * Finds the end of valid data in the segment, skipping over anything not fully written or corrupted.
+   */
+  private int findEnd(Segment segment) {
+    int offset = 0;
+    while (offset + RECORD_HEADER <= segment.capacity) {
+      int length = segment.buffer.getInt(offset);
+      if (length <= 0 || offset + RECORD_HEADER + length > segment.capacity) {
+        break;
+      }
+      byte[] data = new byte[length];
+      segment.buffer.position(offset + RECORD_HEADER);
+      segment.buffer.get(data);
+      if (checksum(data) != segment.buffer.getInt(offset + 4)) {
+        LOG.warn("Corrupted record found in " + segment.file + " at " + offset + ", ignoring data after it");
+        break;
+      }
+      offset += RECORD_HEADER + length;
+    }
+    return offset;
+  }
+
+  private long countRecords(long from, long to) {
+    long count = 0;
+    long position = from;
+    while (position < to) {
+      Segment segment = segments.floorEntry(position).getValue();
+      int offset = (int) (position - segment.base);
+      int length = offset + RECORD_HEADER <= segment.capacity ? segment.buffer.getInt(offset) : END_OF_SEGMENT;
+      if (length <= 0) {
+        position = nextSegmentBase(segment, to);
+      } else {
+        count++;
+        position += RECORD_HEADER + length;
+      }
+    }
+    return count;
+  }
+
+  private long nextSegmentBase(Segment segment, long limit) {
+    Long next = segments.higherKey(segment.base);
+    return next != null ? next : limit;
+  }
+
+  /**
+   * Appends all records; empty records are ignored.
+   *
+   * @throws IllegalArgumentException if a record can't fit into a segment; no records are appended in that case
+   */
+  public synchronized void append(Collection<byte[]> records) throws IOException {
+    for (byte[] record : records) {
+      if (RECORD_HEADER + record.length + 4 > segmentSize) {
+        throw new IllegalArgumentException("Record of " + record.length + " bytes doesn't fit into queue segment");
+      }
+    }
+
+    Segment segment = segments.lastEntry().getValue();
+    for (byte[] record : records) {
+      if (record.length == 0) {
+        continue;
+      }
+
+      int offset = (int) (writePosition - segment.base);
+      // always leave room for end of segment marker
+      if (offset + RECORD_HEADER + record.length + 4 > segment.capacity) {
+        segment.buffer.putInt(offset, END_OF_SEGMENT);
+        segment = createSegment(segment.base + segment.capacity);
+        segments.put(segment.base, segment);
+        writePosition = segment.base;
+        offset = 0;
+      }
+
+      segment.buffer.position(offset + RECORD_HEADER);
+      segment.buffer.put(record);
+      segment.buffer.putInt(offset + 4, checksum(record));
+      segment.buffer.putInt(offset, record.length);
+
+      writePosition += RECORD_HEADER + record.length;
+      pendingCount++;
+    }
+
+    evictIfNeeded();
+  }
+
+  /**
+   * @return next record (records which were given back are returned first) or null if there are none
+   */
+  public synchronized Record poll() {
+    Record redelivered = redelivery.pollFirst();
+    if (redelivered != null) {
+      pendingCount--;
+      return redelivered;
+    }
+
+    while (readPosition < writePosition) {
+      Segment segment = segments.floorEntry(readPosition).getValue();
+      int offset = (int) (readPosition - segment.base);
+      int length = offset + RECORD_HEADER <= segment.capacity ? segment.buffer.getInt(offset) : END_OF_SEGMENT;
+      if (length <= 0) {
+        readPosition = nextSegmentBase(segment, writePosition);
+        continue;
+      }
+
+      byte[] data = new byte[length];
+      segment.buffer.position(offset + RECORD_HEADER);
+      segment.buffer.get(data);
+
+      Record record = new Record(readPosition, data);
+      unacknowledged.add(readPosition);
+      readPosition += RECORD_HEADER + length;
+      pendingCount--;
+      return record;
+    }
+    return null;
+  }
+
+  /**
+   * Marks records as processed; read offset is moved past all records which are acknowledged.
+   */
+  public synchronized void acknowledge(List<Record> records) {
+    for (Record record : records) {
+      unacknowledged.remove(record.position);
+    }
+    saveOffset(unacknowledged.isEmpty() ? readPosition : unacknowledged.first());
+    deleteConsumedSegments();
+  }
+
+  /**
+   * Gives records back, they will be returned by poll() again in the same order.
+   */
+  public synchronized void giveBack(List<Record> records) {
+    for (int i = records.size() - 1; i >= 0; i--) {
+      redelivery.addFirst(records.get(i));
+    }
+    pendingCount += records.size();
+  }
+
+  public synchronized long size() {
+    return pendingCount;
+  }
+
+  public synchronized long getDroppedCount() {
+    return droppedCount;
+  }
+
+  public synchronized void close() {
+    for (Segment segment : segments.values()) {
+      segment.buffer.force();
+      unmap(segment.buffer);
+    }
+    segments.clear();
+    offsetBuffer.force();
+    unmap(offsetBuffer);
+  }
+
+  private void deleteConsumedSegments() {
+    while (segments.size() > 1) {
+      Map.Entry<Long, Segment> second = segments.higherEntry(segments.firstKey());
+      if (second.getKey() > committedOffset) {
+        break;
+      }
+      delete(segments.pollFirstEntry().getValue());
+    }
+  }
+
+  private void evictIfNeeded() {
+    while (segments.size() > 2 && (long) segments.size() * segmentSize > maxBytes) {
+      Segment oldest = segments.pollFirstEntry().getValue();
+      long nextBase = segments.firstKey();
+
+      if (readPosition < nextBase) {
+        long dropped = countRecords(Math.max(readPosition, oldest.base), nextBase, oldest);
+        droppedCount += dropped;
+        pendingCount -= dropped;
+        readPosition = nextBase;
+        LOG.warn("Segment queue is full, dropped " + dropped + " oldest records");
+      }
+      unacknowledged.headSet(nextBase).clear();
+      delete(oldest);
+      saveOffset(unacknowledged.isEmpty() ? readPosition : unacknowledged.first());
+    }
+  }
+
+  private static long countRecords(long from, long to, Segment segment) {
+    long count = 0;
+    int offset = (int) (from - segment.base);
+    int end = (int) Math.min(to - segment.base, segment.capacity);
+    while (offset + RECORD_HEADER <= end) {
+      int length = segment.buffer.getInt(offset);
+      if (length <= 0) {
+        break;
+      }
+      count++;
+      offset += RECORD_HEADER + length;
+    }
+    return count;
+  }
+
+  private void saveOffset(long offset) {
+    committedOffset = offset;
+    // check value is written last; torn write makes the offset invalid and queue is read from start after restart
+    offsetBuffer.putLong(0, offset);
+    offsetBuffer.putLong(8, offset ^ OFFSET_CHECK);
+  }
+
+  private int checksum(byte[] data) {
+    crc.reset();
+    crc.update(data, 0, data.length);
+    return (int) crc.getValue();
+  }
+
+  private Segment createSegment(long base) throws IOException {
+    File file = new File(dir, String.format("%020d", base) + SEGMENT_SUFFIX);
+    return map(base, file, segmentSize);
+  }
+
+  private static Segment map(long base, File file, int size) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(size);
+      MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      return new Segment(base, file, size, buffer);
+    } finally {
+      // mapping stays valid after the file is closed
+      raf.close();
+    }
+  }
+
+  private MappedByteBuffer mapOffsetFile() throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(new File(dir, OFFSET_FILE), "rw");
+    try {
+      raf.setLength(16);
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 16);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static void delete(Segment segment) {
+    unmap(segment.buffer);
+    if (!segment.file.delete()) {
+      LOG.warn("Can't delete queue segment " + segment.file);
+    }
+  }
+
+  /**
+   * Releases the mapping right away instead of waiting for GC (needed to delete mapped files on some platforms).
+   * Best effort only, relies on JDK internals.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (Throwable thr) {
+      // mapping will be released by GC
+    }
+  }
+
+  List<File> getSegmentFiles() {
+    List<File> files = new ArrayList<File>();
+    for (Segment segment : segments.values()) {
+      files.add(segment.file);
+    }
+    return files;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.channel;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.flume.ChannelException;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.channel.BasicChannelSemantics;
+import org.apache.flume.channel.BasicTransactionSemantics;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.instrumentation.ChannelCounter;
+import org.eclipse.collections.impl.list.mutable.FastList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+
+/**
+ * Channel storing event bodies in a MappedSegmentQueue. Unlike file channel it keeps no checkpoints, event headers
+ * or per-event objects on disk: bodies of each committed put transaction are appended to the mapped segment as they
+ * are and taken events are acknowledged in bulk on commit. Puts never block: when the queue reaches its max size,
+ * oldest segments are dropped.
+ */
+public class SegmentQueueChannel extends BasicChannelSemantics {
+  private static final Log LOG = LogFactory.getLog(SegmentQueueChannel.class);
+
+  public static final String TYPE = "segmentQueue";
+
+  public static final String DATA_DIRS = "dataDirs";
+  public static final String SEGMENT_SIZE = "segmentQueueSegmentSize";
+  public static final String MAX_BYTES = "segmentQueueMaxBytes";
+  public static final String TRANSACTION_CAPACITY = "transactionCapacity";
+
+  private static final String QUEUE_SUBDIR = "segments";
+  private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+  private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+  private static final long DEFAULT_MAX_BYTES = 256 * 1024 * 1024;
+  private static final int DEFAULT_TRANSACTION_CAPACITY = 100;
+
+  private File queueDir;
+  private int segmentSize;
+  private long maxBytes;
+  private int transactionCapacity;
+
+  private volatile MappedSegmentQueue queue;
+  private ChannelCounter channelCounter;
+
+  @Override
+  public void configure(Context context) {
+    String dataDirs = context.getString(DATA_DIRS);
+    Preconditions.checkNotNull(dataDirs, DATA_DIRS + " should be defined.");
+    // only the first dir is used, queue is sequential anyway
+    queueDir = new File(dataDirs.split(",")[0].trim(), QUEUE_SUBDIR);
+
+    maxBytes = context.getLong(MAX_BYTES, DEFAULT_MAX_BYTES);
+    // small queues still need a few segments so eviction doesn't drop most of the data at once
+    long segmentSizeLong = Math.min(context.getInteger(SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE),
+                                    Math.max(MIN_SEGMENT_SIZE, maxBytes / 4));
+    segmentSize = (int) segmentSizeLong;
+    transactionCapacity = context.getInteger(TRANSACTION_CAPACITY, DEFAULT_TRANSACTION_CAPACITY);
+
+    if (channelCounter == null) {
+      channelCounter = new ChannelCounter(getName());
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    try {
+      queue = new MappedSegmentQueue(queueDir, segmentSize, maxBytes);
+    } catch (IOException e) {
+      throw new ChannelException("Can't open segment queue in " + queueDir, e);
+    }
+    channelCounter.start();
+    channelCounter.setChannelSize(queue.size());
+    LOG.info("Started " + this + " with " + queue.size() + " pending events");
+    super.start();
+  }
+
+  @Override
+  public synchronized void stop() {
+    super.stop();
+    if (queue != null) {
+      queue.close();
+      queue = null;
+    }
+    channelCounter.stop();
+  }
+
+  @Override
+  protected BasicTransactionSemantics createTransaction() {
+    return new SegmentQueueTransaction();
+  }
+
+  private final class SegmentQueueTransaction extends BasicTransactionSemantics {
+    private final List<byte[]> puts = new FastList<byte[]>();
+    private final List<MappedSegmentQueue.Record> takes = new FastList<MappedSegmentQueue.Record>();
+
+    @Override
+    protected void doPut(Event event) {
+      channelCounter.incrementEventPutAttemptCount();
+      if (puts.size() == transactionCapacity) {
+        throw new ChannelException("Put list of capacity " + transactionCapacity + " full, consider committing " +
+                                       "more frequently or increasing transactionCapacity");
+      }
+      puts.add(event.getBody());
+    }
+
+    @Override
+    protected Event doTake() {
+      channelCounter.incrementEventTakeAttemptCount();
+      if (takes.size() == transactionCapacity) {
+        throw new ChannelException("Take list of capacity " + transactionCapacity + " full, consider committing " +
+                                       "more frequently or increasing transactionCapacity");
+      }
+      MappedSegmentQueue.Record record = queue.poll();
+      if (record == null) {
+        return null;
+      }
+      takes.add(record);
+
+      Event event = new SimpleEvent();
+      event.setBody(record.getData());
+      return event;
+    }
+
+    @Override
+    protected void doCommit() {
+      MappedSegmentQueue q = queue;
+      if (!puts.isEmpty()) {
+        try {
+          q.append(puts);
+        } catch (IOException e) {
+          throw new ChannelException("Can't append to segment queue", e);
+        } catch (IllegalArgumentException e) {
+          throw new ChannelException(e.getMessage(), e);
+        }
+        channelCounter.addToEventPutSuccessCount(puts.size());
+        puts.clear();
+      }
+      if (!takes.isEmpty()) {
+        q.acknowledge(takes);
+        channelCounter.addToEventTakeSuccessCount(takes.size());
+        takes.clear();
+      }
+      channelCounter.setChannelSize(q.size());
+    }
+
+    @Override
+    protected void doRollback() {
+      puts.clear();
+      if (!takes.isEmpty()) {
+        queue.giveBack(takes);
+        takes.clear();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SegmentQueueChannel{dir=" + queueDir + ", segmentSize=" + segmentSize + ", maxBytes=" + maxBytes + '}';
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.influx;
+
+/**
+ * Decides how many bytes a batch should have. In fixed mode that is always the configured max. In adaptive mode the
+ * target grows additively while the receiver responds fast and without errors, and is cut multiplicatively when
+ * latency goes over the target or requests fail, staying between min and max bytes.
+ */
+final class AdaptiveBatchSizer {
+  // weight of the newest observation in moving averages
+  private static final double EWMA_ALPHA = 0.3;
+  private static final double MAX_ERROR_RATE = 0.05;
+
+  private final long minBytes;
+  private final long maxBytes;
+  private final long targetLatencyMs;
+  private final boolean adaptive;
+
+  private long targetBytes;
+  private double latencyEwma = -1;
+  private double errorRateEwma = 0;
+
+  AdaptiveBatchSizer(long minBytes, long maxBytes, long targetLatencyMs, boolean adaptive) {
+    this.minBytes = Math.min(minBytes, maxBytes);
+    this.maxBytes = maxBytes;
+    this.targetLatencyMs = targetLatencyMs;
+    this.adaptive = adaptive;
+    // in adaptive mode start in the middle, there is no latency data yet
+    this.targetBytes = adaptive ? Math.max(this.minBytes, maxBytes / 2) : maxBytes;
+  }
+
+  synchronized long getTargetBytes() {
+    return targetBytes;
+  }
+
+  /**
+   * @param accepted false when receiver rejected the batch (4xx)
+   */
+  synchronized void onResponse(long latencyMs, boolean accepted) {
+    if (!adaptive) {
+      return;
+    }
+    latencyEwma = latencyEwma < 0 ? latencyMs : EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * latencyEwma;
+    errorRateEwma = (1 - EWMA_ALPHA) * errorRateEwma + (accepted ? 0 : EWMA_ALPHA);
+
+    if (!accepted) {
+      // e.g. 413, smaller batch may get through and loses less data if rejected again
+      decrease(2);
+    } else if (latencyEwma > targetLatencyMs) {
+      decrease(4.0 / 3);
+    } else if (errorRateEwma < MAX_ERROR_RATE) {
+      targetBytes = Math.min(maxBytes, targetBytes + Math.max(1, maxBytes / 8));
+    }
+  }
+
+  /**
+   * Called when sending failed with server error or i/o problem.
+   */
+  synchronized void onFailure() {
+    if (!adaptive) {
+      return;
+    }
+    errorRateEwma = (1 - EWMA_ALPHA) * errorRateEwma + EWMA_ALPHA;
+    decrease(2);
+  }
+
+  private void decrease(double factor) {
+    targetBytes = Math.max(minBytes, (long) (targetBytes / factor));
+  }
+
+  boolean isAdaptive() {
+    return adaptive;
+  }
+}
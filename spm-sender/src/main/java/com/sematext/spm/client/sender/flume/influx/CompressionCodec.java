@@ -0,0 +1,40 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.influx;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compression of bulk request bodies. Implementations have to have a public no-arg constructor so they can be
+ * specified by class name in sink configuration.
+ */
+public interface CompressionCodec {
+  /**
+   * @return value of Content-Encoding header of compressed requests
+   */
+  String getContentEncoding();
+
+  /**
+   * Wraps given stream so everything written to the returned stream ends up compressed in out. Closing the returned
+   * stream has to finish the compressed stream.
+   */
+  OutputStream compress(OutputStream out) throws IOException;
+}
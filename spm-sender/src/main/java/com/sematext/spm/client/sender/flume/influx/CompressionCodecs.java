@@ -0,0 +1,117 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.influx;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Built-in compression codecs. Codec names: "none" (or empty), "gzip", "zstd" or full class name of custom
+ * CompressionCodec implementation.
+ */
+public final class CompressionCodecs {
+  public static final String NONE = "none";
+  public static final String GZIP = "gzip";
+  public static final String ZSTD = "zstd";
+
+  private static final String ZSTD_STREAM_CLASS = "com.github.luben.zstd.ZstdOutputStream";
+
+  private CompressionCodecs() {
+  }
+
+  /**
+   * @return codec for given name or null if compression shouldn't be used
+   * @throws IllegalArgumentException if codec can't be created
+   */
+  public static CompressionCodec forName(String name) {
+    if (name == null || name.trim().equals("") || NONE.equalsIgnoreCase(name.trim())) {
+      return null;
+    }
+    name = name.trim();
+
+    if (GZIP.equalsIgnoreCase(name)) {
+      return new GzipCodec();
+    } else if (ZSTD.equalsIgnoreCase(name)) {
+      return new ZstdCodec();
+    }
+
+    try {
+      return (CompressionCodec) Class.forName(name).newInstance();
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Can't create compression codec '" + name + "'", e);
+    }
+  }
+
+  public static final class GzipCodec implements CompressionCodec {
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public String getContentEncoding() {
+      return GZIP;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    @Override
+    public String toString() {
+      return GZIP;
+    }
+  }
+
+  /**
+   * Uses zstd-jni when it is present on the classpath. Agent doesn't ship it by default, so the class is looked up
+   * reflectively and creating the codec fails if it is missing.
+   */
+  public static final class ZstdCodec implements CompressionCodec {
+    private final Constructor<?> streamConstructor;
+
+    public ZstdCodec() {
+      try {
+        streamConstructor = Class.forName(ZSTD_STREAM_CLASS).getConstructor(OutputStream.class);
+      } catch (Exception e) {
+        throw new IllegalArgumentException("zstd compression requires zstd-jni on the classpath", e);
+      }
+    }
+
+    @Override
+    public String getContentEncoding() {
+      return ZSTD;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+      try {
+        return (OutputStream) streamConstructor.newInstance(out);
+      } catch (Exception e) {
+        throw new IOException("Can't create zstd stream: " + e.getMessage());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return ZSTD;
+    }
+  }
+}
@@ -20,29 +20,44 @@
 package com.sematext.spm.client.sender.flume.influx;
 
 import org.apache.flume.EventDeliveryException;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.TrustStrategy;
 import org.apache.http.util.EntityUtils;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 
+import com.sematext.spm.client.InfluxLineEncoder;
 import com.sematext.spm.client.Log;
 import com.sematext.spm.client.LogFactory;
 import com.sematext.spm.client.sender.flume.ProxyContext;
@@ -54,15 +69,35 @@ public class HttpInfluxClient extends InfluxClient {
   private static final int CONNECTION_TIMEOUT_MS = 15000;
   private static final int CONNECTION_REQUEST_TIMEOUT_MS = 15000;
   private static final int SOCKET_TIMEOUT_MS = 10000;
+
+  // TODO might be useful to make charset and content type configurable
+  private static final ContentType CONTENT_TYPE = ContentType.create("text/plain", InfluxLineEncoder.UTF_8);
   
-  private HttpClient httpClient;
-  private String fixedFullUrl;
+  // idle pooled connections are closed after this time; receiver's load balancer may close them anyway
+  private static final long IDLE_CONNECTION_TIMEOUT_MS = 50000;
+  private static final long DEFAULT_KEEP_ALIVE_MS = 30000;
+  private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+  private CloseableHttpClient httpClient;
+  private final int maxConnections;
+  private volatile String fixedFullUrl;
   private String baseServerUrl;
   private RequestConfig requestConfig;
   private boolean isMetricsEndpoint;
 
   public HttpInfluxClient(String baseServerUrl, String urlPath,
                           Map<String, String> urlParams, ProxyContext proxyContext) {
+    this(baseServerUrl, urlPath, urlParams, proxyContext, null, 1);
+  }
+
+  /**
+   * @param maxInFlightBatches max number of concurrent requests; connection pool is sized accordingly
+   */
+  public HttpInfluxClient(String baseServerUrl, String urlPath, Map<String, String> urlParams,
+                          ProxyContext proxyContext, CompressionCodec compressionCodec, int maxInFlightBatches) {
+    super(compressionCodec, maxInFlightBatches);
+    this.maxConnections = Math.max(1, maxInFlightBatches);
+
     if (!baseServerUrl.contains("http://") && !baseServerUrl.contains("https://")) {
       baseServerUrl = "http://" + baseServerUrl;
     }
@@ -106,7 +141,7 @@ public class HttpInfluxClient extends InfluxClient {
     initializeUrlVariables();
   }
 
-  private HttpClient createHttpClient(ProxyContext proxyContext) {
+  private CloseableHttpClient createHttpClient(ProxyContext proxyContext) {
     try {
       TrustStrategy acceptingTrustStrategy = new TrustStrategy() {
         @Override
@@ -125,38 +160,59 @@ public class HttpInfluxClient extends InfluxClient {
       boolean useAuth = (proxyContext.getUsername() != null && !proxyContext.getUsername().trim().equals("")) &&
           (proxyContext.getPassword() != null && !proxyContext.getPassword().trim().equals(""));
 
+      HttpClientBuilder builder = HttpClients.custom()
+          .setConnectionManager(createConnectionManager(sslContext))
+          .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+          .evictExpiredConnections()
+          .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
       if (useProxy) {
-        CredentialsProvider credsProvider = null;
         if (useAuth) {
-          credsProvider = new BasicCredentialsProvider();
+          CredentialsProvider credsProvider = new BasicCredentialsProvider();
           credsProvider.setCredentials(
               new AuthScope(proxyContext.getHost(), proxyContext.getPort()),
               new UsernamePasswordCredentials(proxyContext.getUsername(), proxyContext.getPassword()));
+          builder.setDefaultCredentialsProvider(credsProvider);
         }
 
-        CloseableHttpClient client = HttpClients.custom()
-            .setSslcontext(sslContext)
-            .setSSLHostnameVerifier(new NoopHostnameVerifier())
-            .setDefaultCredentialsProvider(credsProvider)
-            .build();
-
         HttpHost proxy = new HttpHost(proxyContext.getHost(), proxyContext.getPort(), 
             proxyContext.isSecure() ? "https" : "http");
         requestConfig = getRequestConfig(proxy);
-
-        return client;
       } else {
-        CloseableHttpClient client = HttpClients.custom()
-            .setSslcontext(sslContext)
-            .setSSLHostnameVerifier(new NoopHostnameVerifier())
-            .build();
         requestConfig = getRequestConfig(null);
-        return client;
       }
+
+      return builder.build();
     } catch (Throwable thr) {
       throw new RuntimeException("Can't create http client", thr);
     }
   }
+
+  /**
+   * All requests go to a single route (receiver or proxy), so the pool holds one keep-alive connection per
+   * concurrent batch.
+   */
+  private PoolingHttpClientConnectionManager createConnectionManager(SSLContext sslContext) {
+    Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+        .register("https", new SSLConnectionSocketFactory(sslContext, new NoopHostnameVerifier()))
+        .build();
+
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+    return connectionManager;
+  }
+
+  private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = new ConnectionKeepAliveStrategy() {
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+      long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      // server didn't say how long the connection can be kept, don't keep it forever
+      return duration > 0 ? duration : DEFAULT_KEEP_ALIVE_MS;
+    }
+  };
   
   private RequestConfig getRequestConfig(HttpHost proxyHost) {
     RequestConfig.Builder requestConfig = RequestConfig.custom();
@@ -173,7 +229,7 @@ public class HttpInfluxClient extends InfluxClient {
   }
 
   @Override
-  public boolean sendAndHandleResponse(String entity) throws EventDeliveryException {
+  public boolean sendAndHandleResponse(ByteBuffer entity) throws EventDeliveryException {
     try {
       // influxDB.write("database", "", InfluxDB.ConsistencyLevel.ONE, entity);
       int statusCode = 0;
@@ -181,8 +237,11 @@ public class HttpInfluxClient extends InfluxClient {
 
       HttpPost httpRequest = new HttpPost(fixedFullUrl);
 
-      // TODO might be useful to make charset and content type configurable
-      httpRequest.setEntity(new StringEntity(entity, "utf-8"));
+      httpRequest.setEntity(new ByteArrayEntity(entity.array(), entity.arrayOffset() + entity.position(),
+                                                entity.remaining(), CONTENT_TYPE));
+      if (compressionCodec != null) {
+        httpRequest.setHeader(HttpHeaders.CONTENT_ENCODING, compressionCodec.getContentEncoding());
+      }
       httpRequest.setConfig(requestConfig);
       response = httpClient.execute(httpRequest);
       statusCode = response.getStatusLine().getStatusCode();
@@ -196,9 +255,10 @@ public class HttpInfluxClient extends InfluxClient {
         // the method does the conversion on the fly properly. Value "utf-8" we pass here is just in case server response
         // didn't provide info about charset/encoding, so we by default assume it was utf-8 if server didn't say anything
         responseBody = EntityUtils.toString(response.getEntity(), "utf-8");
-        if (logger.isDebugEnabled()) {
+        if (logger.isDebugEnabled() && compressionCodec == null) {
           logger.debug("Status message from server: " + responseBody + " for URL: " + fixedFullUrl + ", for sent data: "
-                           + entity);
+                           + new String(entity.array(), entity.arrayOffset() + entity.position(), entity.remaining(),
+                                        InfluxLineEncoder.UTF_8));
         } else {
           logger.info("Status message from server: " + responseBody + " for URL: " + fixedFullUrl);
         }
@@ -216,7 +276,7 @@ public class HttpInfluxClient extends InfluxClient {
         }
       }
       
-      logger.info("Batch of size " + entity.length() + " chars successfully sent");
+      logger.info("Batch of size " + entity.remaining() + " bytes successfully sent");
       return sendingOk;
     } catch (EventDeliveryException ede) {
       throw ede;
@@ -273,5 +333,10 @@ public class HttpInfluxClient extends InfluxClient {
 
   @Override
   public void close() {
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      logger.warn("Error while closing http client: " + e.getMessage());
+    }
   }
 }
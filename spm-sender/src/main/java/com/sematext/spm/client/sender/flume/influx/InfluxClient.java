@@ -42,11 +42,17 @@ package com.sematext.spm.client.sender.flume.influx;
 import org.apache.flume.Event;
 import org.apache.flume.EventDeliveryException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.sematext.spm.client.ByteBufferPool;
 import com.sematext.spm.client.Log;
 import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.PooledByteBufferOutputStream;
 import com.sematext.spm.client.status.AgentStatusRecorder;
 
 public abstract class InfluxClient {
@@ -55,60 +61,177 @@ public abstract class InfluxClient {
   public static final String URL_PARAM_VERSION = "v";
   public static final String URL_PARAM_CONTENT_TYPE = "sct";
 
-  protected StringBuilder bulkBuilder;
+  // better assume big capacity is needed right away instead of growing the buffer while appending
+  private static final int BULK_BUFFER_CAPACITY = 100000;
+  private static final int MAX_POOLED_BULK_CAPACITY = 4 * 1024 * 1024;
+
+  protected final ByteBufferPool bulkBufferPool;
+  protected final CompressionCodec compressionCodec;
   protected String urlPath;
   protected String urlParamsString;
 
   protected Map<String, String> urlParams = new HashMap<String, String>();
 
+  private final AtomicLong totalUncompressedBytes = new AtomicLong();
+  private final AtomicLong totalSentBytes = new AtomicLong();
+  private final AtomicLong totalCompressionNanos = new AtomicLong();
+
   // private InfluxDB influxDB;
 
   public InfluxClient() {
-    // better assume big capacity is needed right away instead of creating tons of objects while appending
-    bulkBuilder = new StringBuilder(100000);
+    this(null, 1);
+  }
+
+  /**
+   * @param compressionCodec   codec used to compress request bodies, null to send them uncompressed
+   * @param maxInFlightBatches max number of bulks being built or sent at the same time
+   */
+  public InfluxClient(CompressionCodec compressionCodec, int maxInFlightBatches) {
+    this.compressionCodec = compressionCodec;
+    this.bulkBufferPool = new ByteBufferPool(maxInFlightBatches + 1, BULK_BUFFER_CAPACITY, MAX_POOLED_BULK_CAPACITY);
 
     // influxDB = InfluxDBFactory.connect("https://spm-receiver.sematext.com/...",
     //    "username", "password");
   }
 
-  public void addEvent(Event event) throws Exception {
-    String body = new String(event.getBody());
+  /**
+   * @return new empty bulk; it has to be passed to either execute() or discard() when no longer needed
+   */
+  public Bulk newBulk() throws IOException {
+    return new Bulk();
+  }
+
+  /**
+   * Sends the bulk and releases its buffer. Can be called concurrently for different bulks.
+   *
+   * @return false if the receiver rejected the bulk as invalid (such bulks are not retried)
+   */
+  public boolean execute(Bulk bulk) throws Exception {
+    if (bulk.uncompressedSize == 0) {
+      // nothing to send
+      discard(bulk);
+      return true;
+    }
 
-    // windows fix
-    body = body.replaceAll("\\r", "");
+    ByteBuffer entity = bulk.finish();
+    boolean somethingSuccessfullySent;
+    try {
+      entity.flip();
+      totalUncompressedBytes.addAndGet(bulk.uncompressedSize);
+      totalSentBytes.addAndGet(entity.remaining());
+      totalCompressionNanos.addAndGet(bulk.compressionNanos);
+      somethingSuccessfullySent = sendAndHandleResponse(entity);
+    } finally {
+      bulkBufferPool.release(entity);
+    }
 
-    synchronized (bulkBuilder) {
-      bulkBuilder.append(body);
-      bulkBuilder.append("\n");
+    if (somethingSuccessfullySent && isMetricsEndpoint()) {
+      if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
+        AgentStatusRecorder.GLOBAL_INSTANCE.updateMetricsSent(true);
+      }
     }
+    return somethingSuccessfullySent;
   }
 
-  public void execute() throws Exception {
-    String entity;
+  public void discard(Bulk bulk) {
+    if (bulk.finished) {
+      // already executed, its buffer was released
+      return;
+    }
+    try {
+      bulkBufferPool.release(bulk.finish());
+    } catch (IOException e) {
+      logger.warn("Error while discarding bulk: " + e.getMessage());
+    }
+  }
 
-    synchronized (bulkBuilder) {
-      if (bulkBuilder.length() == 0) {
-        // nothing to send
-        return;
+  /**
+   * Request body being built. Events are compressed as they are added, so the compression cost is spread over the
+   * batch instead of being paid right before sending. Not thread safe.
+   */
+  public final class Bulk {
+    private final PooledByteBufferOutputStream out;
+    private final OutputStream stream;
+    private long uncompressedSize;
+    private long compressionNanos;
+    private int eventCount;
+    private boolean finished;
+
+    private Bulk() throws IOException {
+      out = new PooledByteBufferOutputStream(bulkBufferPool);
+      stream = compressionCodec != null ? compressionCodec.compress(out) : out;
+    }
+
+    public void add(Event event) throws IOException {
+      byte[] body = event.getBody();
+      long t0 = System.nanoTime();
+
+      // windows fix; '\r' byte can't be a part of multi-byte UTF-8 sequence so it is safe to skip it
+      int from = 0;
+      for (int i = 0; i < body.length; i++) {
+        if (body[i] == '\r') {
+          stream.write(body, from, i - from);
+          uncompressedSize += i - from;
+          from = i + 1;
+        }
       }
+      stream.write(body, from, body.length - from);
+      stream.write('\n');
+      uncompressedSize += body.length - from + 1;
+      eventCount++;
 
-      entity = bulkBuilder.toString();
-      // delete so we reuse bulkBuilder
-      bulkBuilder.delete(0, bulkBuilder.length());
+      if (compressionCodec != null) {
+        compressionNanos += System.nanoTime() - t0;
+      }
     }
 
-    boolean somethingSuccessfullySent = sendAndHandleResponse(entity);
-    
-    if (somethingSuccessfullySent && isMetricsEndpoint()) {
-      if (AgentStatusRecorder.GLOBAL_INSTANCE != null) {
-        AgentStatusRecorder.GLOBAL_INSTANCE.updateMetricsSent(true);
+    private ByteBuffer finish() throws IOException {
+      if (!finished && compressionCodec != null) {
+        long t0 = System.nanoTime();
+        // finishes the compressed stream, underlying buffer stays available
+        stream.close();
+        compressionNanos += System.nanoTime() - t0;
       }
+      finished = true;
+      return out.getBuffer();
+    }
+
+    /**
+     * @return number of bytes added so far, before compression
+     */
+    public long getUncompressedSize() {
+      return uncompressedSize;
     }
+
+    public int getEventCount() {
+      return eventCount;
+    }
+  }
+
+  /**
+   * @return total size of request bodies before compression
+   */
+  public long getTotalUncompressedBytes() {
+    return totalUncompressedBytes.get();
+  }
+
+  /**
+   * @return total size of request bodies as they were sent (equal to uncompressed size when compression is off)
+   */
+  public long getTotalSentBytes() {
+    return totalSentBytes.get();
+  }
+
+  public long getTotalCompressionNanos() {
+    return totalCompressionNanos.get();
   }
 
   protected abstract boolean isMetricsEndpoint();
 
-  protected abstract boolean sendAndHandleResponse(String entity) throws EventDeliveryException;
+  /**
+   * @param entity request body in read mode, backed by an array
+   */
+  protected abstract boolean sendAndHandleResponse(ByteBuffer entity) throws EventDeliveryException;
 
   protected abstract void initializeUrlVariables();
 
@@ -32,9 +32,15 @@ import org.apache.flume.sink.AbstractSink;
 import org.eclipse.collections.impl.map.mutable.UnifiedMap;
 
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import com.sematext.spm.client.Log;
 import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.PriorityThreadFactory;
 import com.sematext.spm.client.sender.flume.ProxyContext;
 import com.sematext.spm.client.sender.flume.SinkConstants;
 import com.sematext.spm.client.sender.util.DynamicUrlParamSink;
@@ -51,25 +57,50 @@ public class InfluxSink extends AbstractSink implements DynamicUrlParamSink {
   public static final String PROXY_PASSWORD = "proxyPassword";
   public static final String PROXY_SECURE = "proxySecure";
 
+  // none (default), gzip, zstd or class name of CompressionCodec implementation
+  public static final String COMPRESSION = "compression";
+
+  // number of batches which can be sent concurrently; 1 (default) means batches are sent by the sink runner thread
+  public static final String MAX_IN_FLIGHT_BATCHES = "maxInFlightBatches";
+  private static final int MAX_ALLOWED_IN_FLIGHT_BATCHES = 16;
+  private static final long IN_FLIGHT_WAIT_MS = 1000;
+  private static final long STOP_TIMEOUT_MS = 30 * 1000;
+
+  // max number of events in a batch, can't be bigger than channel's transaction capacity
+  public static final String BATCH_SIZE = "batchSize";
+  // target size of a batch in bytes (before compression); batch is sent once it reaches this size
+  public static final String BATCH_MAX_BYTES = "batchMaxBytes";
+  // max time the first event of a batch waits for more events when channel is empty
+  public static final String MAX_LINGER_MS = "maxLingerMs";
+  // when true, batch size is tuned between batchMinBytes and batchMaxBytes based on receiver latency and errors
+  public static final String ADAPTIVE_BATCHING = "adaptiveBatching";
+  public static final String BATCH_MIN_BYTES = "batchMinBytes";
+  public static final String ADAPTIVE_TARGET_LATENCY_MS = "adaptiveTargetLatencyMs";
+
+  private static final long DEFAULT_BATCH_MAX_BYTES = 512 * 1024;
+  private static final long DEFAULT_BATCH_MIN_BYTES = 16 * 1024;
+  private static final long DEFAULT_MAX_LINGER_MS = 1000;
+  private static final long DEFAULT_ADAPTIVE_TARGET_LATENCY_MS = 2000;
+  private static final long LINGER_POLL_MS = 50;
+
   private static final Log logger = LogFactory.getLog(InfluxSink.class);
 
   private final CounterGroup counterGroup = new CounterGroup();
 
-  private static long MAX_TIME_BETWEEN_SENT_BATCHES_MS = 30 * 1000;
-  private static long MAX_TIME_BEFORE_SENDING_FIRST_BATCH_MS = 15 * 1000;
-  private long lastDataSendingTime = -1;
-
-  private long lastEventTakeTimestamp = System.currentTimeMillis();
+  private volatile long lastEventTakeTimestamp = System.currentTimeMillis();
 
   private static final int defaultBatchSize = 100;
 
   private int batchSize = defaultBatchSize;
+  private long maxLingerMs = DEFAULT_MAX_LINGER_MS;
+  private AdaptiveBatchSizer batchSizer;
 
   private String influxHost = null;
 
   private InfluxClient client = null;
 
   private ProxyContext proxyContext = new ProxyContext();
+  private CompressionCodec compressionCodec;
   private String urlPath;
 
   private SinkCounter sinkCounter;
@@ -78,64 +109,140 @@ public class InfluxSink extends AbstractSink implements DynamicUrlParamSink {
 
   private Status lastSinkProcessStatus = null;
 
+  private int maxInFlightBatches = 1;
+  private ExecutorService batchExecutor;
+  private Semaphore inFlightBatches;
+  private volatile Status lastBatchStatus = Status.READY;
+
   @Override
   public Status process() throws EventDeliveryException {
     logger.debug("processing...");
 
-    if (lastDataSendingTime == -1) {
-      // if no batches were sent yet, set lastDataSendingTime in a way to ensure first data will be
-      // sent max MAX_TIME_BEFORE_SENDING_FIRST_BATCH_MS ms after starting the sink.
-      lastDataSendingTime = System.currentTimeMillis() -
-          (MAX_TIME_BETWEEN_SENT_BATCHES_MS - MAX_TIME_BEFORE_SENDING_FIRST_BATCH_MS);
+    Status status;
+    if (batchExecutor != null) {
+      status = processPipelined();
+    } else {
+      status = processBatch();
+    }
+
+    lastSinkProcessStatus = status;
+
+    return status;
+  }
+
+  /**
+   * Hands the batch over to one of the sender threads and returns right away, unless maxInFlightBatches batches are
+   * already being sent; in that case it waits, so no more events are taken from the channel than can be delivered.
+   * Each sender thread runs its own channel transaction, so a failed batch is rolled back and retried as usual.
+   */
+  private Status processPipelined() {
+    try {
+      if (!inFlightBatches.tryAcquire(IN_FLIGHT_WAIT_MS, TimeUnit.MILLISECONDS)) {
+        // all batches still being sent
+        return Status.READY;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Status.BACKOFF;
+    }
+
+    try {
+      batchExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            lastBatchStatus = processBatch();
+          } catch (Throwable thr) {
+            // already logged, events were returned to the channel
+            lastBatchStatus = Status.BACKOFF;
+          } finally {
+            inFlightBatches.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // sink is being stopped
+      inFlightBatches.release();
+      return Status.BACKOFF;
     }
 
+    // let the runner back off when sender threads find the channel empty or fail to send
+    return lastBatchStatus;
+  }
+
+  /**
+   * Takes events until the batch reaches the byte target or batchSize events. When the channel gets empty, the
+   * batch waits for more events until its first event is maxLingerMs old.
+   */
+  private Status processBatch() throws EventDeliveryException {
     Status status = Status.READY;
-    boolean timeTriggeredBatchSending = false;
     Channel channel = getChannel();
     Transaction txn = channel.getTransaction();
+    InfluxClient.Bulk bulk = null;
+    long targetBytes = batchSizer.getTargetBytes();
     try {
       txn.begin();
-      int count;
-      for (count = 0; count < batchSize; ++count) {
+      bulk = client.newBulk();
+      int count = 0;
+      long firstEventTime = -1;
+      while (count < batchSize && bulk.getUncompressedSize() < targetBytes) {
         Event event = channel.take();
 
         if (event == null) {
-          break;
+          long lingerLeft = firstEventTime == -1 ? 0 : maxLingerMs - (System.currentTimeMillis() - firstEventTime);
+          if (lingerLeft <= 0) {
+            break;
+          }
+          try {
+            Thread.sleep(Math.min(LINGER_POLL_MS, lingerLeft));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+          continue;
         }
+
         lastEventTakeTimestamp = System.currentTimeMillis();
-        client.addEvent(event);
-
-        if ((System.currentTimeMillis() - lastDataSendingTime) > MAX_TIME_BETWEEN_SENT_BATCHES_MS) {
-          logger.info("Max time between two batches passed : " + MAX_TIME_BETWEEN_SENT_BATCHES_MS +
-                          ", sending " + count + " events for " + additionalUrlParams);
-          timeTriggeredBatchSending = true;
-          count++;
-          break;
+        if (firstEventTime == -1) {
+          firstEventTime = lastEventTakeTimestamp;
         }
+        bulk.add(event);
+        count++;
       }
 
       if (count <= 0) {
         sinkCounter.incrementBatchEmptyCount();
         counterGroup.incrementAndGet("channel.underflow");
         status = Status.BACKOFF;
+        client.discard(bulk);
       } else {
-        if (count < batchSize && !timeTriggeredBatchSending) {
+        if (count < batchSize && bulk.getUncompressedSize() < targetBytes) {
+          // linger time passed before batch got full
           sinkCounter.incrementBatchUnderflowCount();
           status = Status.BACKOFF;
         } else {
-          // in case batch reached batchSize or batch sending was triggered by time
           sinkCounter.incrementBatchCompleteCount();
         }
 
         sinkCounter.addToEventDrainAttemptCount(count);
-        lastDataSendingTime = System.currentTimeMillis();
-        client.execute();
+        long t0 = System.currentTimeMillis();
+        boolean accepted;
+        try {
+          accepted = client.execute(bulk);
+        } catch (Exception e) {
+          batchSizer.onFailure();
+          throw e;
+        }
+        batchSizer.onResponse(System.currentTimeMillis() - t0, accepted);
+        updateBatchCounters(count, accepted);
       }
       txn.commit();
       sinkCounter.addToEventDrainSuccessCount(count);
       counterGroup.incrementAndGet("transaction.success");
     } catch (Throwable ex) {
-      lastDataSendingTime = System.currentTimeMillis();
+      if (bulk != null) {
+        client.discard(bulk);
+      }
       try {
         txn.rollback();
         counterGroup.incrementAndGet("transaction.rollback");
@@ -159,11 +266,32 @@ public class InfluxSink extends AbstractSink implements DynamicUrlParamSink {
       txn.close();
     }
 
-    lastSinkProcessStatus = status;
-
     return status;
   }
 
+  private void updateBatchCounters(int count, boolean accepted) {
+    counterGroup.set("batch.target.bytes", batchSizer.getTargetBytes());
+    counterGroup.set("batch.last.events", (long) count);
+    if (!accepted) {
+      counterGroup.incrementAndGet("batch.rejected");
+    }
+    updateCompressionCounters();
+  }
+
+  private void updateCompressionCounters() {
+    long uncompressed = client.getTotalUncompressedBytes();
+    long sent = client.getTotalSentBytes();
+
+    counterGroup.set("batch.bytes.uncompressed", uncompressed);
+    counterGroup.set("batch.bytes.sent", sent);
+    if (compressionCodec != null) {
+      counterGroup.set("compression.time.micros", client.getTotalCompressionNanos() / 1000);
+      if (uncompressed > 0) {
+        counterGroup.set("compression.ratio.percent", sent * 100 / uncompressed);
+      }
+    }
+  }
+
   @Override
   public void configure(Context context) {
     if (sinkCounter == null) {
@@ -193,6 +321,31 @@ public class InfluxSink extends AbstractSink implements DynamicUrlParamSink {
     proxyContext.setPassword(proxyPassword != null ? proxyPassword : context.getString(PROXY_PASSWORD, null));
     proxyContext.setSecure(proxySecureStr != null ? Boolean.parseBoolean(proxySecureStr) : context.getBoolean(PROXY_SECURE, false));
 
+    // batch can't have more events than a channel transaction can hold
+    int transactionCapacity = context.getInteger("transactionCapacity", defaultBatchSize);
+    batchSize = Math.min(context.getInteger(BATCH_SIZE, transactionCapacity), transactionCapacity);
+    maxLingerMs = context.getLong(MAX_LINGER_MS, DEFAULT_MAX_LINGER_MS);
+    batchSizer = new AdaptiveBatchSizer(context.getLong(BATCH_MIN_BYTES, DEFAULT_BATCH_MIN_BYTES),
+                                        context.getLong(BATCH_MAX_BYTES, DEFAULT_BATCH_MAX_BYTES),
+                                        context.getLong(ADAPTIVE_TARGET_LATENCY_MS, DEFAULT_ADAPTIVE_TARGET_LATENCY_MS),
+                                        context.getBoolean(ADAPTIVE_BATCHING, false));
+    logger.info("Influx sink batching: max " + batchSize + " events, " + batchSizer.getTargetBytes() +
+                    " bytes, linger " + maxLingerMs + " ms" + (batchSizer.isAdaptive() ? ", adaptive" : ""));
+
+    maxInFlightBatches = context.getInteger(MAX_IN_FLIGHT_BATCHES, 1);
+    if (maxInFlightBatches < 1 || maxInFlightBatches > MAX_ALLOWED_IN_FLIGHT_BATCHES) {
+      logger.warn("Invalid " + MAX_IN_FLIGHT_BATCHES + " value " + maxInFlightBatches + ", using 1");
+      maxInFlightBatches = 1;
+    }
+
+    String compression = context.getString(COMPRESSION, CompressionCodecs.NONE);
+    try {
+      compressionCodec = CompressionCodecs.forName(compression);
+    } catch (IllegalArgumentException e) {
+      logger.warn("Can't use compression '" + compression + "', batches will be sent uncompressed", e);
+      compressionCodec = null;
+    }
+
     String version = context.getString(InfluxClient.URL_PARAM_VERSION);
     String contentType = context.getString(SinkConstants.URL_PARAM_CONTENT_TYPE);
     if (version != null) {
@@ -208,7 +361,16 @@ public class InfluxSink extends AbstractSink implements DynamicUrlParamSink {
     logger.info("Influx sink {} started");
     sinkCounter.start();
     try {
-      client = new HttpInfluxClient(influxHost, urlPath, additionalUrlParams, proxyContext);
+      client = createClient();
+      if (compressionCodec != null) {
+        logger.info("Influx sink is using " + compressionCodec.getContentEncoding() + " compression");
+      }
+      if (maxInFlightBatches > 1) {
+        inFlightBatches = new Semaphore(maxInFlightBatches);
+        batchExecutor = Executors.newFixedThreadPool(maxInFlightBatches, new PriorityThreadFactory(
+            Executors.defaultThreadFactory(), "influx-sink-" + getName(), Thread.NORM_PRIORITY));
+        logger.info("Influx sink is sending up to " + maxInFlightBatches + " batches concurrently");
+      }
 
       sinkCounter.incrementConnectionCreatedCount();
     } catch (Exception ex) {
@@ -223,9 +385,26 @@ public class InfluxSink extends AbstractSink implements DynamicUrlParamSink {
     super.start();
   }
 
+  InfluxClient createClient() {
+    return new HttpInfluxClient(influxHost, urlPath, additionalUrlParams, proxyContext, compressionCodec,
+                                maxInFlightBatches);
+  }
+
   @Override
   public void stop() {
     logger.info("Influx sink {} stopping");
+    if (batchExecutor != null) {
+      // let batches being sent finish their transactions
+      batchExecutor.shutdown();
+      try {
+        if (!batchExecutor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+          logger.warn("Influx sink batches still being sent after " + STOP_TIMEOUT_MS + " ms");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      batchExecutor = null;
+    }
     if (client != null) {
       client.close();
     }
@@ -0,0 +1,116 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CollectorSelfMetricsTest {
+  @Test
+  public void testExport() {
+    CollectorSelfMetrics selfMetrics = new CollectorSelfMetrics("token", "jvm1", new SeriesKeyCache(1024));
+    for (int i = 1; i <= 100; i++) {
+      selfMetrics.recordCollector("c1", i * 1000000L, 2, 1024, i == 100 ? 1 : 0);
+    }
+    selfMetrics.recordCollector("c2", 5000000L, 3, -1, 0);
+    selfMetrics.recordSerialization(2000000L);
+    selfMetrics.recordChannelPut(500000L);
+
+    long now = System.currentTimeMillis();
+    assertFalse(selfMetrics.shouldExport(now));
+    assertTrue(selfMetrics.shouldExport(now + CollectorSelfMetrics.EXPORT_INTERVAL_MS));
+
+    List<String> lines = decode(selfMetrics.export(1000, new InfluxLineEncoder()));
+    assertEquals(4, lines.size());
+    assertTrue(lines.contains("agent,token=token,agent.collector=c1,jvm=jvm1 collect.count=100i," +
+                                  "collect.time.pctl.50=68.0,collect.time.pctl.95=97.0,collect.time.pctl.99=100.0," +
+                                  "collect.time.max=100.0,collect.lines=200i,collect.errors=1i," +
+                                  "collect.allocated.bytes=102400i 1000000000"));
+    assertTrue(lines.contains("agent,token=token,agent.collector=c2,jvm=jvm1 collect.count=1i," +
+                                  "collect.time.pctl.50=5.0,collect.time.pctl.95=5.0,collect.time.pctl.99=5.0," +
+                                  "collect.time.max=5.0,collect.lines=3i,collect.errors=0i 1000000000"));
+    assertTrue(lines.contains("agent,token=token,jvm=jvm1 collectors=2i,lines=203i,serialize.time=2.0," +
+                                  "channel.put.time=0.5 1000000000"));
+    assertTrue(lines.contains("agent,token=token,jvm=jvm1 series.cache.size=0i 1000000000"));
+
+    // collectors not run since the last export are dropped
+    selfMetrics.recordCollector("c2", 1000000L, 1, -1, 0);
+    lines = decode(selfMetrics.export(2000, new InfluxLineEncoder()));
+    assertEquals(3, lines.size());
+    assertFalse(selfMetrics.shouldExport(2000 + CollectorSelfMetrics.EXPORT_INTERVAL_MS - 1));
+  }
+
+  @Test
+  public void testExportConfigReload() {
+    CollectorSelfMetrics selfMetrics = new CollectorSelfMetrics("token", "jvm1", new SeriesKeyCache(1024));
+    ConfigReloadSelfMetrics reloadMetrics = selfMetrics.getConfigReloadMetrics();
+    reloadMetrics.recordConfigParsed();
+    reloadMetrics.recordConfigParsed();
+    reloadMetrics.recordReload(3000000L);
+    reloadMetrics.recordReload(1000000L);
+
+    List<String> lines = decode(selfMetrics.export(1000, new InfluxLineEncoder()));
+    assertEquals(3, lines.size());
+    assertTrue(lines.contains("agent,token=token,jvm=jvm1 config.reload.count=2i,config.reload.time=4.0," +
+                                  "config.reload.parsed=2i 1000000000"));
+
+    // reload line is sent only for intervals with reloads
+    lines = decode(selfMetrics.export(2000, new InfluxLineEncoder()));
+    assertEquals(2, lines.size());
+    for (String line : lines) {
+      assertFalse(line.contains("config.reload"));
+    }
+  }
+
+  @Test
+  public void testExportDbQueries() {
+    CollectorSelfMetrics selfMetrics = new CollectorSelfMetrics("token", "jvm1", new SeriesKeyCache(1024));
+    DbQuerySelfMetrics queryMetrics = selfMetrics.getDbQueryMetrics();
+    queryMetrics.recordQuery("q1", 2000000L, 10, false);
+    queryMetrics.recordQuery("q1", 4000000L, 12, false);
+    queryMetrics.recordQuery("q1", 9000000L, 0, true);
+
+    List<String> lines = decode(selfMetrics.export(1000, new InfluxLineEncoder()));
+    assertEquals(3, lines.size());
+    assertTrue(lines.contains("agent,token=token,agent.db.query=q1,jvm=jvm1 db.query.count=3i,db.query.time.avg=5.0," +
+                                  "db.query.time.max=9.0,db.query.rows=22i,db.query.errors=1i 1000000000"));
+    // queries aren't counted as collectors
+    assertTrue(lines.contains("agent,token=token,jvm=jvm1 collectors=0i,lines=0i,serialize.time=0.0," +
+                                  "channel.put.time=0.0 1000000000"));
+
+    // queries not run since the last export are dropped
+    lines = decode(selfMetrics.export(2000, new InfluxLineEncoder()));
+    assertEquals(2, lines.size());
+  }
+
+  private static List<String> decode(List<byte[]> encoded) {
+    List<String> lines = new ArrayList<String>();
+    for (byte[] line : encoded) {
+      lines.add(new String(line, InfluxLineEncoder.UTF_8));
+    }
+    return lines;
+  }
+}
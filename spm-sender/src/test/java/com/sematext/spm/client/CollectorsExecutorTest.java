@@ -0,0 +1,149 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CollectorsExecutorTest {
+  private CollectorsExecutor executor;
+  private CountDownLatch release;
+  private CountDownLatch interrupted;
+
+  @Before
+  public void setUp() {
+    executor = new CollectorsExecutor("test-collectors", 4, 300);
+    release = new CountDownLatch(1);
+    interrupted = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testSlowCollectorDoesNotDelayOthers() {
+    List<StatsCollector<String>> collectors = Arrays.<StatsCollector<String>>asList(
+        new TestCollector("fast1"), new TestCollector("stuck"), new TestCollector("fast2"));
+
+    long start = System.currentTimeMillis();
+    List<String> results = executor.execute(collectors, new NameTask());
+    long duration = System.currentTimeMillis() - start;
+
+    assertEquals(Arrays.asList("fast1", null, "fast2"), results);
+    assertTrue("took " + duration, duration < 2000);
+    assertEquals(1, executor.getTimedOutCount());
+
+    // stuck collector ignores cancellation and is still running, it must not be started again
+    results = executor.execute(collectors, new NameTask());
+    assertNull(results.get(1));
+    assertEquals(1, executor.getSkippedCount());
+
+    release.countDown();
+  }
+
+  @Test
+  public void testTimedOutCollectorIsCancelled() throws Exception {
+    List<StatsCollector<String>> collectors = Arrays.<StatsCollector<String>>asList(
+        new TestCollector("slow"), new TestCollector("ok"));
+
+    assertEquals(Arrays.asList(null, "ok"), executor.execute(collectors, new NameTask()));
+    assertEquals(1, executor.getTimedOutCount());
+    assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+
+    // cancelled collector finished, so it is started again in the next interval
+    Thread.sleep(100);
+    executor.execute(collectors, new NameTask());
+    assertEquals(0, executor.getSkippedCount());
+  }
+
+  @Test
+  public void testFailingCollector() {
+    List<StatsCollector<String>> collectors = Arrays.<StatsCollector<String>>asList(
+        new TestCollector("fail"), new TestCollector("ok"));
+    assertEquals(Arrays.asList(null, "ok"), executor.execute(collectors, new NameTask()));
+  }
+
+  private class NameTask implements CollectorsExecutor.CollectorTask<String> {
+    @Override
+    public String run(StatsCollector<String> collector) throws Exception {
+      String name = collector.getName();
+      if (name.equals("slow")) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+          throw e;
+        }
+      } else if (name.equals("stuck")) {
+        // simulates a collector blocked in a call which doesn't respond to interruption
+        while (release.getCount() > 0) {
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            // ignored
+          }
+        }
+      } else if (name.equals("fail")) {
+        throw new IllegalStateException("failed");
+      }
+      return name;
+    }
+  }
+
+  private static final class TestCollector extends StatsCollector<String> {
+    private final String name;
+
+    private TestCollector(String name) {
+      super(Serializer.INFLUX);
+      this.name = name;
+    }
+
+    @Override
+    protected Iterator<StatValues> getStatsSlice(Map<String, Object> outerMetrics) {
+      return Collections.<StatValues>emptyList().iterator();
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getCollectorIdentifier() {
+      return name;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.sematext.spm.client.InfluxLineEncoder;
+
+public class MappedSegmentQueueTest {
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = File.createTempFile("segment-queue", "");
+    dir.delete();
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void testAppendPollAcknowledge() throws Exception {
+    MappedSegmentQueue queue = new MappedSegmentQueue(dir, 1024, 64 * 1024);
+    queue.append(Arrays.asList(bytes("a"), bytes("b"), bytes("c")));
+    assertEquals(3, queue.size());
+
+    MappedSegmentQueue.Record a = queue.poll();
+    MappedSegmentQueue.Record b = queue.poll();
+    assertEquals("a", string(a));
+    assertEquals("b", string(b));
+
+    // rolled back records come again, in the same order
+    queue.giveBack(Arrays.asList(a, b));
+    assertEquals("a", string(queue.poll()));
+    assertEquals("b", string(queue.poll()));
+    MappedSegmentQueue.Record c = queue.poll();
+    assertEquals("c", string(c));
+    assertNull(queue.poll());
+
+    queue.acknowledge(Arrays.asList(a, b, c));
+    assertEquals(0, queue.size());
+    queue.close();
+  }
+
+  @Test
+  public void testRecovery() throws Exception {
+    MappedSegmentQueue queue = new MappedSegmentQueue(dir, 1024, 64 * 1024);
+    List<byte[]> records = new ArrayList<byte[]>();
+    for (int i = 0; i < 100; i++) {
+      records.add(bytes("line " + i));
+    }
+    queue.append(records);
+
+    List<MappedSegmentQueue.Record> taken = new ArrayList<MappedSegmentQueue.Record>();
+    for (int i = 0; i < 30; i++) {
+      taken.add(queue.poll());
+    }
+    queue.acknowledge(taken.subList(0, 20));
+    queue.close();
+
+    // records taken but not acknowledged are delivered again
+    queue = new MappedSegmentQueue(dir, 1024, 64 * 1024);
+    assertEquals(80, queue.size());
+    for (int i = 20; i < 100; i++) {
+      assertEquals("line " + i, string(queue.poll()));
+    }
+    assertNull(queue.poll());
+    queue.close();
+  }
+
+  @Test
+  public void testConsumedSegmentsAreDeleted() throws Exception {
+    MappedSegmentQueue queue = new MappedSegmentQueue(dir, 1024, 64 * 1024);
+    for (int i = 0; i < 50; i++) {
+      queue.append(Collections.singletonList(new byte[100]));
+    }
+    assertTrue(queue.getSegmentFiles().size() > 3);
+
+    List<MappedSegmentQueue.Record> taken = new ArrayList<MappedSegmentQueue.Record>();
+    MappedSegmentQueue.Record record;
+    while ((record = queue.poll()) != null) {
+      taken.add(record);
+    }
+    assertEquals(50, taken.size());
+    queue.acknowledge(taken);
+    assertEquals(1, queue.getSegmentFiles().size());
+    queue.close();
+  }
+
+  @Test
+  public void testOldestSegmentsEvicted() throws Exception {
+    MappedSegmentQueue queue = new MappedSegmentQueue(dir, 1024, 4 * 1024);
+    for (int i = 0; i < 100; i++) {
+      queue.append(Collections.singletonList(bytes(String.format("%0100d", i))));
+    }
+    assertTrue(queue.getSegmentFiles().size() <= 4);
+    assertTrue(queue.getDroppedCount() > 0);
+    assertEquals(100, queue.size() + queue.getDroppedCount());
+
+    // newest records are kept
+    String last = null;
+    MappedSegmentQueue.Record record;
+    while ((record = queue.poll()) != null) {
+      last = string(record);
+    }
+    assertEquals(String.format("%0100d", 99), last);
+    queue.close();
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(InfluxLineEncoder.UTF_8);
+  }
+
+  private static String string(MappedSegmentQueue.Record record) {
+    return new String(record.getData(), InfluxLineEncoder.UTF_8);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.influx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveBatchSizerTest {
+  @Test
+  public void testFixed() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 8000, 100, false);
+    assertEquals(8000, sizer.getTargetBytes());
+    sizer.onFailure();
+    sizer.onResponse(5000, false);
+    assertEquals(8000, sizer.getTargetBytes());
+  }
+
+  @Test
+  public void testAdaptive() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, 8000, 100, true);
+    assertEquals(4000, sizer.getTargetBytes());
+
+    for (int i = 0; i < 10; i++) {
+      sizer.onResponse(20, true);
+    }
+    assertEquals(8000, sizer.getTargetBytes());
+
+    sizer.onFailure();
+    assertEquals(4000, sizer.getTargetBytes());
+
+    // slow receiver shrinks batches down to the min
+    for (int i = 0; i < 20; i++) {
+      sizer.onResponse(1000, true);
+    }
+    assertEquals(1000, sizer.getTargetBytes());
+
+    // fast receiver again, batches grow back
+    long before = sizer.getTargetBytes();
+    for (int i = 0; i < 30; i++) {
+      sizer.onResponse(10, true);
+    }
+    assertTrue(sizer.getTargetBytes() > before);
+
+    sizer.onResponse(10, false);
+    assertTrue(sizer.getTargetBytes() < 8000);
+  }
+}
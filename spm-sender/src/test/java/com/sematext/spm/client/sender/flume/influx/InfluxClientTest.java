@@ -0,0 +1,124 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.influx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+import com.sematext.spm.client.InfluxLineEncoder;
+
+public class InfluxClientTest {
+  @Test
+  public void testUncompressed() throws Exception {
+    TestClient client = new TestClient(null);
+    InfluxClient.Bulk bulk = client.newBulk();
+    bulk.add(event("a,t=1 f=1i 1\r"));
+    bulk.add(event("b f=2i 2"));
+    client.execute(bulk);
+
+    assertEquals("a,t=1 f=1i 1\nb f=2i 2\n", new String(client.sent, InfluxLineEncoder.UTF_8));
+    assertEquals(client.getTotalUncompressedBytes(), client.getTotalSentBytes());
+  }
+
+  @Test
+  public void testGzip() throws Exception {
+    TestClient client = new TestClient(CompressionCodecs.forName("gzip"));
+    InfluxClient.Bulk bulk = client.newBulk();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      String line = "os.cpu,host=server" + (i % 10) + " user=" + i + "i " + i;
+      bulk.add(event(line));
+      expected.append(line).append('\n');
+    }
+    client.execute(bulk);
+
+    assertEquals(expected.toString(), new String(gunzip(client.sent), InfluxLineEncoder.UTF_8));
+    assertEquals(expected.length(), client.getTotalUncompressedBytes());
+    assertEquals(client.sent.length, client.getTotalSentBytes());
+
+    // next batch has to be a complete gzip stream too
+    bulk = client.newBulk();
+    bulk.add(event("x f=1i 1"));
+    client.execute(bulk);
+    assertEquals("x f=1i 1\n", new String(gunzip(client.sent), InfluxLineEncoder.UTF_8));
+  }
+
+  @Test
+  public void testNoCompression() {
+    assertNull(CompressionCodecs.forName(null));
+    assertNull(CompressionCodecs.forName(""));
+    assertNull(CompressionCodecs.forName("none"));
+  }
+
+  private static SimpleEvent event(String line) {
+    SimpleEvent event = new SimpleEvent();
+    event.setBody(line.getBytes(InfluxLineEncoder.UTF_8));
+    return event;
+  }
+
+  private static byte[] gunzip(byte[] data) throws IOException {
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int read;
+    while ((read = in.read(buf)) != -1) {
+      out.write(buf, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  private static final class TestClient extends InfluxClient {
+    private byte[] sent;
+
+    private TestClient(CompressionCodec compressionCodec) {
+      super(compressionCodec, 1);
+    }
+
+    @Override
+    protected boolean isMetricsEndpoint() {
+      return false;
+    }
+
+    @Override
+    protected boolean sendAndHandleResponse(ByteBuffer entity) {
+      sent = new byte[entity.remaining()];
+      entity.get(sent);
+      return true;
+    }
+
+    @Override
+    protected void initializeUrlVariables() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
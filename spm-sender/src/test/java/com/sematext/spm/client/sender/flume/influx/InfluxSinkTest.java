@@ -0,0 +1,132 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.sender.flume.influx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.flume.Context;
+import org.apache.flume.EventDeliveryException;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sematext.spm.client.InfluxLineEncoder;
+
+public class InfluxSinkTest {
+  private static final int EVENTS = 250;
+
+  @Test
+  public void testPipelinedFailedBatchIsRetried() throws Exception {
+    MemoryChannel channel = new MemoryChannel();
+    Context channelContext = new Context();
+    channelContext.put("capacity", "1000");
+    channelContext.put("transactionCapacity", "100");
+    channelContext.put("keep-alive", "0");
+    Configurables.configure(channel, channelContext);
+    channel.start();
+
+    final TestClient client = new TestClient();
+    InfluxSink sink = new InfluxSink() {
+      @Override
+      InfluxClient createClient() {
+        return client;
+      }
+    };
+    sink.setName("influx-sink-test");
+    sink.setChannel(channel);
+    Context sinkContext = new Context();
+    sinkContext.put(InfluxSink.MAX_IN_FLIGHT_BATCHES, "4");
+    sink.configure(sinkContext);
+    sink.start();
+
+    for (int i = 0; i < EVENTS; i += 50) {
+      Transaction txn = channel.getTransaction();
+      txn.begin();
+      for (int j = i; j < i + 50; j++) {
+        SimpleEvent event = new SimpleEvent();
+        event.setBody(("m f=" + j + "i " + j).getBytes(InfluxLineEncoder.UTF_8));
+        channel.put(event);
+      }
+      txn.commit();
+      txn.close();
+    }
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (client.lines.size() < EVENTS && System.currentTimeMillis() < deadline) {
+      sink.process();
+    }
+    sink.stop();
+    channel.stop();
+
+    assertTrue(client.attempts.get() > 1);
+    assertEquals(EVENTS, client.lines.size());
+    assertEquals(EVENTS, new HashSet<String>(client.lines).size());
+  }
+
+  private static final class TestClient extends InfluxClient {
+    private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private TestClient() {
+      super(null, 4);
+    }
+
+    @Override
+    protected boolean isMetricsEndpoint() {
+      return false;
+    }
+
+    @Override
+    protected boolean sendAndHandleResponse(ByteBuffer entity) throws EventDeliveryException {
+      if (attempts.incrementAndGet() == 1) {
+        throw new EventDeliveryException("receiver not available");
+      }
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      String body = new String(entity.array(), entity.arrayOffset() + entity.position(), entity.remaining(),
+                               InfluxLineEncoder.UTF_8);
+      for (String line : body.split("\n")) {
+        lines.add(line);
+      }
+      return true;
+    }
+
+    @Override
+    protected void initializeUrlVariables() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -33,15 +33,19 @@ import com.sematext.spm.client.tracing.agent.impl.TracingAgentControlImpl;
 import com.sematext.spm.client.tracing.agent.impl.TracingStatisticsImpl;
 import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
 import com.sematext.spm.client.tracing.agent.sampling.FixedRateSampler;
+import com.sematext.spm.client.tracing.agent.sampling.NoSampling;
 import com.sematext.spm.client.tracing.agent.sampling.Sampler;
+import com.sematext.spm.client.tracing.agent.sampling.TailAwareSampler;
 import com.sematext.spm.client.tracing.agent.sampling.TracingErrorFixedRateSampler;
 import com.sematext.spm.client.tracing.agent.sampling.WeightedFixedRateSampler;
+import com.sematext.spm.client.tracing.agent.stats.AsyncTracingStatistics;
 import com.sematext.spm.client.tracing.agent.stats.TracingStatistics;
 import com.sematext.spm.client.util.StorageUnit;
 
 public class DefaultServiceConfigurer implements ServiceConfigurer {
   private Config config;
   private Sampler<String> transactionSampler;
+  private Sampler<PartialTransaction> transactionEndSampler;
   private Sampler<TracingError> tracingErrorSampler;
   private List<Sink<PartialTransaction>> transactionSinks;
   private List<Sink<TracingError>> errorSinks;
@@ -61,6 +65,11 @@ public class DefaultServiceConfigurer implements ServiceConfigurer {
     return transactionSampler;
   }
 
+  @Override
+  public Sampler<PartialTransaction> getTransactionEndSampler() {
+    return transactionEndSampler;
+  }
+
   @Override
   public Sampler<TracingError> getTracingErrorSampler() {
     return tracingErrorSampler;
@@ -92,6 +101,8 @@ public class DefaultServiceConfigurer implements ServiceConfigurer {
     final DefaultServiceConfigurer configurer = new DefaultServiceConfigurer();
 
     configurer.config = Config.embeddedAgentConfig(args);
+    // disruptor sink and statistics below release transactions once they are done with them
+    configurer.config.setTransactionPoolingEnabled(true);
     configurer.transactionSampler = new FixedRateSampler(1, TimeUnit.MINUTES, 10000);
 
     final DisruptorThriftEventSink eventSink = DisruptorThriftEventSink
@@ -99,9 +110,19 @@ public class DefaultServiceConfigurer implements ServiceConfigurer {
     configurer.transactionSinks = Arrays.<Sink<PartialTransaction>>asList(new MuxSink<PartialTransaction>(eventSink));
     configurer.errorSinks = Arrays.<Sink<TracingError>>asList(new MuxSink<TracingError>(eventSink));
 
-    configurer.transactionSampler = new WeightedFixedRateSampler(1, 1, 1, TimeUnit.SECONDS);
+    if (configurer.config.isTailSamplingEnabled()) {
+      // every transaction is traced, the decision is made when it ends
+      configurer.transactionSampler = new NoSampling<String>();
+      configurer.transactionEndSampler = new TailAwareSampler(configurer.config.getTailSamplingRate(), 0.9d, 0.01d);
+    } else {
+      configurer.transactionSampler = new WeightedFixedRateSampler(1, 1, 1, TimeUnit.SECONDS);
+    }
     configurer.tracingErrorSampler = new TracingErrorFixedRateSampler(100, 1, TimeUnit.MINUTES);
-    configurer.tracingStatistics = new TracingStatisticsImpl();
+    if (configurer.config.isAsyncStatisticsEnabled()) {
+      configurer.tracingStatistics = AsyncTracingStatistics.create(new TracingStatisticsImpl());
+    } else {
+      configurer.tracingStatistics = new TracingStatisticsImpl();
+    }
     configurer.tracingAgentControl = TracingAgentControlImpl
         .create(tracingEnabled, instrumentation, loader, configurer.config);
     return configurer;
@@ -26,6 +26,8 @@ import com.lmax.disruptor.dsl.Disruptor;
 
 import org.apache.thrift.TException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
@@ -45,9 +47,15 @@ public final class DisruptorThriftEventSink implements Sink<SinkEvent> {
 
   private static final Log LOG = LogFactory.getLog(DisruptorThriftEventSink.class);
 
+  /**
+   * Upper bound of events handed to the sender at once, batches are otherwise cut at the end of ring buffer batch.
+   */
+  private static final int MAX_BATCH_SIZE = 256;
+
   private static class Event {
     private EventDescriptor descriptor;
-    private final PartialTransaction partialTransaction = new PartialTransaction();
+    // retained reference instead of a copy, released once the event is written
+    private PartialTransaction partialTransaction;
     private final TracingError tracingError = new TracingError();
 
     public EventDescriptor getDescriptor() {
@@ -61,13 +69,20 @@ public final class DisruptorThriftEventSink implements Sink<SinkEvent> {
     public TracingError getTracingError() {
       return tracingError;
     }
+
+    private void clear() {
+      if (partialTransaction != null) {
+        partialTransaction.release();
+        partialTransaction = null;
+      }
+    }
   }
 
   private static enum EventDescriptor {
     PARTIAL_TRANSACTION(PartialTransaction.class) {
       @Override
       void copy(Object from, Event event) {
-        ((PartialTransaction) from).copy(event.getPartialTransaction());
+        event.partialTransaction = ((PartialTransaction) from).retain();
         event.descriptor = this;
       }
 
@@ -130,12 +145,27 @@ public final class DisruptorThriftEventSink implements Sink<SinkEvent> {
   };
 
   private final EventHandler<Event> eventHandler = new EventHandler<Event>() {
+    // accessed only by the single handler thread
+    private final List<byte[]> batch = new ArrayList<byte[]>(MAX_BATCH_SIZE);
+
     @Override
     public void onEvent(Event event, long sequence, boolean endOfBatch) throws Exception {
       try {
-        binaryLog.write(event.getDescriptor().toThrift(event));
+        batch.add(event.getDescriptor().toThrift(event));
       } catch (Exception e) {
-        LOG.error("Can't write event to binary log. Event = " + event + ".", e);
+        LOG.error("Can't serialize event. Event = " + event + ".", e);
+      } finally {
+        event.clear();
+      }
+
+      if (endOfBatch || batch.size() >= MAX_BATCH_SIZE) {
+        try {
+          binaryLog.write(batch);
+        } catch (Exception e) {
+          LOG.error("Can't write " + batch.size() + " events to binary log.", e);
+        } finally {
+          batch.clear();
+        }
       }
     }
   };
@@ -19,10 +19,8 @@
  */
 package com.sematext.spm.client.tracing.agent;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -36,6 +34,7 @@ import com.sematext.spm.client.tracing.agent.model.FailureType;
 import com.sematext.spm.client.tracing.agent.model.HttpHeaders;
 import com.sematext.spm.client.tracing.agent.model.HttpHeaders.CrossAppCallHeader;
 import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
+import com.sematext.spm.client.tracing.agent.model.PartialTransactionPool;
 import com.sematext.spm.client.tracing.agent.util.AsyncContext;
 import com.sematext.spm.client.tracing.agent.util.Hostname;
 import com.sematext.spm.client.unlogger.JoinPoint;
@@ -72,6 +71,8 @@ public final class Tracing {
     }
   };
 
+  private static final PartialTransactionPool TRANSACTION_POOL = new PartialTransactionPool(16, 64);
+
   private static final Endpoint LOCAL_ENDPOINT = Hostname.getLocalEndpoint();
 
   public static Trace newTrace(String request, TransactionType type) {
@@ -403,13 +404,19 @@ public final class Tracing {
     }
 
     private PartialTransaction createTransaction() {
-      final PartialTransaction transaction = new PartialTransaction();
+      final PartialTransaction transaction;
+      if (ServiceLocator.getConfig().isTransactionPoolingEnabled()) {
+        transaction = TRANSACTION_POOL.acquire();
+      } else {
+        transaction = new PartialTransaction();
+      }
       final Call rootCall = sunkCalls.get(sunkCalls.size() - 1);
       transaction.setCallId(rootCall.getCallId());
       transaction.setParentCallId(rootCall.getParentCallId());
       transaction.setTraceId(traceId);
       transaction.setEndpoint(LOCAL_ENDPOINT);
       transaction.setAsynchronous(async);
+      transaction.setForked(forked);
       transaction.setTransactionType(type);
       transaction.setTransactionSummary(transactionSummary);
       transaction.setStartTimestamp(rootCall.getStartTimestamp());
@@ -427,15 +434,10 @@ public final class Tracing {
       transaction.setFailureType(failureType);
       transaction.setParameters(parameters);
 
-      final List<Call> calls = new ArrayList<Call>();
       for (int i = 0; i < sunkCalls.size(); i++) {
-        final Call call = new Call();
-        sunkCalls.get(i).copy(call);
-        calls.add(call);
+        sunkCalls.get(i).copy(transaction.addCall());
       }
 
-      transaction.setCalls(calls);
-
       return transaction;
     }
 
@@ -461,21 +463,24 @@ public final class Tracing {
       if (stack.isEmpty()) {
         if (!ignore) {
           final PartialTransaction transaction = createTransaction();
-          ServiceLocator.getTracingStatistics().record(transaction);
-
-          if (currentCall != null && (forked || currentCall.getDuration() >= ServiceLocator.getConfig()
-              .getDurationThresholdMillis())) {
-            sinkTransaction(transaction);
-          }
-
-          if (currentCall == null && LOG.isDebugEnabled()) {
-            LOG.debug(
-                "Transaction will not be sinked because current call is null, endpoint: " + transaction.getEndpoint());
-          }
-
-          if (currentCall != null && LOG.isDebugEnabled()) {
-            LOG.debug("Transaction will not be sinked because it is under threshold, duration is: " + currentCall
-                .getDuration() + ", endpoint is: " + transaction.getEndpoint());
+          try {
+            ServiceLocator.getTracingStatistics().record(transaction);
+
+            if (currentCall == null) {
+              if (LOG.isDebugEnabled()) {
+                LOG.debug(
+                    "Transaction will not be sinked because current call is null, endpoint: " + transaction
+                        .getEndpoint());
+              }
+            } else if (sampled && isKept(transaction, currentCall.getDuration())) {
+              sinkTransaction(transaction);
+            } else if (LOG.isDebugEnabled()) {
+              LOG.debug("Transaction will not be sinked because it is not sampled or under threshold, duration is: " +
+                            currentCall.getDuration() + ", endpoint is: " + transaction.getEndpoint());
+            }
+          } finally {
+            // statistics and sinks retain transaction if they need it after returning
+            transaction.release();
           }
         }
 
@@ -484,14 +489,25 @@ public final class Tracing {
 
     }
 
+    /**
+     * End sampler sees every finished transaction, so its view of request latencies isn't skewed by duration
+     * threshold. With tail sampling it decides on its own (fast failed transactions are kept too), otherwise
+     * threshold still applies to transactions which are not forked.
+     */
+    private boolean isKept(PartialTransaction transaction, long duration) {
+      if (!ServiceLocator.getTransactionEndSampler().sample(transaction)) {
+        return false;
+      }
+      return forked || ServiceLocator.getConfig().isTailSamplingEnabled()
+          || duration >= ServiceLocator.getConfig().getDurationThresholdMillis();
+    }
+
     private void sinkTransaction(PartialTransaction transaction) {
-      if (sampled) {
-        for (Sink<PartialTransaction> sink : ServiceLocator.getTransactionSinks()) {
-          try {
-            sink.sink(transaction);
-          } catch (Throwable e) {
-            LOG.warn("Can't sink transaction", e);
-          }
+      for (Sink<PartialTransaction> sink : ServiceLocator.getTransactionSinks()) {
+        try {
+          sink.sink(transaction);
+        } catch (Throwable e) {
+          LOG.warn("Can't sink transaction", e);
         }
       }
     }
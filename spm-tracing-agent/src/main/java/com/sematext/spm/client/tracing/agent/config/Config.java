@@ -40,6 +40,10 @@ public class Config {
   private static final String THRESHOLD_KEY = "MIN_TRANSACTION_DURATION_RECORD_THRESHOLD";
   private static final String STACK_SIZE_THRESHOLD_KEY = "CALL_STACK_SIZE_THRESHOLD";
   private static final String THREAD_INSTRUMENTATION_ENABLED_KEY = "THREAD_INSTRUMENTATION_ENABLED";
+  private static final String ASYNC_STATISTICS_ENABLED_KEY = "TRACING_ASYNC_STATISTICS_ENABLED";
+  private static final String TAIL_SAMPLING_ENABLED_KEY = "TRACING_TAIL_SAMPLING_ENABLED";
+  private static final String TAIL_SAMPLING_RATE_KEY = "TRACING_TAIL_SAMPLING_RATE";
+  private static final double DEFAULT_TAIL_SAMPLING_RATE = 2d;
 
   private long durationThresholdMillis;
   private int stackSizeThreshold = STACK_THRESHOLD_LOWER_BOUND;
@@ -51,6 +55,10 @@ public class Config {
   private String confPath;
   private String extensionsPath;
   private boolean threadInstrumentationEnabled;
+  private boolean asyncStatisticsEnabled;
+  private boolean transactionPoolingEnabled;
+  private boolean tailSamplingEnabled;
+  private double tailSamplingRate = DEFAULT_TAIL_SAMPLING_RATE;
   private int maxCustomParameterKeyLength = MAX_CUSTOM_PARAMETER_LENGTH;
   private int maxCustomParameterValueLength = MAX_CUSTOM_PARAMETER_LENGTH;
   private int maxCustomTransactionParametersCount = MAX_CUSTOM_PARAMETERS_COUNT;
@@ -119,6 +127,44 @@ public class Config {
     this.threadInstrumentationEnabled = threadInstrumentationEnabled;
   }
 
+  public boolean isAsyncStatisticsEnabled() {
+    return asyncStatisticsEnabled;
+  }
+
+  public void setAsyncStatisticsEnabled(boolean asyncStatisticsEnabled) {
+    this.asyncStatisticsEnabled = asyncStatisticsEnabled;
+  }
+
+  public boolean isTailSamplingEnabled() {
+    return tailSamplingEnabled;
+  }
+
+  public void setTailSamplingEnabled(boolean tailSamplingEnabled) {
+    this.tailSamplingEnabled = tailSamplingEnabled;
+  }
+
+  /**
+   * @return number of transactions per second kept by tail sampling on average
+   */
+  public double getTailSamplingRate() {
+    return tailSamplingRate;
+  }
+
+  public void setTailSamplingRate(double tailSamplingRate) {
+    this.tailSamplingRate = tailSamplingRate;
+  }
+
+  /**
+   * Pooling can be enabled only when configured sinks and statistics don't keep transactions after releasing them.
+   */
+  public boolean isTransactionPoolingEnabled() {
+    return transactionPoolingEnabled;
+  }
+
+  public void setTransactionPoolingEnabled(boolean transactionPoolingEnabled) {
+    this.transactionPoolingEnabled = transactionPoolingEnabled;
+  }
+
   public void setDurationThresholdMillis(long durationThresholdMillis) {
     this.durationThresholdMillis = durationThresholdMillis;
   }
@@ -244,6 +290,29 @@ public class Config {
       LOG.info("Thread instrumentation is disabled.");
     }
 
+    config.asyncStatisticsEnabled = Boolean.valueOf(properties.get(ASYNC_STATISTICS_ENABLED_KEY));
+    if (config.asyncStatisticsEnabled) {
+      LOG.info("Tracing statistics will be aggregated in background thread.");
+    }
+
+    config.tailSamplingEnabled = Boolean.valueOf(properties.get(TAIL_SAMPLING_ENABLED_KEY));
+    final String tailSamplingRate = properties.get(TAIL_SAMPLING_RATE_KEY);
+    if (tailSamplingRate != null) {
+      try {
+        config.tailSamplingRate = Double.parseDouble(tailSamplingRate);
+      } catch (NumberFormatException e) {
+        /* */
+      }
+      if (config.tailSamplingRate <= 0) {
+        LOG.warn(TAIL_SAMPLING_RATE_KEY + " property has wrong value: " + tailSamplingRate + ", using default value: "
+                     + DEFAULT_TAIL_SAMPLING_RATE + ".");
+        config.tailSamplingRate = DEFAULT_TAIL_SAMPLING_RATE;
+      }
+    }
+    if (config.tailSamplingEnabled) {
+      LOG.info("Transactions will be sampled when they end, keeping up to " + config.tailSamplingRate + " per second.");
+    }
+
     return config;
   }
 }
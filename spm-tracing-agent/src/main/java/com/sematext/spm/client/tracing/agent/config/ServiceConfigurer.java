@@ -33,6 +33,12 @@ public interface ServiceConfigurer {
 
   Sampler<String> getTransactionSampler();
 
+  /**
+   * @return sampler deciding about transactions which are about to be sunk, once their duration and outcome are
+   * known; may be null when all of them are kept
+   */
+  Sampler<PartialTransaction> getTransactionEndSampler();
+
   Sampler<TracingError> getTracingErrorSampler();
 
   List<Sink<PartialTransaction>> getTransactionSinks();
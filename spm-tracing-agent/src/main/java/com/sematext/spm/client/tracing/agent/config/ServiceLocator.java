@@ -25,11 +25,14 @@ import com.sematext.spm.client.tracing.agent.Sink;
 import com.sematext.spm.client.tracing.agent.TracingAgentControl;
 import com.sematext.spm.client.tracing.agent.errors.TracingError;
 import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
+import com.sematext.spm.client.tracing.agent.sampling.NoSampling;
 import com.sematext.spm.client.tracing.agent.sampling.Sampler;
 import com.sematext.spm.client.tracing.agent.stats.NoOpTracingStatistics;
 import com.sematext.spm.client.tracing.agent.stats.TracingStatistics;
 
 public class ServiceLocator {
+  private static final Sampler<PartialTransaction> NO_END_SAMPLING = new NoSampling<PartialTransaction>();
+
   private static ServiceConfigurer CONFIGURER;
 
   public static void configure(ServiceConfigurer configurer) {
@@ -44,6 +47,11 @@ public class ServiceLocator {
     return CONFIGURER.getTransactionSampler();
   }
 
+  public static Sampler<PartialTransaction> getTransactionEndSampler() {
+    final Sampler<PartialTransaction> sampler = CONFIGURER.getTransactionEndSampler();
+    return sampler != null ? sampler : NO_END_SAMPLING;
+  }
+
   public static Sampler<TracingError> getTracingErrorSampler() {
     return CONFIGURER.getTracingErrorSampler();
   }
@@ -299,6 +299,8 @@ public final class Call {
     to.setCrossAppSampled(this.isCrossAppSampled());
     to.setAnnotation(this.getAnnotation());
     to.setSkipExternalTracingStatistics(this.isSkipExternalTracingStatistics());
+    // target may be a reused instance, parameters of its previous call must not leak into this one
+    to.getParameters().clear();
     for (final Map.Entry<String, String> entry : parameters.entrySet()) {
       to.getParameters().put(entry.getKey(), entry.getValue());
     }
@@ -19,9 +19,12 @@
  */
 package com.sematext.spm.client.tracing.agent.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.sematext.spm.client.tracing.agent.model.Call.TransactionType;
 
@@ -38,6 +41,7 @@ public final class PartialTransaction {
   private boolean entryPoint;
   private Endpoint endpoint;
   private boolean asynchronous;
+  private boolean forked;
   private TransactionType transactionType;
   private Object transactionSummary;
   private List<Call> calls;
@@ -45,6 +49,24 @@ public final class PartialTransaction {
   private Throwable exceptionStackTrace;
   private Map<String, String> parameters = new HashMap<String, String>();
 
+  // set only for transactions created by a pool, see PartialTransactionPool
+  private final PartialTransactionPool pool;
+  private final int stripe;
+  private final AtomicInteger references;
+  // call instances created by addCall(), reused after transaction is recycled
+  private final List<Call> pooledCalls;
+
+  public PartialTransaction() {
+    this(null, 0);
+  }
+
+  PartialTransaction(PartialTransactionPool pool, int stripe) {
+    this.pool = pool;
+    this.stripe = stripe;
+    this.references = pool != null ? new AtomicInteger() : null;
+    this.pooledCalls = pool != null ? new ArrayList<Call>() : null;
+  }
+
   public long getCallId() {
     return callId;
   }
@@ -141,6 +163,17 @@ public final class PartialTransaction {
     this.asynchronous = asynchronous;
   }
 
+  /**
+   * @return true if this is a part of a transaction which was run by another thread
+   */
+  public boolean isForked() {
+    return forked;
+  }
+
+  public void setForked(boolean forked) {
+    this.forked = forked;
+  }
+
   public TransactionType getTransactionType() {
     return transactionType;
   }
@@ -189,6 +222,82 @@ public final class PartialTransaction {
     this.parameters = parameters;
   }
 
+  /**
+   * Appends call to this transaction. Pooled transactions hand out call instances left from previous use, the
+   * caller is expected to overwrite all of their fields (e.g. with {@link Call#copy(Call)}).
+   */
+  public Call addCall() {
+    if (calls == null) {
+      calls = new ArrayList<Call>();
+    }
+    final Call call;
+    if (pool == null) {
+      call = new Call();
+    } else if (calls.size() < pooledCalls.size()) {
+      call = pooledCalls.get(calls.size());
+    } else {
+      call = new Call();
+      pooledCalls.add(call);
+    }
+    calls.add(call);
+    return call;
+  }
+
+  public boolean isPooled() {
+    return pool != null;
+  }
+
+  /**
+   * Registers one more owner of the transaction, each owner should call {@link #release()} once it doesn't use
+   * the transaction anymore. No-op for transactions which aren't pooled.
+   */
+  public PartialTransaction retain() {
+    if (pool != null) {
+      references.incrementAndGet();
+    }
+    return this;
+  }
+
+  /**
+   * Returns pooled transaction to its pool once all owners released it. The transaction and its calls must not be
+   * accessed by the caller after release.
+   */
+  public void release() {
+    if (pool == null) {
+      return;
+    }
+    final int left = references.decrementAndGet();
+    if (left == 0) {
+      recycle();
+      pool.recycle(this);
+    } else if (left < 0) {
+      throw new IllegalStateException("Transaction released more times than retained.");
+    }
+  }
+
+  int getStripe() {
+    return stripe;
+  }
+
+  void acquired() {
+    references.set(1);
+  }
+
+  private void recycle() {
+    // calls are kept for reuse, only references to request data are dropped
+    if (calls != null) {
+      calls.clear();
+    }
+    request = null;
+    token = null;
+    endpoint = null;
+    transactionType = null;
+    transactionSummary = null;
+    failureType = null;
+    exceptionStackTrace = null;
+    parameters = Collections.emptyMap();
+  }
+
   public void copy(PartialTransaction to) {
     to.setCallId(getCallId());
     to.setParentCallId(getParentCallId());
@@ -202,6 +311,7 @@ public final class PartialTransaction {
     to.setEntryPoint(isEntryPoint());
     to.setEndpoint(getEndpoint());
     to.setAsynchronous(isAsynchronous());
+    to.setForked(isForked());
     to.setTransactionType(getTransactionType());
     to.setTransactionSummary(getTransactionSummary());
     to.setCalls(getCalls());
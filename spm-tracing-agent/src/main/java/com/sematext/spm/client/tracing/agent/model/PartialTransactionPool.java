@@ -0,0 +1,94 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of {@link PartialTransaction} instances (together with their calls). Transactions are acquired on
+ * request threads and usually released on statistics or sink threads, so pool is split into stripes selected by id
+ * of acquiring thread and every transaction goes back to the stripe it was taken from. When stripe is empty new
+ * transaction is created, when it is full released transaction is left to GC.
+ */
+public final class PartialTransactionPool {
+  private final Stripe[] stripes;
+  private final int mask;
+  private final AtomicLong createdCount = new AtomicLong();
+
+  public PartialTransactionPool(int stripesCount, int stripeCapacity) {
+    if (Integer.bitCount(stripesCount) != 1) {
+      throw new IllegalArgumentException("Stripes count should be power of 2, got " + stripesCount + ".");
+    }
+    this.stripes = new Stripe[stripesCount];
+    for (int i = 0; i < stripesCount; i++) {
+      stripes[i] = new Stripe(stripeCapacity);
+    }
+    this.mask = stripesCount - 1;
+  }
+
+  /**
+   * @return transaction owned by the caller, which should {@link PartialTransaction#release()} it when done
+   */
+  public PartialTransaction acquire() {
+    final int index = (int) Thread.currentThread().getId() & mask;
+    PartialTransaction transaction = stripes[index].poll();
+    if (transaction == null) {
+      transaction = new PartialTransaction(this, index);
+      createdCount.incrementAndGet();
+    }
+    transaction.acquired();
+    return transaction;
+  }
+
+  void recycle(PartialTransaction transaction) {
+    stripes[transaction.getStripe()].offer(transaction);
+  }
+
+  /**
+   * @return number of transactions created because pool had none available
+   */
+  public long getCreatedCount() {
+    return createdCount.get();
+  }
+
+  private static final class Stripe {
+    private final PartialTransaction[] transactions;
+    private int size;
+
+    private Stripe(int capacity) {
+      this.transactions = new PartialTransaction[capacity];
+    }
+
+    private synchronized PartialTransaction poll() {
+      if (size == 0) {
+        return null;
+      }
+      final PartialTransaction transaction = transactions[--size];
+      transactions[size] = null;
+      return transaction;
+    }
+
+    private synchronized void offer(PartialTransaction transaction) {
+      if (size < transactions.length) {
+        transactions[size++] = transaction;
+      }
+    }
+  }
+}
@@ -82,12 +82,19 @@ public final class SQLAnnotation {
   }
 
   public static SQLAnnotation make(String query, String url) {
+    return make(query, url, false);
+  }
+
+  /**
+   * @param prepared true if query is prepared statement text, parsed statements are cached in that case
+   */
+  public static SQLAnnotation make(String query, String url, boolean prepared) {
     final SQLAnnotation annotation = new SQLAnnotation();
     annotation.setType("query");
     annotation.setSql(query);
     annotation.setUrl(url);
 
-    final SqlStatement statement = SqlStatementParser.parse(query);
+    final SqlStatement statement = prepared ? SqlStatementParser.parseCached(query) : SqlStatementParser.parse(query);
     annotation.setTable(statement.getTable());
     annotation.setOperation(statement.getOperation());
     return annotation;
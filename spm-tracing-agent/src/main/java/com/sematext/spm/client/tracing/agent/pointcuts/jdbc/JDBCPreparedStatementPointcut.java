@@ -50,7 +50,7 @@ public class JDBCPreparedStatementPointcut implements UnloggableLogger {
           .getConnection();
       //query can be null if connection was wrapped with other connection, but we inject query (by mixin) only to one object (to wrapper)
       if (connection != null && query != null) {
-        Tracing.current().setAnnotation(SQLAnnotation.make(query, connection._$spm_tracing$_url_get()));
+        Tracing.current().setAnnotation(SQLAnnotation.make(query, connection._$spm_tracing$_url_get(), true));
       }
     } catch (SQLException e) {
       /* */
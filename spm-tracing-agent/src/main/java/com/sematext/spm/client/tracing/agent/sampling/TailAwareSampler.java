@@ -0,0 +1,204 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.sampling;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
+import com.sematext.spm.client.util.Clock;
+import com.sematext.spm.client.util.Clocks;
+import com.sematext.spm.client.util.TTLCache;
+
+/**
+ * Decides whether to keep a transaction once it has ended, when its duration and outcome are known.
+ * <p/>
+ * Failed transactions, transactions slower than running latency quantile of their request and first transactions of
+ * a request are kept while global token bucket has tokens. Other transactions are kept only with baseline
+ * probability and only while the bucket is more than half full, so they can't use up budget reserved for the
+ * interesting ones. Number of kept transactions is bounded by bucket rate regardless of load.
+ * <p/>
+ * Forked transactions (parts of a transaction run by other threads) end independently of their parent, so they
+ * can't follow its decision. They are kept while the bucket has tokens and don't affect request latency quantiles.
+ */
+public final class TailAwareSampler implements Sampler<PartialTransaction> {
+
+  public static final class EndpointStats {
+    // SGD quantile estimation step, relative to the current estimate
+    private static final double LEARNING_RATE = 0.05d;
+
+    private final String request;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong kept = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // updated without synchronization, concurrent updates may be lost which doesn't matter for an estimate
+    private volatile double latencyQuantile;
+
+    private EndpointStats(String request) {
+      this.request = request;
+    }
+
+    public String getRequest() {
+      return request;
+    }
+
+    public long getKept() {
+      return kept.get();
+    }
+
+    public long getDropped() {
+      return dropped.get();
+    }
+
+    public double getLatencyQuantile() {
+      return latencyQuantile;
+    }
+
+    private void update(long duration, double quantile) {
+      if (count.incrementAndGet() == 1) {
+        latencyQuantile = duration;
+        return;
+      }
+      final double current = latencyQuantile;
+      final double step = LEARNING_RATE * Math.max(current, 1d);
+      if (duration > current) {
+        latencyQuantile = current + step * quantile;
+      } else {
+        latencyQuantile = current - step * (1d - quantile);
+      }
+    }
+  }
+
+  private static final int WARMUP_COUNT = 10;
+  private static final String UNKNOWN_REQUEST = "unknown";
+
+  private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+    @Override
+    protected Random initialValue() {
+      return new Random();
+    }
+  };
+
+  private final double quantile;
+  private final double baselineProbability;
+  private final Clock clock;
+  private final TTLCache<String, EndpointStats> endpoints = new TTLCache<String, EndpointStats>(
+      TimeUnit.MINUTES.toMillis(10));
+
+  // token bucket, guarded by this
+  private final double capacity;
+  private final double tokensPerMillis;
+  private double tokens;
+  private long lastRefill;
+
+  /**
+   * @param ratePerSecond       number of transactions which can be kept per second on average
+   * @param burst               max number of transactions which can be kept at once after a quiet period
+   * @param quantile            latency quantile of a request (0, 1) above which transaction is kept
+   * @param baselineProbability probability of keeping other transactions, while budget allows
+   */
+  public TailAwareSampler(double ratePerSecond, double burst, double quantile, double baselineProbability,
+                          Clock clock) {
+    if (quantile <= 0 || quantile >= 1) {
+      throw new IllegalArgumentException("Quantile should be in (0, 1), got " + quantile + ".");
+    }
+    this.quantile = quantile;
+    this.baselineProbability = baselineProbability;
+    this.clock = clock;
+    this.capacity = Math.max(1d, burst);
+    this.tokensPerMillis = ratePerSecond / 1000d;
+    this.tokens = capacity;
+    this.lastRefill = clock.now();
+  }
+
+  public TailAwareSampler(double ratePerSecond, double quantile, double baselineProbability) {
+    this(ratePerSecond, ratePerSecond * 10, quantile, baselineProbability, Clocks.WALL);
+  }
+
+  @Override
+  public boolean sample(PartialTransaction transaction) {
+    if (transaction.isForked()) {
+      final boolean keep = tryAcquire(0d);
+      Stats.INSTANCE.addTotal();
+      if (!keep) {
+        Stats.INSTANCE.addSampled();
+      }
+      return keep;
+    }
+
+    final EndpointStats endpoint = getOrCreateEndpoint(transaction.getRequest());
+    final long duration = transaction.getDuration();
+    final boolean interesting = transaction.isFailed() || endpoint.count.get() < WARMUP_COUNT
+        || duration > endpoint.latencyQuantile;
+    endpoint.update(duration, quantile);
+
+    final boolean keep;
+    if (interesting) {
+      keep = tryAcquire(0d);
+    } else {
+      keep = RANDOM.get().nextDouble() < baselineProbability && tryAcquire(capacity / 2);
+    }
+
+    Stats.INSTANCE.addTotal();
+    if (keep) {
+      endpoint.kept.incrementAndGet();
+    } else {
+      endpoint.dropped.incrementAndGet();
+      Stats.INSTANCE.addSampled();
+    }
+    return keep;
+  }
+
+  public Collection<EndpointStats> getEndpointStats() {
+    return endpoints.values();
+  }
+
+  private EndpointStats getOrCreateEndpoint(String request) {
+    if (request == null) {
+      request = UNKNOWN_REQUEST;
+    }
+    EndpointStats endpoint = endpoints.get(request);
+    if (endpoint == null) {
+      endpoint = new EndpointStats(request);
+      final EndpointStats existing = endpoints.putIfAbsent(request, endpoint);
+      if (existing != null) {
+        endpoint = existing;
+      }
+    } else {
+      endpoints.touch(request);
+    }
+    return endpoint;
+  }
+
+  private synchronized boolean tryAcquire(double reserve) {
+    final long now = clock.now();
+    if (now > lastRefill) {
+      tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMillis);
+      lastRefill = now;
+    }
+    if (tokens - 1d >= reserve) {
+      tokens -= 1d;
+      return true;
+    }
+    return false;
+  }
+}
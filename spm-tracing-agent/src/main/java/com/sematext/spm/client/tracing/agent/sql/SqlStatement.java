@@ -27,10 +27,17 @@ public final class SqlStatement {
 
   private final Operation operation;
   private final String table;
+  private final String sql;
+  private String fingerprint;
 
   public SqlStatement(Operation operation, String table) {
+    this(operation, table, null);
+  }
+
+  SqlStatement(Operation operation, String table, String sql) {
     this.operation = operation;
     this.table = table;
+    this.sql = sql;
   }
 
   public Operation getOperation() {
@@ -41,6 +48,19 @@ public final class SqlStatement {
     return table;
   }
 
+  /**
+   * @return statement text with comments removed, whitespace collapsed and literals replaced by '?', or null if
+   * statement wasn't produced by parser. Computed on first call, most statements never need it. Not part of
+   * equality.
+   */
+  public String getFingerprint() {
+    // racy, but strings are immutable - at worst fingerprint is computed twice
+    if (fingerprint == null && sql != null) {
+      fingerprint = SqlStatementParser.fingerprint(sql);
+    }
+    return fingerprint;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
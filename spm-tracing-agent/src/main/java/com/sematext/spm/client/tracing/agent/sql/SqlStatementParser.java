@@ -24,8 +24,32 @@ import java.util.regex.Pattern;
 
 import com.sematext.spm.client.util.Preconditions;
 
+/**
+ * Extracts operation and table name from SQL statements. Statements are parsed by single pass
+ * {@link SqlStatementScanner}, regex based parser is used as a fallback for statements scanner doesn't recognize.
+ */
 public final class SqlStatementParser {
 
+  private static final int CACHE_SIZE = 1024;
+  // keeps cached statement texts within 4MB of heap
+  private static final int MAX_CACHED_STATEMENT_LENGTH = 2 * 1024;
+
+  /**
+   * Direct mapped cache of parsed prepared statements. Entries are immutable, so racy reads and writes are safe - at
+   * worst the same statement is parsed twice.
+   */
+  private static final CachedStatement[] CACHE = new CachedStatement[CACHE_SIZE];
+
+  private static final class CachedStatement {
+    final String sql;
+    final SqlStatement statement;
+
+    CachedStatement(String sql, SqlStatement statement) {
+      this.sql = sql;
+      this.statement = statement;
+    }
+  }
+
   private static final Pattern TABLE_NAME_RE = Pattern
       .compile("(?:(?:(?:\"(?:(?:\"\")|[^\"])*\")|(?:`(?:(?:``)|[^`])*`)|(?:[a-zA-Z][a-zA-Z0-9]*))\\.)?((?:\"(?:(?:\"\")|[^\"])*\")|(?:`(?:(?:``)|[^`])*`)|(?:[a-zA-Z][a-zA-Z0-9]*)).*", Pattern.DOTALL);
 
@@ -183,8 +207,50 @@ public final class SqlStatementParser {
   public static SqlStatement parse(String sql) {
     Preconditions.checkNotNull(sql);
 
-    sql = MULTILINE_COMMENT.matcher(sql).replaceAll("");
-    sql = ONE_LINE_COMMENT.matcher(sql).replaceAll("");
+    final SqlStatement statement = SqlStatementScanner.scan(sql);
+    if (statement != null) {
+      return statement;
+    }
+    return parseWithRegex(sql);
+  }
+
+  /**
+   * Same as {@link #parse(String)}, but looks up result in bounded cache first. Should be used for prepared
+   * statements, where the same statement text is executed over and over.
+   */
+  public static SqlStatement parseCached(String sql) {
+    Preconditions.checkNotNull(sql);
+
+    if (sql.length() > MAX_CACHED_STATEMENT_LENGTH) {
+      return parse(sql);
+    }
+
+    final int hash = sql.hashCode();
+    final int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    final CachedStatement cached = CACHE[slot];
+    if (cached != null && cached.sql.equals(sql)) {
+      return cached.statement;
+    }
+
+    final SqlStatement statement = parse(sql);
+    CACHE[slot] = new CachedStatement(sql, statement);
+    return statement;
+  }
+
+  static String fingerprint(String sql) {
+    final String fingerprint = SqlStatementScanner.fingerprint(sql);
+    if (fingerprint != null) {
+      return fingerprint;
+    }
+    return SqlQueryMask.mask(removeComments(sql));
+  }
+
+  private static String removeComments(String sql) {
+    return ONE_LINE_COMMENT.matcher(MULTILINE_COMMENT.matcher(sql).replaceAll("")).replaceAll("");
+  }
+
+  static SqlStatement parseWithRegex(String originalSql) {
+    final String sql = removeComments(originalSql);
 
     for (Parser p : Parser.values()) {
       final StatementParser stmtParser = p.parser;
@@ -197,13 +263,13 @@ public final class SqlStatementParser {
             if (tableName != null) {
               tableName = normalizeTableName(tableName);
             }
-            return new SqlStatement(stmtParser.getOperation(), tableName);
+            return new SqlStatement(stmtParser.getOperation(), tableName, originalSql);
           }
         }
       } else {
         break;
       }
     }
-    return new SqlStatement(SqlStatement.Operation.OTHER, null);
+    return new SqlStatement(SqlStatement.Operation.OTHER, null, originalSql);
   }
 }
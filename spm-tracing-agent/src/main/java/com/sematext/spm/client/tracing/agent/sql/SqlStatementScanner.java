@@ -0,0 +1,333 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.sql;
+
+/**
+ * Single pass SQL tokenizer which extracts operation and table name. Follows the rules of regex based parser: table
+ * name is extracted only for single table statements, selects with joins, multiple tables in from clause or inner
+ * selects have no table.
+ * <p/>
+ * Fingerprint has comments removed, whitespace collapsed, unquoted words lower cased and string and numeric
+ * literals replaced by '?'. Double quoted and backtick quoted tokens are identifiers and are kept as is. It is built
+ * by the same pass, but only on demand, see {@link SqlStatement#getFingerprint()}.
+ */
+final class SqlStatementScanner {
+
+  private static final char NO_TOKEN = 0;
+
+  private static final String[] FROM_CLAUSE_END = {
+      "where", "group", "order", "having", "limit", "union", "for", "window", "fetch", "offset"
+  };
+
+  private enum State {
+    OPERATION,
+    SELECT_FROM,
+    DELETE_FROM,
+    INSERT_INTO,
+    TABLE,
+    TABLE_QUALIFIED,
+    FROM_CLAUSE,
+    SELECT_TAIL,
+    REST
+  }
+
+  private enum TokenType {
+    WORD, QUOTED, LITERAL, SYMBOL
+  }
+
+  private SqlStatementScanner() {
+  }
+
+  /**
+   * @return parsed statement or null if statement structure wasn't recognized (unterminated comment or quoted
+   * identifier, no table name where one is expected)
+   */
+  static SqlStatement scan(String sql) {
+    return scan(sql, null);
+  }
+
+  /**
+   * @return statement fingerprint or null if statement structure wasn't recognized
+   */
+  static String fingerprint(String sql) {
+    final StringBuilder fingerprint = new StringBuilder(sql.length());
+    return scan(sql, fingerprint) != null ? fingerprint.toString() : null;
+  }
+
+  /**
+   * @param fingerprint receives statement fingerprint, if not null
+   */
+  private static SqlStatement scan(String sql, StringBuilder fingerprint) {
+    final int length = sql.length();
+    boolean tokenSeen = false;
+
+    SqlStatement.Operation operation = SqlStatement.Operation.OTHER;
+    State state = State.OPERATION;
+    int tableStart = -1;
+    int tableEnd = -1;
+    boolean tableDiscarded = false;
+    int depth = 0;
+    char prevSymbol = NO_TOKEN;
+    boolean pendingSpace = false;
+
+    int i = 0;
+    while (i < length) {
+      final char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        pendingSpace = true;
+        i++;
+        continue;
+      }
+      if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        while (i < length && sql.charAt(i) != '\n') {
+          i++;
+        }
+        pendingSpace = true;
+        continue;
+      }
+      if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        final int end = sql.indexOf("*/", i + 2);
+        if (end < 0) {
+          return null;
+        }
+        i = end + 2;
+        pendingSpace = true;
+        continue;
+      }
+
+      if (fingerprint != null && pendingSpace && tokenSeen) {
+        fingerprint.append(' ');
+      }
+      pendingSpace = false;
+      tokenSeen = true;
+
+      final int start = i;
+      final TokenType type;
+      if (Character.isLetter(c) || c == '_') {
+        do {
+          i++;
+        } while (i < length && isIdentifierPart(sql.charAt(i)));
+        type = TokenType.WORD;
+      } else if (c == '"' || c == '`') {
+        i = endOfQuotedIdentifier(sql, i, c);
+        if (i < 0) {
+          return null;
+        }
+        type = TokenType.QUOTED;
+      } else if (c == '\'') {
+        i = endOfStringLiteral(sql, i);
+        type = TokenType.LITERAL;
+      } else if (c >= '0' && c <= '9') {
+        do {
+          i++;
+        } while (i < length && (isIdentifierPart(sql.charAt(i)) || sql.charAt(i) == '.'));
+        type = TokenType.LITERAL;
+      } else {
+        i++;
+        type = TokenType.SYMBOL;
+      }
+      if (fingerprint != null) {
+        appendToken(fingerprint, sql, start, i, type);
+      }
+      final char symbol = type == TokenType.SYMBOL ? c : NO_TOKEN;
+
+      if (state == State.TABLE_QUALIFIED) {
+        if (symbol == '.') {
+          state = State.TABLE;
+          prevSymbol = symbol;
+          continue;
+        }
+        state = operation == SqlStatement.Operation.SELECT ? State.FROM_CLAUSE : State.REST;
+      }
+
+      switch (state) {
+        case OPERATION:
+          if (type == TokenType.WORD && isWord(sql, start, i, "select")) {
+            operation = SqlStatement.Operation.SELECT;
+            state = State.SELECT_FROM;
+          } else if (type == TokenType.WORD && isWord(sql, start, i, "delete")) {
+            operation = SqlStatement.Operation.DELETE;
+            state = State.DELETE_FROM;
+          } else if (type == TokenType.WORD && isWord(sql, start, i, "insert")) {
+            operation = SqlStatement.Operation.INSERT;
+            state = State.INSERT_INTO;
+          } else if (type == TokenType.WORD && isWord(sql, start, i, "update")) {
+            operation = SqlStatement.Operation.UPDATE;
+            state = State.TABLE;
+          } else {
+            state = State.REST;
+          }
+          break;
+        case SELECT_FROM:
+          if (symbol == '(') {
+            depth++;
+          } else if (symbol == ')') {
+            depth--;
+          } else if (depth == 0 && type == TokenType.WORD && isWord(sql, start, i, "from")) {
+            state = State.TABLE;
+          }
+          break;
+        case DELETE_FROM:
+          state = nextOrOther(type == TokenType.WORD && isWord(sql, start, i, "from"));
+          break;
+        case INSERT_INTO:
+          state = nextOrOther(type == TokenType.WORD && isWord(sql, start, i, "into"));
+          break;
+        case TABLE:
+          if (type == TokenType.WORD || type == TokenType.QUOTED) {
+            tableStart = start;
+            tableEnd = i;
+            state = State.TABLE_QUALIFIED;
+          } else if (operation == SqlStatement.Operation.SELECT && symbol == '(') {
+            // select from derived table
+            tableDiscarded = true;
+            state = State.REST;
+          } else {
+            return null;
+          }
+          break;
+        case FROM_CLAUSE:
+        case SELECT_TAIL:
+          if (prevSymbol == '(' && type == TokenType.WORD && isWord(sql, start, i, "select")) {
+            // don't extract table name in case when inner select is used
+            tableDiscarded = true;
+            state = State.REST;
+          } else if (symbol == '(') {
+            depth++;
+          } else if (symbol == ')') {
+            depth--;
+          } else if (state == State.FROM_CLAUSE && depth == 0) {
+            if (symbol == ',' || (type == TokenType.WORD && isWord(sql, start, i, "join"))) {
+              // don't extract table name in case when join is used
+              tableDiscarded = true;
+              state = State.REST;
+            } else if (type == TokenType.WORD && isFromClauseEnd(sql, start, i)) {
+              state = State.SELECT_TAIL;
+            }
+          }
+          break;
+        default:
+          break;
+      }
+
+      prevSymbol = symbol;
+    }
+
+    if (state == State.TABLE) {
+      return null;
+    }
+    if (state == State.SELECT_FROM || state == State.DELETE_FROM || state == State.INSERT_INTO) {
+      operation = SqlStatement.Operation.OTHER;
+    }
+
+    final String table = tableDiscarded || tableStart < 0 ? null : normalizeTableName(sql, tableStart, tableEnd);
+    return new SqlStatement(operation, table, sql);
+  }
+
+  private static void appendToken(StringBuilder fingerprint, String sql, int start, int end, TokenType type) {
+    switch (type) {
+      case WORD:
+        for (int i = start; i < end; i++) {
+          fingerprint.append(Character.toLowerCase(sql.charAt(i)));
+        }
+        break;
+      case LITERAL:
+        fingerprint.append('?');
+        break;
+      default:
+        fingerprint.append(sql, start, end);
+        break;
+    }
+  }
+
+  private static State nextOrOther(boolean matches) {
+    return matches ? State.TABLE : State.REST;
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+  }
+
+  private static boolean isWord(String sql, int start, int end, String word) {
+    return end - start == word.length() && sql.regionMatches(true, start, word, 0, word.length());
+  }
+
+  private static boolean isFromClauseEnd(String sql, int start, int end) {
+    for (String word : FROM_CLAUSE_END) {
+      if (isWord(sql, start, end, word)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int endOfQuotedIdentifier(String sql, int start, char quote) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == quote) {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) { //escape "" or ``
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  /**
+   * Unterminated literal spans to the end of statement (statements are often truncated by drivers and loggers).
+   */
+  private static int endOfStringLiteral(String sql, int start) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      final char c = sql.charAt(i);
+      if (c == '\\' && i + 1 < sql.length()) { //escape \'
+        i += 2;
+      } else if (c == '\'') {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') { //escape ''
+          i += 2;
+        } else {
+          return i + 1;
+        }
+      } else {
+        i++;
+      }
+    }
+    return sql.length();
+  }
+
+  private static String normalizeTableName(String sql, int start, int end) {
+    final char quote = sql.charAt(start);
+    if (quote != '"' && quote != '`') {
+      return sql.substring(start, end).toLowerCase();
+    }
+    final StringBuilder name = new StringBuilder(end - start - 2);
+    for (int i = start + 1; i < end - 1; i++) {
+      final char c = sql.charAt(i);
+      name.append(Character.toLowerCase(c));
+      if (c == quote) {
+        i++;
+      }
+    }
+    return name.toString();
+  }
+}
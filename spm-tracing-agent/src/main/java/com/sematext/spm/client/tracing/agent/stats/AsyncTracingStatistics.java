@@ -0,0 +1,231 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.stats;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.sematext.spm.client.Log;
+import com.sematext.spm.client.LogFactory;
+import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
+
+/**
+ * Moves aggregation of transactions off the request thread. Each recording thread gets its own bounded
+ * single-producer buffer, so {@link #record(PartialTransaction)} is a thread local lookup and an array store without
+ * locks or CAS. A background thread drains all buffers into the delegate, which runs the statistics processors.
+ * Buffered transactions are retained and released once aggregated, so pooled transactions aren't recycled earlier.
+ * <p/>
+ * When aggregation can't keep up and a buffer is full, the transaction is left out of statistics and counted as
+ * dropped, request thread never waits.
+ */
+public final class AsyncTracingStatistics implements TracingStatistics {
+  private static final Log LOG = LogFactory.getLog(AsyncTracingStatistics.class);
+
+  public static final int DEFAULT_BUFFER_CAPACITY = 1024;
+  public static final long DEFAULT_DRAIN_INTERVAL_MS = 100;
+  private static final long DROPS_LOG_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private final TracingStatistics delegate;
+  private final int bufferCapacity;
+  private final long drainIntervalMs;
+  private final List<Buffer> buffers = new CopyOnWriteArrayList<Buffer>();
+  private final ThreadLocal<Buffer> threadBuffer = new ThreadLocal<Buffer>() {
+    @Override
+    protected Buffer initialValue() {
+      Buffer buffer = new Buffer(Thread.currentThread(), bufferCapacity);
+      buffers.add(buffer);
+      return buffer;
+    }
+  };
+
+  private final AtomicLong aggregatedCount = new AtomicLong();
+  private final AtomicLong aggregationNanos = new AtomicLong();
+  // dropped counts of buffers which were already removed
+  private long droppedOfRemovedBuffers;
+  private long droppedLogged;
+  private long lastDropsLogTime;
+
+  /**
+   * @param bufferCapacity capacity of each thread's buffer, rounded up to power of 2
+   */
+  public AsyncTracingStatistics(TracingStatistics delegate, int bufferCapacity, long drainIntervalMs) {
+    this.delegate = delegate;
+    this.bufferCapacity = Integer.highestOneBit(Math.max(2, bufferCapacity) * 2 - 1);
+    this.drainIntervalMs = drainIntervalMs;
+  }
+
+  public static AsyncTracingStatistics create(TracingStatistics delegate) {
+    AsyncTracingStatistics statistics = new AsyncTracingStatistics(delegate, DEFAULT_BUFFER_CAPACITY,
+                                                                   DEFAULT_DRAIN_INTERVAL_MS);
+    statistics.start();
+    return statistics;
+  }
+
+  public void start() {
+    Thread aggregator = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (true) {
+          try {
+            Thread.sleep(drainIntervalMs);
+          } catch (InterruptedException e) {
+            LOG.warn("Tracing statistics aggregator thread was interrupted, exiting.");
+            return;
+          }
+          flush();
+        }
+      }
+    });
+    aggregator.setDaemon(true);
+    aggregator.setName("spm-tracing-statistics-aggregator");
+    aggregator.start();
+  }
+
+  @Override
+  public void record(PartialTransaction transaction) {
+    threadBuffer.get().offer(transaction);
+  }
+
+  @Override
+  public StatisticsView newCallStatisticsView(MutableVarProvider varProvider) {
+    return delegate.newCallStatisticsView(varProvider);
+  }
+
+  /**
+   * Aggregates all transactions recorded so far.
+   */
+  public synchronized void flush() {
+    long start = System.nanoTime();
+    long aggregated = 0;
+    for (Buffer buffer : buffers) {
+      boolean ownerDead = !buffer.isOwnerAlive();
+      aggregated += buffer.drain(delegate);
+      if (ownerDead) {
+        // nothing can be added anymore, buffer was fully drained
+        droppedOfRemovedBuffers += buffer.dropped.get();
+        buffers.remove(buffer);
+      }
+    }
+    aggregatedCount.addAndGet(aggregated);
+    aggregationNanos.addAndGet(System.nanoTime() - start);
+    logDrops();
+  }
+
+  private void logDrops() {
+    long now = System.currentTimeMillis();
+    if (now - lastDropsLogTime < DROPS_LOG_INTERVAL_MS) {
+      return;
+    }
+    lastDropsLogTime = now;
+    long dropped = getDroppedCount();
+    if (dropped > droppedLogged) {
+      LOG.warn("Tracing statistics aggregation can't keep up, " + (dropped - droppedLogged) +
+                   " transactions were left out of statistics since last report.");
+      droppedLogged = dropped;
+    }
+  }
+
+  /**
+   * @return number of transactions left out of statistics because buffer of the recording thread was full
+   */
+  public synchronized long getDroppedCount() {
+    long dropped = droppedOfRemovedBuffers;
+    for (Buffer buffer : buffers) {
+      dropped += buffer.dropped.get();
+    }
+    return dropped;
+  }
+
+  public long getAggregatedCount() {
+    return aggregatedCount.get();
+  }
+
+  /**
+   * @return time spent running statistics processors on the aggregator thread
+   */
+  public long getAggregationNanos() {
+    return aggregationNanos.get();
+  }
+
+  /**
+   * Bounded single-producer single-consumer ring, written only by its owner thread.
+   */
+  private static final class Buffer {
+    private final WeakReference<Thread> owner;
+    private final AtomicReferenceArray<PartialTransaction> slots;
+    private final int mask;
+    // next slot to read, written by aggregator thread
+    private final AtomicLong head = new AtomicLong();
+    // next slot to write, written by owner thread
+    private final AtomicLong tail = new AtomicLong();
+    // owner's last seen value of head, avoids reading head on every offer
+    private long cachedHead;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Buffer(Thread owner, int capacity) {
+      this.owner = new WeakReference<Thread>(owner);
+      this.slots = new AtomicReferenceArray<PartialTransaction>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    private void offer(PartialTransaction transaction) {
+      long currentTail = tail.get();
+      if (currentTail - cachedHead > mask) {
+        cachedHead = head.get();
+        if (currentTail - cachedHead > mask) {
+          dropped.lazySet(dropped.get() + 1);
+          return;
+        }
+      }
+      slots.lazySet((int) currentTail & mask, transaction.retain());
+      tail.lazySet(currentTail + 1);
+    }
+
+    private int drain(TracingStatistics target) {
+      long currentHead = head.get();
+      long currentTail = tail.get();
+      int drained = 0;
+      for (; currentHead < currentTail; currentHead++) {
+        int index = (int) currentHead & mask;
+        PartialTransaction transaction = slots.get(index);
+        slots.lazySet(index, null);
+        try {
+          target.record(transaction);
+        } catch (Throwable e) {
+          LOG.error("Can't record statistics for transaction.", e);
+        } finally {
+          transaction.release();
+        }
+        drained++;
+      }
+      head.lazySet(currentHead);
+      return drained;
+    }
+
+    private boolean isOwnerAlive() {
+      Thread thread = owner.get();
+      return thread != null && thread.isAlive();
+    }
+  }
+}
@@ -29,11 +29,13 @@ import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
 public class DatabaseOperationMetric extends Statistics.Metric<DatabaseOperation> {
   private final DiffCounterVar<Long> countVar;
   private final DiffCounterVar<Long> durationVar;
+  private final HistogramVar latencyVar;
 
   public DatabaseOperationMetric(DatabaseOperation operation, MutableVarProvider provider) {
     super(operation);
     this.countVar = provider.newCounter(Long.class);
     this.durationVar = provider.newCounter(Long.class);
+    this.latencyVar = provider.newHistogram();
   }
 
   public Long count() {
@@ -44,6 +46,10 @@ public class DatabaseOperationMetric extends Statistics.Metric<DatabaseOperation
     return durationVar.get();
   }
 
+  public HistogramSnapshot latency() {
+    return latencyVar.snapshot();
+  }
+
   @Override
   protected void update(PartialTransaction transaction) {
   }
@@ -54,6 +60,7 @@ public class DatabaseOperationMetric extends Statistics.Metric<DatabaseOperation
         && call.getAnnotation() != null) {
       countVar.increment(1L);
       durationVar.increment(call.getDuration());
+      latencyVar.record(call.getDuration());
     }
   }
 }
@@ -30,5 +30,7 @@ public interface ExternalCall {
 
   Long duration();
 
+  HistogramSnapshot latency();
+
   String tag();
 }
@@ -46,6 +46,7 @@ public final class ExternalCallStatistics implements StatisticsProcessor {
     private final String tag;
     private final DiffCounterVar<Long> callsCountVar;
     private final DiffCounterVar<Long> durationVar;
+    private final HistogramVar latencyVar;
 
     public ExternalCallImpl(MutableVarProvider varProvider, Id id) {
       this.srcToken = id.getSrcToken();
@@ -54,6 +55,7 @@ public final class ExternalCallStatistics implements StatisticsProcessor {
       this.tag = id.getTag();
       this.callsCountVar = varProvider.newCounter(Long.class);
       this.durationVar = varProvider.newCounter(Long.class);
+      this.latencyVar = varProvider.newHistogram();
     }
 
     @Override
@@ -81,6 +83,11 @@ public final class ExternalCallStatistics implements StatisticsProcessor {
       return durationVar.get();
     }
 
+    @Override
+    public HistogramSnapshot latency() {
+      return latencyVar.snapshot();
+    }
+
     @Override
     public String tag() {
       return tag;
@@ -89,6 +96,7 @@ public final class ExternalCallStatistics implements StatisticsProcessor {
     public void update(Long duration) {
       this.durationVar.increment(duration);
       this.callsCountVar.increment(1L);
+      this.latencyVar.record(duration);
     }
   }
 
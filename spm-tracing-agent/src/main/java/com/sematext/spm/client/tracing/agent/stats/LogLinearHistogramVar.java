@@ -0,0 +1,145 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size histogram with log-linear buckets, in the spirit of HdrHistogram. Values below
+ * 2^{@value #SUB_BUCKET_BITS} are counted exactly, every following power of 2 range is split into
+ * 2^({@value #SUB_BUCKET_BITS} - 1) equal buckets, so a value reported for a percentile is at most ~6% above the
+ * recorded one. Values above highest trackable value are counted in the last bucket, but still reported as max.
+ * <p/>
+ * Recording is an atomic increment of one bucket (plus CAS when max changes) and doesn't allocate. Snapshot moves
+ * bucket counts out of the histogram one by one, so concurrently recorded values end up either in the snapshot or in
+ * the next interval, never lost.
+ */
+public final class LogLinearHistogramVar implements HistogramVar {
+  public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toMillis(1);
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+  private final long highestTrackableValue;
+  private final AtomicLongArray counts;
+  private final AtomicLong max = new AtomicLong();
+
+  public LogLinearHistogramVar() {
+    this(DEFAULT_HIGHEST_TRACKABLE_VALUE);
+  }
+
+  public LogLinearHistogramVar(long highestTrackableValue) {
+    if (highestTrackableValue < SUB_BUCKET_COUNT) {
+      throw new IllegalArgumentException("Highest trackable value should be >= " + SUB_BUCKET_COUNT + ".");
+    }
+    this.highestTrackableValue = highestTrackableValue;
+    this.counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+  }
+
+  @Override
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(bucketIndex(Math.min(value, highestTrackableValue)));
+    long currentMax = max.get();
+    while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+      currentMax = max.get();
+    }
+  }
+
+  @Override
+  public HistogramSnapshot snapshot() {
+    final long[] snapshotCounts = new long[counts.length()];
+    long total = 0;
+    for (int i = 0; i < snapshotCounts.length; i++) {
+      snapshotCounts[i] = counts.getAndSet(i, 0);
+      total += snapshotCounts[i];
+    }
+    return new Snapshot(snapshotCounts, total, max.getAndSet(0));
+  }
+
+  /**
+   * @return number of buckets, memory used by histogram is fixed and proportional to it
+   */
+  public int getBucketCount() {
+    return counts.length();
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+    final int subBucket = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+  }
+
+  static long highestValueInBucket(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  private static final class Snapshot implements HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long max;
+
+    private Snapshot(long[] counts, long count, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.max = max;
+    }
+
+    @Override
+    public long getCount() {
+      return count;
+    }
+
+    @Override
+    public long getMax() {
+      return max;
+    }
+
+    @Override
+    public long getValueAtPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(percentile * count / 100));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          // max may belong to the next interval when snapshot raced with recording
+          return max > 0 ? Math.min(highestValueInBucket(i), max) : highestValueInBucket(i);
+        }
+      }
+      return max;
+    }
+  }
+}
@@ -21,4 +21,6 @@ package com.sematext.spm.client.tracing.agent.stats;
 
 public interface MutableVarProvider {
   <T, C extends Class<T>> DiffCounterVar<T> newCounter(C klass);
+
+  HistogramVar newHistogram();
 }
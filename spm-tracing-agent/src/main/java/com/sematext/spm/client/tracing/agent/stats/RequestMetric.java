@@ -25,11 +25,13 @@ import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
 public class RequestMetric extends Statistics.Metric<String> {
   private final DiffCounterVar<Long> countVar;
   private final DiffCounterVar<Long> durationVar;
+  private final HistogramVar latencyVar;
 
   public RequestMetric(String request, MutableVarProvider varProvider) {
     super(request);
     this.countVar = varProvider.newCounter(Long.class);
     this.durationVar = varProvider.newCounter(Long.class);
+    this.latencyVar = varProvider.newHistogram();
   }
 
   public Long getCount() {
@@ -40,6 +42,10 @@ public class RequestMetric extends Statistics.Metric<String> {
     return durationVar.get();
   }
 
+  public HistogramSnapshot getLatency() {
+    return latencyVar.snapshot();
+  }
+
   @Override
   protected void update(PartialTransaction transaction) {
   }
@@ -49,6 +55,7 @@ public class RequestMetric extends Statistics.Metric<String> {
     if (call.isEntryPoint()) {
       countVar.increment(1L);
       durationVar.increment(call.getDuration());
+      latencyVar.record(call.getDuration());
     }
   }
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class PartialTransactionPoolTest {
+
+  @Test
+  public void testRecycledOnceAllOwnersReleased() {
+    final PartialTransactionPool pool = new PartialTransactionPool(1, 4);
+    final PartialTransaction transaction = pool.acquire();
+    transaction.setRequest("GET /");
+    transaction.addCall().setSignature("a");
+    transaction.addCall().setSignature("b");
+    final Call first = transaction.getCalls().get(0);
+
+    transaction.retain();
+    transaction.release();
+    // still owned by the one who retained it
+    assertNotSame(transaction, pool.acquire());
+
+    transaction.release();
+    assertNull(transaction.getRequest());
+    assertTrue(transaction.getCalls().isEmpty());
+
+    final PartialTransaction reused = pool.acquire();
+    assertSame(transaction, reused);
+    final Call call = reused.addCall();
+    assertSame(first, call);
+    assertEquals(1, reused.getCalls().size());
+    assertEquals(2, pool.getCreatedCount());
+  }
+
+  @Test
+  public void testCopyIntoReusedCallClearsParameters() {
+    final PartialTransactionPool pool = new PartialTransactionPool(1, 4);
+    PartialTransaction transaction = pool.acquire();
+    final Call source = new Call();
+    source.getParameters().put("user", "1");
+    source.copy(transaction.addCall());
+    transaction.release();
+
+    transaction = pool.acquire();
+    final Call other = new Call();
+    other.getParameters().put("id", "2");
+    other.copy(transaction.addCall());
+    assertEquals(1, transaction.getCalls().get(0).getParameters().size());
+    assertEquals("2", transaction.getCalls().get(0).getParameters().get("id"));
+  }
+
+  @Test
+  public void testNotPooledTransaction() {
+    final PartialTransaction transaction = new PartialTransaction();
+    assertFalse(transaction.isPooled());
+    transaction.addCall();
+    transaction.release();
+    transaction.release();
+    assertEquals(1, transaction.getCalls().size());
+  }
+
+  @Test
+  public void testReleasedTooManyTimes() {
+    final PartialTransaction transaction = new PartialTransactionPool(1, 0).acquire();
+    transaction.release();
+    try {
+      transaction.release();
+      fail("Release without retain should fail");
+    } catch (IllegalStateException e) {
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.sampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
+import com.sematext.spm.client.tracing.agent.sampling.TailAwareSampler.EndpointStats;
+import com.sematext.spm.client.util.Clocks;
+import com.sematext.spm.client.util.Clocks.Mock;
+
+public class TailAwareSamplerTest {
+
+  private static PartialTransaction transaction(String request, long duration, boolean failed) {
+    final PartialTransaction transaction = new PartialTransaction();
+    transaction.setRequest(request);
+    transaction.setDuration(duration);
+    transaction.setFailed(failed);
+    return transaction;
+  }
+
+  @Test
+  public void testKeepsSlowAndFailedTransactions() {
+    final Mock clock = Clocks.mock();
+    final TailAwareSampler sampler = new TailAwareSampler(1, 10, 0.9d, 0d, clock);
+
+    for (int i = 0; i < 200; i++) {
+      sampler.sample(transaction("GET /", 100 + i % 10, false));
+      clock.increment(1000);
+    }
+
+    assertFalse(sampler.sample(transaction("GET /", 100, false)));
+    assertTrue(sampler.sample(transaction("GET /", 1000, false)));
+    assertTrue(sampler.sample(transaction("GET /", 100, true)));
+
+    final EndpointStats stats = sampler.getEndpointStats().iterator().next();
+    assertEquals("GET /", stats.getRequest());
+    assertTrue(stats.getLatencyQuantile() > 100 && stats.getLatencyQuantile() < 150);
+    assertEquals(203, stats.getKept() + stats.getDropped());
+  }
+
+  @Test
+  public void testBudgetIsReservedForInterestingTransactions() {
+    final Mock clock = Clocks.mock();
+    final TailAwareSampler sampler = new TailAwareSampler(0, 20, 0.9d, 1d, clock);
+
+    // first transactions of a request are kept, using half of the budget
+    for (int i = 0; i < 10; i++) {
+      assertTrue(sampler.sample(transaction("GET /", 100, false)));
+    }
+    // remaining half is left for slow and failed ones
+    assertFalse(sampler.sample(transaction("GET /", 1, false)));
+    int kept = 0;
+    for (int i = 0; i < 20; i++) {
+      if (sampler.sample(transaction("GET /", 100, true))) {
+        kept++;
+      }
+    }
+    assertEquals(10, kept);
+  }
+
+  @Test
+  public void testBucketRefill() {
+    final Mock clock = Clocks.mock();
+    final TailAwareSampler sampler = new TailAwareSampler(2, 1, 0.9d, 0d, clock);
+
+    assertTrue(sampler.sample(transaction("GET /", 100, true)));
+    assertFalse(sampler.sample(transaction("GET /", 100, true)));
+    clock.increment(500);
+    assertTrue(sampler.sample(transaction("GET /", 100, true)));
+  }
+
+  @Test
+  public void testForkedTransactionsOnlyTakeBudget() {
+    final Mock clock = Clocks.mock();
+    final TailAwareSampler sampler = new TailAwareSampler(0, 2, 0.9d, 0d, clock);
+
+    final PartialTransaction forked = transaction("GET /", 5000, false);
+    forked.setForked(true);
+    assertTrue(sampler.sample(forked));
+    assertTrue(sampler.getEndpointStats().isEmpty());
+
+    assertTrue(sampler.sample(transaction("GET /", 100, true)));
+    assertFalse(sampler.sample(forked));
+  }
+}
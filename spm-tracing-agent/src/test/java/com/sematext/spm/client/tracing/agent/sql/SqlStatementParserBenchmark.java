@@ -0,0 +1,124 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.sql;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sematext.spm.client.util.Threads;
+
+/**
+ * Compares regex based statement parsing with {@link SqlStatementScanner} and with cached parsing on a corpus of
+ * Hibernate generated statements from test resources. A different corpus (one statement per line) can be given as an
+ * argument.
+ * <p/>
+ * Prints average time and allocated bytes per statement.
+ */
+public class SqlStatementParserBenchmark {
+  private static final int WARMUP_ITERATIONS = 20000;
+  private static final int ITERATIONS = 50000;
+
+  public static void main(String[] args) throws IOException {
+    final List<String> corpus;
+    if (args.length >= 1) {
+      corpus = read(new FileInputStream(args[0]));
+    } else {
+      corpus = read(SqlStatementParserBenchmark.class.getResourceAsStream("hibernate-queries.sql"));
+    }
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      for (String sql : corpus) {
+        SqlStatementParser.parseWithRegex(sql);
+        SqlStatementParser.parse(sql);
+        SqlStatementParser.parseCached(sql);
+      }
+    }
+
+    int differences = 0;
+    for (String sql : corpus) {
+      SqlStatement regex = SqlStatementParser.parseWithRegex(sql);
+      SqlStatement scanned = SqlStatementParser.parse(sql);
+      if (!regex.equals(scanned)) {
+        differences++;
+        System.out.println("regex:   " + regex + "\nscanner: " + scanned + "\n  " + sql);
+      }
+    }
+
+    long regexAllocated = Threads.currentThreadAllocatedBytes();
+    long regexStart = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      for (String sql : corpus) {
+        SqlStatementParser.parseWithRegex(sql);
+      }
+    }
+    long regexNanos = System.nanoTime() - regexStart;
+    regexAllocated = Threads.currentThreadAllocatedBytes() - regexAllocated;
+
+    long scanAllocated = Threads.currentThreadAllocatedBytes();
+    long scanStart = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      for (String sql : corpus) {
+        SqlStatementParser.parse(sql);
+      }
+    }
+    long scanNanos = System.nanoTime() - scanStart;
+    scanAllocated = Threads.currentThreadAllocatedBytes() - scanAllocated;
+
+    long cachedAllocated = Threads.currentThreadAllocatedBytes();
+    long cachedStart = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      for (String sql : corpus) {
+        SqlStatementParser.parseCached(sql);
+      }
+    }
+    long cachedNanos = System.nanoTime() - cachedStart;
+    cachedAllocated = Threads.currentThreadAllocatedBytes() - cachedAllocated;
+
+    long operations = (long) ITERATIONS * corpus.size();
+    System.out.println(String.format("%d statements, %d with different result", corpus.size(), differences));
+    System.out.println(String.format("regex:   %8.2f us/op %8d B/op", regexNanos / 1000d / operations,
+                                     regexAllocated / operations));
+    System.out.println(String.format("scanner: %8.2f us/op %8d B/op", scanNanos / 1000d / operations,
+                                     scanAllocated / operations));
+    System.out.println(String.format("cached:  %8.2f us/op %8d B/op", cachedNanos / 1000d / operations,
+                                     cachedAllocated / operations));
+  }
+
+  private static List<String> read(InputStream is) throws IOException {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+      List<String> statements = new ArrayList<String>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          statements.add(line);
+        }
+      }
+      return statements;
+    } finally {
+      is.close();
+    }
+  }
+}
@@ -21,6 +21,8 @@
 package com.sematext.spm.client.tracing.agent.sql;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -103,4 +105,46 @@ public class SqlStatementParserTest {
     String sql1 = "delete \nfrom User \n\twhere id in (select userId from System where name = 'system-1')";
     assertEquals(SqlStatementParser.parse(sql1), new SqlStatement(SqlStatement.Operation.DELETE, "user"));
   }
+
+  @Test
+  public void testParseJoinsAndDerivedTables() throws Exception {
+    assertEquals(SqlStatementParser.parse("select * from user_account ua where ua.id = 1"),
+                 new SqlStatement(SqlStatement.Operation.SELECT, "user_account"));
+    assertEquals(SqlStatementParser.parse("select * from User u inner join System s on u.id = s.userId"),
+                 new SqlStatement(SqlStatement.Operation.SELECT, null));
+    assertEquals(SqlStatementParser.parse("select * from (select id from User) u"),
+                 new SqlStatement(SqlStatement.Operation.SELECT, null));
+    assertEquals(SqlStatementParser.parse("select (select max(id) from System) from User where id in (1, 2)"),
+                 new SqlStatement(SqlStatement.Operation.SELECT, "user"));
+    assertEquals(SqlStatementParser.parse("select 1"), new SqlStatement(SqlStatement.Operation.OTHER, null));
+  }
+
+  @Test
+  public void testFingerprint() throws Exception {
+    assertEquals("select u.name from user u where u.id = ? and u.name in (?, ?)", SqlStatementParser
+        .parse("/* load */ SELECT u.name\n  FROM User u -- by id\n WHERE u.id = 42 AND u.name IN ('a', 'it''s')")
+        .getFingerprint());
+    assertEquals("insert into \"User\" (name, age) values (?, ?)", SqlStatementParser
+        .parse("insert into \"User\" (name, age) values (?, ?)").getFingerprint());
+    assertEquals("delete from [dbo].[User] where id = ?", SqlStatementParser
+        .parse("delete from [dbo].[User] where id = 10").getFingerprint());
+    assertNull(new SqlStatement(SqlStatement.Operation.SELECT, "user").getFingerprint());
+  }
+
+  @Test
+  public void testFallbackToRegexParser() throws Exception {
+    assertNull(SqlStatementScanner.scan("delete from [dbo].[User] where id = 10"));
+    assertEquals(SqlStatementParser.parse("delete from [dbo].[User] where id = 10"),
+                 SqlStatementParser.parseWithRegex("delete from [dbo].[User] where id = 10"));
+    assertEquals(SqlStatementParser.parse("/* unterminated comment update User"),
+                 new SqlStatement(SqlStatement.Operation.OTHER, null));
+  }
+
+  @Test
+  public void testParseCached() throws Exception {
+    String sql = "select * from User where id = ?";
+    SqlStatement statement = SqlStatementParser.parseCached(sql);
+    assertEquals(statement, new SqlStatement(SqlStatement.Operation.SELECT, "user"));
+    assertSame(statement, SqlStatementParser.parseCached(new String(sql)));
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.stats;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sematext.spm.client.tracing.agent.model.PartialTransaction;
+
+public class AsyncTracingStatisticsTest {
+
+  @Test
+  public void testAggregatesOnFlushingThread() throws Exception {
+    final RecordingStatistics delegate = new RecordingStatistics();
+    final AsyncTracingStatistics statistics = new AsyncTracingStatistics(delegate, 1024, 100);
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 500; j++) {
+            statistics.record(new PartialTransaction());
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(0, delegate.recorded.get());
+    statistics.flush();
+    assertEquals(2000, delegate.recorded.get());
+    assertEquals(2000, statistics.getAggregatedCount());
+    assertEquals(Thread.currentThread(), delegate.lastThread);
+  }
+
+  @Test
+  public void testDropsWhenBufferIsFull() throws Exception {
+    final RecordingStatistics delegate = new RecordingStatistics();
+    final AsyncTracingStatistics statistics = new AsyncTracingStatistics(delegate, 4, 100);
+
+    for (int i = 0; i < 10; i++) {
+      statistics.record(new PartialTransaction());
+    }
+    statistics.flush();
+    assertEquals(4, delegate.recorded.get());
+    assertEquals(6, statistics.getDroppedCount());
+
+    // buffer has room again
+    statistics.record(new PartialTransaction());
+    statistics.flush();
+    assertEquals(5, delegate.recorded.get());
+  }
+
+  @Test
+  public void testBufferOfFinishedThreadIsDrained() throws Exception {
+    final RecordingStatistics delegate = new RecordingStatistics();
+    final AsyncTracingStatistics statistics = new AsyncTracingStatistics(delegate, 2, 100);
+
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 3; i++) {
+          statistics.record(new PartialTransaction());
+        }
+      }
+    };
+    thread.start();
+    thread.join();
+
+    statistics.flush();
+    statistics.flush();
+    assertEquals(2, delegate.recorded.get());
+    assertEquals(1, statistics.getDroppedCount());
+  }
+
+  private static final class RecordingStatistics implements TracingStatistics {
+    private final AtomicInteger recorded = new AtomicInteger();
+    private volatile Thread lastThread;
+
+    @Override
+    public void record(PartialTransaction transaction) {
+      recorded.incrementAndGet();
+      lastThread = Thread.currentThread();
+    }
+
+    @Override
+    public StatisticsView newCallStatisticsView(MutableVarProvider varProvider) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client.tracing.agent.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class LogLinearHistogramVarTest {
+
+  @Test
+  public void testBucketBounds() {
+    long previousHighest = -1;
+    for (int i = 0; i <= LogLinearHistogramVar.bucketIndex(1L << 30); i++) {
+      long highest = LogLinearHistogramVar.highestValueInBucket(i);
+      assertTrue(highest > previousHighest);
+      assertEquals(i, LogLinearHistogramVar.bucketIndex(previousHighest + 1));
+      assertEquals(i, LogLinearHistogramVar.bucketIndex(highest));
+      previousHighest = highest;
+    }
+  }
+
+  @Test
+  public void testPercentilesWithinError() {
+    final LogLinearHistogramVar histogram = new LogLinearHistogramVar();
+    final Random random = new Random(0);
+    final List<Long> values = new ArrayList<Long>();
+    for (int i = 0; i < 10000; i++) {
+      long value = (long) Math.abs(random.nextGaussian() * 500) + 1;
+      values.add(value);
+      histogram.record(value);
+    }
+    Collections.sort(values);
+
+    final HistogramSnapshot snapshot = histogram.snapshot();
+    assertEquals(10000, snapshot.getCount());
+    assertEquals((long) values.get(values.size() - 1), snapshot.getMax());
+    for (int pctl : new int[] { 50, 90, 99 }) {
+      long exact = values.get((int) Math.ceil(pctl * values.size() / 100.0) - 1);
+      long reported = snapshot.getValueAtPercentile(pctl);
+      assertTrue(pctl + ": " + reported + " vs " + exact, reported >= exact && reported <= exact * 1.07);
+    }
+  }
+
+  @Test
+  public void testSnapshotStartsNewInterval() {
+    final LogLinearHistogramVar histogram = new LogLinearHistogramVar(1000);
+    histogram.record(5);
+    histogram.record(5000);
+    HistogramSnapshot snapshot = histogram.snapshot();
+    assertEquals(2, snapshot.getCount());
+    // values above highest trackable one are still reported as max
+    assertEquals(5000, snapshot.getMax());
+    assertEquals(5, snapshot.getValueAtPercentile(50));
+
+    snapshot = histogram.snapshot();
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getValueAtPercentile(99));
+  }
+}
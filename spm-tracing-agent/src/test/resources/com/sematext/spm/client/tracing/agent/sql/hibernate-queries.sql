@@ -0,0 +1,20 @@
+select user0_.id as id1_3_0_, user0_.created_at as created_2_3_0_, user0_.email as email3_3_0_, user0_.name as name4_3_0_, user0_.version as version5_3_0_ from user_account user0_ where user0_.id=?
+select user0_.id as id1_3_, user0_.created_at as created_2_3_, user0_.email as email3_3_, user0_.name as name4_3_, user0_.version as version5_3_ from user_account user0_ where lower(user0_.email)=lower(?) limit ?
+select order0_.id as id1_1_0_, customer1_.id as id1_0_1_, order0_.customer_id as customer5_1_0_, order0_.placed_at as placed_a2_1_0_, order0_.status as status3_1_0_, order0_.total as total4_1_0_, customer1_.name as name2_0_1_ from orders order0_ inner join customer customer1_ on order0_.customer_id=customer1_.id where order0_.status in (? , ? , ?) order by order0_.placed_at desc limit ?
+select count(order0_.id) as col_0_0_ from orders order0_ where order0_.customer_id=? and order0_.placed_at between ? and ?
+select items0_.order_id as order_id5_2_0_, items0_.id as id1_2_0_, items0_.id as id1_2_1_, items0_.order_id as order_id5_2_1_, items0_.price as price2_2_1_, items0_.product_id as product_3_2_1_, items0_.quantity as quantity4_2_1_ from order_item items0_ where items0_.order_id=?
+select product0_.id as id1_4_, product0_.name as name2_4_, product0_.price as price3_4_ from product product0_ where product0_.id in (select items1_.product_id from order_item items1_ where items1_.order_id=?)
+select product0_.id as id1_4_, product0_.name as name2_4_ from product product0_ where exists (select 1 from stock stock1_ where stock1_.product_id=product0_.id and stock1_.quantity>0) order by product0_.name asc
+/* load com.example.shop.Customer */ select customer0_.id as id1_0_0_, customer0_.name as name2_0_0_, customer0_.tier as tier3_0_0_ from customer customer0_ where customer0_.id=?
+/* select generatedAlias0 from Order as generatedAlias0 where generatedAlias0.status=:param0 */ select order0_.id as id1_1_, order0_.status as status3_1_ from orders order0_ where order0_.status=?
+insert into user_account (created_at, email, name, version, id) values (?, ?, ?, ?, ?)
+insert into orders (customer_id, placed_at, status, total, id) values (?, ?, ?, ?, ?)
+insert into order_item (order_id, price, product_id, quantity, id) values (?, ?, ?, ?, ?)
+update user_account set email=?, name=?, version=? where id=? and version=?
+update orders set status=? where id in (select order0_.id from orders order0_ where order0_.placed_at<?)
+delete from order_item where order_id=?
+delete from "public"."session_token" where expires_at<?
+select nextval ('hibernate_sequence')
+select "user0_"."id" as "id1_3_", "user0_"."email" as "email3_3_" from "public"."user_account" "user0_" where "user0_"."email"=? and "user0_"."active"=true
+select distinct customer0_.id as id1_0_, customer0_.name as name2_0_ from customer customer0_ left outer join orders orders1_ on customer0_.id=orders1_.customer_id where orders1_.total>? group by customer0_.id, customer0_.name having count(orders1_.id)>?
+select t.id, t.name from tenant t where t.slug = 'acme-corp' and t.created_at > '2019-01-01 00:00:00' and t.plan_id = 42
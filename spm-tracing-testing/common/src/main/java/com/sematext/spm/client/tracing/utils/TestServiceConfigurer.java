@@ -55,6 +55,11 @@ public class TestServiceConfigurer implements ServiceConfigurer {
     return this.transactionSampler;
   }
 
+  @Override
+  public Sampler<PartialTransaction> getTransactionEndSampler() {
+    return null;
+  }
+
   @Override
   public Sampler<TracingError> getTracingErrorSampler() {
     return this.tracingErrorSampler;
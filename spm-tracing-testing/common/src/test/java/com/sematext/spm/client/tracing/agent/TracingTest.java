@@ -62,6 +62,11 @@ public class TracingTest {
       return null;
     }
 
+    @Override
+    public Sampler<PartialTransaction> getTransactionEndSampler() {
+      return null;
+    }
+
     @Override
     public Sampler<TracingError> getTracingErrorSampler() {
       return null;
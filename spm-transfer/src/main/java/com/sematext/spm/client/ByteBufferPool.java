@@ -0,0 +1,96 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small bounded pool of heap byte buffers. Heap buffers are used on purpose, their backing arrays can be handed
+ * over to http entities and flume events without additional copying.
+ */
+public final class ByteBufferPool {
+  private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+  private final AtomicInteger freeCount = new AtomicInteger();
+
+  private final int maxPooledBuffers;
+  private final int initialCapacity;
+  private final int maxPooledCapacity;
+
+  public ByteBufferPool(int maxPooledBuffers, int initialCapacity, int maxPooledCapacity) {
+    this.maxPooledBuffers = maxPooledBuffers;
+    this.initialCapacity = initialCapacity;
+    this.maxPooledCapacity = maxPooledCapacity;
+  }
+
+  public ByteBuffer acquire() {
+    return acquire(initialCapacity);
+  }
+
+  public ByteBuffer acquire(int minCapacity) {
+    ByteBuffer buffer = free.poll();
+    if (buffer != null) {
+      freeCount.decrementAndGet();
+      if (buffer.capacity() >= minCapacity) {
+        buffer.clear();
+        return buffer;
+      }
+      // too small for this request, let it be collected
+    }
+    return ByteBuffer.allocate(Math.max(minCapacity, initialCapacity));
+  }
+
+  public void release(ByteBuffer buffer) {
+    if (buffer == null || !buffer.hasArray() || buffer.capacity() > maxPooledCapacity) {
+      return;
+    }
+    if (freeCount.incrementAndGet() <= maxPooledBuffers) {
+      buffer.clear();
+      free.offer(buffer);
+    } else {
+      freeCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * Makes sure given buffer can accept additional "needed" bytes. If it can't, a bigger buffer is taken from the
+   * pool, current content is copied into it and old buffer is returned to the pool.
+   *
+   * @param buffer buffer in write mode
+   * @param needed number of bytes that are about to be written
+   * @return buffer which should be used from now on (either the same or the new one)
+   */
+  public ByteBuffer ensureRemaining(ByteBuffer buffer, int needed) {
+    if (buffer.remaining() >= needed) {
+      return buffer;
+    }
+    int newCapacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+    ByteBuffer bigger = acquire(newCapacity);
+    buffer.flip();
+    bigger.put(buffer);
+    release(buffer);
+    return bigger;
+  }
+
+  int getFreeCount() {
+    return freeCount.get();
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes snapshots created by ColumnarSnapshotEncoder back into Influx line protocol, producing the same lines
+ * Serializer.INFLUX produces for the original rows (rows of the same group end up next to each other).
+ */
+public final class ColumnarSnapshotDecoder {
+  private ColumnarSnapshotDecoder() {
+  }
+
+  public static List<String> toLineProtocol(byte[] snapshot) {
+    ByteBuffer in = ByteBuffer.wrap(snapshot);
+    if (in.remaining() < 3 || in.get() != ColumnarSnapshotEncoder.MAGIC_0 ||
+        in.get() != ColumnarSnapshotEncoder.MAGIC_1) {
+      throw new IllegalArgumentException("Not a columnar snapshot");
+    }
+    byte version = in.get();
+    if (version != ColumnarSnapshotEncoder.VERSION) {
+      throw new IllegalArgumentException("Unsupported columnar snapshot version " + version);
+    }
+
+    String[] dictionary = new String[readVarInt(in)];
+    for (int i = 0; i < dictionary.length; i++) {
+      int length = readVarInt(in);
+      dictionary[i] = new String(snapshot, in.position(), length, InfluxLineEncoder.UTF_8);
+      in.position(in.position() + length);
+    }
+
+    List<String> lines = new ArrayList<String>();
+    int groups = readVarInt(in);
+    long previousTimestamp = 0;
+    for (int g = 0; g < groups; g++) {
+      previousTimestamp = decodeGroup(in, dictionary, previousTimestamp, lines);
+    }
+    return lines;
+  }
+
+  private static long decodeGroup(ByteBuffer in, String[] dictionary, long previousTimestamp, List<String> lines) {
+    String namespace = dictionary[readVarInt(in)];
+    String token = dictionary[readVarInt(in)];
+
+    String[] tagKeys = new String[readVarInt(in)];
+    for (int i = 0; i < tagKeys.length; i++) {
+      tagKeys[i] = dictionary[readVarInt(in)];
+    }
+    String[] fieldNames = new String[readVarInt(in)];
+    byte[] fieldTypes = new byte[fieldNames.length];
+    for (int i = 0; i < fieldNames.length; i++) {
+      fieldNames[i] = dictionary[readVarInt(in)];
+      fieldTypes[i] = in.get();
+    }
+
+    int rows = readVarInt(in);
+    long[] timestamps = new long[rows];
+    for (int r = 0; r < rows; r++) {
+      previousTimestamp += readZigZag(in);
+      timestamps[r] = previousTimestamp;
+    }
+
+    String[][] tagValues = new String[tagKeys.length][rows];
+    for (int t = 0; t < tagKeys.length; t++) {
+      for (int r = 0; r < rows; r++) {
+        tagValues[t][r] = dictionary[readVarInt(in)];
+      }
+    }
+
+    String[][] fieldValues = new String[fieldNames.length][rows];
+    for (int f = 0; f < fieldNames.length; f++) {
+      decodeField(in, dictionary, fieldTypes[f], fieldValues[f]);
+    }
+
+    for (int r = 0; r < rows; r++) {
+      StringBuilder sb = new StringBuilder(200);
+      sb.append(InfluxLineEncoder.escape(namespace)).append(",token=").append(InfluxLineEncoder.escape(token));
+      for (int t = 0; t < tagKeys.length; t++) {
+        sb.append(',').append(InfluxLineEncoder.escape(tagKeys[t])).append('=')
+            .append(InfluxLineEncoder.escape(tagValues[t][r]));
+      }
+      sb.append(' ');
+      for (int f = 0; f < fieldNames.length; f++) {
+        if (f > 0) {
+          sb.append(',');
+        }
+        sb.append(InfluxLineEncoder.escape(fieldNames[f])).append('=').append(fieldValues[f][r]);
+      }
+      if (timestamps[r] != -1) {
+        sb.append(' ').append(timestamps[r]).append("000000");
+      }
+      lines.add(sb.toString());
+    }
+    return previousTimestamp;
+  }
+
+  private static void decodeField(ByteBuffer in, String[] dictionary, byte type, String[] values) {
+    int rows = values.length;
+    switch (type) {
+      case ColumnarSnapshotEncoder.TYPE_LONG:
+        long previous = 0;
+        for (int r = 0; r < rows; r++) {
+          previous += readZigZag(in);
+          values[r] = previous + "i";
+        }
+        break;
+      case ColumnarSnapshotEncoder.TYPE_DOUBLE:
+        long previousBits = 0;
+        for (int r = 0; r < rows; r++) {
+          previousBits ^= readVarLong(in);
+          values[r] = String.valueOf(Double.longBitsToDouble(previousBits));
+        }
+        break;
+      case ColumnarSnapshotEncoder.TYPE_BOOLEAN:
+        for (int r = 0; r < rows; r += 8) {
+          int bits = in.get();
+          for (int b = 0; b < 8 && r + b < rows; b++) {
+            values[r + b] = ((bits >> b) & 1) == 1 ? "true" : "false";
+          }
+        }
+        break;
+      case ColumnarSnapshotEncoder.TYPE_STRING:
+        for (int r = 0; r < rows; r++) {
+          values[r] = "\"" + dictionary[readVarInt(in)].replace("\"", "\\\"") + "\"";
+        }
+        break;
+      case ColumnarSnapshotEncoder.TYPE_RAW:
+        for (int r = 0; r < rows; r++) {
+          values[r] = dictionary[readVarInt(in)];
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown field type " + type);
+    }
+  }
+
+  private static int readVarInt(ByteBuffer in) {
+    return (int) readVarLong(in);
+  }
+
+  private static long readZigZag(ByteBuffer in) {
+    long value = readVarLong(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static long readVarLong(ByteBuffer in) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      value |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
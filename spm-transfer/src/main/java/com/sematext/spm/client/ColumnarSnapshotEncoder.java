@@ -0,0 +1,365 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a snapshot of rows into compact binary columnar form, an alternative to sending the same rows as Influx
+ * lines. Rows with the same namespace, token, tag keys and field names/types form a group which is written column by
+ * column:
+ * <ul>
+ * <li>all strings (namespaces, tokens, tag keys and values, field names, string values) are written once into a
+ * dictionary and referenced by index</li>
+ * <li>timestamps are delta encoded</li>
+ * <li>long values are delta encoded within their column, doubles are xor-ed with the previous value in the column,
+ * both written as variable length numbers; booleans are packed as bits</li>
+ * </ul>
+ * ColumnarSnapshotDecoder turns the snapshot back into line protocol. Not used by the sender yet, the receiver only
+ * accepts line protocol. Instances are not thread safe.
+ */
+public final class ColumnarSnapshotEncoder {
+  static final byte MAGIC_0 = 'S';
+  static final byte MAGIC_1 = 'C';
+  static final byte VERSION = 1;
+
+  static final byte TYPE_LONG = 1;
+  static final byte TYPE_DOUBLE = 2;
+  static final byte TYPE_STRING = 3;
+  static final byte TYPE_BOOLEAN = 4;
+  // value kept as already formatted line protocol text (floats, big numbers, custom metric values)
+  static final byte TYPE_RAW = 5;
+
+  private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+  private final List<String> dictionaryValues = new ArrayList<String>();
+  private final Map<String, Group> groups = new LinkedHashMap<String, Group>();
+  private int rowCount;
+
+  // reused between rows
+  private final StringBuilder groupKey = new StringBuilder(256);
+  private final List<String> rowTagKeys = new ArrayList<String>();
+  private final List<String> rowTagValues = new ArrayList<String>();
+  private final List<String> rowFieldNames = new ArrayList<String>();
+  private final List<Object> rowFieldValues = new ArrayList<Object>();
+  private byte[] rowFieldTypes = new byte[16];
+
+  /**
+   * @return false if the row has no non-null metric and was skipped (same as Serializer.INFLUX would)
+   */
+  public boolean add(String metricNamespace, String appToken, Map<String, Object> metrics, Map<String, String> tags,
+                     long timestamp) {
+    if (metrics == null || metrics.isEmpty()) {
+      return false;
+    }
+
+    rowFieldNames.clear();
+    rowFieldValues.clear();
+    for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+      Object value = metric.getValue();
+      if (!InfluxLineEncoder.isNullValue(value)) {
+        if (rowFieldNames.size() == rowFieldTypes.length) {
+          rowFieldTypes = Arrays.copyOf(rowFieldTypes, rowFieldTypes.length * 2);
+        }
+        rowFieldTypes[rowFieldNames.size()] = typeOf(value);
+        rowFieldNames.add(metric.getKey());
+        rowFieldValues.add(value);
+      }
+    }
+    if (rowFieldNames.isEmpty()) {
+      return false;
+    }
+
+    rowTagKeys.clear();
+    rowTagValues.clear();
+    if (tags != null) {
+      for (Map.Entry<String, String> tag : tags.entrySet()) {
+        if (tag.getValue() != null) {
+          // kept sorted by key, same order as in line protocol (see SeriesKeyCache)
+          int index = rowTagKeys.size();
+          while (index > 0 && rowTagKeys.get(index - 1).compareTo(tag.getKey()) > 0) {
+            index--;
+          }
+          rowTagKeys.add(index, tag.getKey());
+          rowTagValues.add(index, tag.getValue());
+        }
+      }
+    }
+
+    groupKey.setLength(0);
+    groupKey.append(metricNamespace).append('\u0000').append(appToken);
+    for (String tagKey : rowTagKeys) {
+      groupKey.append('\u0000').append(tagKey);
+    }
+    groupKey.append('\u0001');
+    for (int i = 0; i < rowFieldNames.size(); i++) {
+      groupKey.append('\u0000').append(rowFieldNames.get(i)).append((char) rowFieldTypes[i]);
+    }
+
+    String key = groupKey.toString();
+    Group group = groups.get(key);
+    if (group == null) {
+      group = new Group(metricNamespace, appToken);
+      groups.put(key, group);
+    }
+    group.add(timestamp);
+    rowCount++;
+    return true;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public byte[] encode() {
+    // body first, dictionary is complete only after all values were visited
+    Output body = new Output(rowCount * 16 + 64);
+    body.writeVarInt(groups.size());
+    long previousTimestamp = 0;
+    for (Group group : groups.values()) {
+      previousTimestamp = group.writeTo(body, previousTimestamp);
+    }
+
+    Output out = new Output(body.size() + dictionaryValues.size() * 16 + 16);
+    out.write(MAGIC_0);
+    out.write(MAGIC_1);
+    out.write(VERSION);
+    out.writeVarInt(dictionaryValues.size());
+    for (String value : dictionaryValues) {
+      byte[] bytes = value.getBytes(InfluxLineEncoder.UTF_8);
+      out.writeVarInt(bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+    body.writeTo(out);
+    return out.toByteArray();
+  }
+
+  public void reset() {
+    dictionary.clear();
+    dictionaryValues.clear();
+    groups.clear();
+    rowCount = 0;
+  }
+
+  private int idOf(String value) {
+    Integer id = dictionary.get(value);
+    if (id == null) {
+      id = dictionaryValues.size();
+      dictionary.put(value, id);
+      dictionaryValues.add(value);
+    }
+    return id;
+  }
+
+  private static byte typeOf(Object value) {
+    if (value instanceof Long || value instanceof Integer) {
+      return TYPE_LONG;
+    } else if (value instanceof Double) {
+      return TYPE_DOUBLE;
+    } else if (value instanceof String) {
+      return TYPE_STRING;
+    } else if (value instanceof Boolean) {
+      return TYPE_BOOLEAN;
+    } else if (value instanceof Float || value instanceof BigDecimal || value instanceof BigInteger ||
+        value instanceof SerializableMetricValue) {
+      return TYPE_RAW;
+    }
+    throw new UnsupportedOperationException(
+        "Unsupported type " + value.getClass().getName() + " - can't serialize it!");
+  }
+
+  private static String formatRaw(Object value) {
+    if (value instanceof BigInteger) {
+      return value.toString() + "i";
+    } else if (value instanceof SerializableMetricValue) {
+      return ((SerializableMetricValue) value).serializeToInflux();
+    }
+    return String.valueOf(value);
+  }
+
+  private final class Group {
+    private final int namespaceId;
+    private final int tokenId;
+    private final int[] tagKeyIds;
+    private final int[] fieldNameIds;
+    private final byte[] fieldTypes;
+
+    private final LongColumn timestamps = new LongColumn();
+    private final LongColumn[] tagValueColumns;
+    // long values, double bits, dictionary ids or 0/1 depending on field type
+    private final LongColumn[] fieldColumns;
+
+    private Group(String metricNamespace, String appToken) {
+      namespaceId = idOf(metricNamespace);
+      tokenId = idOf(appToken);
+
+      tagKeyIds = new int[rowTagKeys.size()];
+      tagValueColumns = new LongColumn[tagKeyIds.length];
+      for (int i = 0; i < tagKeyIds.length; i++) {
+        tagKeyIds[i] = idOf(rowTagKeys.get(i));
+        tagValueColumns[i] = new LongColumn();
+      }
+
+      fieldNameIds = new int[rowFieldNames.size()];
+      fieldTypes = Arrays.copyOf(rowFieldTypes, fieldNameIds.length);
+      fieldColumns = new LongColumn[fieldNameIds.length];
+      for (int i = 0; i < fieldNameIds.length; i++) {
+        fieldNameIds[i] = idOf(rowFieldNames.get(i));
+        fieldColumns[i] = new LongColumn();
+      }
+    }
+
+    private void add(long timestamp) {
+      timestamps.add(timestamp);
+      for (int i = 0; i < tagValueColumns.length; i++) {
+        tagValueColumns[i].add(idOf(rowTagValues.get(i)));
+      }
+      for (int i = 0; i < fieldColumns.length; i++) {
+        Object value = rowFieldValues.get(i);
+        long encoded;
+        switch (fieldTypes[i]) {
+          case TYPE_LONG:
+            encoded = ((Number) value).longValue();
+            break;
+          case TYPE_DOUBLE:
+            encoded = Double.doubleToRawLongBits((Double) value);
+            break;
+          case TYPE_STRING:
+            encoded = idOf((String) value);
+            break;
+          case TYPE_BOOLEAN:
+            encoded = ((Boolean) value) ? 1 : 0;
+            break;
+          default:
+            encoded = idOf(formatRaw(value));
+        }
+        fieldColumns[i].add(encoded);
+      }
+    }
+
+    private long writeTo(Output out, long previousTimestamp) {
+      out.writeVarInt(namespaceId);
+      out.writeVarInt(tokenId);
+      out.writeVarInt(tagKeyIds.length);
+      for (int id : tagKeyIds) {
+        out.writeVarInt(id);
+      }
+      out.writeVarInt(fieldNameIds.length);
+      for (int i = 0; i < fieldNameIds.length; i++) {
+        out.writeVarInt(fieldNameIds[i]);
+        out.write(fieldTypes[i]);
+      }
+
+      int rows = timestamps.size;
+      out.writeVarInt(rows);
+
+      long previous = previousTimestamp;
+      for (int r = 0; r < rows; r++) {
+        out.writeZigZag(timestamps.values[r] - previous);
+        previous = timestamps.values[r];
+      }
+
+      for (LongColumn column : tagValueColumns) {
+        for (int r = 0; r < rows; r++) {
+          out.writeVarInt((int) column.values[r]);
+        }
+      }
+
+      for (int i = 0; i < fieldColumns.length; i++) {
+        long[] values = fieldColumns[i].values;
+        switch (fieldTypes[i]) {
+          case TYPE_LONG:
+            long previousValue = 0;
+            for (int r = 0; r < rows; r++) {
+              out.writeZigZag(values[r] - previousValue);
+              previousValue = values[r];
+            }
+            break;
+          case TYPE_DOUBLE:
+            long previousBits = 0;
+            for (int r = 0; r < rows; r++) {
+              out.writeVarLong(values[r] ^ previousBits);
+              previousBits = values[r];
+            }
+            break;
+          case TYPE_BOOLEAN:
+            for (int r = 0; r < rows; r += 8) {
+              int bits = 0;
+              for (int b = 0; b < 8 && r + b < rows; b++) {
+                bits |= (int) values[r + b] << b;
+              }
+              out.write((byte) bits);
+            }
+            break;
+          default:
+            for (int r = 0; r < rows; r++) {
+              out.writeVarInt((int) values[r]);
+            }
+        }
+      }
+      return previous;
+    }
+  }
+
+  private static final class LongColumn {
+    private long[] values = new long[8];
+    private int size;
+
+    private void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+
+  private static final class Output extends ByteArrayOutputStream {
+    private Output(int size) {
+      super(size);
+    }
+
+    private void writeVarInt(int value) {
+      writeVarLong(value & 0xffffffffL);
+    }
+
+    private void writeZigZag(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarLong(long value) {
+      while ((value & ~0x7fL) != 0) {
+        write((int) ((value & 0x7f) | 0x80));
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+
+    private void writeTo(Output out) {
+      out.write(buf, 0, count);
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Encodes rows in Influx line protocol directly as UTF-8 bytes into a pooled ByteBuffer, without building
+ * intermediate Strings. Output is the same as the one of Serializer.INFLUX. Instances are not thread safe, the
+ * usual pattern is one encoder per collecting thread, reset before each line.
+ */
+public final class InfluxLineEncoder {
+  public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte[] TRUE = "true".getBytes(UTF_8);
+  private static final byte[] FALSE = "false".getBytes(UTF_8);
+  // influx protocol requires timestamp in ns, we have it in ms
+  private static final byte[] MS_TO_NS_SUFFIX = "000000".getBytes(UTF_8);
+
+  private static final ByteBufferPool DEFAULT_POOL = new ByteBufferPool(64, 1024, 256 * 1024);
+
+  private final ByteBufferPool pool;
+  private ByteBuffer buffer;
+
+  public InfluxLineEncoder() {
+    this(DEFAULT_POOL);
+  }
+
+  public InfluxLineEncoder(ByteBufferPool pool) {
+    this.pool = pool;
+    this.buffer = pool.acquire();
+  }
+
+  /**
+   * Appends a single line (without line separator) to the internal buffer.
+   *
+   * @return true if the line was written, false if there was no non-null metric (nothing is written then)
+   */
+  public boolean encode(String metricNamespace, String appToken, Map<String, Object> metrics,
+                        Map<String, String> tags, long timestamp) {
+    if (metrics == null || metrics.isEmpty()) {
+      return false;
+    }
+
+    int lineStart = buffer.position();
+
+    writeBytes(SeriesKeyCache.INSTANCE.get(metricNamespace, appToken, tags).getPrefixBytes());
+
+    writeByte((byte) ' ');
+
+    boolean written;
+    if (metrics instanceof MetricsRow) {
+      written = writeFields((MetricsRow) metrics);
+    } else {
+      written = writeFields(metrics, false);
+    }
+
+    if (!written) {
+      // no fields, line would be invalid
+      buffer.position(lineStart);
+      return false;
+    }
+
+    if (timestamp != -1) {
+      writeByte((byte) ' ');
+      writeLong(timestamp);
+      writeBytes(MS_TO_NS_SUFFIX);
+    }
+
+    return true;
+  }
+
+  public void newLine() {
+    writeByte((byte) '\n');
+  }
+
+  /**
+   * @return internal buffer in write mode; bytes written so far are in [0, position)
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  public int size() {
+    return buffer.position();
+  }
+
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  public void reset() {
+    buffer.clear();
+  }
+
+  /**
+   * Returns internal buffer to the pool. Encoder must not be used afterwards.
+   */
+  public void release() {
+    pool.release(buffer);
+    buffer = null;
+  }
+
+  /**
+   * Writes fields straight from row slots, without boxing long and double values, followed by extra metrics.
+   */
+  private boolean writeFields(MetricsRow row) {
+    MetricsSchema schema = row.getSchema();
+    boolean written = false;
+    for (int slot = 0; slot < schema.size(); slot++) {
+      if (!row.isSet(slot)) {
+        continue;
+      }
+      MetricsSchema.Kind kind = schema.getKind(slot);
+      if (kind == MetricsSchema.Kind.DOUBLE) {
+        double d = row.getDouble(slot);
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+          continue;
+        }
+      } else if (kind == MetricsSchema.Kind.OBJECT && isNullValue(row.getObject(slot))) {
+        continue;
+      }
+
+      if (written) {
+        writeByte((byte) ',');
+      }
+      writeEscaped(schema.getName(slot));
+      writeByte((byte) '=');
+      if (kind == MetricsSchema.Kind.LONG) {
+        writeLong(row.getLong(slot));
+        writeByte((byte) 'i');
+      } else if (kind == MetricsSchema.Kind.DOUBLE) {
+        writeAscii(String.valueOf(row.getDouble(slot)));
+      } else {
+        writeMetricValue(row.getObject(slot));
+      }
+      written = true;
+    }
+    Map<String, Object> extraMetrics = row.getExtraMetrics();
+    return extraMetrics != null ? writeFields(extraMetrics, written) : written;
+  }
+
+  /**
+   * @param written true if some fields were already written to the line
+   */
+  private boolean writeFields(Map<String, Object> metrics, boolean written) {
+    for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+      Object val = metric.getValue();
+      if (!isNullValue(val)) {
+        if (written) {
+          writeByte((byte) ',');
+        }
+        writeEscaped(metric.getKey());
+        writeByte((byte) '=');
+        writeMetricValue(val);
+        written = true;
+      }
+    }
+    return written;
+  }
+
+  private void writeMetricValue(Object value) {
+    if (value instanceof Long || value instanceof Integer) {
+      writeLong(((Number) value).longValue());
+      writeByte((byte) 'i');
+    } else if (value instanceof BigInteger) {
+      writeAscii(value.toString());
+      writeByte((byte) 'i');
+    } else if (value instanceof String) {
+      String str = (String) value;
+      ensureRemaining(str.length() * 3 + 2);
+      buffer.put((byte) '"');
+      for (int i = 0; i < str.length(); i++) {
+        char c = str.charAt(i);
+        if (c == '"') {
+          buffer.put((byte) '\\');
+        }
+        i = putChar(str, i, c);
+      }
+      buffer.put((byte) '"');
+    } else if (value instanceof Boolean) {
+      writeBytes(((Boolean) value) ? TRUE : FALSE);
+    } else if (value instanceof Float || value instanceof Double || value instanceof BigDecimal) {
+      writeAscii(String.valueOf(value));
+    } else if (value instanceof SerializableMetricValue) {
+      writeUtf8(((SerializableMetricValue) value).serializeToInflux());
+    } else {
+      throw new UnsupportedOperationException(
+          "Unsupported type " + value.getClass().getName() + " - can't serialize it!");
+    }
+  }
+
+  private void writeByte(byte b) {
+    ensureRemaining(1);
+    buffer.put(b);
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureRemaining(bytes.length);
+    buffer.put(bytes);
+  }
+
+  private void writeAscii(String str) {
+    ensureRemaining(str.length());
+    for (int i = 0; i < str.length(); i++) {
+      buffer.put((byte) str.charAt(i));
+    }
+  }
+
+  private void writeUtf8(String str) {
+    ensureRemaining(str.length() * 3);
+    for (int i = 0; i < str.length(); i++) {
+      i = putChar(str, i, str.charAt(i));
+    }
+  }
+
+  private void writeEscaped(String str) {
+    // escaped chars take 2 bytes, non-ascii chars take at most 3 bytes per char
+    ensureRemaining(str.length() * 3);
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      if (c == ',' || c == '=' || c == ' ') {
+        buffer.put((byte) '\\');
+        buffer.put((byte) c);
+      } else {
+        i = putChar(str, i, c);
+      }
+    }
+  }
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      writeAscii(String.valueOf(value));
+      return;
+    }
+    ensureRemaining(20);
+    if (value < 0) {
+      buffer.put((byte) '-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long tmp = value; tmp >= 10; tmp /= 10) {
+      digits++;
+    }
+    byte[] array = buffer.array();
+    int end = buffer.arrayOffset() + buffer.position() + digits;
+    for (int i = end - 1; i >= end - digits; i--) {
+      array[i] = (byte) ('0' + (value % 10));
+      value /= 10;
+    }
+    buffer.position(buffer.position() + digits);
+  }
+
+  /**
+   * Writes char at index i as UTF-8, returns index of the last consumed char (surrogate pairs consume two).
+   */
+  private int putChar(String str, int i, char c) {
+    if (c < 0x80) {
+      buffer.put((byte) c);
+    } else if (c < 0x800) {
+      buffer.put((byte) (0xc0 | (c >> 6)));
+      buffer.put((byte) (0x80 | (c & 0x3f)));
+    } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+      int cp = Character.toCodePoint(c, str.charAt(i + 1));
+      buffer.put((byte) (0xf0 | (cp >> 18)));
+      buffer.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+      buffer.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+      buffer.put((byte) (0x80 | (cp & 0x3f)));
+      return i + 1;
+    } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+      // unpaired surrogate, same replacement String.getBytes would use
+      buffer.put((byte) '?');
+    } else {
+      buffer.put((byte) (0xe0 | (c >> 12)));
+      buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+      buffer.put((byte) (0x80 | (c & 0x3f)));
+    }
+    return i;
+  }
+
+  private void ensureRemaining(int needed) {
+    buffer = pool.ensureRemaining(buffer, needed);
+  }
+
+  /**
+   * Same check as Serializer.INFLUX.isNull, but without string conversion for common number types.
+   */
+  public static boolean isNullValue(Object value) {
+    if (value == null) {
+      return true;
+    } else if (value instanceof Double) {
+      double d = (Double) value;
+      return Double.isNaN(d) || Double.isInfinite(d);
+    } else if (value instanceof Float) {
+      float f = (Float) value;
+      return Float.isNaN(f) || Float.isInfinite(f);
+    } else if (value instanceof Long || value instanceof Integer) {
+      return false;
+    } else if (value instanceof Number) {
+      String valueStr = String.valueOf(value);
+      return "null".equalsIgnoreCase(valueStr) || valueStr.contains("Infinity") || valueStr.equals("NaN");
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Escapes tag keys, tag values and field keys. Strings without special chars are returned as they are.
+   */
+  public static String escape(String value) {
+    int i = 0;
+    for (; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '=' || c == ' ') {
+        break;
+      }
+    }
+    if (i == value.length()) {
+      return value;
+    }
+
+    StringBuilder sb = new StringBuilder(value.length() + 8);
+    sb.append(value, 0, i);
+    for (; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '=' || c == ' ') {
+        sb.append('\\');
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,384 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metrics of a single row stored by {@link MetricsSchema} slot: longs and doubles in primitive arrays, everything
+ * else in an Object array, with a bitmap telling which slots are set. Collectors fill it with the primitive setters,
+ * encoders read it with the primitive getters.
+ * <p>
+ * The row is also a Map view (slots which are not set are absent) so code working with metrics maps keeps working;
+ * values read through the view are boxed on access. Metrics which are not defined in the schema, like the ones metrics
+ * processors derive from collected values, are put to a plain map kept next to the slots.
+ */
+public final class MetricsRow extends AbstractMap<String, Object> {
+  private final MetricsSchema schema;
+  private final long[] longs;
+  private final double[] doubles;
+  private final Object[] objects;
+  private final long[] setSlots;
+  private Map<String, Object> extraMetrics;
+
+  MetricsRow(MetricsSchema schema) {
+    this.schema = schema;
+    int size = schema.size();
+    this.longs = new long[size];
+    this.doubles = schema.hasDoubles() ? new double[size] : null;
+    this.objects = schema.hasObjects() ? new Object[size] : null;
+    this.setSlots = new long[(size + 63) >>> 6];
+  }
+
+  public MetricsSchema getSchema() {
+    return schema;
+  }
+
+  public void setLong(int slot, long value) {
+    checkKind(slot, MetricsSchema.Kind.LONG);
+    longs[slot] = value;
+    markSet(slot);
+  }
+
+  public void setDouble(int slot, double value) {
+    checkKind(slot, MetricsSchema.Kind.DOUBLE);
+    doubles[slot] = value;
+    markSet(slot);
+  }
+
+  public void setObject(int slot, Object value) {
+    checkKind(slot, MetricsSchema.Kind.OBJECT);
+    if (value == null) {
+      clear(slot);
+    } else {
+      objects[slot] = value;
+      markSet(slot);
+    }
+  }
+
+  /**
+   * Sets long or double slot from a Number as returned by JMX, null leaves the slot unset.
+   */
+  public void setNumber(int slot, Number value) {
+    if (value == null) {
+      clear(slot);
+    } else if (schema.getKind(slot) == MetricsSchema.Kind.DOUBLE) {
+      setDouble(slot, value.doubleValue());
+    } else {
+      setLong(slot, value.longValue());
+    }
+  }
+
+  public void clear(int slot) {
+    setSlots[slot >>> 6] &= ~(1L << slot);
+    if (objects != null) {
+      objects[slot] = null;
+    }
+  }
+
+  public boolean isSet(int slot) {
+    return (setSlots[slot >>> 6] & (1L << slot)) != 0;
+  }
+
+  public long getLong(int slot) {
+    return longs[slot];
+  }
+
+  public double getDouble(int slot) {
+    return doubles[slot];
+  }
+
+  /**
+   * @return value of the slot, boxed for long and double slots, null if not set
+   */
+  public Object getObject(int slot) {
+    if (!isSet(slot)) {
+      return null;
+    }
+    switch (schema.getKind(slot)) {
+      case LONG:
+        return longs[slot];
+      case DOUBLE:
+        return doubles[slot];
+      default:
+        return objects[slot];
+    }
+  }
+
+  /**
+   * @return true when no slot is set
+   */
+  public boolean isNullRow() {
+    for (long word : setSlots) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return extraMetrics == null || extraMetrics.isEmpty();
+  }
+
+  /**
+   * Same rules as StatValues.isZeroRow: first numeric metric is skipped, only integral values can be zero.
+   */
+  public boolean isZeroRow() {
+    boolean foundNumber = false;
+    boolean skippedFirstNumber = false;
+    for (int slot = 0; slot < schema.size(); slot++) {
+      if (!isSet(slot)) {
+        continue;
+      }
+      MetricsSchema.Kind kind = schema.getKind(slot);
+      Object value = kind == MetricsSchema.Kind.OBJECT ? objects[slot] : null;
+      if (kind == MetricsSchema.Kind.OBJECT && !(value instanceof Number)) {
+        continue;
+      }
+      if (!skippedFirstNumber) {
+        skippedFirstNumber = true;
+        continue;
+      }
+      foundNumber = true;
+      if (kind == MetricsSchema.Kind.LONG) {
+        if (longs[slot] != 0) {
+          return false;
+        }
+      } else if (value instanceof Integer || value instanceof Long) {
+        if (((Number) value).longValue() != 0) {
+          return false;
+        }
+      } else {
+        return false;
+      }
+    }
+    if (extraMetrics != null) {
+      for (Object value : extraMetrics.values()) {
+        if (!(value instanceof Number)) {
+          continue;
+        }
+        if (!skippedFirstNumber) {
+          skippedFirstNumber = true;
+          continue;
+        }
+        foundNumber = true;
+        if (!(value instanceof Integer || value instanceof Long) || ((Number) value).longValue() != 0) {
+          return false;
+        }
+      }
+    }
+    return foundNumber;
+  }
+
+  /**
+   * @return metrics which are not defined in the schema, null if there are none
+   */
+  Map<String, Object> getExtraMetrics() {
+    return extraMetrics;
+  }
+
+  @Override
+  public Object get(Object key) {
+    int slot = key instanceof String ? schema.slotOf((String) key) : -1;
+    if (slot == -1) {
+      return extraMetrics != null ? extraMetrics.get(key) : null;
+    }
+    return getObject(slot);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int slot = key instanceof String ? schema.slotOf((String) key) : -1;
+    if (slot == -1) {
+      return extraMetrics != null && extraMetrics.containsKey(key);
+    }
+    return isSet(slot);
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    int slot = schema.slotOf(key);
+    if (slot == -1) {
+      if (value == null) {
+        return remove(key);
+      }
+      if (extraMetrics == null) {
+        extraMetrics = new LinkedHashMap<String, Object>();
+      }
+      return extraMetrics.put(key, value);
+    }
+    Object previous = getObject(slot);
+    set(slot, value);
+    return previous;
+  }
+
+  @Override
+  public Object remove(Object key) {
+    int slot = key instanceof String ? schema.slotOf((String) key) : -1;
+    if (slot == -1) {
+      return extraMetrics != null ? extraMetrics.remove(key) : null;
+    }
+    Object previous = getObject(slot);
+    clear(slot);
+    return previous;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (long word : setSlots) {
+      size += Long.bitCount(word);
+    }
+    return extraMetrics != null ? size + extraMetrics.size() : size;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < setSlots.length; i++) {
+      setSlots[i] = 0;
+    }
+    if (objects != null) {
+      for (int i = 0; i < objects.length; i++) {
+        objects[i] = null;
+      }
+    }
+    extraMetrics = null;
+  }
+
+  @Override
+  public Set<Map.Entry<String, Object>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Object>>() {
+      @Override
+      public Iterator<Map.Entry<String, Object>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return MetricsRow.this.size();
+      }
+    };
+  }
+
+  private void set(int slot, Object value) {
+    if (value == null) {
+      clear(slot);
+      return;
+    }
+    switch (schema.getKind(slot)) {
+      case LONG:
+        setLong(slot, ((Number) value).longValue());
+        break;
+      case DOUBLE:
+        setDouble(slot, ((Number) value).doubleValue());
+        break;
+      default:
+        setObject(slot, value);
+    }
+  }
+
+  private void markSet(int slot) {
+    setSlots[slot >>> 6] |= 1L << slot;
+  }
+
+  private void checkKind(int slot, MetricsSchema.Kind kind) {
+    if (schema.getKind(slot) != kind) {
+      throw new IllegalArgumentException("Metric " + schema.getName(slot) + " is " + schema.getKind(slot) +
+                                             ", not " + kind);
+    }
+  }
+
+  private int nextSetSlot(int from) {
+    for (int slot = from; slot < schema.size(); slot++) {
+      if (isSet(slot)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Iterates set slots first, then extra metrics.
+   */
+  private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+    private int next = nextSetSlot(0);
+    private int last = -1;
+    private Iterator<Map.Entry<String, Object>> extraIterator;
+
+    @Override
+    public boolean hasNext() {
+      return next != -1 || extraIterator().hasNext();
+    }
+
+    @Override
+    public Map.Entry<String, Object> next() {
+      if (next == -1) {
+        last = -1;
+        return extraIterator().next();
+      }
+      last = next;
+      next = nextSetSlot(next + 1);
+      final int slot = last;
+      return new Map.Entry<String, Object>() {
+        @Override
+        public String getKey() {
+          return schema.getName(slot);
+        }
+
+        @Override
+        public Object getValue() {
+          return getObject(slot);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+          Object previous = getObject(slot);
+          set(slot, value);
+          return previous;
+        }
+      };
+    }
+
+    @Override
+    public void remove() {
+      if (last != -1) {
+        clear(last);
+        last = -1;
+      } else if (extraIterator != null) {
+        extraIterator.remove();
+      } else {
+        throw new IllegalStateException();
+      }
+    }
+
+    private Iterator<Map.Entry<String, Object>> extraIterator() {
+      if (extraIterator == null) {
+        if (extraMetrics == null) {
+          return Collections.<Map.Entry<String, Object>>emptySet().iterator();
+        }
+        extraIterator = extraMetrics.entrySet().iterator();
+      }
+      return extraIterator;
+    }
+  }
+}
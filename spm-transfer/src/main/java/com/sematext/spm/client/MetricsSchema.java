@@ -0,0 +1,135 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed list of metrics (slots) a collector produces, with the primitive kind of each slot. Created once per
+ * collector/config, rows for each interval are created with {@link #newRow()}.
+ */
+public final class MetricsSchema {
+  public enum Kind {
+    LONG,
+    DOUBLE,
+    OBJECT
+  }
+
+  private final String[] names;
+  private final Kind[] kinds;
+  private final Map<String, Integer> slots;
+  private final boolean hasDoubles;
+  private final boolean hasObjects;
+
+  private MetricsSchema(List<String> names, List<Kind> kinds) {
+    this.names = names.toArray(new String[names.size()]);
+    this.kinds = kinds.toArray(new Kind[kinds.size()]);
+    this.slots = new HashMap<String, Integer>(names.size() * 2);
+    for (int i = 0; i < this.names.length; i++) {
+      slots.put(this.names[i], i);
+    }
+    this.hasDoubles = kinds.contains(Kind.DOUBLE);
+    this.hasObjects = kinds.contains(Kind.OBJECT);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public MetricsRow newRow() {
+    return new MetricsRow(this);
+  }
+
+  public int size() {
+    return names.length;
+  }
+
+  public String getName(int slot) {
+    return names[slot];
+  }
+
+  public Kind getKind(int slot) {
+    return kinds[slot];
+  }
+
+  /**
+   * @return slot of the metric or -1 if it is not part of the schema
+   */
+  public int slotOf(String name) {
+    Integer slot = slots.get(name);
+    return slot != null ? slot : -1;
+  }
+
+  boolean hasDoubles() {
+    return hasDoubles;
+  }
+
+  boolean hasObjects() {
+    return hasObjects;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("MetricsSchema{");
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(names[i]).append(':').append(kinds[i]);
+    }
+    return sb.append('}').toString();
+  }
+
+  public static final class Builder {
+    private final List<String> names = new ArrayList<String>();
+    private final List<Kind> kinds = new ArrayList<Kind>();
+
+    private Builder() {
+    }
+
+    public Builder addLong(String name) {
+      return add(name, Kind.LONG);
+    }
+
+    public Builder addDouble(String name) {
+      return add(name, Kind.DOUBLE);
+    }
+
+    public Builder addObject(String name) {
+      return add(name, Kind.OBJECT);
+    }
+
+    private Builder add(String name, Kind kind) {
+      if (names.contains(name)) {
+        throw new IllegalArgumentException("Metric " + name + " already defined");
+      }
+      names.add(name);
+      kinds.add(kind);
+      return this;
+    }
+
+    public MetricsSchema build() {
+      return new MetricsSchema(names, kinds);
+    }
+  }
+}
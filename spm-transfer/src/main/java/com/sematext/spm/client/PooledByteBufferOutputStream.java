@@ -0,0 +1,60 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream writing into a ByteBuffer taken from ByteBufferPool, growing it through the pool when needed.
+ * Closing the stream doesn't release the buffer, that has to be done by the owner of getBuffer() result.
+ */
+public final class PooledByteBufferOutputStream extends OutputStream {
+  private final ByteBufferPool pool;
+  private ByteBuffer buffer;
+
+  public PooledByteBufferOutputStream(ByteBufferPool pool) {
+    this.pool = pool;
+    this.buffer = pool.acquire();
+  }
+
+  @Override
+  public void write(int b) {
+    buffer = pool.ensureRemaining(buffer, 1);
+    buffer.put((byte) b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    buffer = pool.ensureRemaining(buffer, len);
+    buffer.put(b, off, len);
+  }
+
+  public int size() {
+    return buffer.position();
+  }
+
+  /**
+   * @return underlying buffer in write mode; written bytes are in [0, position)
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+}
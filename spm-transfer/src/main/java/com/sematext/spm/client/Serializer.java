@@ -21,9 +21,10 @@ package com.sematext.spm.client;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -83,14 +84,7 @@ public enum Serializer implements StatValuesSerializer<String> {
 
     @Override
     public boolean isNull(Object value) {
-      if (value == null) {
-        return true;
-      } else if (value instanceof Number) {
-        String valueStr = String.valueOf(value);
-        return "null".equalsIgnoreCase(valueStr) || valueStr.contains("Infinity") || valueStr.equals("NaN");
-      } else {
-        return false;
-      }
+      return InfluxLineEncoder.isNullValue(value);
     }
 
     @Override
@@ -100,18 +94,9 @@ public enum Serializer implements StatValuesSerializer<String> {
         return;
       }
 
-      sb.append(metricNamespace).append(",").append("token=").append(appToken);
-
-      if (tags != null) {
-        // TODO - As per Influx protocol, for performance reasons tags should be sorted
-        // https://docs.influxdata.com/influxdb/v1.4/write_protocols/line_protocol_tutorial/
-        for (String tag : tags.keySet()) {
-          String val = tags.get(tag);
-          if (!isNull(val)) {
-            append(sb, formatKeysAndTagValues(tag), formatKeysAndTagValues(val), false);
-          }
-        }
-      }
+      // escaped and sorted tags, as per Influx protocol recommendation
+      // https://docs.influxdata.com/influxdb/v1.4/write_protocols/line_protocol_tutorial/
+      sb.append(SeriesKeyCache.INSTANCE.get(metricNamespace, appToken, tags).getPrefix());
 
       sb.append(" ");
 
@@ -157,10 +142,7 @@ public enum Serializer implements StatValuesSerializer<String> {
         return esc;
       }
 
-      String tmp = value;
-      for (String ch : INFLUX_CHARS_TO_ESCAPE) {
-        tmp = tmp.replaceAll(ch, "\\\\" + ch);
-      }
+      String tmp = InfluxLineEncoder.escape(value);
       INFLUX_ALREADY_ESCAPED.put(value, tmp);
       return tmp;
     }
@@ -169,8 +151,7 @@ public enum Serializer implements StatValuesSerializer<String> {
       if (value instanceof Integer || value instanceof Long || value instanceof BigInteger) {
         return value.toString() + "i";
       } else if (value instanceof String) {
-        // TODO - Can be improved by adding a cache of already escaped values to avoid repeated concatenations and replaceAll
-        return "\"" + ((String) value).replaceAll("\"", "\\\"") + "\"";
+        return "\"" + ((String) value).replace("\"", "\\\"") + "\"";
       } else if (value instanceof Boolean) {
         return String.valueOf(value);
       } else if (value instanceof Float || value instanceof Double || value instanceof BigDecimal) {
@@ -297,8 +278,15 @@ public enum Serializer implements StatValuesSerializer<String> {
 
   private static final Map<String, Serializer> KEY_SERIALIZER = new HashMap<String, Serializer>();
 
-  private static final List<String> INFLUX_CHARS_TO_ESCAPE = Arrays.asList(",", "=", " ");
-  private static final Map<String, String> INFLUX_ALREADY_ESCAPED = new HashMap<String, String>();
+  // used for metric names and metainfo, bounded since it may be used with dynamically generated names
+  private static final int MAX_ALREADY_ESCAPED = 10000;
+  private static final Map<String, String> INFLUX_ALREADY_ESCAPED = Collections.synchronizedMap(
+      new LinkedHashMap<String, String>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+          return size() > MAX_ALREADY_ESCAPED;
+        }
+      });
 
   public static Serializer get(String key) {
     return KEY_SERIALIZER.get(key);
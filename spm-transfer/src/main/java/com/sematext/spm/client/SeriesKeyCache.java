@@ -0,0 +1,219 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches escaped Influx series keys ("namespace,token=...,tag1=...,tag2=...") so they are built once per series and
+ * reused across intervals. Tags are sorted by key (token stays first), which is the order Influx stores them in, so
+ * the server doesn't have to sort them for every line.
+ * <p>
+ * Entries are looked up by namespace, token and tags content, since most collectors build new tags map in each
+ * interval. The cache is bounded by approximate memory used and evicts least recently used series.
+ */
+public final class SeriesKeyCache {
+  public static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+  public static final SeriesKeyCache INSTANCE = new SeriesKeyCache(DEFAULT_MAX_BYTES);
+
+  // rough size of cache entry, lookup key and tags copy, apart from the strings themselves
+  private static final int ENTRY_OVERHEAD_BYTES = 160;
+  private static final Map<String, String> NO_TAGS = Collections.emptyMap();
+
+  private static final Comparator<Map.Entry<String, String>> BY_KEY = new Comparator<Map.Entry<String, String>>() {
+    @Override
+    public int compare(Map.Entry<String, String> o1, Map.Entry<String, String> o2) {
+      return o1.getKey().compareTo(o2.getKey());
+    }
+  };
+
+  private final long maxBytes;
+  private final LinkedHashMap<Key, SeriesKey> entries = new LinkedHashMap<Key, SeriesKey>(256, 0.75f, true);
+  private long usedBytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  SeriesKeyCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public SeriesKey get(String metricNamespace, String appToken, Map<String, String> tags) {
+    Key lookup = new Key(metricNamespace, appToken, tags != null ? tags : NO_TAGS);
+    synchronized (this) {
+      SeriesKey seriesKey = entries.get(lookup);
+      if (seriesKey != null) {
+        hits++;
+        return seriesKey;
+      }
+      misses++;
+    }
+
+    SeriesKey seriesKey = SeriesKey.create(metricNamespace, appToken, lookup.tags);
+    // tags maps may be reused and changed by collectors, cached key needs its own copy
+    Key key = new Key(metricNamespace, appToken, new HashMap<String, String>(lookup.tags), lookup.hash);
+    int weight = seriesKey.getWeight();
+    synchronized (this) {
+      if (!entries.containsKey(key)) {
+        entries.put(key, seriesKey);
+        usedBytes += weight;
+        evict();
+      }
+    }
+    return seriesKey;
+  }
+
+  private void evict() {
+    Iterator<SeriesKey> iterator = entries.values().iterator();
+    while (usedBytes > maxBytes && entries.size() > 1 && iterator.hasNext()) {
+      usedBytes -= iterator.next().getWeight();
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return hit ratio in percents since the cache was created, 0 when there were no lookups
+   */
+  public synchronized double getHitRatio() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : hits * 100d / lookups;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    usedBytes = 0;
+  }
+
+  /**
+   * Escaped series key of one series, as String and as UTF-8 bytes.
+   */
+  public static final class SeriesKey {
+    private final String prefix;
+    private final byte[] prefixBytes;
+    private final int weight;
+
+    private SeriesKey(String prefix, int tagChars) {
+      this.prefix = prefix;
+      this.prefixBytes = prefix.getBytes(InfluxLineEncoder.UTF_8);
+      this.weight = ENTRY_OVERHEAD_BYTES + prefix.length() * 2 + prefixBytes.length + tagChars * 2;
+    }
+
+    static SeriesKey create(String metricNamespace, String appToken, Map<String, String> tags) {
+      StringBuilder sb = new StringBuilder(64 + tags.size() * 32);
+      sb.append(InfluxLineEncoder.escape(metricNamespace)).append(",token=").append(InfluxLineEncoder.escape(appToken));
+
+      int tagChars = 0;
+      if (!tags.isEmpty()) {
+        @SuppressWarnings("unchecked")
+        Map.Entry<String, String>[] sorted = tags.entrySet().toArray(new Map.Entry[tags.size()]);
+        Arrays.sort(sorted, BY_KEY);
+        for (Map.Entry<String, String> tag : sorted) {
+          tagChars += tag.getKey().length() + (tag.getValue() != null ? tag.getValue().length() : 0);
+          if (tag.getValue() != null) {
+            sb.append(',').append(InfluxLineEncoder.escape(tag.getKey())).append('=')
+                .append(InfluxLineEncoder.escape(tag.getValue()));
+          }
+        }
+      }
+      return new SeriesKey(sb.toString(), tagChars);
+    }
+
+    public String getPrefix() {
+      return prefix;
+    }
+
+    public byte[] getPrefixBytes() {
+      return prefixBytes;
+    }
+
+    int getWeight() {
+      return weight;
+    }
+  }
+
+  private static final class Key {
+    private final String metricNamespace;
+    private final String appToken;
+    private final Map<String, String> tags;
+    private final int hash;
+
+    private Key(String metricNamespace, String appToken, Map<String, String> tags) {
+      this(metricNamespace, appToken, tags,
+           (31 * String.valueOf(metricNamespace).hashCode() + String.valueOf(appToken).hashCode()) * 31 +
+               tags.hashCode());
+    }
+
+    private Key(String metricNamespace, String appToken, Map<String, String> tags, int hash) {
+      this.metricNamespace = metricNamespace;
+      this.appToken = appToken;
+      this.tags = tags;
+      this.hash = hash;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && eq(metricNamespace, other.metricNamespace) && eq(appToken, other.appToken) &&
+          tags.equals(other.tags);
+    }
+
+    private static boolean eq(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+}
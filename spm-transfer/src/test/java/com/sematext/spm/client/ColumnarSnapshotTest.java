@@ -0,0 +1,117 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ColumnarSnapshotTest {
+  @Test
+  public void testRoundTripMatchesLineProtocol() {
+    ColumnarSnapshotEncoder encoder = new ColumnarSnapshotEncoder();
+    List<String> expected = new ArrayList<String>();
+
+    for (int i = 0; i < 20; i++) {
+      Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+      metrics.put("long", -1234567890123L + i * 7);
+      metrics.put("int", i);
+      metrics.put("double", 1.5d * i);
+      metrics.put("nan", Double.NaN);
+      metrics.put("skipped", null);
+      metrics.put("str", "say \"hi\" ñ");
+      metrics.put("bool", i % 3 == 0);
+      metrics.put("float", 0.25f);
+      metrics.put("decimal", new BigDecimal("12.75"));
+      metrics.put("big", new BigInteger("123456789012345678901234567890"));
+      Map<String, String> tags = new LinkedHashMap<String, String>();
+      tags.put("host", "abc def");
+      tags.put("path", "a=b,c");
+      tags.put("name", "über 😀" + (i % 2));
+
+      Assert.assertTrue(encoder.add("solr", "aaa", metrics, tags, 1500000000000L + i * 10000L));
+      expected.add(Serializer.INFLUX.serialize("solr", "aaa", metrics, tags, 1500000000000L + i * 10000L));
+    }
+
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    metrics.put("other", 1L);
+    Assert.assertTrue(encoder.add("jvm", "aaa", metrics, null, -1));
+    expected.add(Serializer.INFLUX.serialize("jvm", "aaa", metrics, null, -1));
+
+    Assert.assertEquals(expected, ColumnarSnapshotDecoder.toLineProtocol(encoder.encode()));
+    Assert.assertEquals(21, encoder.getRowCount());
+  }
+
+  @Test
+  public void testRowsOfSameSeriesAreGrouped() {
+    ColumnarSnapshotEncoder encoder = new ColumnarSnapshotEncoder();
+    Map<String, Object> first = new LinkedHashMap<String, Object>();
+    first.put("a", 1L);
+    Map<String, Object> second = new LinkedHashMap<String, Object>();
+    second.put("b", 2L);
+    encoder.add("ns", "t", first, null, 1);
+    encoder.add("ns", "t", second, null, 2);
+    encoder.add("ns", "t", first, null, 3);
+
+    List<String> lines = ColumnarSnapshotDecoder.toLineProtocol(encoder.encode());
+    Assert.assertEquals("ns,token=t a=1i 1000000", lines.get(0));
+    Assert.assertEquals("ns,token=t a=1i 3000000", lines.get(1));
+    Assert.assertEquals("ns,token=t b=2i 2000000", lines.get(2));
+  }
+
+  @Test
+  public void testSmallerThanLineProtocol() {
+    ColumnarSnapshotEncoder encoder = new ColumnarSnapshotEncoder();
+    int lineProtocolSize = 0;
+    for (int i = 0; i < 100; i++) {
+      Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+      metrics.put("requests.count", 1000L + i);
+      metrics.put("latency.avg", 12.5d);
+      Map<String, String> tags = new LinkedHashMap<String, String>();
+      tags.put("os.host", "prod-server-01");
+      tags.put("jvm", "default");
+      encoder.add("tomcat", "1111-2222-3333", metrics, tags, 1500000000000L);
+      lineProtocolSize += Serializer.INFLUX.serialize("tomcat", "1111-2222-3333", metrics, tags, 1500000000000L)
+          .length() + 1;
+    }
+    byte[] snapshot = encoder.encode();
+    Assert.assertTrue(snapshot.length + " vs " + lineProtocolSize, snapshot.length * 10 < lineProtocolSize);
+    Assert.assertEquals(100, ColumnarSnapshotDecoder.toLineProtocol(snapshot).size());
+
+    encoder.reset();
+    Assert.assertEquals(0, encoder.getRowCount());
+    Assert.assertEquals(0, ColumnarSnapshotDecoder.toLineProtocol(encoder.encode()).size());
+  }
+
+  @Test
+  public void testRowWithoutValuesIsSkipped() {
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    metrics.put("m", null);
+    ColumnarSnapshotEncoder encoder = new ColumnarSnapshotEncoder();
+    Assert.assertFalse(encoder.add("ns", "t", metrics, null, 1));
+    Assert.assertEquals(0, encoder.getRowCount());
+  }
+}
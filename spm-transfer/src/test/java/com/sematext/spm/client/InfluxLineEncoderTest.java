@@ -0,0 +1,88 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class InfluxLineEncoderTest {
+  @Test
+  public void testSameOutputAsSerializer() {
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    metrics.put("long", -1234567890123L);
+    metrics.put("int", 0);
+    metrics.put("double", 1.5d);
+    metrics.put("nan", Double.NaN);
+    metrics.put("skipped", null);
+    metrics.put("str", "say \"hi\" ñ");
+    metrics.put("bool", true);
+    Map<String, String> tags = new LinkedHashMap<String, String>();
+    tags.put("host", "abc def");
+    tags.put("path", "a=b,c");
+    tags.put("name", "über 😀");
+
+    InfluxLineEncoder encoder = new InfluxLineEncoder(new ByteBufferPool(1, 8, 1024));
+    Assert.assertTrue(encoder.encode("solr", "aaa", metrics, tags, 100));
+
+    String expected = Serializer.INFLUX.serialize("solr", "aaa", metrics, tags, 100);
+    Assert.assertEquals("solr,token=aaa,host=abc\\ def,name=über\\ 😀,path=a\\=b\\,c long=-1234567890123i,int=0i," +
+                            "double=1.5,str=\"say \\\"hi\\\" ñ\",bool=true 100000000", expected);
+    Assert.assertEquals(expected, new String(encoder.toByteArray(), InfluxLineEncoder.UTF_8));
+  }
+
+  @Test
+  public void testMultipleLines() {
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    metrics.put("m", 1L);
+
+    InfluxLineEncoder encoder = new InfluxLineEncoder(new ByteBufferPool(1, 4, 1024));
+    encoder.encode("ns", "t", metrics, null, 1);
+    encoder.newLine();
+    encoder.encode("ns", "t", metrics, null, -1);
+    Assert.assertEquals("ns,token=t m=1i 1000000\nns,token=t m=1i",
+                        new String(encoder.toByteArray(), InfluxLineEncoder.UTF_8));
+
+    encoder.reset();
+    Assert.assertEquals(0, encoder.size());
+  }
+
+  @Test
+  public void testRowWithoutValuesIsNotWritten() {
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    metrics.put("m", null);
+    metrics.put("inf", Float.POSITIVE_INFINITY);
+
+    InfluxLineEncoder encoder = new InfluxLineEncoder();
+    Assert.assertFalse(encoder.encode("ns", "t", metrics, null, 1));
+    Assert.assertEquals(0, encoder.size());
+  }
+
+  @Test
+  public void testBufferIsReturnedToPool() {
+    ByteBufferPool pool = new ByteBufferPool(1, 16, 1024);
+    InfluxLineEncoder encoder = new InfluxLineEncoder(pool);
+    Assert.assertEquals(0, pool.getFreeCount());
+    encoder.release();
+    Assert.assertEquals(1, pool.getFreeCount());
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MetricsRowTest {
+  private static final MetricsSchema SCHEMA = MetricsSchema.builder()
+      .addLong("count")
+      .addDouble("avg")
+      .addObject("name")
+      .addLong("max")
+      .build();
+
+  @Test
+  public void testEncodedSameAsMap() {
+    MetricsRow row = SCHEMA.newRow();
+    row.setLong(SCHEMA.slotOf("count"), 42);
+    row.setDouble(SCHEMA.slotOf("avg"), 1.25);
+    row.setObject(SCHEMA.slotOf("name"), "a \"b\"");
+
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("count", 42L);
+    map.put("avg", 1.25d);
+    map.put("name", "a \"b\"");
+
+    InfluxLineEncoder encoder = new InfluxLineEncoder();
+    encoder.encode("ns", "t", row, null, 5);
+    String expected = Serializer.INFLUX.serialize("ns", "t", map, null, 5);
+    Assert.assertEquals(expected, new String(encoder.toByteArray(), InfluxLineEncoder.UTF_8));
+    Assert.assertEquals(expected, Serializer.INFLUX.serialize("ns", "t", row, null, 5));
+  }
+
+  @Test
+  public void testNanDoubleIsSkipped() {
+    MetricsRow row = SCHEMA.newRow();
+    row.setDouble(SCHEMA.slotOf("avg"), Double.NaN);
+
+    InfluxLineEncoder encoder = new InfluxLineEncoder();
+    Assert.assertFalse(encoder.encode("ns", "t", row, null, 5));
+
+    row.setLong(SCHEMA.slotOf("max"), -7);
+    Assert.assertTrue(encoder.encode("ns", "t", row, null, -1));
+    Assert.assertEquals("ns,token=t max=-7i", new String(encoder.toByteArray(), InfluxLineEncoder.UTF_8));
+  }
+
+  @Test
+  public void testMapView() {
+    MetricsRow row = SCHEMA.newRow();
+    Assert.assertTrue(row.isEmpty());
+    Assert.assertTrue(row.isNullRow());
+
+    row.put("count", 3);
+    row.put("avg", 2L);
+    row.setNumber(SCHEMA.slotOf("max"), null);
+    Assert.assertEquals(2, row.size());
+    Assert.assertEquals(3L, row.get("count"));
+    Assert.assertEquals(2.0d, row.get("avg"));
+    Assert.assertNull(row.get("max"));
+    Assert.assertFalse(row.containsKey("name"));
+
+    Iterator<Map.Entry<String, Object>> iterator = row.entrySet().iterator();
+    Assert.assertEquals("count", iterator.next().getKey());
+    iterator.remove();
+    Assert.assertEquals(1, row.size());
+    Assert.assertEquals(2.0d, row.remove("avg"));
+    Assert.assertTrue(row.isNullRow());
+  }
+
+  @Test
+  public void testMetricsNotInSchema() {
+    MetricsRow row = SCHEMA.newRow();
+    row.setLong(SCHEMA.slotOf("count"), 3);
+    Assert.assertNull(row.put("count.p99", 1.5d));
+    Assert.assertEquals(1.5d, row.get("count.p99"));
+    Assert.assertTrue(row.containsKey("count.p99"));
+    Assert.assertEquals(2, row.size());
+
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("count", 3L);
+    map.put("count.p99", 1.5d);
+    Assert.assertEquals(map, row);
+    InfluxLineEncoder encoder = new InfluxLineEncoder();
+    encoder.encode("ns", "t", row, null, 5);
+    Assert.assertEquals(Serializer.INFLUX.serialize("ns", "t", map, null, 5),
+                        new String(encoder.toByteArray(), InfluxLineEncoder.UTF_8));
+
+    Iterator<Map.Entry<String, Object>> iterator = row.entrySet().iterator();
+    iterator.next();
+    Assert.assertEquals("count.p99", iterator.next().getKey());
+    iterator.remove();
+    Assert.assertFalse(iterator.hasNext());
+    Assert.assertFalse(row.containsKey("count.p99"));
+
+    row.put("derived", 0L);
+    row.setLong(SCHEMA.slotOf("count"), 0);
+    Assert.assertTrue(row.isZeroRow());
+    row.remove("count");
+    Assert.assertFalse(row.isNullRow());
+    Assert.assertEquals(0L, row.put("derived", null));
+    Assert.assertTrue(row.isNullRow());
+  }
+
+  @Test
+  public void testZeroRow() {
+    MetricsRow row = SCHEMA.newRow();
+    // first number is skipped, same as for maps
+    row.setLong(SCHEMA.slotOf("count"), 5);
+    row.setLong(SCHEMA.slotOf("max"), 0);
+    Assert.assertTrue(row.isZeroRow());
+
+    row.setObject(SCHEMA.slotOf("name"), 0);
+    Assert.assertTrue(row.isZeroRow());
+
+    row.setDouble(SCHEMA.slotOf("avg"), 0.0);
+    Assert.assertFalse(row.isZeroRow());
+  }
+}
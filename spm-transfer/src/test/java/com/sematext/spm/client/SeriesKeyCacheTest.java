@@ -0,0 +1,84 @@
+/*
+ * Licensed to Sematext Group, Inc
+ *
+ * See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Sematext Group, Inc licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.sematext.spm.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SeriesKeyCacheTest {
+  @Test
+  public void testSortedAndEscaped() {
+    Map<String, String> tags = new LinkedHashMap<String, String>();
+    tags.put("zone", "eu 1");
+    tags.put("a,b", "x=y");
+    tags.put("skipped", null);
+    tags.put("host", "h1");
+
+    SeriesKeyCache cache = new SeriesKeyCache(SeriesKeyCache.DEFAULT_MAX_BYTES);
+    SeriesKeyCache.SeriesKey key = cache.get("my ns", "tok", tags);
+    Assert.assertEquals("my\\ ns,token=tok,a\\,b=x\\=y,host=h1,zone=eu\\ 1", key.getPrefix());
+    Assert.assertEquals(key.getPrefix(), new String(key.getPrefixBytes(), InfluxLineEncoder.UTF_8));
+    Assert.assertEquals("ns,token=tok", cache.get("ns", "tok", null).getPrefix());
+  }
+
+  @Test
+  public void testHitsAndChangedTags() {
+    SeriesKeyCache cache = new SeriesKeyCache(SeriesKeyCache.DEFAULT_MAX_BYTES);
+    Map<String, String> tags = new HashMap<String, String>();
+    tags.put("host", "h1");
+
+    SeriesKeyCache.SeriesKey first = cache.get("ns", "tok", tags);
+    // equal content in a different map instance hits the cache
+    Assert.assertSame(first, cache.get("ns", "tok", new HashMap<String, String>(tags)));
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(1, cache.getMisses());
+    Assert.assertEquals(50d, cache.getHitRatio(), 0.001);
+
+    // changing the original map must not change cached key
+    tags.put("host", "h2");
+    Assert.assertEquals("ns,token=tok,host=h2", cache.get("ns", "tok", tags).getPrefix());
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNotSame(first, cache.get("ns", "other", tags));
+  }
+
+  @Test
+  public void testLruEvictionByMemory() {
+    SeriesKeyCache cache = new SeriesKeyCache(2000);
+    Map<String, String> tags = new HashMap<String, String>();
+    for (int i = 0; i < 100; i++) {
+      tags.put("host", "host-" + i);
+      cache.get("ns", "tok", tags);
+      // keep the first series in use
+      tags.put("host", "host-0");
+      cache.get("ns", "tok", tags);
+    }
+    Assert.assertTrue(cache.getUsedBytes() <= 2000);
+    Assert.assertTrue(cache.getEvictions() > 0);
+    Assert.assertTrue(cache.size() < 100);
+
+    long misses = cache.getMisses();
+    cache.get("ns", "tok", tags);
+    Assert.assertEquals(misses, cache.getMisses());
+  }
+}